@@ -0,0 +1,122 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.AdyacenciaComprimida;
+import modelo.Algoritmo;
+import modelo.AlgoritmoAEstrella;
+import modelo.AlgoritmoDijkstra;
+import modelo.GrafoCompacto;
+import modelo.Ruta;
+
+/**
+ * Benchmark de Dijkstra y A* sobre el grafo compacto, con los arrays en el monticulo de Java, frente a la forma
+ * comprimida en buffers directos (DIRECTA) o proyectada desde un fichero (PROYECTADA), que se consultan sin el grafo
+ * compacto. Al preparar cada prueba se imprime lo que ocupan las carreteras en cada forma.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkAdyacencia {
+
+	public enum Forma {
+		MONTICULO, DIRECTA, PROYECTADA
+	}
+
+	private static final int CONSULTAS = 1024;
+
+	@Param({ "MONTICULO", "DIRECTA", "PROYECTADA" })
+	private Forma forma;
+
+	@Param({ "DIJKSTRA", "A_ESTRELLA" })
+	private Algoritmo algoritmo;
+
+	@Param({ "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "10000", "100000", "1000000" })
+	private int numeroCiudades;
+
+	private GrafoCompacto grafo;
+	private AdyacenciaComprimida adyacencia;
+	private File fichero;
+	private int[] origenes;
+	private int[] destinos;
+	private int consulta;
+
+	@Setup(Level.Trial)
+	public void preparar() throws IOException {
+
+		if (algoritmo != Algoritmo.DIJKSTRA && algoritmo != Algoritmo.A_ESTRELLA) {
+			throw new IllegalArgumentException("Algoritmo no disponible sobre la forma comprimida: " + algoritmo);
+		}
+		grafo = GeneradorMapas.generar(tipo, numeroCiudades, 42L).crearMapa().congelar();
+		adyacencia = AdyacenciaComprimida.construir(grafo, AdyacenciaComprimida.RESOLUCION_DEFECTO);
+		if (forma == Forma.PROYECTADA) {
+			fichero = File.createTempFile("adyacencia", ".bin");
+			adyacencia.guardar(fichero);
+			adyacencia = AdyacenciaComprimida.proyectar(fichero);
+		}
+		// Las formas comprimidas no dependen del grafo compacto, que solo se conserva para medir la del monticulo.
+		if (forma != Forma.MONTICULO) {
+			grafo = null;
+		}
+		System.out.println(String.format("%d carreteras: %.2f bytes/carretera comprimidas frente a 8 en el monticulo, "
+				+ "%d bytes en total", adyacencia.numeroCarreteras(), adyacencia.bytesPorCarretera(),
+				adyacencia.bytesOcupados()));
+
+		Random aleatorio = new Random(7L);
+		origenes = new int[CONSULTAS];
+		destinos = new int[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			origenes[i] = aleatorio.nextInt(numeroCiudades);
+			destinos[i] = aleatorio.nextInt(numeroCiudades);
+		}
+		consulta = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void terminar() {
+
+		if (fichero != null && !fichero.delete()) {
+			fichero.deleteOnExit();
+		}
+	}
+
+	@Benchmark
+	public Ruta calcularRuta() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		int origen = origenes[consulta];
+		int destino = destinos[consulta];
+		if (forma == Forma.MONTICULO) {
+			return algoritmo == Algoritmo.DIJKSTRA ? AlgoritmoDijkstra.calcularRuta(grafo, origen, destino)
+					: AlgoritmoAEstrella.ejecutar(grafo, origen, destino);
+		}
+		return algoritmo == Algoritmo.DIJKSTRA ? AlgoritmoDijkstra.calcularRuta(adyacencia, origen, destino)
+				: AlgoritmoAEstrella.ejecutar(adyacencia, origen, destino);
+	}
+}
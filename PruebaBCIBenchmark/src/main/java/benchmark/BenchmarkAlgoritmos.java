@@ -0,0 +1,103 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.Algoritmo;
+import modelo.Mapa;
+import modelo.Ruta;
+import modelo.TablaCaminosMinimos;
+
+/**
+ * Benchmark de Mapa.calcularRuta con cada uno de los algoritmos disponibles entre pares de ciudades aleatorios. Antes
+ * de medir se prepara el preprocesado que necesita el algoritmo (jerarquia, puntos de referencia, etiquetado de hubs
+ * o tablas), de modo que se mide solo el coste de las consultas. Los algoritmos que se aniadan al enumerado Algoritmo
+ * se pueden medir aniadiendolos a la lista del parametro o con -p algoritmo=NOMBRE.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkAlgoritmos {
+
+	private static final int CONSULTAS = 1024;
+	// Memoria maxima de las tablas de caminos minimos; con mapas mayores TABLA recurre a la busqueda bidireccional.
+	private static final long MEMORIA_MAXIMA_TABLA = 1024L * 1024L * 1024L;
+
+	@Param({ "DIJKSTRA", "A_ESTRELLA", "ALT", "BIDIRECCIONAL", "JERARQUIA", "HUBS", "TABLA" })
+	private Algoritmo algoritmo;
+
+	@Param({ "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "1000", "10000", "100000" })
+	private int numeroCiudades;
+
+	private Mapa mapa;
+	private String[] origenes;
+	private String[] destinos;
+	private int consulta;
+
+	@Setup(Level.Trial)
+	public void preparar() throws IOException {
+
+		GeneradorMapas.DatosMapa datos = GeneradorMapas.generar(tipo, numeroCiudades, 42L);
+		mapa = datos.crearMapa();
+		mapa.congelar();
+		switch (algoritmo) {
+		case ALT:
+			mapa.prepararPuntosReferencia(16);
+			break;
+		case JERARQUIA:
+			mapa.prepararJerarquiaContracciones(null);
+			break;
+		case HUBS:
+			mapa.prepararJerarquiaContracciones(null);
+			mapa.prepararEtiquetadoHubs();
+			break;
+		case TABLA:
+			if (TablaCaminosMinimos.estimarMemoria(numeroCiudades) > MEMORIA_MAXIMA_TABLA) {
+				System.out.println("Tablas de caminos minimos rechazadas para " + numeroCiudades + " ciudades");
+			}
+			mapa.prepararTablaCaminos(MEMORIA_MAXIMA_TABLA);
+			break;
+		default:
+			break;
+		}
+
+		Random aleatorio = new Random(7L);
+		origenes = new String[CONSULTAS];
+		destinos = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			origenes[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+			destinos[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+		}
+		consulta = 0;
+	}
+
+	@Benchmark
+	public Ruta calcularRuta() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return mapa.calcularRuta(origenes[consulta], destinos[consulta], algoritmo);
+	}
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.Algoritmo;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Benchmark de Mapa.calcularRutasAlternativas (algoritmo de Yen) con distintos numeros de rutas entre pares de
+ * ciudades aleatorios, frente a una sola consulta Dijkstra entre los mismos pares (rutaMinima), para expresar el coste
+ * de las alternativas como multiplo de una consulta. Sin cache de arboles cada consulta calcula el arbol completo de la
+ * ciudad destino; con cache (-p cacheArboles=true) los destinos repetidos lo reutilizan.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkAlternativas {
+
+	private static final int CONSULTAS = 1024;
+	// Memoria de la cache de arboles cuando se activa: cabe un arbol por cada destino de las consultas.
+	private static final long MEMORIA_CACHE = 1024L * 1024L * 1024L;
+
+	@Param({ "1", "2", "3", "5" })
+	private int numeroRutas;
+
+	@Param({ "false" })
+	private boolean cacheArboles;
+
+	@Param({ "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "10000", "100000" })
+	private int numeroCiudades;
+
+	private Mapa mapa;
+	private String[] origenes;
+	private String[] destinos;
+	private int consulta;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+
+		GeneradorMapas.DatosMapa datos = GeneradorMapas.generar(tipo, numeroCiudades, 42L);
+		mapa = datos.crearMapa();
+		mapa.congelar();
+		if (cacheArboles) {
+			mapa.prepararCacheArboles(MEMORIA_CACHE);
+		}
+
+		Random aleatorio = new Random(7L);
+		origenes = new String[CONSULTAS];
+		destinos = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			origenes[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+			destinos[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+		}
+		consulta = 0;
+	}
+
+	@Benchmark
+	public List<Ruta> rutasAlternativas() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return mapa.calcularRutasAlternativas(origenes[consulta], destinos[consulta], numeroRutas);
+	}
+
+	@Benchmark
+	public Ruta rutaMinima() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return mapa.calcularRuta(origenes[consulta], destinos[consulta], Algoritmo.DIJKSTRA);
+	}
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.GrafoCompacto;
+import modelo.Mapa;
+
+/**
+ * Benchmark de la construccion de un mapa completo con aniadirCiudad y aniadirCarretera y de su conversion a la forma
+ * compacta, frente a la construccion directa con ConstructorMapa que usa la carga desde la base de datos. Con -prof gc
+ * se compara ademas la memoria asignada por cada forma de construirlo.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkConstruccion {
+
+	@Param({ "CUADRICULA", "GEOMETRICO", "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "100", "10000", "100000", "1000000" })
+	private int numeroCiudades;
+
+	private GeneradorMapas.DatosMapa datos;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+		datos = GeneradorMapas.generar(tipo, numeroCiudades, 42L);
+	}
+
+	@Benchmark
+	public Mapa aniadirCarreteras() {
+		return datos.crearMapa();
+	}
+
+	@Benchmark
+	public GrafoCompacto aniadirCarreterasYCongelar() {
+		return datos.crearMapa().congelar();
+	}
+
+	@Benchmark
+	public GrafoCompacto constructorMapa() {
+		return datos.crearMapaConConstructor().congelar();
+	}
+}
@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.GrafoCompacto;
+import modelo.IndiceEspacial;
+import modelo.Mapa;
+
+/**
+ * Benchmark del indice espacial de las ciudades: la ciudad mas cercana y las 10 mas cercanas a puntos aleatorios del
+ * mapa, frente a recorrer todas las coordenadas, que es lo que tenia que hacer un cliente con obtenerCiudades.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BenchmarkIndiceEspacial {
+
+	private static final int CONSULTAS = 1024;
+
+	@Param({ "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "10000", "1000000" })
+	private int numeroCiudades;
+
+	private GrafoCompacto grafo;
+	private IndiceEspacial indice;
+	private float[] coordX;
+	private float[] coordY;
+	private int consulta;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+
+		Mapa mapa = GeneradorMapas.generar(tipo, numeroCiudades, 42L).crearMapa();
+		grafo = mapa.congelar();
+		indice = mapa.obtenerIndiceEspacial();
+
+		float minimoX = Float.MAX_VALUE;
+		float maximoX = -Float.MAX_VALUE;
+		float minimoY = Float.MAX_VALUE;
+		float maximoY = -Float.MAX_VALUE;
+		for (int i = 0; i < grafo.numeroCiudades(); i++) {
+			minimoX = Math.min(minimoX, grafo.getCoordX(i));
+			maximoX = Math.max(maximoX, grafo.getCoordX(i));
+			minimoY = Math.min(minimoY, grafo.getCoordY(i));
+			maximoY = Math.max(maximoY, grafo.getCoordY(i));
+		}
+		Random aleatorio = new Random(7L);
+		coordX = new float[CONSULTAS];
+		coordY = new float[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			coordX[i] = minimoX + aleatorio.nextFloat() * (maximoX - minimoX);
+			coordY[i] = minimoY + aleatorio.nextFloat() * (maximoY - minimoY);
+		}
+		consulta = 0;
+	}
+
+	@Benchmark
+	public int ciudadCercana() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return indice.buscarCercana(coordX[consulta], coordY[consulta]);
+	}
+
+	@Benchmark
+	public int[] ciudadesCercanas() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return indice.buscarCercanas(coordX[consulta], coordY[consulta], 10);
+	}
+
+	@Benchmark
+	public int recorrido() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		float x = coordX[consulta];
+		float y = coordY[consulta];
+		int cercana = -1;
+		float distanciaCercana = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < grafo.numeroCiudades(); i++) {
+			float deltaX = x - grafo.getCoordX(i);
+			float deltaY = y - grafo.getCoordY(i);
+			float distancia = deltaX * deltaX + deltaY * deltaY;
+			if (distancia < distanciaCercana) {
+				distanciaCercana = distancia;
+				cercana = i;
+			}
+		}
+		return cercana;
+	}
+}
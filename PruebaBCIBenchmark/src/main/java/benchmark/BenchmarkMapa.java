@@ -0,0 +1,83 @@
+package benchmark;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import modelo.Mapa;
+
+/**
+ * Benchmark de los metodos originales de Mapa que usa el servlet: dijkstra, que calcula el arbol completo desde una
+ * ciudad origen en forma de registro de texto, y obtenerCamino, que reconstruye el camino hasta un destino a partir de
+ * ese registro.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkMapa {
+
+	// Numero de ciudades origen y destino distintas entre las que se alterna.
+	private static final int CONSULTAS = 1024;
+
+	@Param({ "CUADRICULA", "GEOMETRICO", "AGRUPADO" })
+	private GeneradorMapas.Tipo tipo;
+
+	@Param({ "100", "10000", "100000" })
+	private int numeroCiudades;
+
+	private Mapa mapa;
+	private String[] origenes;
+	private String[] destinos;
+	private Map<String, String> ciudadesDijkstra;
+	private int consulta;
+
+	@Setup(Level.Trial)
+	public void preparar() {
+
+		GeneradorMapas.DatosMapa datos = GeneradorMapas.generar(tipo, numeroCiudades, 42L);
+		mapa = datos.crearMapa();
+		mapa.congelar();
+		Random aleatorio = new Random(7L);
+		origenes = new String[CONSULTAS];
+		destinos = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			origenes[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+			destinos[i] = datos.nombre(aleatorio.nextInt(numeroCiudades));
+		}
+		ciudadesDijkstra = mapa.dijkstra(origenes[0]);
+		consulta = 0;
+	}
+
+	@Benchmark
+	public Map<String, String> dijkstra() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return mapa.dijkstra(origenes[consulta]);
+	}
+
+	@Benchmark
+	public String obtenerCamino() {
+
+		consulta = (consulta + 1) & (CONSULTAS - 1);
+		return mapa.obtenerCamino(ciudadesDijkstra, destinos[consulta]);
+	}
+}
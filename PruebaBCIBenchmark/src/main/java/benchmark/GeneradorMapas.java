@@ -0,0 +1,360 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import modelo.Ciudad;
+import modelo.ConstructorMapa;
+import modelo.Mapa;
+
+/**
+ * Clase que genera mapas sinteticos para los benchmarks. Todos los generadores son deterministas para una semilla y
+ * colocan las ciudades en un plano de unos 1000 x 1000 KM, de modo que la distancia de cada carretera (calculada por
+ * Mapa a partir de las coordenadas) y las heuristicas geometricas se comportan como en un mapa real.
+ *
+ * <ul>
+ * <li>CUADRICULA: rejilla con las coordenadas ligeramente desplazadas, un 10% de carreteras eliminadas y diagonales
+ * ocasionales. Caso peor para A*, con muchos caminos de longitud parecida.</li>
+ * <li>GEOMETRICO: ciudades uniformemente repartidas, cada una unida a sus vecinas mas cercanas.</li>
+ * <li>AGRUPADO: parecido a Espania. Las ciudades se concentran alrededor de unas pocas capitales de tamanio muy
+ * desigual, cada ciudad se une a sus vecinas mas cercanas y las capitales se unen entre si con autovias.</li>
+ * </ul>
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public final class GeneradorMapas {
+
+	/**
+	 * Tipos de mapa que se pueden generar.
+	 */
+	public enum Tipo {
+		CUADRICULA, GEOMETRICO, AGRUPADO
+	}
+
+	// Numero de vecinas mas cercanas a las que se une cada ciudad en los mapas geometrico y agrupado.
+	private static final int VECINAS = 3;
+	// Numero de capitales del mapa agrupado y numero de capitales cercanas a las que se une cada una.
+	private static final int CAPITALES = 50;
+	private static final int AUTOVIAS = 3;
+	private static final float LADO_KM = 1000.0f;
+
+	private GeneradorMapas() {
+	}
+
+	/**
+	 * Clase que contiene los datos de un mapa generado: ciudades con sus coordenadas y carreteras como pares de
+	 * indices. Permite construir el Mapa tantas veces como se quiera, por ejemplo para medir su construccion.
+	 */
+	public static final class DatosMapa {
+
+		private final String[] nombres;
+		private final float[] coordX;
+		private final float[] coordY;
+		// Carreteras: la carretera i une las ciudades carreteras[2 * i] y carreteras[2 * i + 1].
+		private final int[] carreteras;
+
+		DatosMapa(float[] coordX, float[] coordY, int[] carreteras) {
+
+			this.nombres = new String[coordX.length];
+			for (int i = 0; i < nombres.length; i++) {
+				nombres[i] = "C" + i;
+			}
+			this.coordX = coordX;
+			this.coordY = coordY;
+			this.carreteras = carreteras;
+		}
+
+		/**
+		 * Metodo que devuelve el numero de ciudades del mapa.
+		 *
+		 * @return Numero de ciudades.
+		 */
+		public int numeroCiudades() {
+			return nombres.length;
+		}
+
+		/**
+		 * Metodo que devuelve el numero de carreteras del mapa.
+		 *
+		 * @return Numero de carreteras.
+		 */
+		public int numeroCarreteras() {
+			return carreteras.length / 2;
+		}
+
+		/**
+		 * Metodo que devuelve el nombre de una ciudad.
+		 *
+		 * @param ciudad
+		 * Indice de la ciudad, entre 0 y numeroCiudades() - 1.
+		 * @return Nombre de la ciudad.
+		 */
+		public String nombre(int ciudad) {
+			return nombres[ciudad];
+		}
+
+		/**
+		 * Metodo que construye el Mapa con las ciudades y carreteras generadas, usando los mismos metodos que la carga
+		 * desde la base de datos.
+		 *
+		 * @return Mapa nuevo, sin congelar.
+		 */
+		public Mapa crearMapa() {
+
+			Mapa mapa = new Mapa();
+			for (int i = 0; i < nombres.length; i++) {
+				mapa.aniadirCiudad(new Ciudad(nombres[i], coordX[i], coordY[i]));
+			}
+			for (int i = 0; i < carreteras.length; i += 2) {
+				mapa.aniadirCarretera(nombres[carreteras[i]], nombres[carreteras[i + 1]]);
+			}
+			return mapa;
+		}
+
+		/**
+		 * Metodo que crea el mapa con ConstructorMapa, como la carga desde la base de datos.
+		 *
+		 * @return Mapa ya congelado.
+		 */
+		public Mapa crearMapaConConstructor() {
+
+			ConstructorMapa constructor = new ConstructorMapa(nombres.length);
+			for (int i = 0; i < nombres.length; i++) {
+				constructor.aniadirCiudad(nombres[i], coordX[i], coordY[i]);
+			}
+			for (int i = 0; i < carreteras.length; i += 2) {
+				constructor.aniadirCarretera(nombres[carreteras[i]], nombres[carreteras[i + 1]]);
+			}
+			return constructor.construir();
+		}
+	}
+
+	/**
+	 * Metodo que genera los datos de un mapa.
+	 *
+	 * @param tipo
+	 * Tipo de mapa.
+	 * @param numeroCiudades
+	 * Numero de ciudades del mapa.
+	 * @param semilla
+	 * Semilla de los numeros aleatorios.
+	 * @return Datos del mapa generado.
+	 */
+	public static DatosMapa generar(Tipo tipo, int numeroCiudades, long semilla) {
+
+		Random aleatorio = new Random(semilla);
+		switch (tipo) {
+		case CUADRICULA:
+			return cuadricula(numeroCiudades, aleatorio);
+		case GEOMETRICO:
+			return geometrico(numeroCiudades, aleatorio);
+		case AGRUPADO:
+		default:
+			return agrupado(numeroCiudades, aleatorio);
+		}
+	}
+
+	private static DatosMapa cuadricula(int numeroCiudades, Random aleatorio) {
+
+		int lado = (int) Math.ceil(Math.sqrt(numeroCiudades));
+		float separacion = LADO_KM / lado;
+		float[] coordX = new float[numeroCiudades];
+		float[] coordY = new float[numeroCiudades];
+		for (int i = 0; i < numeroCiudades; i++) {
+			coordX[i] = (i % lado + aleatorio.nextFloat() * 0.6f) * separacion;
+			coordY[i] = (i / lado + aleatorio.nextFloat() * 0.6f) * separacion;
+		}
+
+		ListaCarreteras carreteras = new ListaCarreteras(numeroCiudades * 2);
+		for (int i = 0; i < numeroCiudades; i++) {
+			int columna = i % lado;
+			int fila = i / lado;
+			// La primera fila y la primera columna se conservan enteras para que el mapa quede conexo.
+			if (columna + 1 < lado && i + 1 < numeroCiudades && (fila == 0 || aleatorio.nextInt(10) > 0)) {
+				carreteras.aniadir(i, i + 1);
+			}
+			if (i + lado < numeroCiudades && (columna == 0 || aleatorio.nextInt(10) > 0)) {
+				carreteras.aniadir(i, i + lado);
+			}
+			if (columna + 1 < lado && i + lado + 1 < numeroCiudades && aleatorio.nextInt(4) == 0) {
+				carreteras.aniadir(i, i + lado + 1);
+			}
+		}
+		return new DatosMapa(coordX, coordY, carreteras.aArray());
+	}
+
+	private static DatosMapa geometrico(int numeroCiudades, Random aleatorio) {
+
+		float[] coordX = new float[numeroCiudades];
+		float[] coordY = new float[numeroCiudades];
+		for (int i = 0; i < numeroCiudades; i++) {
+			coordX[i] = aleatorio.nextFloat() * LADO_KM;
+			coordY[i] = aleatorio.nextFloat() * LADO_KM;
+		}
+		ListaCarreteras carreteras = new ListaCarreteras(numeroCiudades * VECINAS);
+		unirVecinas(coordX, coordY, VECINAS, carreteras);
+		return new DatosMapa(coordX, coordY, carreteras.aArray());
+	}
+
+	private static DatosMapa agrupado(int numeroCiudades, Random aleatorio) {
+
+		int capitales = Math.min(CAPITALES, numeroCiudades);
+		float[] centroX = new float[capitales];
+		float[] centroY = new float[capitales];
+		double[] pesos = new double[capitales];
+		double pesoTotal = 0.0;
+		for (int i = 0; i < capitales; i++) {
+			centroX[i] = aleatorio.nextFloat() * LADO_KM;
+			centroY[i] = aleatorio.nextFloat() * LADO_KM * 0.8f;
+			// Tamanios muy desiguales, como Madrid o Barcelona frente a Soria o Teruel.
+			pesos[i] = 1.0 / Math.pow(i + 1, 0.8);
+			pesoTotal += pesos[i];
+		}
+
+		// Las primeras ciudades son las capitales, situadas en el centro de su grupo.
+		float[] coordX = new float[numeroCiudades];
+		float[] coordY = new float[numeroCiudades];
+		System.arraycopy(centroX, 0, coordX, 0, capitales);
+		System.arraycopy(centroY, 0, coordY, 0, capitales);
+		for (int i = capitales; i < numeroCiudades; i++) {
+			double eleccion = aleatorio.nextDouble() * pesoTotal;
+			int grupo = 0;
+			while (grupo < capitales - 1 && eleccion > pesos[grupo]) {
+				eleccion -= pesos[grupo];
+				grupo++;
+			}
+			double dispersion = 15.0 + 60.0 * Math.sqrt(pesos[grupo]);
+			coordX[i] = (float) (centroX[grupo] + aleatorio.nextGaussian() * dispersion);
+			coordY[i] = (float) (centroY[grupo] + aleatorio.nextGaussian() * dispersion);
+		}
+
+		ListaCarreteras carreteras = new ListaCarreteras(numeroCiudades * VECINAS + capitales * AUTOVIAS);
+		unirVecinas(coordX, coordY, VECINAS, carreteras);
+		// Autovias entre cada capital y las capitales mas cercanas.
+		unirVecinas(centroX, centroY, Math.min(AUTOVIAS, capitales - 1), carreteras);
+		return new DatosMapa(coordX, coordY, carreteras.aArray());
+	}
+
+	/**
+	 * Metodo que une cada ciudad con sus k vecinas mas cercanas usando una rejilla de cubetas, de modo que el coste es
+	 * lineal en el numero de ciudades.
+	 */
+	private static void unirVecinas(float[] coordX, float[] coordY, int k, ListaCarreteras carreteras) {
+
+		int numeroCiudades = coordX.length;
+		if (numeroCiudades < 2 || k <= 0) {
+			return;
+		}
+		float minimoX = Float.POSITIVE_INFINITY, minimoY = Float.POSITIVE_INFINITY;
+		float maximoX = Float.NEGATIVE_INFINITY, maximoY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < numeroCiudades; i++) {
+			minimoX = Math.min(minimoX, coordX[i]);
+			minimoY = Math.min(minimoY, coordY[i]);
+			maximoX = Math.max(maximoX, coordX[i]);
+			maximoY = Math.max(maximoY, coordY[i]);
+		}
+
+		// Rejilla de cubetas en formato CSR con unas dos ciudades por cubeta.
+		int cubetas = Math.max(1, (int) Math.sqrt(numeroCiudades / 2.0));
+		float anchoX = Math.max((maximoX - minimoX) / cubetas, 1e-3f);
+		float anchoY = Math.max((maximoY - minimoY) / cubetas, 1e-3f);
+		int[] cubeta = new int[numeroCiudades];
+		int[] inicioCubetas = new int[cubetas * cubetas + 1];
+		for (int i = 0; i < numeroCiudades; i++) {
+			int cx = Math.min(cubetas - 1, (int) ((coordX[i] - minimoX) / anchoX));
+			int cy = Math.min(cubetas - 1, (int) ((coordY[i] - minimoY) / anchoY));
+			cubeta[i] = cx * cubetas + cy;
+			inicioCubetas[cubeta[i] + 1]++;
+		}
+		for (int i = 0; i < cubetas * cubetas; i++) {
+			inicioCubetas[i + 1] += inicioCubetas[i];
+		}
+		int[] ciudadesCubetas = new int[numeroCiudades];
+		int[] siguiente = Arrays.copyOf(inicioCubetas, inicioCubetas.length);
+		for (int i = 0; i < numeroCiudades; i++) {
+			ciudadesCubetas[siguiente[cubeta[i]]++] = i;
+		}
+
+		int[] vecinas = new int[k];
+		float[] distancias = new float[k];
+		for (int i = 0; i < numeroCiudades; i++) {
+			int encontradas = 0;
+			int cx = cubeta[i] / cubetas;
+			int cy = cubeta[i] % cubetas;
+			// Recorrer anillos de cubetas alrededor de la ciudad hasta que ninguna cubeta mas lejana pueda mejorar.
+			for (int anillo = 0; anillo < cubetas; anillo++) {
+				for (int x = cx - anillo; x <= cx + anillo; x++) {
+					for (int y = cy - anillo; y <= cy + anillo; y++) {
+						boolean borde = x == cx - anillo || x == cx + anillo || y == cy - anillo || y == cy + anillo;
+						if (!borde || x < 0 || y < 0 || x >= cubetas || y >= cubetas) {
+							continue;
+						}
+						int c = x * cubetas + y;
+						for (int p = inicioCubetas[c]; p < inicioCubetas[c + 1]; p++) {
+							int j = ciudadesCubetas[p];
+							if (j == i) {
+								continue;
+							}
+							float distancia = (float) Math.hypot(coordX[i] - coordX[j], coordY[i] - coordY[j]);
+							if (encontradas < k || distancia < distancias[encontradas - 1]) {
+								// Insercion ordenada en la lista de las k mas cercanas.
+								int posicion = encontradas < k ? encontradas++ : k - 1;
+								while (posicion > 0 && distancias[posicion - 1] > distancia) {
+									distancias[posicion] = distancias[posicion - 1];
+									vecinas[posicion] = vecinas[posicion - 1];
+									posicion--;
+								}
+								distancias[posicion] = distancia;
+								vecinas[posicion] = j;
+							}
+						}
+					}
+				}
+				if (encontradas == k && distancias[k - 1] <= anillo * Math.min(anchoX, anchoY)) {
+					break;
+				}
+			}
+			for (int v = 0; v < encontradas; v++) {
+				carreteras.aniadir(i, vecinas[v]);
+			}
+		}
+	}
+
+	/**
+	 * Lista de carreteras como pares de indices. Las carreteras repetidas (a-b y b-a) se eliminan al final.
+	 */
+	private static final class ListaCarreteras {
+
+		private long[] claves;
+		private int tamanio;
+
+		ListaCarreteras(int capacidad) {
+			claves = new long[Math.max(capacidad, 16)];
+		}
+
+		void aniadir(int a, int b) {
+
+			if (tamanio == claves.length) {
+				claves = Arrays.copyOf(claves, tamanio * 2);
+			}
+			claves[tamanio++] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+		}
+
+		int[] aArray() {
+
+			Arrays.sort(claves, 0, tamanio);
+			int[] carreteras = new int[tamanio * 2];
+			int unicas = 0;
+			for (int i = 0; i < tamanio; i++) {
+				if (i > 0 && claves[i] == claves[i - 1]) {
+					continue;
+				}
+				carreteras[2 * unicas] = (int) (claves[i] >>> 32);
+				carreteras[2 * unicas + 1] = (int) claves[i];
+				unicas++;
+			}
+			return Arrays.copyOf(carreteras, unicas * 2);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import modelo.Algoritmo;
+import modelo.CambiosMapa;
+import modelo.ConstructorMapa;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Comprobacion de que aplicar al mapa los cambios de la tabla CambiosMapa, como hace control.RecargaMapa, da el mismo
+ * mapa que una carga completa de las tablas Ciudades y Carreteras: la misma huella y las mismas distancias entre todas
+ * las ciudades. Las tablas y los disparadores de sql/CambiosMapa.sql se simulan en memoria.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public class CambiosMapaTest {
+
+	// Numero de identificadores anteriores al ultimo cambio aplicado que se vuelven a leer en cada recarga.
+	private static final int VENTANA = 4;
+	private static final int COLUMNAS = 4;
+	private static final int FILAS = 3;
+
+	private BaseDatosSimulada bd;
+	// Estado de la recarga: mapa publicado, ultimo cambio aplicado y cambios de la ventana ya aplicados.
+	private Mapa mapa;
+	private long ultimoCambio;
+	private SortedSet<Long> cambiosAplicados;
+
+	@Before
+	public void cargarMapa() {
+
+		// Cuadricula de ciudades unidas con sus vecinas de la derecha y de abajo, con coordenadas algo irregulares.
+		bd = new BaseDatosSimulada();
+		for (int fila = 0; fila < FILAS; fila++) {
+			for (int columna = 0; columna < COLUMNAS; columna++) {
+				bd.insertarCiudad(nombre(fila, columna), columna * 10.0f + fila * 0.7f, fila * 10.0f + columna * 1.3f);
+				if (columna > 0) {
+					bd.insertarCarretera(nombre(fila, columna - 1), nombre(fila, columna));
+				}
+				if (fila > 0) {
+					bd.insertarCarretera(nombre(fila - 1, columna), nombre(fila, columna));
+				}
+			}
+		}
+		mapa = bd.cargarMapa();
+		ultimoCambio = bd.ultimoCambio();
+		cambiosAplicados = new TreeSet<Long>();
+	}
+
+	@Test
+	public void ciudadBorradaYAniadidaRecuperaSusCarreteras() {
+
+		// Las filas de Carreteras de la ciudad siguen en la tabla y vuelven al mapa con ella.
+		bd.borrarCiudad(nombre(1, 1));
+		recargar();
+		comprobarCargaCompleta();
+		assertEquals(-1, mapa.congelar().obtenerIndice(nombre(1, 1)));
+
+		bd.insertarCiudad(nombre(1, 1), 11.0f, 12.0f);
+		recargar();
+		comprobarCargaCompleta();
+
+		// Tambien si las dos cosas ocurren entre dos recargas.
+		bd.borrarCiudad(nombre(2, 2));
+		bd.insertarCiudad(nombre(2, 2), 22.0f, 21.0f);
+		recargar();
+		comprobarCargaCompleta();
+	}
+
+	@Test
+	public void carreteraAnteriorASuCiudadNoSePierde() {
+
+		// La carretera se descarta en la primera recarga, como en la carga completa, y llega con su ciudad.
+		bd.insertarCarretera(nombre(0, 3), "Nueva");
+		recargar();
+		comprobarCargaCompleta();
+
+		bd.insertarCiudad("Nueva", 45.0f, 3.0f);
+		recargar();
+		comprobarCargaCompleta();
+		assertTrue(distancia(mapa, nombre(0, 0), "Nueva") < Float.POSITIVE_INFINITY);
+	}
+
+	@Test
+	public void carreteraBorradaYAniadida() {
+
+		bd.borrarCarretera(nombre(0, 0), nombre(0, 1));
+		recargar();
+		comprobarCargaCompleta();
+
+		// Registrada en el otro sentido.
+		bd.insertarCarretera(nombre(0, 1), nombre(0, 0));
+		recargar();
+		comprobarCargaCompleta();
+
+		bd.borrarCarretera(nombre(1, 2), nombre(2, 2));
+		bd.insertarCarretera(nombre(1, 2), nombre(2, 2));
+		bd.borrarCarretera(nombre(2, 0), nombre(2, 1));
+		recargar();
+		comprobarCargaCompleta();
+	}
+
+	@Test
+	public void ciudadMovidaRecalculaSusCarreteras() {
+
+		float antes = distancia(mapa, nombre(0, 0), nombre(2, 3));
+		bd.moverCiudad(nombre(1, 1), 5.0f, 40.0f);
+		bd.moverCiudad(nombre(2, 3), 60.0f, 60.0f);
+		recargar();
+		comprobarCargaCompleta();
+		assertNotEquals(antes, distancia(mapa, nombre(0, 0), nombre(2, 3)), 0.0f);
+	}
+
+	@Test
+	public void ventanaYaAplicadaNoCambiaElMapa() {
+
+		bd.borrarCiudad(nombre(0, 2));
+		bd.insertarCarretera(nombre(0, 0), nombre(2, 3));
+		bd.moverCiudad(nombre(1, 3), 33.0f, 8.0f);
+		recargar();
+		comprobarCargaCompleta();
+
+		// La siguiente recarga vuelve a leer la ventana, pero todos sus cambios estan entre los aplicados.
+		Mapa publicado = mapa;
+		recargar();
+		assertSame(publicado, mapa);
+
+		// Aunque se olvidaran los aplicados, repetir los mismos cambios deja el mapa con la misma huella.
+		CambiosMapa cambios = new CambiosMapa();
+		bd.obtenerCambios(0, new TreeSet<Long>(), cambios);
+		bd.obtenerCarreteras(cambios.ciudadesAniadidas(mapa), cambios, ultimoCambio);
+		assertEquals(mapa.congelar().huella(), cambios.aplicar(mapa).congelar().huella());
+	}
+
+	/**
+	 * Metodo que aplica los cambios nuevos al mapa publicado con los mismos pasos que RecargaMapa.run.
+	 */
+	private void recargar() {
+
+		CambiosMapa cambios = new CambiosMapa();
+		long cambioLeido = bd.obtenerCambios(Math.max(0, ultimoCambio - VENTANA), cambiosAplicados, cambios);
+		bd.obtenerCarreteras(cambios.ciudadesAniadidas(mapa), cambios, cambioLeido);
+		if (!cambios.estaVacio()) {
+			Mapa mapaNuevo = cambios.aplicar(mapa);
+			if (mapaNuevo.congelar().huella() != mapa.congelar().huella()) {
+				mapa = mapaNuevo;
+			}
+		}
+		cambiosAplicados.addAll(cambios.getIdentificadores());
+		ultimoCambio = Math.max(ultimoCambio, cambioLeido);
+		cambiosAplicados.headSet(Long.valueOf(ultimoCambio - VENTANA + 1)).clear();
+	}
+
+	/**
+	 * Metodo que comprueba que el mapa publicado es el que daria una carga completa de las tablas.
+	 */
+	private void comprobarCargaCompleta() {
+
+		Mapa completo = bd.cargarMapa();
+		assertEquals(completo.numeroCiudadesMapa(), mapa.numeroCiudadesMapa());
+		assertEquals(completo.congelar().huella(), mapa.congelar().huella());
+		for (String origen : bd.ciudades.keySet()) {
+			for (String destino : bd.ciudades.keySet()) {
+				assertEquals(origen + " - " + destino, distancia(completo, origen, destino), distancia(mapa, origen,
+						destino), 0.0f);
+			}
+		}
+	}
+
+	private static float distancia(Mapa mapa, String origen, String destino) {
+
+		Ruta ruta = mapa.calcularRuta(origen, destino, Algoritmo.DIJKSTRA);
+		return ruta.getDistancia();
+	}
+
+	private static String nombre(int fila, int columna) {
+
+		return "C" + fila + columna;
+	}
+
+	/**
+	 * Tablas Ciudades, Carreteras y CambiosMapa en memoria. Cada operacion registra en CambiosMapa las mismas filas que
+	 * los disparadores de sql/CambiosMapa.sql.
+	 */
+	private static final class BaseDatosSimulada {
+
+		private final Map<String, float[]> ciudades = new LinkedHashMap<String, float[]>();
+		private final List<String[]> carreteras = new ArrayList<String[]>();
+		// Filas de CambiosMapa: el identificador de cada una es su posicion mas uno.
+		private final List<Object[]> cambios = new ArrayList<Object[]>();
+
+		void insertarCiudad(String nombre, float x, float y) {
+
+			ciudades.put(nombre, new float[] { x, y });
+			cambios.add(new Object[] { CambiosMapa.CIUDAD, nombre, null, Float.valueOf(x), Float.valueOf(y) });
+		}
+
+		void moverCiudad(String nombre, float x, float y) {
+
+			insertarCiudad(nombre, x, y);
+		}
+
+		void borrarCiudad(String nombre) {
+
+			// Las filas de Carreteras de la ciudad no se borran.
+			ciudades.remove(nombre);
+			cambios.add(new Object[] { CambiosMapa.BORRAR_CIUDAD, nombre, null, null, null });
+		}
+
+		void insertarCarretera(String nombreA, String nombreB) {
+
+			carreteras.add(new String[] { nombreA, nombreB });
+			cambios.add(new Object[] { CambiosMapa.CARRETERA, nombreA, nombreB, null, null });
+		}
+
+		void borrarCarretera(String nombreA, String nombreB) {
+
+			for (Iterator<String[]> it = carreteras.iterator(); it.hasNext();) {
+				String[] carretera = it.next();
+				if (carretera[0].equals(nombreA) && carretera[1].equals(nombreB) || carretera[0].equals(nombreB)
+						&& carretera[1].equals(nombreA)) {
+					it.remove();
+				}
+			}
+			cambios.add(new Object[] { CambiosMapa.BORRAR_CARRETERA, nombreA, nombreB, null, null });
+		}
+
+		long ultimoCambio() {
+
+			return cambios.size();
+		}
+
+		/**
+		 * Carga completa del mapa, como BaseDatos.obtenerMapa.
+		 */
+		Mapa cargarMapa() {
+
+			ConstructorMapa constructor = new ConstructorMapa();
+			for (Map.Entry<String, float[]> ciudad : ciudades.entrySet()) {
+				constructor.aniadirCiudad(ciudad.getKey(), ciudad.getValue()[0], ciudad.getValue()[1]);
+			}
+			for (String[] carretera : carreteras) {
+				constructor.aniadirCarretera(carretera[0], carretera[1]);
+			}
+			return constructor.construir();
+		}
+
+		/**
+		 * Lectura de los cambios posteriores a uno dado, como BaseDatos.obtenerCambios.
+		 */
+		long obtenerCambios(long desdeCambio, Set<Long> cambiosAplicados, CambiosMapa cambiosLeidos) {
+
+			long ultimo = desdeCambio;
+			for (long idCambio = desdeCambio + 1; idCambio <= cambios.size(); idCambio++) {
+				ultimo = idCambio;
+				if (cambiosAplicados.contains(Long.valueOf(idCambio))) {
+					continue;
+				}
+				Object[] fila = cambios.get((int) (idCambio - 1));
+				float x = fila[3] != null ? ((Float) fila[3]).floatValue() : 0.0f;
+				float y = fila[4] != null ? ((Float) fila[4]).floatValue() : 0.0f;
+				cambiosLeidos.registrar(idCambio, (String) fila[0], (String) fila[1], (String) fila[2], x, y);
+			}
+			return ultimo;
+		}
+
+		/**
+		 * Lectura de las carreteras de unas ciudades, como BaseDatos.obtenerCarreteras. CambiosMapa solo ofrece fuera
+		 * de su paquete el metodo registrar, por lo que se registran como cambios de tipo CARRETERA con el
+		 * identificador del ultimo cambio leido: se aplican igual y no aniaden identificadores.
+		 */
+		void obtenerCarreteras(Set<String> nombresCiudades, CambiosMapa cambiosLeidos, long cambioLeido) {
+
+			for (String[] carretera : carreteras) {
+				if (nombresCiudades.contains(carretera[0]) || nombresCiudades.contains(carretera[1])) {
+					cambiosLeidos.registrar(cambioLeido, CambiosMapa.CARRETERA, carretera[0], carretera[1], 0.0f, 0.0f);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package benchmark;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import modelo.Algoritmo;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Comprobacion de que las consultas de Mapa.calcularRuta y Mapa.calcularRutas no reservan memoria proporcional al
+ * numero de ciudades: una vez que el hilo tiene su espacio de busqueda, cada consulta solo debe reservar las rutas que
+ * devuelve. Se mide con ThreadMXBean.getThreadAllocatedBytes la memoria reservada por el hilo en una serie de
+ * consultas y se compara con el tamanio de las rutas devueltas mas un margen fijo por consulta. Se ejecuta en la fase
+ * test de Maven, por lo que una regresion hace fallar mvn package.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public class ComprobacionAsignacionTest {
+
+	// Con 5000 ciudades, reservar un solo array por ciudad ya supera con mucho el margen por consulta.
+	private static final int NUMERO_CIUDADES = 5000;
+	private static final int CONSULTAS_CALENTAMIENTO = 5000;
+	private static final int CONSULTAS = 2000;
+	// Bytes por consulta que se permiten ademas de los de la ruta: cabeceras, redondeos y enteros envueltos.
+	private static final long MARGEN_CONSULTA = 64L;
+	// Bytes de un objeto Ruta y de la cabecera del array de ciudades.
+	private static final long BYTES_RUTA = 40L;
+	private static final long BYTES_CABECERA_ARRAY = 16L;
+	// Pares de cada lote y bytes por par que se permiten ademas de las rutas: indices, claves y la tarea, el futuro y
+	// los arrays de cada grupo. Un solo array por ciudad en cada lote supondria mas de 2 KB por par.
+	private static final int PARES_LOTE = 8;
+	private static final long MARGEN_PAR_LOTE = 256L;
+
+	private static Mapa mapa;
+	private static String[] origenes;
+	private static String[] destinos;
+
+	@BeforeClass
+	public static void prepararMapa() throws IOException {
+
+		GeneradorMapas.DatosMapa datos = GeneradorMapas.generar(GeneradorMapas.Tipo.AGRUPADO, NUMERO_CIUDADES, 42L);
+		mapa = datos.crearMapa();
+		mapa.prepararJerarquiaContracciones(null);
+		mapa.prepararPuntosReferencia(16);
+		mapa.prepararEtiquetadoHubs();
+
+		Random aleatorio = new Random(7L);
+		origenes = new String[CONSULTAS_CALENTAMIENTO];
+		destinos = new String[CONSULTAS_CALENTAMIENTO];
+		for (int i = 0; i < origenes.length; i++) {
+			origenes[i] = datos.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+			destinos[i] = datos.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+		}
+	}
+
+	@Test
+	public void consultasNoReservanPorCiudad() {
+
+		StringBuilder excedidos = new StringBuilder();
+		for (Algoritmo algoritmo : Algoritmo.values()) {
+			// El calentamiento reserva el espacio de busqueda del hilo y deja compilados los metodos.
+			for (int i = 0; i < CONSULTAS_CALENTAMIENTO; i++) {
+				mapa.calcularRuta(origenes[i], destinos[i], algoritmo);
+			}
+
+			long permitidos = 0;
+			long inicio = bytesReservados();
+			for (int i = 0; i < CONSULTAS; i++) {
+				Ruta ruta = mapa.calcularRuta(origenes[i], destinos[i], algoritmo);
+				permitidos += MARGEN_CONSULTA + bytesRuta(ruta);
+			}
+			// Lo que se reserve al sumar permitidos se cuenta tambien, y es despreciable.
+			long reservados = bytesReservados() - inicio;
+
+			if (reservados > permitidos) {
+				excedidos.append(String.format(" %s: %.1f bytes/consulta (maximo %.1f)", algoritmo, (double) reservados
+						/ CONSULTAS, (double) permitidos / CONSULTAS));
+			}
+		}
+		assertTrue("Consultas que reservan memoria de mas:" + excedidos, excedidos.length() == 0);
+	}
+
+	@Test
+	public void lotesNoReservanPorCiudad() {
+
+		// Los grupos del lote se resuelven en el propio hilo para medir toda la memoria que reservan.
+		ExecutorService hiloActual = new AbstractExecutorService() {
+			@Override
+			public void execute(Runnable tarea) {
+				tarea.run();
+			}
+
+			@Override
+			public void shutdown() {
+			}
+
+			@Override
+			public List<Runnable> shutdownNow() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public boolean isShutdown() {
+				return false;
+			}
+
+			@Override
+			public boolean isTerminated() {
+				return false;
+			}
+
+			@Override
+			public boolean awaitTermination(long tiempo, TimeUnit unidad) {
+				return true;
+			}
+		};
+
+		int numeroLotes = CONSULTAS / PARES_LOTE;
+		String[][] origenesLotes = new String[numeroLotes][PARES_LOTE];
+		String[][] destinosLotes = new String[numeroLotes][PARES_LOTE];
+		for (int lote = 0; lote < numeroLotes; lote++) {
+			for (int par = 0; par < PARES_LOTE; par++) {
+				// Dos pares por origen, para que haya grupos con varios destinos.
+				origenesLotes[lote][par] = origenes[lote * PARES_LOTE + par / 2 * 2];
+				destinosLotes[lote][par] = destinos[lote * PARES_LOTE + par];
+			}
+		}
+		for (int lote = 0; lote < numeroLotes; lote++) {
+			mapa.calcularRutas(origenesLotes[lote], destinosLotes[lote], hiloActual);
+		}
+
+		long permitidos = 0;
+		long inicio = bytesReservados();
+		for (int lote = 0; lote < numeroLotes; lote++) {
+			Ruta[] rutas = mapa.calcularRutas(origenesLotes[lote], destinosLotes[lote], hiloActual);
+			for (int par = 0; par < PARES_LOTE; par++) {
+				permitidos += MARGEN_PAR_LOTE + bytesRuta(rutas[par]);
+			}
+		}
+		long reservados = bytesReservados() - inicio;
+
+		assertTrue(String.format("Los lotes reservan %.1f bytes/par (maximo %.1f)", (double) reservados / CONSULTAS,
+				(double) permitidos / CONSULTAS), reservados <= permitidos);
+	}
+
+	/**
+	 * Metodo que devuelve los bytes que ocupa una ruta devuelta: el objeto y, si existe, el array de sus ciudades.
+	 */
+	private static long bytesRuta(Ruta ruta) {
+		return BYTES_RUTA + (ruta.existe() ? BYTES_CABECERA_ARRAY + 4L * ruta.getCiudades().length : 0L);
+	}
+
+	/**
+	 * Metodo que devuelve la memoria reservada hasta el momento por el hilo actual.
+	 */
+	private static long bytesReservados() {
+
+		com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return hilos.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
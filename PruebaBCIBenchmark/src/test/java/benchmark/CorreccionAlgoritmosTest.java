@@ -0,0 +1,317 @@
+package benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import modelo.Algoritmo;
+import modelo.GrafoCompacto;
+import modelo.InstantaneaMapa;
+import modelo.JerarquiaContracciones;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Comprobacion de que todos los algoritmos devuelven rutas correctas en los mapas generados: la misma distancia que
+ * DIJKSTRA, salvo el error de redondeo de los float, y un camino formado por carreteras reales que va del origen al
+ * destino. Comprueba tambien que la jerarquia de contracciones y la instantanea del mapa se recuperan de disco con el
+ * mismo resultado y que un fichero corrupto se rechaza.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public class CorreccionAlgoritmosTest {
+
+	private static final int NUMERO_CIUDADES = 2000;
+	private static final int CONSULTAS = 500;
+	// Error relativo admitido entre distancias sumadas en distinto orden.
+	private static final double TOLERANCIA = 1e-5;
+
+	@ClassRule
+	public static TemporaryFolder carpeta = new TemporaryFolder();
+
+	private static GeneradorMapas.DatosMapa datos;
+	private static Mapa mapa;
+	private static String[] origenes;
+	private static String[] destinos;
+
+	@BeforeClass
+	public static void prepararMapa() throws IOException {
+
+		datos = GeneradorMapas.generar(GeneradorMapas.Tipo.AGRUPADO, NUMERO_CIUDADES, 42L);
+		mapa = datos.crearMapa();
+		prepararTodo(mapa, null);
+
+		Random aleatorio = new Random(11L);
+		origenes = new String[CONSULTAS];
+		destinos = new String[CONSULTAS];
+		for (int i = 0; i < CONSULTAS; i++) {
+			origenes[i] = datos.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+			destinos[i] = datos.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+		}
+	}
+
+	/**
+	 * Metodo que prepara en un mapa todo el preprocesado del que dependen los algoritmos, para que ninguno recurra a
+	 * la busqueda bidireccional.
+	 */
+	private static void prepararTodo(Mapa mapa, File ficheroJerarquia) throws IOException {
+
+		mapa.prepararJerarquiaContracciones(ficheroJerarquia);
+		mapa.prepararPuntosReferencia(16);
+		mapa.prepararEtiquetadoHubs();
+		assertTrue("Tablas de caminos minimos rechazadas", mapa.prepararTablaCaminos(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void algoritmosCoincidenConDijkstra() throws IOException {
+
+		for (GeneradorMapas.Tipo tipo : GeneradorMapas.Tipo.values()) {
+			GeneradorMapas.DatosMapa datosTipo = GeneradorMapas.generar(tipo, NUMERO_CIUDADES, 5L);
+			Mapa mapaTipo = datosTipo.crearMapa();
+			prepararTodo(mapaTipo, null);
+			Random aleatorio = new Random(13L);
+			for (int i = 0; i < CONSULTAS; i++) {
+				String origen = datosTipo.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+				String destino = datosTipo.nombre(aleatorio.nextInt(NUMERO_CIUDADES));
+				Ruta referencia = mapaTipo.calcularRuta(origen, destino, Algoritmo.DIJKSTRA);
+				comprobarRuta(mapaTipo, tipo + " DIJKSTRA", referencia, referencia);
+				for (Algoritmo algoritmo : Algoritmo.values()) {
+					comprobarRuta(mapaTipo, tipo + " " + algoritmo, referencia, mapaTipo.calcularRuta(origen, destino,
+							algoritmo));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void distanciaCoincideConRuta() throws IOException {
+
+		// Sin tablas de caminos minimos las distancias se obtienen de las etiquetas de hubs.
+		GeneradorMapas.DatosMapa datosHubs = GeneradorMapas.generar(GeneradorMapas.Tipo.AGRUPADO, 3000, 7L);
+		Mapa mapaHubs = datosHubs.crearMapa();
+		mapaHubs.prepararJerarquiaContracciones(null);
+		mapaHubs.prepararEtiquetadoHubs();
+		Random aleatorio = new Random(17L);
+		for (int i = 0; i < 2000; i++) {
+			String origen = datosHubs.nombre(aleatorio.nextInt(3000));
+			String destino = datosHubs.nombre(aleatorio.nextInt(3000));
+			comprobarDistancia(mapaHubs, origen, destino);
+		}
+	}
+
+	@Test
+	public void distanciaTablaCoincideConRuta() {
+
+		// Con las tablas de caminos minimos preparadas las distancias y las rutas TABLA se obtienen de ellas.
+		for (int i = 0; i < CONSULTAS; i++) {
+			comprobarDistancia(mapa, origenes[i], destinos[i]);
+		}
+	}
+
+	@Test
+	public void jerarquiaGuardadaSeRecupera() throws IOException {
+
+		File fichero = carpeta.newFile("jerarquia.ch");
+		Mapa original = datos.crearMapa();
+		assertFalse("La jerarquia se debia construir", original.prepararJerarquiaContracciones(fichero));
+
+		Mapa recuperado = datos.crearMapa();
+		assertTrue("La jerarquia se debia cargar del fichero", recuperado.prepararJerarquiaContracciones(fichero));
+		JerarquiaContracciones cargada = JerarquiaContracciones.cargar(recuperado.congelar(), fichero);
+		assertNotNull(cargada);
+		JerarquiaContracciones construida = JerarquiaContracciones.construir(original.congelar(), 1);
+		assertEquals(construida.numeroAtajos(), cargada.numeroAtajos());
+		for (int ciudad = 0; ciudad < NUMERO_CIUDADES; ciudad++) {
+			assertEquals(construida.rango(ciudad), cargada.rango(ciudad));
+		}
+		for (int i = 0; i < CONSULTAS; i++) {
+			Ruta esperada = original.calcularRuta(origenes[i], destinos[i], Algoritmo.JERARQUIA);
+			Ruta obtenida = recuperado.calcularRuta(origenes[i], destinos[i], Algoritmo.JERARQUIA);
+			assertEquals(esperada.getDistancia(), obtenida.getDistancia(), 0.0f);
+			assertArrayEquals(esperada.getCiudades(), obtenida.getCiudades());
+		}
+	}
+
+	@Test
+	public void jerarquiaCorruptaSeRechaza() throws IOException {
+
+		File fichero = carpeta.newFile("corrupta.ch");
+		datos.crearMapa().prepararJerarquiaContracciones(fichero);
+
+		// Jerarquia de otro mapa: la huella no coincide.
+		Mapa otro = GeneradorMapas.generar(GeneradorMapas.Tipo.AGRUPADO, NUMERO_CIUDADES, 43L).crearMapa();
+		assertNull(JerarquiaContracciones.cargar(otro.congelar(), fichero));
+
+		// Cabecera alterada.
+		corromper(fichero, 0);
+		assertNull(JerarquiaContracciones.cargar(mapa.congelar(), fichero));
+
+		// Fichero incompleto: no se puede cargar y el mapa reconstruye la jerarquia.
+		datos.crearMapa().prepararJerarquiaContracciones(fichero);
+		truncar(fichero);
+		try {
+			JerarquiaContracciones.cargar(mapa.congelar(), fichero);
+			fail("Se ha cargado una jerarquia incompleta");
+		} catch (IOException e) {
+			// Esperado.
+		}
+		Mapa reconstruido = datos.crearMapa();
+		assertFalse(reconstruido.prepararJerarquiaContracciones(fichero));
+		for (int i = 0; i < CONSULTAS; i++) {
+			Ruta referencia = mapa.calcularRuta(origenes[i], destinos[i], Algoritmo.DIJKSTRA);
+			comprobarRuta(reconstruido, "JERARQUIA reconstruida", referencia, reconstruido.calcularRuta(origenes[i],
+					destinos[i], Algoritmo.JERARQUIA));
+		}
+	}
+
+	@Test
+	public void instantaneaGuardadaSeRecupera() throws IOException {
+
+		File fichero = carpeta.newFile("mapa.bin");
+		InstantaneaMapa.guardar(mapa, 1234L, fichero);
+		InstantaneaMapa instantanea = InstantaneaMapa.abrir(fichero);
+		assertNotNull(instantanea);
+		assertEquals(1234L, instantanea.getUltimoCambio());
+		Mapa recuperado = instantanea.getMapa();
+		assertEquals(mapa.getVersion(), recuperado.getVersion());
+
+		for (int i = 0; i < CONSULTAS; i++) {
+			for (Algoritmo algoritmo : Algoritmo.values()) {
+				if (algoritmo == Algoritmo.TABLA) {
+					// Las tablas no se guardan en la instantanea.
+					continue;
+				}
+				Ruta esperada = mapa.calcularRuta(origenes[i], destinos[i], algoritmo);
+				Ruta obtenida = recuperado.calcularRuta(origenes[i], destinos[i], algoritmo);
+				assertEquals(algoritmo.toString(), esperada.getDistancia(), obtenida.getDistancia(), 0.0f);
+				assertArrayEquals(algoritmo.toString(), esperada.getCiudades(), obtenida.getCiudades());
+			}
+			// El mapa original tiene ademas las tablas de caminos minimos; el recuperado usa las etiquetas de hubs.
+			assertEquals(mapa.calcularDistancia(origenes[i], destinos[i]), recuperado.calcularDistancia(origenes[i],
+					destinos[i]), 0.0f);
+		}
+	}
+
+	@Test
+	public void instantaneaCorruptaSeRechaza() throws IOException {
+
+		File fichero = carpeta.newFile("corrupta.bin");
+		InstantaneaMapa.guardar(mapa, 1L, fichero);
+		long longitud = fichero.length();
+
+		// Un byte alterado en medio de los datos no coincide con la suma de comprobacion.
+		corromper(fichero, InstantaneaMapa.TAMANIO_CABECERA + (longitud - InstantaneaMapa.TAMANIO_CABECERA) / 2);
+		assertNull(InstantaneaMapa.abrir(fichero));
+
+		// Huella de la cabecera alterada.
+		InstantaneaMapa.guardar(mapa, 1L, fichero);
+		corromper(fichero, 16);
+		assertNull(InstantaneaMapa.abrir(fichero));
+
+		// Fichero incompleto.
+		InstantaneaMapa.guardar(mapa, 1L, fichero);
+		truncar(fichero);
+		assertNull(InstantaneaMapa.abrir(fichero));
+	}
+
+	/**
+	 * Metodo que comprueba una ruta frente a la de DIJKSTRA: misma existencia, misma distancia salvo redondeo y un
+	 * camino que va del origen al destino por carreteras del mapa cuya longitud suma la distancia de la ruta.
+	 */
+	private static void comprobarRuta(Mapa mapa, String algoritmo, Ruta referencia, Ruta ruta) {
+
+		assertNotNull(algoritmo, ruta);
+		assertEquals(algoritmo + ": existencia del camino", referencia.existe(), ruta.existe());
+		if (!ruta.existe()) {
+			return;
+		}
+		float tolerancia = (float) (TOLERANCIA * Math.max(1.0f, referencia.getDistancia()));
+		assertEquals(algoritmo + ": distancia", referencia.getDistancia(), ruta.getDistancia(), tolerancia);
+
+		GrafoCompacto grafo = mapa.congelar();
+		int[] ciudades = ruta.getCiudades();
+		assertEquals(algoritmo + ": origen", ruta.getOrigen(), ciudades[0]);
+		assertEquals(algoritmo + ": destino", ruta.getDestino(), ciudades[ciudades.length - 1]);
+		double longitud = 0.0;
+		for (int i = 0; i + 1 < ciudades.length; i++) {
+			float carretera = distanciaCarretera(grafo, ciudades[i], ciudades[i + 1]);
+			assertTrue(algoritmo + ": no hay carretera entre " + grafo.obtenerNombre(ciudades[i]) + " y "
+					+ grafo.obtenerNombre(ciudades[i + 1]), carretera < Float.POSITIVE_INFINITY);
+			longitud += carretera;
+		}
+		assertEquals(algoritmo + ": longitud del camino", ruta.getDistancia(), longitud, tolerancia);
+	}
+
+	/**
+	 * Metodo que comprueba que la distancia de solo distancia y la de las rutas de todos los algoritmos son exactamente
+	 * la de la ruta DIJKSTRA, que es la que muestra obtenerCamino.
+	 */
+	private static void comprobarDistancia(Mapa mapa, String origen, String destino) {
+
+		float esperada = mapa.calcularRuta(origen, destino, Algoritmo.DIJKSTRA).getDistancia();
+		assertEquals("calcularDistancia " + origen + " - " + destino, esperada, mapa.calcularDistancia(origen, destino),
+				0.0f);
+		for (Algoritmo algoritmo : Algoritmo.values()) {
+			assertEquals(algoritmo + " " + origen + " - " + destino, esperada, mapa.calcularRuta(origen, destino,
+					algoritmo).getDistancia(), 0.0f);
+		}
+	}
+
+	/**
+	 * Metodo que devuelve la longitud de la carretera mas corta entre dos ciudades, o infinito si no estan unidas.
+	 */
+	private static float distanciaCarretera(GrafoCompacto grafo, int ciudadA, int ciudadB) {
+
+		float distancia = Float.POSITIVE_INFINITY;
+		for (int i = grafo.inicioAdyacentes(ciudadA); i < grafo.finAdyacentes(ciudadA); i++) {
+			if (grafo.ciudadAdyacente(i) == ciudadB) {
+				distancia = Math.min(distancia, grafo.distanciaAdyacente(i));
+			}
+		}
+		return distancia;
+	}
+
+	/**
+	 * Metodo que invierte los bits de un byte de un fichero.
+	 */
+	private static void corromper(File fichero, long posicion) throws IOException {
+
+		RandomAccessFile acceso = new RandomAccessFile(fichero, "rw");
+		try {
+			acceso.seek(posicion);
+			int valor = acceso.read();
+			acceso.seek(posicion);
+			acceso.write(~valor);
+		} finally {
+			acceso.close();
+		}
+	}
+
+	/**
+	 * Metodo que deja un fichero con la mitad de su longitud, como si su escritura se hubiera interrumpido.
+	 */
+	private static void truncar(File fichero) throws IOException {
+
+		RandomAccessFile acceso = new RandomAccessFile(fichero, "rw");
+		try {
+			acceso.setLength(acceso.length() / 2);
+		} finally {
+			acceso.close();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import modelo.Algoritmo;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Comprobacion de que las busquedas que calculan un arbol de caminos minimos completo se abandonan cuando el hilo se
+ * interrumpe, como hace control.EjecutorRutas con las peticiones que superan su plazo: la ruta DIJKSTRA con la cache
+ * de arboles y las rutas alternativas con y sin ella. La cache no debe quedarse con el calculo abandonado.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public class InterrupcionBusquedasTest {
+
+	// Bastantes ciudades para que la busqueda compruebe la interrupcion antes de terminar el arbol.
+	private static final int NUMERO_CIUDADES = 20000;
+
+	private static GeneradorMapas.DatosMapa datos;
+
+	@BeforeClass
+	public static void generarMapa() {
+
+		datos = GeneradorMapas.generar(GeneradorMapas.Tipo.AGRUPADO, NUMERO_CIUDADES, 42L);
+	}
+
+	@After
+	public void limpiarInterrupcion() {
+
+		Thread.interrupted();
+	}
+
+	@Test
+	public void arbolDeLaCacheSeAbandona() {
+
+		Mapa mapa = datos.crearMapa();
+		mapa.prepararCacheArboles(Long.MAX_VALUE);
+		String origen = datos.nombre(0);
+		String destino = datos.nombre(NUMERO_CIUDADES - 1);
+
+		Thread.currentThread().interrupt();
+		try {
+			mapa.calcularRuta(origen, destino, Algoritmo.DIJKSTRA);
+			fail("La busqueda debia abandonarse");
+		} catch (CancellationException e) {
+			assertTrue("Se debe mantener el estado de interrupcion", Thread.interrupted());
+		}
+		assertEquals(0, mapa.getCacheArboles().getNumeroArboles());
+
+		// La siguiente peticion del mismo origen vuelve a calcular el arbol.
+		Ruta ruta = mapa.calcularRuta(origen, destino, Algoritmo.DIJKSTRA);
+		assertEquals(ruta.getDistancia(), mapa.calcularRuta(origen, destino, Algoritmo.BIDIRECCIONAL).getDistancia(),
+				0.0f);
+		assertEquals(1, mapa.getCacheArboles().getNumeroArboles());
+	}
+
+	@Test
+	public void rutasAlternativasSeAbandonan() {
+
+		Mapa mapa = datos.crearMapa();
+		String origen = datos.nombre(1);
+		String destino = datos.nombre(NUMERO_CIUDADES - 2);
+
+		// Sin cache, el arbol del destino es solo de esta peticion.
+		Thread.currentThread().interrupt();
+		try {
+			mapa.calcularRutasAlternativas(origen, destino, 3);
+			fail("La busqueda debia abandonarse");
+		} catch (CancellationException e) {
+			assertTrue(Thread.interrupted());
+		}
+
+		mapa.prepararCacheArboles(Long.MAX_VALUE);
+		Thread.currentThread().interrupt();
+		try {
+			mapa.calcularRutasAlternativas(origen, destino, 3);
+			fail("La busqueda debia abandonarse");
+		} catch (CancellationException e) {
+			assertTrue(Thread.interrupted());
+		}
+
+		List<Ruta> rutas = mapa.calcularRutasAlternativas(origen, destino, 3);
+		assertEquals(mapa.calcularRuta(origen, destino, Algoritmo.DIJKSTRA).getDistancia(), rutas.get(0)
+				.getDistancia(), 0.0f);
+	}
+}
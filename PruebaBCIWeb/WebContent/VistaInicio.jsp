@@ -1,21 +1,58 @@
 <?xml version="1.0" encoding="ISO-8859-1" ?>
 <%@page language="java" contentType="text/html; charset=ISO-8859-1"
 	pageEncoding="ISO-8859-1"%>
-<%@page
-	import="javax.sql.DataSource, javax.naming.*, java.net.*, modelo.BaseDatos"%>
+<%@page import="java.util.List, control.CatalogoCiudades, modelo.Algoritmo"%>
 
-<%!String rutaCiudades = "";%>
+<%!/**
+	 * Metodo que escapa los caracteres especiales de HTML de un texto de la peticion, que puede incluir lo que escribio
+	 * el usuario (por ejemplo el nombre de una ciudad que no existe).
+	 */
+	private static String escaparHtml(Object valor) {
+
+		String texto = String.valueOf(valor);
+		StringBuilder escapado = new StringBuilder(texto.length() + 16);
+		for (int i = 0; i < texto.length(); i++) {
+			char c = texto.charAt(i);
+			switch (c) {
+			case '&':
+				escapado.append("&amp;");
+				break;
+			case '<':
+				escapado.append("&lt;");
+				break;
+			case '>':
+				escapado.append("&gt;");
+				break;
+			case '"':
+				escapado.append("&quot;");
+				break;
+			case '\'':
+				escapado.append("&#39;");
+				break;
+			default:
+				escapado.append(c);
+			}
+		}
+		return escapado.toString();
+	}%>
 
 <%
-	//Necesitamos una conexion del 'pool' para poder consultar cierta informacion de la base de datos.
-	Context initCtx = new InitialContext();
-	//Buscar el pool de conexiones en JNDI.
-	Context envCtx = (Context) initCtx.lookup("java:comp/env");
-	DataSource servicioConexiones = (DataSource) envCtx.lookup("jdbc/pruebabiicode");
-	// Obtener una conexion a la bd, usarla y luego devolverla.
-	BaseDatos bd = new BaseDatos(servicioConexiones);
-	String[] nombreCiudades = bd.obtenerNombreCiudades();
-	bd.cerrarConexionConBD();
+	// Los datos de las ciudades se preparan una vez por version del mapa al desplegar la aplicacion; la pagina no
+	// consulta la base de datos.
+	CatalogoCiudades catalogo = CatalogoCiudades.obtener(application);
+	int numeroCiudades = catalogo != null ? catalogo.numeroCiudades() : 0;
+	// Sin ruta que mostrar la pagina solo cambia con el mapa: el navegador puede reutilizar su copia si la etiqueta
+	// coincide.
+	if (catalogo != null && request.getAttribute("ruta") == null && "GET".equals(request.getMethod())) {
+		String etiqueta = catalogo.getEtiqueta();
+		response.setHeader("ETag", etiqueta);
+		response.setHeader("Cache-Control", "no-cache");
+		String etiquetaCliente = request.getHeader("If-None-Match");
+		if (etiquetaCliente != null && etiquetaCliente.contains(etiqueta)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+	}
 %>
 
 <!DOCTYPE html PUBLIC "-//W3C//DTD XHTML 1.0 Transitional//EN" "http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd">
@@ -67,48 +104,110 @@ div.espania {
 	<br />
 	<br />
 	<%
-		if (nombreCiudades.length != 0) {
+		if (numeroCiudades != 0) {
 	%>
 	<form name="CalcularRuta" action="/PruebaBCIWeb/CalcularRuta"
 		method="post">
 
 		<div class="entradas">
-			<label for="etiquetaCiudadOrigen">Ciudad Origen</label> <select
-				name="nombreCiudadOrigen">
-				<%
-					for (int i = 0; i < nombreCiudades.length; i++) {
-				%>
-				<option value="<%=nombreCiudades[i]%>"><%=nombreCiudades[i]%></option>
-				<%
-					}
-				%>
-			</select>
+			<label for="etiquetaCiudadOrigen">Ciudad Origen</label> <input
+				type="text" id="etiquetaCiudadOrigen" name="nombreCiudadOrigen"
+				list="ciudadesOrigen" autocomplete="off" />
+			<datalist id="ciudadesOrigen"></datalist>
 			&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;
-			<label for="etiquetaCiudadDestino">Ciudad Destino</label> <select
-				name="nombreCiudadDestino">
+			<label for="etiquetaCiudadDestino">Ciudad Destino</label> <input
+				type="text" id="etiquetaCiudadDestino" name="nombreCiudadDestino"
+				list="ciudadesDestino" autocomplete="off" />
+			<datalist id="ciudadesDestino"></datalist>
+			<br /> <br />
+			<label for="etiquetaAlgoritmo">Algoritmo</label> <select
+				name="algoritmo">
 				<%
-					for (int i = 0; i < nombreCiudades.length; i++) {
+					for (Algoritmo algoritmo : Algoritmo.values()) {
 				%>
-				<option value="<%=nombreCiudades[i]%>"><%=nombreCiudades[i]%></option>
+				<option value="<%=escaparHtml(algoritmo.getParametro())%>"><%=escaparHtml(
+						algoritmo.getDescripcion())%></option>
 				<%
 					}
 				%>
 			</select>
+			<label for="etiquetaRutas">Rutas</label> <select id="etiquetaRutas"
+				name="k">
+				<option value="1">1</option>
+				<option value="2">2</option>
+				<option value="3">3</option>
+				<option value="5">5</option>
+			</select>
+			<label for="etiquetaExplicar">Explicar</label> <input type="checkbox"
+				id="etiquetaExplicar" name="explicar" value="true" />
 		</div>
 		<br /> <br />
 		<div class="input">
 			<input type="submit" value="Submit" />
 		</div>
 	</form>
+	<script type="text/javascript">
+	//<![CDATA[
+		// Con miles de ciudades no se pueden enviar todas en la pagina: los campos de ciudad se autocompletan pidiendo
+		// a BuscarCiudades los nombres que empiezan por lo que se lleva escrito.
+		function autocompletar(campo, lista) {
+			var peticion = null;
+			campo.oninput = function() {
+				if (peticion != null) {
+					peticion.abort();
+				}
+				if (campo.value.length == 0) {
+					lista.innerHTML = "";
+					return;
+				}
+				peticion = new XMLHttpRequest();
+				peticion.open("GET", "/PruebaBCIWeb/BuscarCiudades?maximo=20&prefijo="
+						+ encodeURIComponent(campo.value));
+				peticion.onload = function() {
+					if (this.status != 200) {
+						return;
+					}
+					var nombres = JSON.parse(this.responseText);
+					lista.innerHTML = "";
+					for (var i = 0; i < nombres.length; i++) {
+						var opcion = document.createElement("option");
+						opcion.value = nombres[i];
+						lista.appendChild(opcion);
+					}
+				};
+				peticion.send();
+			};
+		}
+		autocompletar(document.getElementById("etiquetaCiudadOrigen"), document.getElementById("ciudadesOrigen"));
+		autocompletar(document.getElementById("etiquetaCiudadDestino"), document.getElementById("ciudadesDestino"));
+	//]]>
+	</script>
 	<%
-		rutaCiudades = (String) request.getAttribute("ruta");
+		String rutaCiudades = (String) request.getAttribute("ruta");
 			if (rutaCiudades != null) {
 	%>
 	<br />
 	<br />
 	<br />
 	<div class="ruta">
-		<label>Ruta: <%=rutaCiudades%></label>
+		<label>Ruta: <%=escaparHtml(rutaCiudades)%></label>
+		<%
+			List<?> alternativas = (List<?>) request.getAttribute("alternativas");
+				if (alternativas != null) {
+					for (int i = 0; i < alternativas.size(); i++) {
+		%>
+		<br /> <label>Alternativa <%=i + 1%>: <%=escaparHtml(alternativas.get(i))%></label>
+		<%
+			}
+				}
+		%>
+		<%
+			if (request.getAttribute("explicacion") != null) {
+		%>
+		<br /> <label><%=escaparHtml(request.getAttribute("explicacion"))%></label>
+		<%
+			}
+		%>
 	</div>
 
 	<%
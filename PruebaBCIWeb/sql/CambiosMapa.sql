@@ -0,0 +1,68 @@
+-- Registro de cambios del mapa para su recarga sin replegar la aplicacion (ver control.RecargaMapa).
+-- Los disparadores de Ciudades y Carreteras aniaden una fila por cada cambio; la aplicacion lee las filas con
+-- idCambio mayor que el ultimo aplicado menos una ventana (ventanaCambiosMapa en web.xml), ya que los identificadores
+-- se asignan al insertar y no al confirmar, y salta las ya aplicadas. Las filas ya aplicadas se pueden borrar cuando
+-- se quiera.
+
+CREATE TABLE CambiosMapa (
+	idCambio BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+	-- CIUDAD, BORRAR_CIUDAD, CARRETERA o BORRAR_CARRETERA.
+	tipo VARCHAR(20) NOT NULL,
+	nombreCiudadA VARCHAR(100) NOT NULL,
+	nombreCiudadB VARCHAR(100) NULL,
+	coordX FLOAT NULL,
+	coordY FLOAT NULL
+);
+
+DELIMITER //
+
+CREATE TRIGGER CiudadesInsercion AFTER INSERT ON Ciudades FOR EACH ROW
+BEGIN
+	INSERT INTO CambiosMapa (tipo, nombreCiudadA, coordX, coordY)
+		VALUES ('CIUDAD', NEW.nombreCiudad, NEW.coordX, NEW.coordY);
+END//
+
+CREATE TRIGGER CiudadesModificacion AFTER UPDATE ON Ciudades FOR EACH ROW
+BEGIN
+	IF NEW.nombreCiudad <> OLD.nombreCiudad THEN
+		INSERT INTO CambiosMapa (tipo, nombreCiudadA) VALUES ('BORRAR_CIUDAD', OLD.nombreCiudad);
+	END IF;
+	INSERT INTO CambiosMapa (tipo, nombreCiudadA, coordX, coordY)
+		VALUES ('CIUDAD', NEW.nombreCiudad, NEW.coordX, NEW.coordY);
+END//
+
+CREATE TRIGGER CiudadesBorrado AFTER DELETE ON Ciudades FOR EACH ROW
+BEGIN
+	INSERT INTO CambiosMapa (tipo, nombreCiudadA) VALUES ('BORRAR_CIUDAD', OLD.nombreCiudad);
+END//
+
+CREATE TRIGGER CarreterasInsercion AFTER INSERT ON Carreteras FOR EACH ROW
+BEGIN
+	INSERT INTO CambiosMapa (tipo, nombreCiudadA, nombreCiudadB)
+		VALUES ('CARRETERA', NEW.nombreCiudadA, NEW.nombreCiudadB);
+END//
+
+-- Una carretera puede estar repetida o registrada en los dos sentidos: solo se borra del mapa si no queda ninguna fila.
+CREATE TRIGGER CarreterasModificacion AFTER UPDATE ON Carreteras FOR EACH ROW
+BEGIN
+	IF NOT EXISTS (SELECT 1 FROM Carreteras
+			WHERE (nombreCiudadA = OLD.nombreCiudadA AND nombreCiudadB = OLD.nombreCiudadB)
+			OR (nombreCiudadA = OLD.nombreCiudadB AND nombreCiudadB = OLD.nombreCiudadA)) THEN
+		INSERT INTO CambiosMapa (tipo, nombreCiudadA, nombreCiudadB)
+			VALUES ('BORRAR_CARRETERA', OLD.nombreCiudadA, OLD.nombreCiudadB);
+	END IF;
+	INSERT INTO CambiosMapa (tipo, nombreCiudadA, nombreCiudadB)
+		VALUES ('CARRETERA', NEW.nombreCiudadA, NEW.nombreCiudadB);
+END//
+
+CREATE TRIGGER CarreterasBorrado AFTER DELETE ON Carreteras FOR EACH ROW
+BEGIN
+	IF NOT EXISTS (SELECT 1 FROM Carreteras
+			WHERE (nombreCiudadA = OLD.nombreCiudadA AND nombreCiudadB = OLD.nombreCiudadB)
+			OR (nombreCiudadA = OLD.nombreCiudadB AND nombreCiudadB = OLD.nombreCiudadA)) THEN
+		INSERT INTO CambiosMapa (tipo, nombreCiudadA, nombreCiudadB)
+			VALUES ('BORRAR_CARRETERA', OLD.nombreCiudadA, OLD.nombreCiudadB);
+	END IF;
+END//
+
+DELIMITER ;
@@ -0,0 +1,107 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import modelo.GrafoCompacto;
+import modelo.IndiceEspacial;
+
+/**
+ * Servlet que devuelve las ciudades mas cercanas en linea recta a un punto. Recibe las coordenadas del punto en los
+ * parametros 'coordX' y 'coordY' y, opcionalmente, 'maximo' (por defecto 10, como mucho 100) y 'radio' para quedarse
+ * solo con las ciudades a esa distancia o menos. Responde con un array JSON de la mas cercana a la mas lejana:
+ *
+ * <pre>
+ * [{"nombre":"Getafe","coordX":440.2,"coordY":4461.9},{"nombre":"Madrid","coordX":440.3,"coordY":4474.5}]
+ * </pre>
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see IndiceEspacial
+ */
+@WebServlet(name = "BuscarCercanas", urlPatterns = "/BuscarCercanas")
+public class BuscarCercanas extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+	private static final int MAXIMO_DEFECTO = 10;
+	private static final int MAXIMO_PERMITIDO = 100;
+	// Segundos durante los que el navegador puede reutilizar una respuesta.
+	private static final int SEGUNDOS_CACHE = 60;
+
+	/**
+	 * Metodo para procesar las peticiones get. Busca las ciudades y escribe sus nombres y coordenadas en formato JSON.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		float coordX = leerNumero(request.getParameter("coordX"));
+		float coordY = leerNumero(request.getParameter("coordY"));
+		if (Float.isNaN(coordX) || Float.isNaN(coordY)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"Los parametros 'coordX' y 'coordY' deben ser numeros");
+			return;
+		}
+		int maximo = MAXIMO_DEFECTO;
+		String parametroMaximo = request.getParameter("maximo");
+		if (parametroMaximo != null) {
+			try {
+				maximo = Integer.parseInt(parametroMaximo.trim());
+			} catch (NumberFormatException nfe) {
+				maximo = -1;
+			}
+			if (maximo < 1 || maximo > MAXIMO_PERMITIDO) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "El parametro 'maximo' debe estar entre 1 y "
+						+ MAXIMO_PERMITIDO);
+				return;
+			}
+		}
+		String parametroRadio = request.getParameter("radio");
+		float radio = parametroRadio != null ? leerNumero(parametroRadio) : Float.POSITIVE_INFINITY;
+		if (!(radio >= 0.0f)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "El parametro 'radio' debe ser un numero positivo");
+			return;
+		}
+
+		IndiceEspacial indice = mapaActual().obtenerIndiceEspacial();
+		int[] ciudades = parametroRadio != null ? indice.buscarEnRadio(coordX, coordY, radio)
+				: indice.buscarCercanas(coordX, coordY, maximo);
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "public, max-age=" + SEGUNDOS_CACHE);
+		GrafoCompacto grafo = indice.getGrafo();
+		Writer salida = response.getWriter();
+		salida.write('[');
+		for (int i = 0; i < ciudades.length && i < maximo; i++) {
+			salida.write(i == 0 ? "{\"nombre\":" : ",{\"nombre\":");
+			CalcularRutaJson.escribirCadena(salida, grafo.obtenerNombre(ciudades[i]));
+			salida.write(",\"coordX\":");
+			salida.write(Float.toString(grafo.getCoordX(ciudades[i])));
+			salida.write(",\"coordY\":");
+			salida.write(Float.toString(grafo.getCoordY(ciudades[i])));
+			salida.write('}');
+		}
+		salida.write(']');
+	}
+
+	/**
+	 * Metodo que convierte un parametro en un numero finito, o en NaN si falta o no lo es.
+	 */
+	private static float leerNumero(String parametro) {
+
+		if (parametro == null) {
+			return Float.NaN;
+		}
+		try {
+			float numero = Float.parseFloat(parametro.trim());
+			return Float.isInfinite(numero) ? Float.NaN : numero;
+		} catch (NumberFormatException nfe) {
+			return Float.NaN;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import modelo.GrafoCompacto;
+import modelo.IndiceNombres;
+
+/**
+ * Servlet que devuelve las ciudades cuyo nombre empieza por un prefijo, para autocompletar los campos de ciudad
+ * origen y ciudad destino de VistaInicio. Recibe el parametro 'prefijo' y, opcionalmente, 'maximo' (por defecto 10,
+ * como mucho 100), y responde con un array JSON de nombres en orden alfabetico:
+ *
+ * <pre>
+ * ["Madrid","Malaga","Marbella"]
+ * </pre>
+ *
+ * La busqueda no distingue mayusculas de minusculas ni letras con o sin tilde.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see IndiceNombres
+ */
+@WebServlet(name = "BuscarCiudades", urlPatterns = "/BuscarCiudades")
+public class BuscarCiudades extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+	private static final int MAXIMO_DEFECTO = 10;
+	private static final int MAXIMO_PERMITIDO = 100;
+	// Segundos durante los que el navegador puede reutilizar una respuesta.
+	private static final int SEGUNDOS_CACHE = 60;
+
+	/**
+	 * Metodo para procesar las peticiones get. Busca las ciudades y escribe sus nombres en formato JSON.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		String prefijo = request.getParameter("prefijo");
+		int maximo = MAXIMO_DEFECTO;
+		String parametroMaximo = request.getParameter("maximo");
+		if (parametroMaximo != null) {
+			try {
+				maximo = Integer.parseInt(parametroMaximo.trim());
+			} catch (NumberFormatException nfe) {
+				maximo = -1;
+			}
+			if (maximo < 1 || maximo > MAXIMO_PERMITIDO) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "El parametro 'maximo' debe estar entre 1 y "
+						+ MAXIMO_PERMITIDO);
+				return;
+			}
+		}
+
+		IndiceNombres indice = mapaActual().obtenerIndiceNombres();
+		int[] ciudades = prefijo != null ? indice.buscar(prefijo, maximo) : new int[0];
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "public, max-age=" + SEGUNDOS_CACHE);
+		GrafoCompacto grafo = indice.getGrafo();
+		Writer salida = response.getWriter();
+		salida.write('[');
+		for (int i = 0; i < ciudades.length; i++) {
+			if (i > 0) {
+				salida.write(',');
+			}
+			CalcularRutaJson.escribirCadena(salida, grafo.obtenerNombre(ciudades[i]));
+		}
+		salida.write(']');
+	}
+}
@@ -0,0 +1,130 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import modelo.CiudadesAlcanzables;
+import modelo.GrafoCompacto;
+import modelo.Mapa;
+
+/**
+ * Servlet que devuelve en formato JSON las ciudades a las que se llega desde una ciudad sin superar una distancia,
+ * para delimitar areas de servicio. Recibe los parametros 'nombreCiudadOrigen' y 'distanciaMaxima' (KM) y responde con
+ * las ciudades en orden de distancia, en dos arrays paralelos:
+ *
+ * <pre>
+ * {"origen":"Madrid","distanciaMaxima":30.0,"ciudadesAsentadas":3,"ciudades":["Madrid","Getafe","Alcorcon"],
+ *  "distancias":[0.0,12.8,13.1]}
+ * </pre>
+ *
+ * Si 'distanciaMaxima' falta o no es un numero positivo se responde 400, y si la ciudad no existe en el mapa, 404 con
+ * un objeto {"error": ...}. Como las rutas, la busqueda se hace en el EjecutorRutas de la aplicacion, y el origen se
+ * puede indicar por coordenadas ('coordXOrigen' y 'coordYOrigen') para partir de la ciudad mas cercana al punto.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#calcularCiudadesAlcanzables(String, float)
+ */
+@WebServlet(name = "CalcularAlcance", urlPatterns = "/CalcularAlcance", asyncSupported = true)
+public class CalcularAlcance extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Metodo para procesar las peticiones get. Es el metodo previsto para este servlet.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		final Mapa mapa = mapaActual();
+		final String nombreCiudadOrigen;
+		try {
+			nombreCiudadOrigen = CalcularRuta.obtenerNombreCiudad(request, mapa, "Origen");
+		} catch (NumberFormatException nfe) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, CalcularRuta.COORDENADAS_NO_VALIDAS);
+			return;
+		}
+		String parametroDistancia = request.getParameter("distanciaMaxima");
+		float distancia;
+		try {
+			distancia = parametroDistancia != null ? Float.parseFloat(parametroDistancia.trim()) : Float.NaN;
+		} catch (NumberFormatException nfe) {
+			distancia = Float.NaN;
+		}
+		if (!(distancia > 0.0f) || Float.isInfinite(distancia)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"El parametro 'distanciaMaxima' debe ser un numero de KM mayor que 0");
+			return;
+		}
+
+		final float distanciaMaxima = distancia;
+		getEjecutorRutas().ejecutar(request, response, new Callable<CiudadesAlcanzables>() {
+			public CiudadesAlcanzables call() {
+				return mapa.calcularCiudadesAlcanzables(nombreCiudadOrigen, distanciaMaxima);
+			}
+		}, new EjecutorRutas.Respuesta<CiudadesAlcanzables>() {
+			public void responder(CiudadesAlcanzables alcance, long nanosegundos, AsyncContext asincrono)
+					throws IOException {
+				getMetricas().registrarAlcance(nanosegundos, alcance);
+				escribir((HttpServletResponse) asincrono.getResponse(), nombreCiudadOrigen, distanciaMaxima, alcance);
+				asincrono.complete();
+			}
+		});
+	}
+
+	/**
+	 * Metodo para procesar las peticiones post. Se atienden igual que las peticiones get.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		doGet(request, response);
+	}
+
+	/**
+	 * Metodo que escribe las ciudades alcanzadas en formato JSON.
+	 */
+	private static void escribir(HttpServletResponse response, String nombreCiudadOrigen, float distanciaMaxima,
+			CiudadesAlcanzables alcance) throws IOException {
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		Writer salida = response.getWriter();
+		if (alcance == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			salida.write("{\"error\":\"Ciudad desconocida\"}");
+			return;
+		}
+
+		GrafoCompacto grafo = alcance.getGrafo();
+		salida.write("{\"origen\":");
+		CalcularRutaJson.escribirCadena(salida, nombreCiudadOrigen);
+		salida.write(",\"distanciaMaxima\":");
+		salida.write(Float.toString(distanciaMaxima));
+		salida.write(",\"ciudadesAsentadas\":");
+		salida.write(Integer.toString(alcance.numeroCiudades()));
+		salida.write(",\"ciudades\":[");
+		for (int i = 0; i < alcance.numeroCiudades(); i++) {
+			if (i > 0) {
+				salida.write(',');
+			}
+			CalcularRutaJson.escribirCadena(salida, grafo.obtenerNombre(alcance.getCiudad(i)));
+		}
+		salida.write("],\"distancias\":[");
+		for (int i = 0; i < alcance.numeroCiudades(); i++) {
+			if (i > 0) {
+				salida.write(',');
+			}
+			salida.write(Float.toString(alcance.getDistancia(i)));
+		}
+		salida.write("]}");
+	}
+}
@@ -0,0 +1,70 @@
+package control;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet que devuelve solo la distancia minima en KM entre dos ciudades, sin el camino. Esta pensado para clientes
+ * que hacen muchas consultas por segundo: la respuesta es texto plano con el numero de kilometros y se calcula con el
+ * etiquetado de hubs del mapa, sin ninguna busqueda sobre el grafo. La cifra es la misma que CalcularRuta muestra para
+ * la ruta entre las dos ciudades.
+ *
+ * Las ciudades se indican con los mismos parametros que en CalcularRuta: 'nombreCiudadOrigen' y
+ * 'nombreCiudadDestino'. Si alguna no existe se responde 400 y si no estan comunicadas, 404.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@WebServlet(name = "CalcularDistancia", urlPatterns = "/CalcularDistancia")
+public class CalcularDistancia extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Metodo para procesar las peticiones get. Es el metodo previsto para este servlet.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		String nombreCiudadOrigen = request.getParameter("nombreCiudadOrigen");
+		String nombreCiudadDestino = request.getParameter("nombreCiudadDestino");
+		getMetricas().iniciarPeticion();
+		float distancia;
+		try {
+			long inicio = System.nanoTime();
+			distancia = mapaActual().calcularDistancia(nombreCiudadOrigen, nombreCiudadDestino);
+			getMetricas().registrarDistancia(System.nanoTime() - inicio);
+		} finally {
+			getMetricas().terminarPeticion();
+		}
+
+		if (Float.isNaN(distancia)) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Ciudad desconocida");
+			return;
+		}
+		if (Float.isInfinite(distancia)) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "No existe un camino entre " + nombreCiudadOrigen
+					+ " y " + nombreCiudadDestino);
+			return;
+		}
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		PrintWriter salida = response.getWriter();
+		salida.print(distancia);
+	}
+
+	/**
+	 * Metodo para procesar las peticiones post. Se atienden igual que las peticiones get.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		doGet(request, response);
+	}
+}
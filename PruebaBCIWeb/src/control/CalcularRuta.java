@@ -1,28 +1,44 @@
 package control;
 
 import java.io.IOException;
-import javax.naming.Context;
-import javax.naming.InitialContext;
-import javax.servlet.RequestDispatcher;
-import javax.servlet.ServletConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.sql.DataSource;
 
-import modelo.BaseDatos;
+import modelo.Algoritmo;
 import modelo.Mapa;
+import modelo.Ruta;
 
 /**
  * Servlet que recibe la peticion http del jsp VistaInicio, obiente la ruta entre dos ciuades, cuyos nombres obtiene de
  * la peticion, y finalmente devuelve la peticion al jsp VistaInicio para que muestre los resultados.
+ *
+ * Con el parametro 'explicar=true' se muestra tambien el trabajo de la busqueda: algoritmo, ciudades asentadas,
+ * carreteras relajadas y tiempo de calculo.
+ *
+ * Con el parametro 'k' mayor que 1 se calculan ademas las mejores alternativas a la ruta minima: las k rutas sin
+ * ciudades repetidas mas cortas (ver Mapa.calcularRutasAlternativas). En ese caso se ignora el parametro 'algoritmo'.
+ *
+ * En lugar de por su nombre, las ciudades origen y destino se pueden indicar por las coordenadas de un punto con los
+ * parametros 'coordXOrigen' y 'coordYOrigen' (o 'coordXDestino' y 'coordYDestino'): la ruta se calcula desde o hasta
+ * la ciudad mas cercana a ese punto en linea recta (ver Mapa.obtenerNombreCiudadCercana).
+ *
+ * La ruta no se calcula en el hilo del contenedor sino en el EjecutorRutas de la aplicacion, que limita las busquedas
+ * simultaneas, responde 503 si hay demasiadas peticiones esperando y abandona las que superan su plazo.
  */
-@WebServlet("/CalcularRuta")
-public class CalcularRuta extends HttpServlet {
+@WebServlet(name = "CalcularRuta", urlPatterns = "/CalcularRuta", asyncSupported = true)
+public class CalcularRuta extends ServletMapa {
 	private static final long serialVersionUID = 1L;
-	private Mapa mapa;
+	// Numero maximo de rutas alternativas que se pueden pedir con el parametro 'k'.
+	private static final int MAXIMO_RUTAS = 10;
+	// Mensaje de error para las coordenadas de una ciudad que no son numeros.
+	static final String COORDENADAS_NO_VALIDAS = "Los parametros 'coordX' y 'coordY' de una ciudad deben ser numeros";
 
 	/**
 	 * @see HttpServlet#HttpServlet()
@@ -32,33 +48,6 @@ public class CalcularRuta extends HttpServlet {
 		// TODO Auto-generated constructor stub
 	}
 
-	/**
-	 * Este metodo se ejecuta solo una vez, durante la inicializacion del servlet. En el se accede a la base de datos y
-	 * construye el mapa de ciudades. De ese modo se tiene disponible para las futuras peticiones de calculo de camino
-	 * entre dos ciudades cualesquiera.
-	 * 
-	 * @see Servlet#init(ServletConfig)
-	 */
-	public void init(ServletConfig config) throws ServletException {
-		super.init(config);
-		// String baseDatos = null;
-		String nombreRecurso = null;
-		// Recuperamos el contexto inicial
-		try {
-			// baseDatos = getInitParameter("baseDatos");
-			nombreRecurso = "jdbc/pruebabiicode";
-			Context initCtx = new InitialContext();
-			Context envCtx = (Context) initCtx.lookup("java:comp/env");
-			// Conexiones para la base de datos buscada.
-			DataSource servicioConexiones = (DataSource) envCtx.lookup(nombreRecurso);
-			BaseDatos bd = new BaseDatos(servicioConexiones);
-			mapa = bd.obtenerMapaBD();
-			bd.cerrarConexionConBD();
-		} catch (Exception e) {
-			throw new ServletException("Imposible recuperar java:comp/env/" + nombreRecurso, e);
-		}
-	}
-
 	/**
 	 * Metodo para procesr las peticiones get. En la aplicacion no se usa metodo get para enviar datos del cliente al
 	 * servidor pero tampoco esta de mas implementar el metodo doGet como abajo.
@@ -72,20 +61,131 @@ public class CalcularRuta extends HttpServlet {
 
 	/**
 	 * Metodo para procesar las peticiones post. Con el metodo de envio post el cliente envia al servidor la informacion
-	 * en en el cuerpo de la peticion. El servlet extrae la informacion de interes y calcula la ruta entre dos ciudades.
-	 * A continuacion redirige la peticion al jsp VistaInicio para que la muestre en el navegador.
+	 * en en el cuerpo de la peticion. El servlet extrae la informacion de interes y encola el calculo de la ruta entre
+	 * dos ciudades. Cuando esta calculada, el hilo del calculo redirige la peticion al jsp VistaInicio para que la
+	 * muestre en el navegador.
 	 * 
 	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
 	 */
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 
-		String nombreCiudadOrigen = request.getParameter("nombreCiudadOrigen");
-		String nombreCiudadDestino = request.getParameter("nombreCiudadDestino");
-		String ruta = mapa.obtenerCamino(mapa.dijkstra(nombreCiudadOrigen), nombreCiudadDestino);
-		// System.out.println(nombreCiudadOrigen + " " + nombreCiudadDestino);
-		// System.out.println(ruta);
-		request.setAttribute("ruta", ruta/* URLEncoder.encode(ruta, "UTF-8") */);
-		RequestDispatcher rd = request.getRequestDispatcher("VistaInicio.jsp");
-		rd.forward(request, response);
+		final Mapa mapa = mapaActual();
+		final String nombreCiudadOrigen;
+		final String nombreCiudadDestino;
+		try {
+			nombreCiudadOrigen = obtenerNombreCiudad(request, mapa, "Origen");
+			nombreCiudadDestino = obtenerNombreCiudad(request, mapa, "Destino");
+		} catch (NumberFormatException nfe) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, COORDENADAS_NO_VALIDAS);
+			return;
+		}
+		// El parametro 'algoritmo' permite escoger el algoritmo de busqueda en cada peticion. Por defecto Dijkstra.
+		final Algoritmo algoritmo = Algoritmo.desdeParametro(request.getParameter("algoritmo"));
+		final boolean explicar = "true".equalsIgnoreCase(request.getParameter("explicar"));
+		int numeroRutas = 1;
+		String parametroRutas = request.getParameter("k");
+		if (parametroRutas != null && parametroRutas.trim().length() > 0) {
+			try {
+				numeroRutas = Integer.parseInt(parametroRutas.trim());
+			} catch (NumberFormatException nfe) {
+				numeroRutas = -1;
+			}
+			if (numeroRutas < 1 || numeroRutas > MAXIMO_RUTAS) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, "El parametro 'k' debe estar entre 1 y "
+						+ MAXIMO_RUTAS);
+				return;
+			}
+		}
+		if (numeroRutas > 1) {
+			calcularAlternativas(request, response, mapa, nombreCiudadOrigen, nombreCiudadDestino, numeroRutas,
+					explicar);
+			return;
+		}
+		getEjecutorRutas().ejecutar(request, response, new Callable<Ruta>() {
+			public Ruta call() {
+				return mapa.calcularRuta(nombreCiudadOrigen, nombreCiudadDestino, algoritmo);
+			}
+		}, new EjecutorRutas.Respuesta<Ruta>() {
+			public void responder(Ruta rutaCalculada, long nanosegundos, AsyncContext asincrono) {
+				getMetricas().registrarRuta(algoritmo, nanosegundos, rutaCalculada);
+				String ruta = mapa.obtenerCamino(rutaCalculada, nombreCiudadDestino);
+				// System.out.println(nombreCiudadOrigen + " " + nombreCiudadDestino);
+				// System.out.println(ruta);
+				asincrono.getRequest().setAttribute("ruta", ruta/* URLEncoder.encode(ruta, "UTF-8") */);
+				if (rutaCalculada != null && explicar) {
+					asincrono.getRequest().setAttribute("explicacion", "Algoritmo: " + algoritmo.getDescripcion()
+							+ ". Ciudades asentadas: " + rutaCalculada.getCiudadesAsentadas()
+							+ ". Carreteras relajadas: " + rutaCalculada.getCarreterasRelajadas() + ". Tiempo: "
+							+ nanosegundos / 1000 + " us.");
+				}
+				asincrono.dispatch("/VistaInicio.jsp");
+			}
+		});
+	}
+
+	/**
+	 * Metodo que obtiene de una peticion el nombre de una ciudad: el del parametro 'nombreCiudad' seguido del sufijo o,
+	 * si no se indica, el de la ciudad mas cercana al punto de los parametros 'coordX' y 'coordY' seguidos del sufijo.
+	 *
+	 * @param request
+	 * Peticion http.
+	 * @param mapa
+	 * Mapa en el que se busca la ciudad mas cercana.
+	 * @param sufijo
+	 * Sufijo de los parametros, por ejemplo "Origen" o "Destino".
+	 * @return Nombre de la ciudad, o el parametro de nombre tal cual si tampoco se indican coordenadas.
+	 * @throws NumberFormatException si falta una de las coordenadas o no es un numero finito.
+	 */
+	static String obtenerNombreCiudad(HttpServletRequest request, Mapa mapa, String sufijo) {
+
+		String nombreCiudad = request.getParameter("nombreCiudad" + sufijo);
+		String parametroX = request.getParameter("coordX" + sufijo);
+		String parametroY = request.getParameter("coordY" + sufijo);
+		if ((nombreCiudad != null && nombreCiudad.length() > 0) || (parametroX == null && parametroY == null)) {
+			return nombreCiudad;
+		}
+		if (parametroX == null || parametroY == null) {
+			throw new NumberFormatException("Falta una coordenada de la ciudad " + sufijo);
+		}
+		float coordX = Float.parseFloat(parametroX.trim());
+		float coordY = Float.parseFloat(parametroY.trim());
+		if (Float.isNaN(coordX) || Float.isInfinite(coordX) || Float.isNaN(coordY) || Float.isInfinite(coordY)) {
+			throw new NumberFormatException("Coordenadas no finitas de la ciudad " + sufijo);
+		}
+		return mapa.obtenerNombreCiudadCercana(coordX, coordY);
+	}
+
+	/**
+	 * Metodo que encola el calculo de la ruta minima y sus alternativas. La ruta minima se muestra en el atributo
+	 * 'ruta' como con una sola ruta, y las alternativas en el atributo 'alternativas', de la segunda a la ultima.
+	 */
+	private void calcularAlternativas(HttpServletRequest request, HttpServletResponse response, final Mapa mapa,
+			final String nombreCiudadOrigen, final String nombreCiudadDestino, final int numeroRutas,
+			final boolean explicar) throws IOException {
+
+		getEjecutorRutas().ejecutar(request, response, new Callable<List<Ruta>>() {
+			public List<Ruta> call() {
+				return mapa.calcularRutasAlternativas(nombreCiudadOrigen, nombreCiudadDestino, numeroRutas);
+			}
+		}, new EjecutorRutas.Respuesta<List<Ruta>>() {
+			public void responder(List<Ruta> rutas, long nanosegundos, AsyncContext asincrono) {
+				asincrono.getRequest().setAttribute("ruta",
+						mapa.obtenerCamino(rutas != null ? rutas.get(0) : null, nombreCiudadDestino));
+				if (rutas != null && rutas.get(0).existe()) {
+					List<String> alternativas = new ArrayList<String>(rutas.size() - 1);
+					for (int i = 1; i < rutas.size(); i++) {
+						alternativas.add(mapa.obtenerCamino(rutas.get(i), nombreCiudadDestino));
+					}
+					asincrono.getRequest().setAttribute("alternativas", alternativas);
+					if (explicar) {
+						asincrono.getRequest().setAttribute("explicacion", "Algoritmo: Yen (" + rutas.size()
+								+ " de " + numeroRutas + " rutas). Ciudades asentadas: "
+								+ rutas.get(0).getCiudadesAsentadas() + ". Carreteras relajadas: "
+								+ rutas.get(0).getCarreterasRelajadas() + ". Tiempo: " + nanosegundos / 1000 + " us.");
+					}
+				}
+				asincrono.dispatch("/VistaInicio.jsp");
+			}
+		});
 	}
 }
@@ -0,0 +1,228 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import modelo.Algoritmo;
+import modelo.GrafoCompacto;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Servlet que devuelve la ruta entre dos ciudades en formato JSON, para clientes que no necesitan la pagina
+ * VistaInicio. Recibe los mismos parametros que CalcularRuta ('nombreCiudadOrigen', 'nombreCiudadDestino' y
+ * 'algoritmo') y responde con un objeto como el siguiente:
+ *
+ * <pre>
+ * {"origen":"Madrid","destino":"Toledo","algoritmo":"dijkstra","existe":true,"distancia":72.5,
+ *  "ciudadesAsentadas":12,"ciudades":[{"id":40,"nombre":"Madrid"},{"id":71,"nombre":"Toledo"}]}
+ * </pre>
+ *
+ * Si las ciudades no estan comunicadas 'existe' es false, 'distancia' es null y 'ciudades' esta vacio. Si alguna
+ * ciudad no existe en el mapa se responde 404 con un objeto {"error": ...}.
+ *
+ * Como en CalcularRuta, las ciudades se pueden indicar tambien por coordenadas ('coordXOrigen', 'coordYOrigen',
+ * 'coordXDestino' y 'coordYDestino'); 'origen' y 'destino' son entonces las ciudades mas cercanas a los puntos.
+ *
+ * Con el parametro 'explicar=true' la respuesta incluye ademas el trabajo de la busqueda, para investigar los pares de
+ * ciudades lentos:
+ *
+ * <pre>
+ * "explicacion":{"ciudadesAsentadas":12,"carreterasRelajadas":40,"microsegundos":35}
+ * </pre>
+ *
+ * La respuesta se escribe directamente en la salida, sin construir el texto completo en memoria. Las peticiones get
+ * se pueden cachear: la respuesta lleva una etiqueta ETag derivada de la version del mapa y, si el cliente envia la
+ * misma etiqueta en If-None-Match, se responde 304 sin calcular la ruta.
+ *
+ * Como en CalcularRuta, la ruta se calcula en el EjecutorRutas de la aplicacion: si hay demasiadas peticiones
+ * esperando o se agota el plazo de la peticion se responde 503.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@WebServlet(name = "CalcularRutaJson", urlPatterns = "/CalcularRutaJson", asyncSupported = true)
+public class CalcularRutaJson extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+	// Segundos durante los que una respuesta get se puede reutilizar sin volver a validarla.
+	private static final int SEGUNDOS_CACHE = 300;
+
+	/**
+	 * Metodo para procesar las peticiones get. La ruta depende solo de la url y de la version del mapa, por lo que la
+	 * respuesta se marca como cacheable. Las cabeceras de cache solo se ponen al responder la ruta: los errores, como
+	 * el 503 por sobrecarga, no deben quedarse en las caches compartidas.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		Mapa mapa = mapaActual();
+		// La explicacion incluye el tiempo de calculo, que cambia en cada peticion.
+		if ("true".equalsIgnoreCase(request.getParameter("explicar"))) {
+			response.setHeader("Cache-Control", "no-store");
+			responder(mapa, request, response, null);
+			return;
+		}
+		// Etiqueta debil: el numero de ciudades asentadas puede variar entre respuestas equivalentes.
+		String etiqueta = "W/\"" + Long.toHexString(mapa.getVersion()) + "\"";
+		String etiquetaCliente = request.getHeader("If-None-Match");
+		if (etiquetaCliente != null && etiquetaCliente.contains(etiqueta.substring(2))) {
+			marcarCacheable(response, etiqueta);
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		responder(mapa, request, response, etiqueta);
+	}
+
+	/**
+	 * Metodo que marca una respuesta como cacheable con la etiqueta de la version del mapa.
+	 */
+	private static void marcarCacheable(HttpServletResponse response, String etiqueta) {
+
+		response.setHeader("ETag", etiqueta);
+		response.setHeader("Cache-Control", "public, max-age=" + SEGUNDOS_CACHE);
+	}
+
+	/**
+	 * Metodo para procesar las peticiones post. Se atienden igual que las peticiones get pero sin cache.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		response.setHeader("Cache-Control", "no-store");
+		responder(mapaActual(), request, response, null);
+	}
+
+	/**
+	 * Metodo que encola el calculo de la ruta pedida en un mapa. El hilo del calculo la escribe en formato JSON y, si
+	 * se indica una etiqueta, la marca como cacheable.
+	 */
+	private void responder(final Mapa mapa, HttpServletRequest request, HttpServletResponse response,
+			final String etiqueta) throws IOException {
+
+		final String nombreCiudadOrigen;
+		final String nombreCiudadDestino;
+		try {
+			nombreCiudadOrigen = CalcularRuta.obtenerNombreCiudad(request, mapa, "Origen");
+			nombreCiudadDestino = CalcularRuta.obtenerNombreCiudad(request, mapa, "Destino");
+		} catch (NumberFormatException nfe) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, CalcularRuta.COORDENADAS_NO_VALIDAS);
+			return;
+		}
+		final Algoritmo algoritmo = Algoritmo.desdeParametro(request.getParameter("algoritmo"));
+		final boolean explicar = "true".equalsIgnoreCase(request.getParameter("explicar"));
+		getEjecutorRutas().ejecutar(request, response, new Callable<Ruta>() {
+			public Ruta call() {
+				return mapa.calcularRuta(nombreCiudadOrigen, nombreCiudadDestino, algoritmo);
+			}
+		}, new EjecutorRutas.Respuesta<Ruta>() {
+			public void responder(Ruta ruta, long nanosegundos, AsyncContext asincrono) throws IOException {
+				getMetricas().registrarRuta(algoritmo, nanosegundos, ruta);
+				HttpServletResponse respuestaRuta = (HttpServletResponse) asincrono.getResponse();
+				if (etiqueta != null) {
+					marcarCacheable(respuestaRuta, etiqueta);
+				}
+				escribir(respuestaRuta, nombreCiudadOrigen, nombreCiudadDestino, algoritmo, ruta,
+						explicar ? nanosegundos : -1);
+				asincrono.complete();
+			}
+		});
+	}
+
+	/**
+	 * Metodo que escribe una ruta calculada en formato JSON. Si se indica la duracion del calculo se incluye la
+	 * explicacion de la busqueda.
+	 */
+	private static void escribir(HttpServletResponse response, String nombreCiudadOrigen, String nombreCiudadDestino,
+			Algoritmo algoritmo, Ruta ruta, long nanosegundos) throws IOException {
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		Writer salida = response.getWriter();
+		if (ruta == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			salida.write("{\"error\":\"Ciudad desconocida\"}");
+			return;
+		}
+
+		GrafoCompacto grafo = ruta.getGrafo();
+		salida.write("{\"origen\":");
+		escribirCadena(salida, nombreCiudadOrigen);
+		salida.write(",\"destino\":");
+		escribirCadena(salida, nombreCiudadDestino);
+		salida.write(",\"algoritmo\":");
+		escribirCadena(salida, algoritmo.getParametro());
+		salida.write(",\"existe\":");
+		salida.write(ruta.existe() ? "true" : "false");
+		salida.write(",\"distancia\":");
+		salida.write(ruta.existe() ? Float.toString(ruta.getDistancia()) : "null");
+		salida.write(",\"ciudadesAsentadas\":");
+		salida.write(Integer.toString(ruta.getCiudadesAsentadas()));
+		if (nanosegundos >= 0) {
+			salida.write(",\"explicacion\":{\"ciudadesAsentadas\":");
+			salida.write(Integer.toString(ruta.getCiudadesAsentadas()));
+			salida.write(",\"carreterasRelajadas\":");
+			salida.write(Integer.toString(ruta.getCarreterasRelajadas()));
+			salida.write(",\"microsegundos\":");
+			salida.write(Long.toString(nanosegundos / 1000));
+			salida.write('}');
+		}
+		salida.write(",\"ciudades\":[");
+		if (ruta.existe()) {
+			int[] ciudades = ruta.getCiudades();
+			for (int i = 0; i < ciudades.length; i++) {
+				salida.write(i == 0 ? "{\"id\":" : ",{\"id\":");
+				salida.write(Integer.toString(ciudades[i]));
+				salida.write(",\"nombre\":");
+				escribirCadena(salida, grafo.obtenerNombre(ciudades[i]));
+				salida.write('}');
+			}
+		}
+		salida.write("]}");
+	}
+
+	/**
+	 * Metodo que escribe una cadena de texto JSON, entre comillas y con los caracteres especiales escapados.
+	 */
+	static void escribirCadena(Writer salida, String texto) throws IOException {
+
+		salida.write('"');
+		for (int i = 0; i < texto.length(); i++) {
+			char c = texto.charAt(i);
+			switch (c) {
+			case '"':
+				salida.write("\\\"");
+				break;
+			case '\\':
+				salida.write("\\\\");
+				break;
+			case '\n':
+				salida.write("\\n");
+				break;
+			case '\r':
+				salida.write("\\r");
+				break;
+			case '\t':
+				salida.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					salida.write("\\u00");
+					salida.write(Character.forDigit(c >> 4, 16));
+					salida.write(Character.forDigit(c & 0xF, 16));
+				} else {
+					salida.write(c);
+				}
+			}
+		}
+		salida.write('"');
+	}
+}
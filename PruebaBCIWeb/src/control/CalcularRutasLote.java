@@ -0,0 +1,219 @@
+package control;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import modelo.GrafoCompacto;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Servlet que calcula las rutas de muchos pares de ciudades en una sola peticion. Los pares se agrupan por ciudad
+ * origen, de modo que cada origen se resuelve con una sola busqueda, y los grupos se reparten entre todos los
+ * procesadores.
+ *
+ * Como las rutas sueltas, cada lote se calcula en el EjecutorRutas de la aplicacion y no en el hilo del contenedor:
+ * si hay demasiadas peticiones esperando se responde 503 en el momento, y si el lote agota su plazo (parametro
+ * 'milisegundosPlazoLote' del contexto) se abandona y se responde 503. Solo la lectura de los pares se hace en el
+ * hilo del contenedor.
+ *
+ * Los pares se pueden indicar de dos formas:
+ * <ul>
+ * <li>Como lista, en el cuerpo de una peticion post de tipo text/*: una linea por par con la ciudad origen y la ciudad
+ * destino separadas por un tabulador.</li>
+ * <li>Como matriz, repitiendo los parametros 'nombreCiudadOrigen' y 'nombreCiudadDestino': se calculan todas las
+ * combinaciones de origen y destino.</li>
+ * </ul>
+ *
+ * La respuesta es texto separado por tabuladores con una linea por par, en el mismo orden: ciudad origen, ciudad
+ * destino, distancia en KM y camino con las ciudades separadas por '>'. La distancia y el camino van vacios si alguna
+ * ciudad no existe o no estan comunicadas. Con el parametro 'caminos=false' se omite el camino.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@WebServlet(name = "CalcularRutasLote", urlPatterns = "/CalcularRutasLote", asyncSupported = true)
+public class CalcularRutasLote extends ServletMapa {
+	private static final long serialVersionUID = 1L;
+	// Numero maximo de pares de una peticion.
+	private static final int MAXIMO_PARES = 1000000;
+	// Hilos entre los que se reparten los grupos de cada lote.
+	private ExecutorService hilos;
+
+	/**
+	 * Metodo que crea los hilos que resuelven los lotes.
+	 *
+	 * @see Servlet#init(ServletConfig)
+	 */
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		hilos = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Metodo que detiene los hilos que resuelven los lotes.
+	 *
+	 * @see Servlet#destroy()
+	 */
+	public void destroy() {
+		hilos.shutdown();
+		super.destroy();
+	}
+
+	/**
+	 * Metodo para procesar las peticiones get. Solo admite pares en forma de matriz.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		doPost(request, response);
+	}
+
+	/**
+	 * Metodo para procesar las peticiones post. Lee los pares de ciudades y encola el calculo de sus rutas. El hilo
+	 * del calculo las escribe en la respuesta.
+	 *
+	 * @see HttpServlet#doPost(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		List<String> origenes = new ArrayList<String>();
+		List<String> destinos = new ArrayList<String>();
+		String tipo = request.getContentType();
+		if (tipo != null && tipo.startsWith("text/")) {
+			if (request.getCharacterEncoding() == null) {
+				request.setCharacterEncoding("UTF-8");
+			}
+			if (!leerLista(request.getReader(), origenes, destinos)) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+						"Cada linea debe contener la ciudad origen y la ciudad destino separadas por un tabulador");
+				return;
+			}
+		} else {
+			leerMatriz(request, origenes, destinos);
+		}
+		if (origenes.size() > MAXIMO_PARES) {
+			response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Como mucho " + MAXIMO_PARES
+					+ " pares de ciudades por peticion");
+			return;
+		}
+
+		final String[] nombresCiudadesOrigen = origenes.toArray(new String[origenes.size()]);
+		final String[] nombresCiudadesDestino = destinos.toArray(new String[destinos.size()]);
+		final boolean conCaminos = !"false".equalsIgnoreCase(request.getParameter("caminos"));
+		final Mapa mapa = mapaActual();
+		getEjecutorRutas().ejecutarLote(request, response, new Callable<Ruta[]>() {
+			public Ruta[] call() {
+				return mapa.calcularRutas(nombresCiudadesOrigen, nombresCiudadesDestino, hilos);
+			}
+		}, new EjecutorRutas.Respuesta<Ruta[]>() {
+			public void responder(Ruta[] rutas, long nanosegundos, AsyncContext asincrono) throws IOException {
+				getMetricas().registrarLote(nanosegundos, rutas.length);
+				escribir((HttpServletResponse) asincrono.getResponse(), nombresCiudadesOrigen, nombresCiudadesDestino,
+						rutas, conCaminos);
+				asincrono.complete();
+			}
+		});
+	}
+
+	/**
+	 * Metodo que escribe las rutas de un lote como texto separado por tabuladores, una linea por par.
+	 */
+	private static void escribir(HttpServletResponse response, String[] nombresCiudadesOrigen,
+			String[] nombresCiudadesDestino, Ruta[] rutas, boolean conCaminos) throws IOException {
+
+		response.setContentType("text/tab-separated-values");
+		response.setCharacterEncoding("UTF-8");
+		PrintWriter salida = response.getWriter();
+		for (int par = 0; par < rutas.length; par++) {
+			salida.print(nombresCiudadesOrigen[par]);
+			salida.print('\t');
+			salida.print(nombresCiudadesDestino[par]);
+			salida.print('\t');
+			Ruta ruta = rutas[par];
+			if (ruta != null && ruta.existe()) {
+				salida.print(ruta.getDistancia());
+				if (conCaminos) {
+					salida.print('\t');
+					escribirCamino(salida, ruta);
+				}
+			}
+			salida.print('\n');
+		}
+	}
+
+	/**
+	 * Metodo que lee una lista de pares de ciudades, una por linea y separadas por un tabulador. Las lineas vacias se
+	 * ignoran y se deja de leer en cuanto se supera el maximo permitido.
+	 *
+	 * @return false si alguna linea no tiene el formato esperado.
+	 */
+	private static boolean leerLista(BufferedReader entrada, List<String> origenes, List<String> destinos)
+			throws IOException {
+
+		String linea;
+		while ((linea = entrada.readLine()) != null && origenes.size() <= MAXIMO_PARES) {
+			if (linea.trim().length() == 0) {
+				continue;
+			}
+			int tabulador = linea.indexOf('\t');
+			if (tabulador < 0 || linea.indexOf('\t', tabulador + 1) >= 0) {
+				return false;
+			}
+			origenes.add(linea.substring(0, tabulador).trim());
+			destinos.add(linea.substring(tabulador + 1).trim());
+		}
+		return true;
+	}
+
+	/**
+	 * Metodo que forma todas las combinaciones de las ciudades origen y destino indicadas en los parametros. Se deja
+	 * de aniadir pares en cuanto se supera el maximo permitido.
+	 */
+	private static void leerMatriz(HttpServletRequest request, List<String> origenes, List<String> destinos) {
+
+		String[] nombresCiudadesOrigen = request.getParameterValues("nombreCiudadOrigen");
+		String[] nombresCiudadesDestino = request.getParameterValues("nombreCiudadDestino");
+		if (nombresCiudadesOrigen == null || nombresCiudadesDestino == null) {
+			return;
+		}
+		for (String origen : nombresCiudadesOrigen) {
+			for (String destino : nombresCiudadesDestino) {
+				if (origenes.size() > MAXIMO_PARES) {
+					return;
+				}
+				origenes.add(origen);
+				destinos.add(destino);
+			}
+		}
+	}
+
+	/**
+	 * Metodo que escribe las ciudades de una ruta separadas por '>'.
+	 */
+	private static void escribirCamino(PrintWriter salida, Ruta ruta) {
+
+		GrafoCompacto grafo = ruta.getGrafo();
+		int[] ciudades = ruta.getCiudades();
+		for (int i = 0; i < ciudades.length; i++) {
+			if (i > 0) {
+				salida.print(" > ");
+			}
+			salida.print(grafo.obtenerNombre(ciudades[i]));
+		}
+	}
+}
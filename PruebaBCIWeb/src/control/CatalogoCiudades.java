@@ -0,0 +1,97 @@
+package control;
+
+import javax.servlet.ServletContext;
+
+import modelo.GrafoCompacto;
+import modelo.Mapa;
+
+/**
+ * Clase que representa los datos de las ciudades que necesita VistaInicio, preparados una sola vez por cada version
+ * del mapa en lugar de consultar la base de datos en cada visita: el numero de ciudades y la etiqueta ETag de la
+ * pagina. Los nombres no se envian en la pagina; los campos de ciudad se autocompletan con BuscarCiudades.
+ *
+ * El catalogo se guarda como atributo del contexto. Si la version del mapa cambia, la siguiente peticion construye
+ * el catalogo de la nueva version.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see ContextoAplicacion
+ */
+public final class CatalogoCiudades {
+
+	/**
+	 * Nombre del atributo del contexto en el que se guarda el catalogo.
+	 */
+	public static final String ATRIBUTO_CATALOGO = "catalogoCiudades";
+
+	private final long version;
+	private final int numeroCiudades;
+	private final String etiqueta;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param mapa
+	 * Mapa de ciudades.
+	 */
+	public CatalogoCiudades(Mapa mapa) {
+
+		GrafoCompacto grafo = mapa.congelar();
+		version = grafo.huella();
+		numeroCiudades = grafo.numeroCiudades();
+		// La etiqueta incluye el instante de creacion para que un nuevo despliegue de la pagina con el mismo mapa no
+		// reutilice las copias que tienen los navegadores.
+		etiqueta = "\"" + Long.toHexString(version) + "-" + Long.toHexString(System.currentTimeMillis()) + "\"";
+	}
+
+	/**
+	 * Metodo que devuelve el catalogo de la version actual del mapa guardado en el contexto de la aplicacion,
+	 * construyendolo si no existe o es de otra version.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @return Catalogo de ciudades. Null si el mapa no esta disponible.
+	 */
+	public static CatalogoCiudades obtener(ServletContext contexto) {
+
+		Mapa mapa = ContextoAplicacion.obtenerMapa(contexto);
+		if (mapa == null) {
+			return null;
+		}
+		CatalogoCiudades catalogo = (CatalogoCiudades) contexto.getAttribute(ATRIBUTO_CATALOGO);
+		if (catalogo == null || catalogo.version != mapa.getVersion()) {
+			// Si dos peticiones llegan a la vez ambas construyen un catalogo equivalente; se queda el ultimo.
+			catalogo = new CatalogoCiudades(mapa);
+			contexto.setAttribute(ATRIBUTO_CATALOGO, catalogo);
+		}
+		return catalogo;
+	}
+
+	/**
+	 * Metodo que devuelve la version del mapa a partir de la cual se construyo el catalogo.
+	 *
+	 * @return Version del mapa.
+	 * @see Mapa#getVersion()
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades del catalogo.
+	 *
+	 * @return Numero de ciudades.
+	 */
+	public int numeroCiudades() {
+		return numeroCiudades;
+	}
+
+	/**
+	 * Metodo que devuelve la etiqueta ETag de la pagina para esta version del catalogo.
+	 *
+	 * @return Etiqueta entre comillas.
+	 */
+	public String getEtiqueta() {
+		return etiqueta;
+	}
+}
@@ -0,0 +1,470 @@
+package control;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.sql.SQLException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import javax.sql.DataSource;
+
+import modelo.BaseDatos;
+import modelo.CambiosMapa;
+import modelo.InstantaneaMapa;
+import modelo.Mapa;
+import modelo.TablaCaminosMinimos;
+
+/**
+ * Clase que prepara el mapa al desplegar la aplicacion web. Se accede a la base de datos, se construye el mapa de
+ * ciudades junto con su preprocesado (jerarquia de contracciones, puntos de referencia, etiquetado de hubs y, si se
+ * activan, tablas de caminos minimos) y se guarda como atributo del contexto, de modo que todos los servlets
+ * comparten el mismo mapa. Tambien se guarda el catalogo de ciudades que muestra VistaInicio.
+ *
+ * Si la base de datos tiene la tabla CambiosMapa, el mapa preparado se guarda en una instantanea binaria. En el
+ * siguiente arranque se abre la instantanea y solo se leen de la base de datos los cambios posteriores, en lugar de
+ * las tablas Ciudades y Carreteras completas. Ademas, un hilo en segundo plano consulta periodicamente esa tabla,
+ * aplica los cambios al mapa actual, prepara la nueva version, la publica sustituyendo la referencia del contexto y
+ * guarda su instantanea. Las peticiones en curso terminan con la version anterior y ninguna espera a la recarga.
+ *
+ * Las metricas de la aplicacion (ver Metricas) se crean aqui y registran la carga, las recargas y los accesos a la
+ * base de datos. Tambien se crea el ejecutor que calcula las rutas fuera de los hilos del contenedor (ver
+ * EjecutorRutas), con su numero de hilos, su cola y el plazo de cada peticion.
+ *
+ * Los parametros del preprocesado y de la recarga se leen de los context-param del web.xml.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+@WebListener
+public class ContextoAplicacion implements ServletContextListener {
+
+	/**
+	 * Nombre del atributo del contexto en el que se guarda la referencia al mapa actual.
+	 */
+	public static final String ATRIBUTO_MAPA = "mapa";
+
+	private static final String NOMBRE_RECURSO = "jdbc/pruebabiicode";
+	private static final int NUMERO_PUNTOS_REFERENCIA_DEFECTO = 16;
+	private static final int MEMORIA_CACHE_ARBOLES_DEFECTO = 64;
+	private static final int MEMORIA_MAXIMA_TABLA_CAMINOS_DEFECTO = 256;
+	private static final int SEGUNDOS_RECARGA_DEFECTO = 60;
+	private static final int VENTANA_CAMBIOS_DEFECTO = 1000;
+	private static final int HILOS_PREPROCESADO_RECARGA_DEFECTO = 1;
+	private static final int COLA_RUTAS_DEFECTO = 256;
+	private static final int MILISEGUNDOS_PLAZO_RUTA_DEFECTO = 10000;
+	private static final int MILISEGUNDOS_PLAZO_LOTE_DEFECTO = 60000;
+
+	// Mapa actual. La recarga publica cada nueva version sustituyendo la referencia.
+	private AtomicReference<Mapa> referenciaMapa;
+	// Hilo que consulta periodicamente los cambios del mapa. Null si la recarga esta desactivada.
+	private ScheduledExecutorService recargas;
+	// Hilos que calculan las rutas de las peticiones.
+	private EjecutorRutas ejecutorRutas;
+
+	/**
+	 * Metodo que se ejecuta al desplegar la aplicacion. Construye el mapa y su preprocesado.
+	 *
+	 * @see ServletContextListener#contextInitialized(ServletContextEvent)
+	 */
+	public void contextInitialized(ServletContextEvent evento) {
+
+		ServletContext contexto = evento.getServletContext();
+		DataSource servicioConexiones = null;
+		Mapa mapa = null;
+		long ultimoCambio = -1;
+		// Cambios de la ventana anterior a ultimoCambio que ya estan en el mapa cargado (ver RecargaMapa).
+		SortedSet<Long> cambiosAplicados = new TreeSet<Long>();
+		int ventanaCambios = obtenerParametroEntero(contexto, "ventanaCambiosMapa", VENTANA_CAMBIOS_DEFECTO);
+		InstantaneaMapa instantanea = null;
+		File ficheroMapa = obtenerFichero(contexto, "ficheroMapa", "mapa.bin");
+		int tamanioLectura = obtenerParametroEntero(contexto, "tamanioLecturaBD", BaseDatos.TAMANIO_LECTURA_DEFECTO);
+		// Las metricas se publican antes de cargar el mapa para registrar la carga.
+		Metricas metricas = new Metricas();
+		contexto.setAttribute(Metricas.ATRIBUTO_METRICAS, metricas);
+		long inicio = System.currentTimeMillis();
+		reiniciarPicosMemoria();
+		try {
+			Context initCtx = new InitialContext();
+			Context envCtx = (Context) initCtx.lookup("java:comp/env");
+			// Conexiones para la base de datos buscada.
+			servicioConexiones = (DataSource) envCtx.lookup(NOMBRE_RECURSO);
+			BaseDatos bd = conectar(metricas, servicioConexiones);
+			try {
+				// El ultimo cambio se consulta antes de leer el mapa: los cambios que se produzcan durante la lectura se
+				// vuelven a aplicar en la primera recarga.
+				try {
+					ultimoCambio = bd.obtenerUltimoCambio();
+				} catch (SQLException sqle) {
+					contexto.log("Sin tabla CambiosMapa: el mapa no se recargara", sqle);
+				}
+				// Sin el registro de cambios no se puede saber si la instantanea esta al dia, por lo que solo se usa si
+				// existe.
+				if (ultimoCambio >= 0) {
+					instantanea = abrirInstantanea(contexto, ficheroMapa, ultimoCambio);
+				}
+				if (instantanea != null) {
+					mapa = instantanea.getMapa();
+					contexto.log("Mapa de " + mapa.numeroCiudadesMapa() + " ciudades abierto de la instantanea "
+							+ ficheroMapa + " (cambio " + instantanea.getUltimoCambio() + ") en "
+							+ (System.currentTimeMillis() - inicio) + " ms");
+					// Los cambios posteriores a la instantanea se leen de la base de datos y se aplican, junto con los
+					// de la ventana anterior, que pueden incluir alguno confirmado despues de guardarla. Volver a
+					// aplicar un cambio no altera el mapa: si nada cambia se conserva el de la instantanea.
+					CambiosMapa cambios = new CambiosMapa();
+					long cambioLeido = bd.obtenerCambios(Math.max(0, instantanea.getUltimoCambio() - ventanaCambios),
+							cambiosAplicados, cambios, tamanioLectura);
+					bd.obtenerCarreteras(cambios.ciudadesAniadidas(mapa), cambios);
+					cambiosAplicados.addAll(cambios.getIdentificadores());
+					ultimoCambio = Math.max(instantanea.getUltimoCambio(), cambioLeido);
+					if (!cambios.estaVacio()) {
+						Mapa mapaCambiado = cambios.aplicar(mapa);
+						if (mapaCambiado.congelar().huella() != mapa.congelar().huella()) {
+							mapa = mapaCambiado;
+							contexto.log(cambios.numeroCambios() + " cambios posteriores a la instantanea aplicados");
+						}
+					}
+				} else {
+					if (ultimoCambio >= 0) {
+						cambiosAplicados.addAll(bd.obtenerIdentificadoresCambios(Math.max(0, ultimoCambio
+								- ventanaCambios), ultimoCambio));
+					}
+					mapa = bd.obtenerMapaBD(tamanioLectura);
+				}
+			} finally {
+				metricas.registrarFilasLeidas(bd.getFilasLeidas());
+				bd.cerrarConexionConBD();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException("Imposible cargar el mapa de java:comp/env/" + NOMBRE_RECURSO, e);
+		}
+		metricas.registrarCarga((System.currentTimeMillis() - inicio) * 1000000L, instantanea != null);
+		if (instantanea == null) {
+			contexto.log("Mapa de " + mapa.numeroCiudadesMapa() + " ciudades cargado de la base de datos en "
+					+ (System.currentTimeMillis() - inicio) + " ms, con un pico de " + obtenerPicoMemoria()
+					/ (1024 * 1024) + " MB de memoria");
+		}
+
+		prepararMapa(contexto, mapa, false);
+		referenciaMapa = new AtomicReference<Mapa>(mapa);
+		contexto.setAttribute(ATRIBUTO_MAPA, referenciaMapa);
+		// La lista de ciudades de VistaInicio se prepara a partir del mismo mapa, de modo que la pagina no vuelve a
+		// consultar la base de datos.
+		contexto.setAttribute(CatalogoCiudades.ATRIBUTO_CATALOGO, new CatalogoCiudades(mapa));
+		// Las busquedas usan el procesador sin esperas, por lo que por defecto se usa un hilo por procesador.
+		int hilosRutas = obtenerParametroEntero(contexto, "hilosRutas", 0);
+		if (hilosRutas == 0) {
+			hilosRutas = Runtime.getRuntime().availableProcessors();
+		}
+		int colaRutas = obtenerParametroEntero(contexto, "colaRutas", COLA_RUTAS_DEFECTO);
+		int plazoRuta = obtenerParametroEntero(contexto, "milisegundosPlazoRuta", MILISEGUNDOS_PLAZO_RUTA_DEFECTO);
+		int plazoLote = obtenerParametroEntero(contexto, "milisegundosPlazoLote", MILISEGUNDOS_PLAZO_LOTE_DEFECTO);
+		ejecutorRutas = new EjecutorRutas(hilosRutas, colaRutas, plazoRuta, plazoLote, metricas);
+		metricas.setEjecutorRutas(ejecutorRutas);
+		contexto.setAttribute(EjecutorRutas.ATRIBUTO_EJECUTOR, ejecutorRutas);
+		contexto.log("Rutas calculadas en " + hilosRutas + " hilos, con una cola de " + colaRutas
+				+ " peticiones y un plazo de " + plazoRuta + " ms (" + plazoLote + " ms los lotes)");
+		// La instantanea se vuelve a guardar si no existia o si se le han aplicado cambios.
+		boolean instantaneaAlDia = instantanea != null && instantanea.getMapa() == mapa
+				&& instantanea.getUltimoCambio() == ultimoCambio;
+		if (ultimoCambio >= 0 && !instantaneaAlDia) {
+			guardarInstantanea(contexto, mapa, ultimoCambio, ficheroMapa);
+		}
+
+		// Recarga periodica de los cambios del mapa en segundo plano.
+		int segundosRecarga = obtenerParametroEntero(contexto, "segundosRecargaMapa", SEGUNDOS_RECARGA_DEFECTO);
+		if (ultimoCambio >= 0 && segundosRecarga > 0) {
+			recargas = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable tarea) {
+					Thread hilo = new Thread(tarea, "RecargaMapa");
+					hilo.setDaemon(true);
+					return hilo;
+				}
+			});
+			recargas.scheduleWithFixedDelay(new RecargaMapa(contexto, servicioConexiones, referenciaMapa,
+					ultimoCambio, cambiosAplicados, ventanaCambios, tamanioLectura, ficheroMapa), segundosRecarga,
+					segundosRecarga, TimeUnit.SECONDS);
+			contexto.log("Cambios del mapa consultados cada " + segundosRecarga + " s desde el cambio " + ultimoCambio);
+		}
+	}
+
+	/**
+	 * Metodo que prepara el preprocesado de un mapa segun los parametros del web.xml: jerarquia de contracciones,
+	 * puntos de referencia, etiquetado de hubs, tablas de caminos minimos, cache de arboles e indices de nombres y de
+	 * coordenadas. Se usa al desplegar la aplicacion y con cada nueva version del mapa antes de publicarla.
+	 *
+	 * Al desplegar la aplicacion el preprocesado usa todos los procesadores. En las recargas se rehace entero con cada
+	 * cambio mientras el mapa anterior atiende peticiones, por lo que se limita al numero de hilos del parametro
+	 * hilosPreprocesadoRecarga para no quitar los procesadores a las busquedas del EjecutorRutas.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @param mapa
+	 * Mapa a preparar.
+	 * @param recarga
+	 * true si el mapa es una nueva version preparada en segundo plano, false al desplegar la aplicacion.
+	 */
+	static void prepararMapa(ServletContext contexto, Mapa mapa, boolean recarga) {
+
+		if (recarga) {
+			mapa.setHilosPreprocesado(obtenerParametroEntero(contexto, "hilosPreprocesadoRecarga",
+					HILOS_PREPROCESADO_RECARGA_DEFECTO));
+		}
+
+		// La jerarquia de contracciones se prepara al arrancar y con cada nueva version del mapa, ya que cualquier
+		// cambio la invalida. Si existe un fichero generado a partir del mismo mapa se carga de el en lugar de repetir
+		// el preprocesado; si no, se construye y sustituye al fichero anterior.
+		File ficheroJerarquia = obtenerFichero(contexto, "ficheroJerarquia", "jerarquia.ch");
+		long inicio = System.currentTimeMillis();
+		try {
+			boolean cargada = mapa.prepararJerarquiaContracciones(ficheroJerarquia);
+			contexto.log("Jerarquia de contracciones " + (cargada ? "cargada de " : "construida y guardada en ")
+					+ ficheroJerarquia + " en " + (System.currentTimeMillis() - inicio) + " ms");
+		} catch (IOException ioe) {
+			contexto.log("No se pudo guardar la jerarquia de contracciones en " + ficheroJerarquia, ioe);
+		}
+
+		int numeroPuntosReferencia = obtenerParametroEntero(contexto, "numeroPuntosReferencia",
+				NUMERO_PUNTOS_REFERENCIA_DEFECTO);
+		inicio = System.currentTimeMillis();
+		mapa.prepararPuntosReferencia(numeroPuntosReferencia);
+		contexto.log(numeroPuntosReferencia + " puntos de referencia calculados en "
+				+ (System.currentTimeMillis() - inicio) + " ms");
+
+		// El etiquetado de hubs usa el orden de la jerarquia, por lo que se construye despues de ella.
+		inicio = System.currentTimeMillis();
+		mapa.prepararEtiquetadoHubs();
+		contexto.log("Etiquetado de hubs construido en " + (System.currentTimeMillis() - inicio) + " ms");
+
+		// Las tablas de caminos minimos entre todos los pares de ciudades solo se calculan si se activan en el web.xml y
+		// caben en la memoria permitida.
+		if (Boolean.parseBoolean(contexto.getInitParameter("tablaCaminosMinimos"))) {
+			long memoriaMaxima = obtenerParametroEntero(contexto, "memoriaMaximaTablaCaminos",
+					MEMORIA_MAXIMA_TABLA_CAMINOS_DEFECTO) * 1024L * 1024L;
+			long memoriaNecesaria = TablaCaminosMinimos.estimarMemoria(mapa.numeroCiudadesMapa());
+			inicio = System.currentTimeMillis();
+			if (mapa.prepararTablaCaminos(memoriaMaxima)) {
+				contexto.log("Tablas de caminos minimos (" + memoriaNecesaria / (1024 * 1024) + " MB) calculadas en "
+						+ (System.currentTimeMillis() - inicio) + " ms");
+			} else {
+				contexto.log("Tablas de caminos minimos rechazadas: necesitan " + memoriaNecesaria / (1024 * 1024)
+						+ " MB y se permiten " + memoriaMaxima / (1024 * 1024) + " MB o no hay memoria libre suficiente");
+			}
+		}
+
+		int memoriaCacheArboles = obtenerParametroEntero(contexto, "memoriaCacheArboles", MEMORIA_CACHE_ARBOLES_DEFECTO);
+		mapa.prepararCacheArboles(memoriaCacheArboles * 1024L * 1024L);
+
+		// El indice de nombres para autocompletar las ciudades se construye ya para que la primera busqueda no espere.
+		inicio = System.currentTimeMillis();
+		mapa.obtenerIndiceNombres();
+		contexto.log("Indice de nombres de ciudades construido en " + (System.currentTimeMillis() - inicio) + " ms");
+
+		// Igual el indice espacial, con el que se ajustan a la ciudad mas cercana las rutas pedidas por coordenadas.
+		inicio = System.currentTimeMillis();
+		mapa.obtenerIndiceEspacial();
+		contexto.log("Indice espacial de ciudades construido en " + (System.currentTimeMillis() - inicio) + " ms");
+	}
+
+	/**
+	 * Metodo que se ejecuta al replegar la aplicacion. Detiene la recarga del mapa y el ejecutor de rutas, registra
+	 * los contadores de la cache de arboles y libera el mapa.
+	 *
+	 * @see ServletContextListener#contextDestroyed(ServletContextEvent)
+	 */
+	public void contextDestroyed(ServletContextEvent evento) {
+
+		ServletContext contexto = evento.getServletContext();
+		if (recargas != null) {
+			recargas.shutdownNow();
+		}
+		if (ejecutorRutas != null) {
+			ejecutorRutas.detener();
+			contexto.removeAttribute(EjecutorRutas.ATRIBUTO_EJECUTOR);
+		}
+		Mapa mapa = obtenerMapa(contexto);
+		if (mapa != null && mapa.getCacheArboles() != null) {
+			contexto.log("Cache de arboles de caminos minimos: " + mapa.getCacheArboles());
+		}
+		contexto.removeAttribute(CatalogoCiudades.ATRIBUTO_CATALOGO);
+		contexto.removeAttribute(ATRIBUTO_MAPA);
+		contexto.removeAttribute(Metricas.ATRIBUTO_METRICAS);
+	}
+
+	/**
+	 * Metodo que devuelve la version actual del mapa guardado en el contexto de la aplicacion. Quien vaya a usar el
+	 * mapa en varias peticiones debe guardar la referencia de obtenerReferenciaMapa y no el mapa, que se sustituye en
+	 * cada recarga.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @return Mapa de ciudades. Null si no se pudo construir al desplegar la aplicacion.
+	 */
+	public static Mapa obtenerMapa(ServletContext contexto) {
+
+		AtomicReference<Mapa> referencia = obtenerReferenciaMapa(contexto);
+		return referencia != null ? referencia.get() : null;
+	}
+
+	/**
+	 * Metodo que devuelve la referencia al mapa guardada en el contexto de la aplicacion. Cada recarga del mapa publica
+	 * la nueva version sustituyendo el contenido de la referencia, por lo que cada peticion debe leerla una sola vez
+	 * al empezar y trabajar con ese mapa hasta terminar.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @return Referencia al mapa actual. Null si no se pudo construir al desplegar la aplicacion.
+	 */
+	@SuppressWarnings("unchecked")
+	public static AtomicReference<Mapa> obtenerReferenciaMapa(ServletContext contexto) {
+
+		return (AtomicReference<Mapa>) contexto.getAttribute(ATRIBUTO_MAPA);
+	}
+
+	/**
+	 * Metodo que obtiene una conexion del pool de la base de datos y registra el tiempo de espera.
+	 *
+	 * @param metricas
+	 * Metricas de la aplicacion.
+	 * @param servicioConexiones
+	 * Pool de conexiones de la base de datos.
+	 * @return Base de datos con la conexion obtenida.
+	 * @throws SQLException
+	 * Si no se pudo obtener la conexion.
+	 */
+	static BaseDatos conectar(Metricas metricas, DataSource servicioConexiones) throws SQLException {
+
+		long inicio = System.nanoTime();
+		BaseDatos bd = new BaseDatos(servicioConexiones);
+		metricas.registrarEsperaConexion(System.nanoTime() - inicio);
+		return bd;
+	}
+
+	/**
+	 * Metodo que abre la instantanea del mapa si existe, es valida y no es posterior al ultimo cambio registrado en la
+	 * base de datos, lo que indicaria que el registro de cambios se ha vaciado.
+	 *
+	 * @return Instantanea del mapa, o null si hay que leer el mapa de la base de datos.
+	 */
+	private static InstantaneaMapa abrirInstantanea(ServletContext contexto, File fichero, long ultimoCambio) {
+
+		if (!fichero.isFile()) {
+			return null;
+		}
+		try {
+			InstantaneaMapa instantanea = InstantaneaMapa.abrir(fichero);
+			if (instantanea == null) {
+				contexto.log("Instantanea del mapa " + fichero
+						+ " descartada: version o suma de comprobacion distintas");
+			} else if (instantanea.getUltimoCambio() > ultimoCambio) {
+				contexto.log("Instantanea del mapa " + fichero + " descartada: incluye el cambio "
+						+ instantanea.getUltimoCambio() + " y la base de datos llega al " + ultimoCambio);
+				instantanea = null;
+			}
+			return instantanea;
+		} catch (IOException ioe) {
+			contexto.log("No se pudo leer la instantanea del mapa " + fichero, ioe);
+			return null;
+		}
+	}
+
+	/**
+	 * Metodo que guarda la instantanea de un mapa ya preparado. Si falla solo se registra: el siguiente arranque leera
+	 * el mapa de la base de datos.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web, para registrar el resultado.
+	 * @param mapa
+	 * Mapa a guardar.
+	 * @param ultimoCambio
+	 * Identificador del ultimo cambio incluido en el mapa.
+	 * @param fichero
+	 * Fichero de la instantanea.
+	 */
+	static void guardarInstantanea(ServletContext contexto, Mapa mapa, long ultimoCambio, File fichero) {
+
+		long inicio = System.currentTimeMillis();
+		try {
+			InstantaneaMapa.guardar(mapa, ultimoCambio, fichero);
+			contexto.log("Instantanea del mapa (cambio " + ultimoCambio + ") guardada en " + fichero + " en "
+					+ (System.currentTimeMillis() - inicio) + " ms");
+		} catch (IOException ioe) {
+			contexto.log("No se pudo guardar la instantanea del mapa en " + fichero, ioe);
+		}
+	}
+
+	/**
+	 * Metodo que devuelve un fichero de la aplicacion. Se puede indicar con un parametro del web.xml; por defecto se
+	 * usa el directorio temporal de la aplicacion web.
+	 */
+	private static File obtenerFichero(ServletContext contexto, String parametro, String nombreDefecto) {
+
+		String ruta = contexto.getInitParameter(parametro);
+		if (ruta != null && ruta.trim().length() > 0) {
+			return new File(ruta.trim());
+		}
+		File directorioTemporal = (File) contexto.getAttribute(ServletContext.TEMPDIR);
+		return new File(directorioTemporal, nombreDefecto);
+	}
+
+	/**
+	 * Metodo que reinicia el pico de uso de las zonas de memoria del monticulo.
+	 */
+	private static void reiniciarPicosMemoria() {
+
+		for (MemoryPoolMXBean zona : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (zona.getType() == MemoryType.HEAP && zona.isValid()) {
+				zona.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Metodo que devuelve la suma de los picos de uso de las zonas de memoria del monticulo desde el ultimo reinicio.
+	 * Es una cota superior de la memoria ocupada a la vez, ya que cada zona alcanza su pico en un momento distinto.
+	 */
+	private static long obtenerPicoMemoria() {
+
+		long pico = 0;
+		for (MemoryPoolMXBean zona : ManagementFactory.getMemoryPoolMXBeans()) {
+			MemoryUsage uso = zona.getType() == MemoryType.HEAP && zona.isValid() ? zona.getPeakUsage() : null;
+			if (uso != null) {
+				pico += uso.getUsed();
+			}
+		}
+		return pico;
+	}
+
+	/**
+	 * Metodo que devuelve el valor de un parametro entero no negativo del web.xml.
+	 */
+	private static int obtenerParametroEntero(ServletContext contexto, String nombre, int valorDefecto) {
+
+		String valor = contexto.getInitParameter(nombre);
+		if (valor == null || valor.trim().length() == 0) {
+			return valorDefecto;
+		}
+		try {
+			int numero = Integer.parseInt(valor.trim());
+			if (numero >= 0) {
+				return numero;
+			}
+		} catch (NumberFormatException nfe) {
+			// Se informa abajo.
+		}
+		throw new IllegalArgumentException("Valor no valido para " + nombre + ": " + valor);
+	}
+}
@@ -0,0 +1,304 @@
+package control;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Clase que calcula las rutas de las peticiones fuera de los hilos del contenedor, con la API asincrona de Servlet
+ * 3.0. Las peticiones se ponen en una cola acotada que atiende un numero fijo de hilos, normalmente uno por
+ * procesador, de modo que el numero de busquedas simultaneas no crece con la carga. Si la cola esta llena la peticion
+ * se rechaza en el momento con 503 y Retry-After, sin ocupar memoria ni procesador.
+ *
+ * Las respuestas de error llevan Cache-Control: no-store, aunque el servlet haya marcado la peticion como cacheable,
+ * para que las caches compartidas no sigan sirviendo un 503 cuando la sobrecarga ya ha pasado.
+ *
+ * Cada peticion tiene un plazo maximo. Si se agota mientras la peticion espera en la cola, se descarta sin calcularla;
+ * si se agota durante la busqueda, se interrumpe el hilo y la busqueda se abandona (ver
+ * EspacioBusqueda.comprobarInterrupcion). En ambos casos se responde 503. Asi, con sobrecarga, los hilos solo trabajan
+ * en peticiones que aun pueden responderse a tiempo y el numero de rutas servidas por segundo se mantiene.
+ *
+ * Los lotes de CalcularRutasLote pasan por la misma cola, con un plazo propio mas largo. Un lote ocupa un hilo del
+ * ejecutor mientras sus grupos se resuelven en los hilos del servlet; si agota su plazo, se interrumpe y los grupos
+ * que aun no se han resuelto se cancelan.
+ *
+ * Los arboles de la cache de arboles se comparten entre peticiones y no se interrumpen: una peticion que agota su
+ * plazo mientras otra calcula el arbol que necesita deja de esperarlo, pero el calculo continua para las demas.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see CalcularRuta
+ * @see CalcularRutasLote
+ */
+final class EjecutorRutas {
+
+	/**
+	 * Nombre del atributo del contexto en el que se guarda el ejecutor.
+	 */
+	static final String ATRIBUTO_EJECUTOR = "ejecutorRutas";
+
+	// Segundos que se indican al cliente en Retry-After cuando se rechaza una peticion.
+	private static final String SEGUNDOS_REINTENTO = "1";
+
+	private final ThreadPoolExecutor hilos;
+	private final long milisegundosPlazo;
+	private final long milisegundosPlazoLote;
+	private final Metricas metricas;
+
+	/**
+	 * Interfaz que escribe la respuesta de una peticion con el resultado de su calculo. Se ejecuta en el hilo del
+	 * ejecutor y debe terminar la peticion con AsyncContext.complete() o AsyncContext.dispatch().
+	 *
+	 * @param <T>
+	 * Tipo del resultado del calculo.
+	 */
+	interface Respuesta<T> {
+
+		/**
+		 * Metodo que escribe la respuesta de una peticion.
+		 *
+		 * @param resultado
+		 * Resultado del calculo.
+		 * @param nanosegundos
+		 * Duracion del calculo, sin la espera en la cola.
+		 * @param asincrono
+		 * Contexto asincrono de la peticion.
+		 */
+		void responder(T resultado, long nanosegundos, AsyncContext asincrono) throws IOException;
+	}
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param numeroHilos
+	 * Numero de hilos que calculan rutas.
+	 * @param tamanioCola
+	 * Numero maximo de peticiones esperando un hilo. Con 0 solo se aceptan peticiones si hay un hilo libre.
+	 * @param milisegundosPlazo
+	 * Plazo maximo de cada peticion, desde que se acepta hasta que se responde. 0: sin plazo.
+	 * @param milisegundosPlazoLote
+	 * Plazo maximo de cada peticion de un lote de rutas. 0: sin plazo.
+	 * @param metricas
+	 * Metricas en las que se registran las peticiones rechazadas y las que agotan su plazo.
+	 */
+	EjecutorRutas(int numeroHilos, int tamanioCola, long milisegundosPlazo, long milisegundosPlazoLote,
+			Metricas metricas) {
+
+		final AtomicInteger contador = new AtomicInteger();
+		// Una cola sincrona solo entrega la tarea a un hilo que este esperando, es decir, libre.
+		BlockingQueue<Runnable> cola = tamanioCola > 0 ? new ArrayBlockingQueue<Runnable>(tamanioCola)
+				: new SynchronousQueue<Runnable>();
+		this.hilos = new ThreadPoolExecutor(numeroHilos, numeroHilos, 0L, TimeUnit.MILLISECONDS, cola,
+				new ThreadFactory() {
+					public Thread newThread(Runnable tarea) {
+						Thread hilo = new Thread(tarea, "CalcularRuta-" + contador.incrementAndGet());
+						hilo.setDaemon(true);
+						return hilo;
+					}
+				}, new ThreadPoolExecutor.AbortPolicy());
+		this.hilos.prestartAllCoreThreads();
+		this.milisegundosPlazo = milisegundosPlazo;
+		this.milisegundosPlazoLote = milisegundosPlazoLote;
+		this.metricas = metricas;
+	}
+
+	/**
+	 * Metodo que devuelve el ejecutor guardado en el contexto de la aplicacion.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @return Ejecutor de rutas. Null si ContextoAplicacion no lo ha creado.
+	 */
+	static EjecutorRutas obtener(ServletContext contexto) {
+		return (EjecutorRutas) contexto.getAttribute(ATRIBUTO_EJECUTOR);
+	}
+
+	/**
+	 * Metodo que pone en modo asincrono una peticion y encola su calculo. La peticion se responde de una sola forma:
+	 * con la respuesta del calculo, con 503 si la cola esta llena o se agota el plazo, o con 500 si el calculo falla.
+	 *
+	 * @param request
+	 * Peticion a atender. Su servlet debe admitir el modo asincrono.
+	 * @param response
+	 * Respuesta de la peticion.
+	 * @param calculo
+	 * Calculo de la peticion. Se ejecuta en un hilo del ejecutor y no debe usar la peticion, que puede haberse
+	 * respondido ya si se agota el plazo.
+	 * @param respuesta
+	 * Escritura de la respuesta con el resultado del calculo.
+	 */
+	<T> void ejecutar(HttpServletRequest request, HttpServletResponse response, Callable<T> calculo,
+			Respuesta<T> respuesta) throws IOException {
+
+		ejecutar(request, response, milisegundosPlazo, calculo, respuesta);
+	}
+
+	/**
+	 * Metodo que pone en modo asincrono una peticion de un lote de rutas y encola su calculo, con el plazo de los
+	 * lotes. El calculo debe abandonarse si se interrumpe su hilo.
+	 *
+	 * @see #ejecutar(HttpServletRequest, HttpServletResponse, Callable, Respuesta)
+	 */
+	<T> void ejecutarLote(HttpServletRequest request, HttpServletResponse response, Callable<T> calculo,
+			Respuesta<T> respuesta) throws IOException {
+
+		ejecutar(request, response, milisegundosPlazoLote, calculo, respuesta);
+	}
+
+	/**
+	 * Metodo que pone en modo asincrono una peticion y encola su calculo con el plazo indicado.
+	 */
+	private <T> void ejecutar(HttpServletRequest request, HttpServletResponse response, long milisegundosPlazoPeticion,
+			final Callable<T> calculo, final Respuesta<T> respuesta) throws IOException {
+
+		final AsyncContext asincrono = request.startAsync(request, response);
+		asincrono.setTimeout(milisegundosPlazoPeticion);
+		// La peticion la responde solo quien cambia este indicador: el hilo del calculo o el aviso de plazo agotado.
+		final AtomicBoolean respondida = new AtomicBoolean();
+		final AtomicReference<Future<?>> tarea = new AtomicReference<Future<?>>();
+		asincrono.addListener(new AsyncListener() {
+			public void onTimeout(AsyncEvent evento) throws IOException {
+				// Si el calculo ya ha terminado y esta respondiendo no se interrumpe.
+				if (respondida.compareAndSet(false, true)) {
+					Future<?> futuro = tarea.get();
+					if (futuro != null) {
+						futuro.cancel(true);
+					}
+					metricas.registrarPlazoAgotado();
+					HttpServletResponse respuestaPlazo = (HttpServletResponse) evento.getSuppliedResponse();
+					respuestaPlazo.setHeader("Cache-Control", "no-store");
+					respuestaPlazo.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+							"Plazo maximo de la peticion agotado");
+					evento.getAsyncContext().complete();
+				}
+			}
+
+			public void onError(AsyncEvent evento) {
+				// Error de la conexion: no hay a quien responder.
+				if (respondida.compareAndSet(false, true)) {
+					Future<?> futuro = tarea.get();
+					if (futuro != null) {
+						futuro.cancel(true);
+					}
+				}
+			}
+
+			public void onComplete(AsyncEvent evento) {
+			}
+
+			public void onStartAsync(AsyncEvent evento) {
+			}
+		});
+
+		try {
+			tarea.set(hilos.submit(new Runnable() {
+				public void run() {
+					calcular(asincrono, respondida, calculo, respuesta);
+				}
+			}));
+		} catch (RejectedExecutionException ree) {
+			respondida.set(true);
+			rechazar(response);
+			asincrono.complete();
+		}
+	}
+
+	/**
+	 * Metodo que calcula una peticion en un hilo del ejecutor y la responde si no se ha respondido ya.
+	 */
+	private <T> void calcular(AsyncContext asincrono, AtomicBoolean respondida, Callable<T> calculo,
+			Respuesta<T> respuesta) {
+
+		if (respondida.get()) {
+			return;
+		}
+		T resultado;
+		long nanosegundos;
+		metricas.iniciarPeticion();
+		try {
+			long inicio = System.nanoTime();
+			resultado = calculo.call();
+			nanosegundos = System.nanoTime() - inicio;
+		} catch (Exception e) {
+			// Una busqueda interrumpida por el plazo ya se ha respondido con 503.
+			if (respondida.compareAndSet(false, true)) {
+				asincrono.getRequest().getServletContext().log("Error al calcular la ruta", e);
+				responderError(asincrono);
+			}
+			return;
+		} finally {
+			metricas.terminarPeticion();
+		}
+		if (!respondida.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			respuesta.responder(resultado, nanosegundos, asincrono);
+		} catch (Exception e) {
+			asincrono.getRequest().getServletContext().log("Error al responder la ruta", e);
+			responderError(asincrono);
+		}
+	}
+
+	/**
+	 * Metodo que responde 503 a una peticion que no cabe en la cola.
+	 */
+	private void rechazar(HttpServletResponse response) throws IOException {
+
+		metricas.registrarRechazo();
+		response.setHeader("Cache-Control", "no-store");
+		response.setHeader("Retry-After", SEGUNDOS_REINTENTO);
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Servidor ocupado, vuelva a intentarlo");
+	}
+
+	/**
+	 * Metodo que responde 500 a una peticion cuyo calculo ha fallado.
+	 */
+	private static void responderError(AsyncContext asincrono) {
+
+		try {
+			HttpServletResponse response = (HttpServletResponse) asincrono.getResponse();
+			response.setHeader("Cache-Control", "no-store");
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Error al calcular la ruta");
+		} catch (IOException ioe) {
+			// La conexion se ha cerrado: no hay a quien responder.
+		} catch (IllegalStateException ise) {
+			// La respuesta ya se habia empezado a enviar.
+		} finally {
+			asincrono.complete();
+		}
+	}
+
+	/**
+	 * Metodo que devuelve el numero de peticiones que esperan un hilo.
+	 *
+	 * @return Numero de peticiones en la cola.
+	 */
+	int peticionesEnCola() {
+		return hilos.getQueue().size();
+	}
+
+	/**
+	 * Metodo que detiene los hilos del ejecutor e interrumpe los calculos en curso. Las peticiones pendientes se
+	 * descartan; el contenedor las termina al replegar la aplicacion.
+	 */
+	void detener() {
+		hilos.shutdownNow();
+	}
+}
@@ -0,0 +1,55 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet que publica las metricas de la aplicacion en el formato de texto de Prometheus (version 0.0.4), para que un
+ * servidor Prometheus las recoja periodicamente de /metricas. Todas las metricas llevan el prefijo 'pruebabci_':
+ * latencia y ciudades asentadas de las rutas por algoritmo, latencia de las distancias, los alcances y los lotes,
+ * peticiones en curso, en cola y rechazadas, version y tamanio del mapa, contadores de la cache de arboles, carga y
+ * recargas del mapa, filas leidas y espera de conexiones de la base de datos.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Metricas
+ */
+@WebServlet(name = "ExportarMetricas", urlPatterns = "/metricas")
+public class ExportarMetricas extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private Metricas metricas;
+
+	/**
+	 * Metodo que obtiene las metricas creadas al desplegar la aplicacion.
+	 *
+	 * @see Servlet#init(ServletConfig)
+	 */
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		metricas = Metricas.obtener(getServletContext());
+		if (metricas == null) {
+			throw new UnavailableException("Las metricas no estan disponibles");
+		}
+	}
+
+	/**
+	 * Metodo para procesar las peticiones get. Escribe todas las metricas con sus valores actuales.
+	 *
+	 * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		Writer salida = response.getWriter();
+		metricas.escribir(salida, ContextoAplicacion.obtenerMapa(getServletContext()));
+	}
+}
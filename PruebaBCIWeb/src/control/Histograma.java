@@ -0,0 +1,83 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clase que representa un histograma de valores enteros (nanosegundos, ciudades...) con limites de cubeta fijos. Cada
+ * cubeta es un LongAdder, que reparte los incrementos simultaneos entre varias celdas en lugar de competir por una
+ * sola variable, por lo que registrar un valor no bloquea ni serializa las peticiones.
+ *
+ * Se exporta en el formato de texto de Prometheus, con las cubetas acumuladas ('le'), la suma y el numero de valores.
+ * La lectura no es atomica: un valor registrado durante la exportacion puede aparecer en unas cubetas y no en otras.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Metricas
+ */
+final class Histograma {
+
+	private final long[] limites;
+	// Una cubeta por limite mas la de los valores mayores que el ultimo limite. No son acumuladas.
+	private final LongAdder[] cubetas;
+	private final LongAdder suma = new LongAdder();
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param limites
+	 * Limites superiores de las cubetas, en orden creciente.
+	 */
+	Histograma(long[] limites) {
+
+		this.limites = limites.clone();
+		this.cubetas = new LongAdder[limites.length + 1];
+		for (int i = 0; i < cubetas.length; i++) {
+			cubetas[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Metodo que registra un valor.
+	 *
+	 * @param valor
+	 * Valor a registrar.
+	 */
+	void registrar(long valor) {
+
+		int cubeta = 0;
+		while (cubeta < limites.length && valor > limites[cubeta]) {
+			cubeta++;
+		}
+		cubetas[cubeta].increment();
+		suma.add(valor);
+	}
+
+	/**
+	 * Metodo que escribe las lineas del histograma en el formato de texto de Prometheus. Las lineas # HELP y # TYPE
+	 * las escribe quien llama, una sola vez para todas las series de una metrica.
+	 *
+	 * @param salida
+	 * Salida en la que se escribe.
+	 * @param nombre
+	 * Nombre de la metrica.
+	 * @param etiquetas
+	 * Etiquetas de la serie sin llaves, por ejemplo algoritmo="alt", o cadena vacia.
+	 * @param escala
+	 * Factor por el que se multiplican los limites y la suma, por ejemplo 1e-9 para pasar de nanosegundos a segundos.
+	 */
+	void escribir(Writer salida, String nombre, String etiquetas, double escala) throws IOException {
+
+		String separador = etiquetas.length() > 0 ? etiquetas + "," : "";
+		long acumulado = 0;
+		for (int i = 0; i < cubetas.length; i++) {
+			acumulado += cubetas[i].sum();
+			String limite = i < limites.length ? Metricas.formatear(limites[i] * escala) : "+Inf";
+			salida.write(nombre + "_bucket{" + separador + "le=\"" + limite + "\"} " + acumulado + "\n");
+		}
+		String llaves = etiquetas.length() > 0 ? "{" + etiquetas + "}" : "";
+		salida.write(nombre + "_sum" + llaves + " " + Metricas.formatear(suma.sum() * escala) + "\n");
+		salida.write(nombre + "_count" + llaves + " " + acumulado + "\n");
+	}
+}
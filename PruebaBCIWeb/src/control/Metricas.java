@@ -0,0 +1,349 @@
+package control;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.ServletContext;
+
+import modelo.Algoritmo;
+import modelo.CacheArbolesCaminos;
+import modelo.CiudadesAlcanzables;
+import modelo.Mapa;
+import modelo.Ruta;
+
+/**
+ * Clase que reune las metricas de la aplicacion: latencia y ciudades asentadas de las rutas por algoritmo, peticiones
+ * en curso, en cola, rechazadas y con el plazo agotado, carga y recargas del mapa, filas leidas y espera de conexiones
+ * de la base de datos. ContextoAplicacion la crea al desplegar la aplicacion y la guarda como atributo del contexto;
+ * el servlet ExportarMetricas la publica en el formato de texto de Prometheus junto con la version y el tamanio del
+ * mapa y los contadores de su cache de arboles.
+ *
+ * Los contadores son LongAdder y los histogramas de cada algoritmo se reservan al crear la clase, indexados por el
+ * ordinal del algoritmo, de modo que registrar una peticion no busca en ningun mapa, no reserva memoria y no bloquea.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see ExportarMetricas
+ */
+final class Metricas {
+
+	/**
+	 * Nombre del atributo del contexto en el que se guardan las metricas.
+	 */
+	static final String ATRIBUTO_METRICAS = "metricas";
+
+	private static final String PREFIJO = "pruebabci_";
+	private static final double NANOSEGUNDO = 1e-9;
+	// Limites de las cubetas de latencia en nanosegundos: de 50 microsegundos a 10 segundos.
+	private static final long[] LIMITES_LATENCIA = { 50000L, 100000L, 250000L, 500000L, 1000000L, 2500000L, 5000000L,
+			10000000L, 25000000L, 50000000L, 100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L, 5000000000L,
+			10000000000L };
+	// Limites de las cubetas de espera de una conexion en nanosegundos: de 10 microsegundos a 10 segundos.
+	private static final long[] LIMITES_ESPERA = { 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+			10000000000L };
+	private static final long[] LIMITES_CIUDADES = { 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L };
+
+	private final Histograma[] latenciaRutas;
+	private final Histograma[] ciudadesAsentadas;
+	private final Histograma latenciaDistancias = new Histograma(LIMITES_LATENCIA);
+	private final Histograma latenciaLotes = new Histograma(LIMITES_LATENCIA);
+	private final Histograma latenciaAlcances = new Histograma(LIMITES_LATENCIA);
+	private final Histograma ciudadesAlcances = new Histograma(LIMITES_CIUDADES);
+	private final Histograma esperaConexiones = new Histograma(LIMITES_ESPERA);
+	private final LongAdder peticionesEnCurso = new LongAdder();
+	private final LongAdder paresLotes = new LongAdder();
+	private final LongAdder filasLeidas = new LongAdder();
+	private final LongAdder recargas = new LongAdder();
+	private final LongAdder recargasFallidas = new LongAdder();
+	private final LongAdder cambiosAplicados = new LongAdder();
+	private final LongAdder rutasRechazadas = new LongAdder();
+	private final LongAdder rutasPlazoAgotado = new LongAdder();
+	// Ejecutor de las rutas, del que se lee la longitud de su cola. Null hasta que ContextoAplicacion lo crea.
+	private volatile EjecutorRutas ejecutorRutas;
+	// Duracion en nanosegundos de la carga inicial y de la ultima recarga. Solo las escribe un hilo cada vez.
+	private volatile long duracionCarga;
+	private volatile boolean cargaDesdeInstantanea;
+	private volatile long duracionUltimaRecarga;
+
+	/**
+	 * Constructor de la clase.
+	 */
+	Metricas() {
+
+		Algoritmo[] algoritmos = Algoritmo.values();
+		latenciaRutas = new Histograma[algoritmos.length];
+		ciudadesAsentadas = new Histograma[algoritmos.length];
+		for (int i = 0; i < algoritmos.length; i++) {
+			latenciaRutas[i] = new Histograma(LIMITES_LATENCIA);
+			ciudadesAsentadas[i] = new Histograma(LIMITES_CIUDADES);
+		}
+	}
+
+	/**
+	 * Metodo que devuelve las metricas guardadas en el contexto de la aplicacion.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web.
+	 * @return Metricas de la aplicacion. Null si ContextoAplicacion no las ha creado.
+	 */
+	static Metricas obtener(ServletContext contexto) {
+		return (Metricas) contexto.getAttribute(ATRIBUTO_METRICAS);
+	}
+
+	/**
+	 * Metodo que registra que una peticion empieza a calcular rutas o distancias.
+	 */
+	void iniciarPeticion() {
+		peticionesEnCurso.increment();
+	}
+
+	/**
+	 * Metodo que registra que una peticion ha terminado de calcular rutas o distancias, haya terminado bien o no.
+	 */
+	void terminarPeticion() {
+		peticionesEnCurso.decrement();
+	}
+
+	/**
+	 * Metodo que registra el calculo de las ciudades alcanzables desde una ciudad.
+	 *
+	 * @param nanosegundos
+	 * Duracion del calculo.
+	 * @param alcance
+	 * Ciudades alcanzadas, o null si la ciudad no existe.
+	 */
+	void registrarAlcance(long nanosegundos, CiudadesAlcanzables alcance) {
+
+		latenciaAlcances.registrar(nanosegundos);
+		if (alcance != null) {
+			ciudadesAlcances.registrar(alcance.numeroCiudades());
+		}
+	}
+
+	/**
+	 * Metodo que registra una peticion de ruta rechazada porque la cola del ejecutor estaba llena.
+	 */
+	void registrarRechazo() {
+		rutasRechazadas.increment();
+	}
+
+	/**
+	 * Metodo que registra una peticion de ruta que ha agotado su plazo antes de responderse.
+	 */
+	void registrarPlazoAgotado() {
+		rutasPlazoAgotado.increment();
+	}
+
+	/**
+	 * Metodo que fija el ejecutor de rutas cuya cola se publica.
+	 *
+	 * @param ejecutorRutas
+	 * Ejecutor de rutas, o null si se ha detenido.
+	 */
+	void setEjecutorRutas(EjecutorRutas ejecutorRutas) {
+		this.ejecutorRutas = ejecutorRutas;
+	}
+
+	/**
+	 * Metodo que registra el calculo de una ruta.
+	 *
+	 * @param algoritmo
+	 * Algoritmo con el que se ha calculado.
+	 * @param nanosegundos
+	 * Duracion del calculo.
+	 * @param ruta
+	 * Ruta calculada, o null si alguna ciudad no existe.
+	 */
+	void registrarRuta(Algoritmo algoritmo, long nanosegundos, Ruta ruta) {
+
+		latenciaRutas[algoritmo.ordinal()].registrar(nanosegundos);
+		if (ruta != null) {
+			ciudadesAsentadas[algoritmo.ordinal()].registrar(ruta.getCiudadesAsentadas());
+		}
+	}
+
+	/**
+	 * Metodo que registra el calculo de una distancia sin camino.
+	 *
+	 * @param nanosegundos
+	 * Duracion del calculo.
+	 */
+	void registrarDistancia(long nanosegundos) {
+		latenciaDistancias.registrar(nanosegundos);
+	}
+
+	/**
+	 * Metodo que registra el calculo de un lote de rutas.
+	 *
+	 * @param nanosegundos
+	 * Duracion del calculo de todo el lote.
+	 * @param pares
+	 * Numero de pares de ciudades del lote.
+	 */
+	void registrarLote(long nanosegundos, int pares) {
+
+		latenciaLotes.registrar(nanosegundos);
+		paresLotes.add(pares);
+	}
+
+	/**
+	 * Metodo que registra el tiempo de espera para obtener una conexion del pool de la base de datos.
+	 *
+	 * @param nanosegundos
+	 * Tiempo de espera.
+	 */
+	void registrarEsperaConexion(long nanosegundos) {
+		esperaConexiones.registrar(nanosegundos);
+	}
+
+	/**
+	 * Metodo que registra filas leidas de la base de datos.
+	 *
+	 * @param filas
+	 * Numero de filas.
+	 */
+	void registrarFilasLeidas(long filas) {
+		filasLeidas.add(filas);
+	}
+
+	/**
+	 * Metodo que registra la carga inicial del mapa.
+	 *
+	 * @param nanosegundos
+	 * Duracion de la carga, sin el preprocesado.
+	 * @param desdeInstantanea
+	 * true si el mapa se abrio de la instantanea, false si se leyo de la base de datos.
+	 */
+	void registrarCarga(long nanosegundos, boolean desdeInstantanea) {
+
+		duracionCarga = nanosegundos;
+		cargaDesdeInstantanea = desdeInstantanea;
+	}
+
+	/**
+	 * Metodo que registra una recarga del mapa publicada.
+	 *
+	 * @param nanosegundos
+	 * Duracion de la recarga, con el preprocesado de la nueva version.
+	 * @param cambios
+	 * Numero de cambios aplicados.
+	 */
+	void registrarRecarga(long nanosegundos, int cambios) {
+
+		duracionUltimaRecarga = nanosegundos;
+		recargas.increment();
+		cambiosAplicados.add(cambios);
+	}
+
+	/**
+	 * Metodo que registra una recarga del mapa que ha fallado.
+	 */
+	void registrarRecargaFallida() {
+		recargasFallidas.increment();
+	}
+
+	/**
+	 * Metodo que escribe todas las metricas en el formato de texto de Prometheus.
+	 *
+	 * @param salida
+	 * Salida en la que se escriben.
+	 * @param mapa
+	 * Mapa actual, del que se toman la version, el tamanio y la cache de arboles. Puede ser null.
+	 */
+	void escribir(Writer salida, Mapa mapa) throws IOException {
+
+		Algoritmo[] algoritmos = Algoritmo.values();
+		cabecera(salida, "ruta_segundos", "histogram", "Duracion del calculo de una ruta por algoritmo.");
+		for (int i = 0; i < algoritmos.length; i++) {
+			latenciaRutas[i].escribir(salida, PREFIJO + "ruta_segundos", etiquetaAlgoritmo(algoritmos[i]), NANOSEGUNDO);
+		}
+		cabecera(salida, "ruta_ciudades_asentadas", "histogram", "Ciudades asentadas por ruta y algoritmo.");
+		for (int i = 0; i < algoritmos.length; i++) {
+			ciudadesAsentadas[i].escribir(salida, PREFIJO + "ruta_ciudades_asentadas",
+					etiquetaAlgoritmo(algoritmos[i]), 1.0);
+		}
+		cabecera(salida, "distancia_segundos", "histogram", "Duracion del calculo de una distancia sin camino.");
+		latenciaDistancias.escribir(salida, PREFIJO + "distancia_segundos", "", NANOSEGUNDO);
+		cabecera(salida, "lote_segundos", "histogram", "Duracion del calculo de un lote de rutas.");
+		latenciaLotes.escribir(salida, PREFIJO + "lote_segundos", "", NANOSEGUNDO);
+		cabecera(salida, "alcance_segundos", "histogram", "Duracion del calculo de las ciudades alcanzables.");
+		latenciaAlcances.escribir(salida, PREFIJO + "alcance_segundos", "", NANOSEGUNDO);
+		cabecera(salida, "alcance_ciudades", "histogram", "Ciudades alcanzadas por consulta de alcance.");
+		ciudadesAlcances.escribir(salida, PREFIJO + "alcance_ciudades", "", 1.0);
+		valor(salida, "lote_pares_total", "counter", "Pares de ciudades calculados en lotes.", paresLotes.sum());
+		valor(salida, "peticiones_en_curso", "gauge", "Peticiones calculando rutas o distancias.",
+				peticionesEnCurso.sum());
+		EjecutorRutas ejecutor = ejecutorRutas;
+		if (ejecutor != null) {
+			valor(salida, "rutas_en_cola", "gauge", "Peticiones de ruta esperando un hilo.", ejecutor.peticionesEnCola());
+		}
+		valor(salida, "rutas_rechazadas_total", "counter", "Peticiones de ruta rechazadas con la cola llena.",
+				rutasRechazadas.sum());
+		valor(salida, "rutas_plazo_agotado_total", "counter", "Peticiones de ruta que agotaron su plazo.",
+				rutasPlazoAgotado.sum());
+
+		if (mapa != null) {
+			// La version es una huella de 64 bits, que no cabe sin perdidas en un valor de Prometheus.
+			cabecera(salida, "mapa_info", "gauge", "Version (huella) del mapa actual.");
+			salida.write(PREFIJO + "mapa_info{version=\"" + Long.toHexString(mapa.getVersion()) + "\"} 1\n");
+			valor(salida, "mapa_ciudades", "gauge", "Ciudades del mapa actual.", mapa.numeroCiudadesMapa());
+			valor(salida, "mapa_carreteras", "gauge", "Carreteras del mapa actual.",
+					mapa.congelar().numeroAdyacencias() / 2);
+			CacheArbolesCaminos cache = mapa.getCacheArboles();
+			if (cache != null) {
+				// Los contadores empiezan de cero con cada version del mapa, que tiene su propia cache.
+				valor(salida, "cache_arboles_aciertos_total", "counter", "Aciertos de la cache de arboles.",
+						cache.getAciertos());
+				valor(salida, "cache_arboles_fallos_total", "counter", "Fallos de la cache de arboles.",
+						cache.getFallos());
+				valor(salida, "cache_arboles_compartidos_total", "counter",
+						"Peticiones que esperaron un arbol en calculo.", cache.getCompartidos());
+				valor(salida, "cache_arboles_expulsiones_total", "counter", "Arboles expulsados de la cache.",
+						cache.getExpulsiones());
+				long consultas = cache.getAciertos() + cache.getFallos() + cache.getCompartidos();
+				valor(salida, "cache_arboles_tasa_aciertos", "gauge", "Proporcion de aciertos de la cache de arboles.",
+						consultas == 0 ? 0.0 : (double) (cache.getAciertos() + cache.getCompartidos()) / consultas);
+				valor(salida, "cache_arboles_bytes", "gauge", "Memoria ocupada por la cache de arboles.",
+						cache.getMemoriaOcupada());
+			}
+		}
+
+		cabecera(salida, "carga_mapa_segundos", "gauge", "Duracion de la carga inicial del mapa, sin preprocesado.");
+		salida.write(PREFIJO + "carga_mapa_segundos{origen=\"" + (cargaDesdeInstantanea ? "instantanea" : "bd")
+				+ "\"} " + formatear(duracionCarga * NANOSEGUNDO) + "\n");
+		valor(salida, "recarga_mapa_segundos", "gauge", "Duracion de la ultima recarga del mapa.", duracionUltimaRecarga
+				* NANOSEGUNDO);
+		valor(salida, "recargas_mapa_total", "counter", "Recargas del mapa publicadas.", recargas.sum());
+		valor(salida, "recargas_mapa_fallidas_total", "counter", "Recargas del mapa fallidas.", recargasFallidas.sum());
+		valor(salida, "cambios_mapa_total", "counter", "Cambios del mapa aplicados en las recargas.",
+				cambiosAplicados.sum());
+		valor(salida, "bd_filas_leidas_total", "counter", "Filas leidas de la base de datos.", filasLeidas.sum());
+		cabecera(salida, "bd_espera_conexion_segundos", "histogram", "Espera para obtener una conexion del pool.");
+		esperaConexiones.escribir(salida, PREFIJO + "bd_espera_conexion_segundos", "", NANOSEGUNDO);
+	}
+
+	/**
+	 * Metodo que da formato a un valor de una metrica.
+	 */
+	static String formatear(double valor) {
+		return valor == Math.rint(valor) && Math.abs(valor) < 1e15 ? Long.toString((long) valor) : Double
+				.toString(valor);
+	}
+
+	private static String etiquetaAlgoritmo(Algoritmo algoritmo) {
+		return "algoritmo=\"" + algoritmo.getParametro() + "\"";
+	}
+
+	private static void cabecera(Writer salida, String nombre, String tipo, String ayuda) throws IOException {
+
+		salida.write("# HELP " + PREFIJO + nombre + " " + ayuda + "\n");
+		salida.write("# TYPE " + PREFIJO + nombre + " " + tipo + "\n");
+	}
+
+	private static void valor(Writer salida, String nombre, String tipo, String ayuda, double valor)
+			throws IOException {
+
+		cabecera(salida, nombre, tipo, ayuda);
+		salida.write(PREFIJO + nombre + " " + formatear(valor) + "\n");
+	}
+}
@@ -0,0 +1,138 @@
+package control;
+
+import java.io.File;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.ServletContext;
+import javax.sql.DataSource;
+
+import modelo.BaseDatos;
+import modelo.CambiosMapa;
+import modelo.Mapa;
+
+/**
+ * Tarea que aplica al mapa los cambios registrados en la tabla CambiosMapa desde la ultima ejecucion. La nueva version
+ * del mapa se construye y se prepara aparte, mientras la anterior sigue atendiendo peticiones, y se publica con una
+ * sola sustitucion de la referencia compartida. Si algo falla la version anterior se mantiene y los mismos cambios se
+ * vuelven a intentar en la siguiente ejecucion.
+ *
+ * Cada ejecucion vuelve a leer los ultimos cambios ya aplicados (la ventana de cambios), ya que un cambio puede
+ * confirmarse despues de otro con un identificador mayor, y solo aplica los que no estan entre los aplicados.
+ *
+ * La tarea se ejecuta siempre en el mismo hilo, por lo que no hay dos recargas a la vez.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see ContextoAplicacion
+ */
+final class RecargaMapa implements Runnable {
+
+	private final ServletContext contexto;
+	private final DataSource servicioConexiones;
+	private final AtomicReference<Mapa> referenciaMapa;
+	private final int tamanioLectura;
+	private final File ficheroMapa;
+	private final Metricas metricas;
+	// Numero de identificadores anteriores al ultimo cambio aplicado que se vuelven a leer en cada ejecucion.
+	private final int ventanaCambios;
+	// Identificador del ultimo cambio aplicado al mapa publicado.
+	private long ultimoCambio;
+	// Identificadores de los cambios de la ventana ya aplicados al mapa publicado.
+	private final SortedSet<Long> cambiosAplicados;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param contexto
+	 * Contexto de la aplicacion web, para preparar el mapa y registrar las recargas.
+	 * @param servicioConexiones
+	 * Pool de conexiones de la base de datos.
+	 * @param referenciaMapa
+	 * Referencia en la que se publica cada nueva version del mapa.
+	 * @param ultimoCambio
+	 * Identificador del ultimo cambio incluido en el mapa actual.
+	 * @param cambiosAplicados
+	 * Identificadores de los cambios de la ventana anterior a ultimoCambio incluidos en el mapa actual. La tarea pasa
+	 * a ser su propietaria.
+	 * @param ventanaCambios
+	 * Numero de identificadores anteriores al ultimo cambio aplicado que se vuelven a leer en cada ejecucion.
+	 * @param tamanioLectura
+	 * Numero de filas por bloque al leer los cambios.
+	 * @param ficheroMapa
+	 * Fichero en el que se guarda la instantanea de cada nueva version del mapa.
+	 */
+	RecargaMapa(ServletContext contexto, DataSource servicioConexiones, AtomicReference<Mapa> referenciaMapa,
+			long ultimoCambio, SortedSet<Long> cambiosAplicados, int ventanaCambios, int tamanioLectura,
+			File ficheroMapa) {
+
+		this.contexto = contexto;
+		this.servicioConexiones = servicioConexiones;
+		this.referenciaMapa = referenciaMapa;
+		this.ultimoCambio = ultimoCambio;
+		this.cambiosAplicados = cambiosAplicados;
+		this.ventanaCambios = ventanaCambios;
+		this.tamanioLectura = tamanioLectura;
+		this.ficheroMapa = ficheroMapa;
+		this.metricas = Metricas.obtener(contexto);
+	}
+
+	/**
+	 * Metodo que lee los cambios nuevos y, si los hay, publica la nueva version del mapa y guarda su instantanea.
+	 */
+	public void run() {
+
+		try {
+			CambiosMapa cambios = new CambiosMapa();
+			long cambioLeido;
+			BaseDatos bd = ContextoAplicacion.conectar(metricas, servicioConexiones);
+			try {
+				cambioLeido = bd.obtenerCambios(Math.max(0, ultimoCambio - ventanaCambios), cambiosAplicados, cambios,
+						tamanioLectura);
+				// Las carreteras de las ciudades nuevas se leen enteras: pueden haber llegado antes que la ciudad.
+				bd.obtenerCarreteras(cambios.ciudadesAniadidas(referenciaMapa.get()), cambios);
+			} finally {
+				metricas.registrarFilasLeidas(bd.getFilasLeidas());
+				bd.cerrarConexionConBD();
+			}
+			if (cambios.estaVacio()) {
+				marcarAplicados(cambios, cambioLeido);
+				return;
+			}
+
+			long inicio = System.currentTimeMillis();
+			Mapa mapaActual = referenciaMapa.get();
+			Mapa mapaNuevo = cambios.aplicar(mapaActual);
+			if (mapaNuevo.congelar().huella() == mapaActual.congelar().huella()) {
+				// Los cambios no alteran el mapa (por ejemplo, una carretera que ya existia): no se vuelve a preparar.
+				marcarAplicados(cambios, cambioLeido);
+				return;
+			}
+			ContextoAplicacion.prepararMapa(contexto, mapaNuevo, true);
+			// Solo esta tarea sustituye el mapa, por lo que la referencia sigue conteniendo mapaActual.
+			referenciaMapa.set(mapaNuevo);
+			marcarAplicados(cambios, cambioLeido);
+			metricas.registrarRecarga((System.currentTimeMillis() - inicio) * 1000000L, cambios.numeroCambios());
+			contexto.log(cambios.numeroCambios() + " cambios del mapa aplicados hasta el cambio " + cambioLeido + " en "
+					+ (System.currentTimeMillis() - inicio) + " ms: " + mapaNuevo.numeroCiudadesMapa() + " ciudades");
+			if (mapaActual.getCacheArboles() != null) {
+				contexto.log("Cache de arboles de caminos minimos de la version anterior: "
+						+ mapaActual.getCacheArboles());
+			}
+			ContextoAplicacion.guardarInstantanea(contexto, mapaNuevo, ultimoCambio, ficheroMapa);
+		} catch (Exception e) {
+			// Una excepcion no capturada cancelaria las siguientes ejecuciones.
+			metricas.registrarRecargaFallida();
+			contexto.log("No se pudieron aplicar los cambios del mapa desde el cambio " + ultimoCambio, e);
+		}
+	}
+
+	/**
+	 * Metodo que da por aplicados los cambios leidos y olvida los que ya han salido de la ventana.
+	 */
+	private void marcarAplicados(CambiosMapa cambios, long cambioLeido) {
+
+		cambiosAplicados.addAll(cambios.getIdentificadores());
+		ultimoCambio = Math.max(ultimoCambio, cambioLeido);
+		cambiosAplicados.headSet(Long.valueOf(ultimoCambio - ventanaCambios + 1)).clear();
+	}
+}
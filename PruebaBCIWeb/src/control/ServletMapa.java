@@ -0,0 +1,74 @@
+package control;
+
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
+import javax.servlet.http.HttpServlet;
+
+import modelo.Mapa;
+
+/**
+ * Servlet base de los que consultan el mapa de ciudades. Al inicializarse obtiene del contexto de la aplicacion la
+ * referencia al mapa, las metricas y el ejecutor de rutas, y queda no disponible si el mapa no se pudo construir.
+ *
+ * El servlet guarda la referencia y no el mapa, ya que cada recarga publica una nueva version sustituyendo su
+ * contenido (ver RecargaMapa). Cada peticion debe llamar a mapaActual una sola vez al empezar y trabajar con ese mapa
+ * hasta terminar, aunque el mapa se recargue mientras tanto.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see ContextoAplicacion#obtenerReferenciaMapa(javax.servlet.ServletContext)
+ */
+abstract class ServletMapa extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private AtomicReference<Mapa> referenciaMapa;
+	private Metricas metricas;
+	private EjecutorRutas ejecutorRutas;
+
+	/**
+	 * Este metodo se ejecuta solo una vez, durante la inicializacion del servlet. En el se obtiene el mapa de ciudades
+	 * que ContextoAplicacion construye al desplegar la aplicacion. De ese modo se tiene disponible para las futuras
+	 * peticiones.
+	 *
+	 * @throws UnavailableException
+	 * Si el mapa no se pudo construir al desplegar la aplicacion.
+	 * @see Servlet#init(ServletConfig)
+	 */
+	public void init(ServletConfig config) throws ServletException {
+		super.init(config);
+		referenciaMapa = ContextoAplicacion.obtenerReferenciaMapa(getServletContext());
+		if (referenciaMapa == null) {
+			throw new UnavailableException("El mapa de ciudades no esta disponible");
+		}
+		metricas = Metricas.obtener(getServletContext());
+		ejecutorRutas = EjecutorRutas.obtener(getServletContext());
+	}
+
+	/**
+	 * Metodo que devuelve la version actual del mapa.
+	 *
+	 * @return Mapa de ciudades con el que debe trabajar la peticion hasta terminar.
+	 */
+	final Mapa mapaActual() {
+		return referenciaMapa.get();
+	}
+
+	/**
+	 * Metodo que devuelve las metricas de la aplicacion.
+	 *
+	 * @return Metricas de la aplicacion.
+	 */
+	final Metricas getMetricas() {
+		return metricas;
+	}
+
+	/**
+	 * Metodo que devuelve el ejecutor en el que se calculan las rutas.
+	 *
+	 * @return Ejecutor de rutas de la aplicacion.
+	 */
+	final EjecutorRutas getEjecutorRutas() {
+		return ejecutorRutas;
+	}
+}
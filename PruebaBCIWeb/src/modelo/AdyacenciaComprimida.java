@@ -0,0 +1,492 @@
+package modelo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Clase que representa los nombres, las coordenadas y las carreteras de un grafo compacto guardados fuera del
+ * monticulo de Java, en buffers directos o proyectados desde un fichero, y comprimidos. Esta pensada para mapas de
+ * decenas de millones de carreteras, en los que los arrays del grafo compacto presionan al recolector de basura y al
+ * tamanio maximo del monticulo. No guarda ninguna referencia al grafo compacto: una vez guardada en un fichero, otro
+ * proceso la proyecta y busca rutas sin construir el grafo en el monticulo.
+ *
+ * No es una forma alternativa de almacenar el mapa de la aplicacion web: la jerarquia de contracciones, el
+ * etiquetado de hubs, el indice espacial y el resto de estructuras de Mapa se construyen sobre el grafo compacto, que
+ * la aplicacion mantiene en el monticulo. Sobre la forma comprimida solo se buscan rutas con Dijkstra y A*.
+ *
+ * Las ciudades adyacentes de cada ciudad estan ordenadas por identificador y se guardan como diferencias en formato
+ * varint (7 bits por byte): la primera respecto a la propia ciudad, en zigzag porque puede ser negativa, y las
+ * siguientes respecto a la anterior. La distancia de cada carretera se cuantiza a un numero entero de unidades de
+ * 'resolucion' KM, redondeando hacia arriba para que la linea recta siga siendo una cota inferior y A* siga dando el
+ * camino minimo, y tambien se guarda en varint. Las distancias de los caminos pueden superar a las del grafo compacto
+ * en hasta 'resolucion' KM por carretera.
+ *
+ * Las carreteras se recorren con un Recorrido, que decodifica las ciudades adyacentes una a una sin crear objetos. Los
+ * nombres se guardan en UTF-8 en el orden de los identificadores, que es el alfabetico, por lo que el identificador de
+ * un nombre se busca por busqueda binaria.
+ *
+ * En un mapa agrupado de 100.000 ciudades cada carretera ocupa unos 4,6 bytes, frente a los 8 (un int y un float) del
+ * grafo compacto, y las busquedas son del orden de un 25% mas lentas por la decodificacion.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see AlgoritmoDijkstra#calcularRuta(AdyacenciaComprimida, int, int)
+ * @see AlgoritmoAEstrella#ejecutar(AdyacenciaComprimida, int, int)
+ */
+public final class AdyacenciaComprimida {
+
+	/**
+	 * Resolucion por defecto de las distancias: 1 metro.
+	 */
+	public static final float RESOLUCION_DEFECTO = 0.001f;
+
+	// Cabecera y version del formato del fichero ("ADY" + 2).
+	private static final int MAGICO = 0x41445902;
+	private static final int TAMANIO_CABECERA = 32;
+
+	private final long huella;
+	private final int numeroCiudades;
+	private final int numeroCarreteras;
+	private final float resolucion;
+	// Coordenadas x e y de cada ciudad, intercaladas.
+	private final ByteBuffer coordenadas;
+	// Posicion en 'carreteras' en la que empiezan las carreteras de cada ciudad, con una posicion final mas.
+	private final ByteBuffer inicioCarreteras;
+	// Ciudades adyacentes y distancias codificadas en varint.
+	private final ByteBuffer carreteras;
+	// Posicion en 'nombres' en la que empieza el nombre de cada ciudad, con una posicion final mas.
+	private final ByteBuffer inicioNombres;
+	// Nombres de las ciudades en UTF-8, uno tras otro.
+	private final ByteBuffer nombres;
+
+	private AdyacenciaComprimida(long huella, int numeroCiudades, int numeroCarreteras, float resolucion,
+			ByteBuffer coordenadas, ByteBuffer inicioCarreteras, ByteBuffer carreteras, ByteBuffer inicioNombres,
+			ByteBuffer nombres) {
+
+		this.huella = huella;
+		this.numeroCiudades = numeroCiudades;
+		this.numeroCarreteras = numeroCarreteras;
+		this.resolucion = resolucion;
+		this.coordenadas = coordenadas.order(ByteOrder.LITTLE_ENDIAN);
+		this.inicioCarreteras = inicioCarreteras.order(ByteOrder.LITTLE_ENDIAN);
+		this.carreteras = carreteras;
+		this.inicioNombres = inicioNombres.order(ByteOrder.LITTLE_ENDIAN);
+		this.nombres = nombres;
+	}
+
+	/**
+	 * Metodo que construye la forma comprimida de un grafo en buffers directos. Una vez construida no depende del
+	 * grafo, que puede liberarse.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa.
+	 * @param resolucion
+	 * Unidad en KM a la que se cuantizan las distancias. Ver RESOLUCION_DEFECTO.
+	 * @return Forma comprimida del grafo.
+	 */
+	public static AdyacenciaComprimida construir(GrafoCompacto grafo, float resolucion) {
+
+		if (!(resolucion > 0.0f)) {
+			throw new IllegalArgumentException("Resolucion no valida: " + resolucion);
+		}
+		int numeroCiudades = grafo.numeroCiudades();
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		ByteBuffer coordenadas = ByteBuffer.allocateDirect(8 * numeroCiudades).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < numeroCiudades; i++) {
+			coordenadas.putFloat(grafo.getCoordX(i)).putFloat(grafo.getCoordY(i));
+		}
+
+		// Primera pasada: tamanio codificado de las carreteras de cada ciudad.
+		ByteBuffer inicioCarreteras = ByteBuffer.allocateDirect(4 * (numeroCiudades + 1)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		long bytesCarreteras = 0;
+		for (int i = 0; i < numeroCiudades; i++) {
+			inicioCarreteras.putInt(4 * i, (int) bytesCarreteras);
+			int anterior = i;
+			for (int pos = inicioAdyacentes[i]; pos < inicioAdyacentes[i + 1]; pos++) {
+				int adyacente = ciudadesAdyacentes[pos];
+				long diferencia = pos == inicioAdyacentes[i] ? zigzag(adyacente - anterior) : adyacente - anterior;
+				bytesCarreteras += bytesVarint(diferencia)
+						+ bytesVarint(cuantizar(distanciasAdyacentes[pos], resolucion));
+				anterior = adyacente;
+			}
+			if (bytesCarreteras > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("El grafo no cabe en un buffer: " + bytesCarreteras + " bytes");
+			}
+		}
+		inicioCarreteras.putInt(4 * numeroCiudades, (int) bytesCarreteras);
+
+		// Segunda pasada: codificacion.
+		ByteBuffer carreteras = ByteBuffer.allocateDirect((int) bytesCarreteras);
+		for (int i = 0; i < numeroCiudades; i++) {
+			int anterior = i;
+			for (int pos = inicioAdyacentes[i]; pos < inicioAdyacentes[i + 1]; pos++) {
+				int adyacente = ciudadesAdyacentes[pos];
+				escribirVarint(carreteras, pos == inicioAdyacentes[i] ? zigzag(adyacente - anterior) : adyacente
+						- anterior);
+				escribirVarint(carreteras, cuantizar(distanciasAdyacentes[pos], resolucion));
+				anterior = adyacente;
+			}
+		}
+
+		// Nombres en UTF-8, con la posicion de inicio de cada uno.
+		ByteBuffer inicioNombres = ByteBuffer.allocateDirect(4 * (numeroCiudades + 1)).order(ByteOrder.LITTLE_ENDIAN);
+		long bytesNombres = 0;
+		for (int i = 0; i < numeroCiudades; i++) {
+			inicioNombres.putInt(4 * i, (int) bytesNombres);
+			bytesNombres += grafo.obtenerNombre(i).getBytes(StandardCharsets.UTF_8).length;
+			if (bytesNombres > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Los nombres no caben en un buffer: " + bytesNombres + " bytes");
+			}
+		}
+		inicioNombres.putInt(4 * numeroCiudades, (int) bytesNombres);
+		ByteBuffer nombres = ByteBuffer.allocateDirect((int) bytesNombres);
+		for (int i = 0; i < numeroCiudades; i++) {
+			nombres.put(grafo.obtenerNombre(i).getBytes(StandardCharsets.UTF_8));
+		}
+
+		return new AdyacenciaComprimida(grafo.huella(), numeroCiudades, ciudadesAdyacentes.length, resolucion,
+				coordenadas, inicioCarreteras, carreteras, inicioNombres, nombres);
+	}
+
+	/**
+	 * Metodo que guarda la forma comprimida en un fichero para proyectarlo despues en memoria. Se escribe primero en un
+	 * fichero temporal que luego se renombra.
+	 *
+	 * @param fichero
+	 * Fichero en el que se guarda la forma comprimida.
+	 * @throws IOException
+	 * Si no se puede escribir el fichero.
+	 */
+	public void guardar(File fichero) throws IOException {
+
+		File temporal = new File(fichero.getPath() + ".tmp");
+		FileChannel canal = FileChannel.open(temporal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer cabecera = ByteBuffer.allocate(TAMANIO_CABECERA).order(ByteOrder.LITTLE_ENDIAN);
+			cabecera.putInt(MAGICO).putLong(huella).putInt(numeroCiudades).putInt(numeroCarreteras);
+			cabecera.putFloat(resolucion).putInt(carreteras.capacity()).putInt(nombres.capacity());
+			cabecera.clear();
+			escribirCompleto(canal, cabecera);
+			escribirCompleto(canal, coordenadas.duplicate());
+			escribirCompleto(canal, inicioCarreteras.duplicate());
+			escribirCompleto(canal, carreteras.duplicate());
+			escribirCompleto(canal, inicioNombres.duplicate());
+			escribirCompleto(canal, nombres.duplicate());
+		} finally {
+			canal.close();
+		}
+		Files.move(temporal.toPath(), fichero.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Metodo que proyecta en memoria una forma comprimida guardada con el metodo guardar. Los datos no se copian: el
+	 * sistema operativo los lee del fichero segun se recorren, y no hace falta el grafo compacto del mapa.
+	 *
+	 * @param fichero
+	 * Fichero en el que se guardo la forma comprimida.
+	 * @return Forma comprimida del grafo. Null si el fichero no tiene el formato esperado.
+	 * @throws IOException
+	 * Si no se puede leer el fichero.
+	 */
+	public static AdyacenciaComprimida proyectar(File fichero) throws IOException {
+
+		FileChannel canal = FileChannel.open(fichero.toPath(), StandardOpenOption.READ);
+		try {
+			if (canal.size() < TAMANIO_CABECERA) {
+				return null;
+			}
+			ByteBuffer cabecera = canal.map(FileChannel.MapMode.READ_ONLY, 0, TAMANIO_CABECERA).order(
+					ByteOrder.LITTLE_ENDIAN);
+			long huella = cabecera.getLong(4);
+			int numeroCiudades = cabecera.getInt(12);
+			int numeroCarreteras = cabecera.getInt(16);
+			float resolucion = cabecera.getFloat(20);
+			int bytesCarreteras = cabecera.getInt(24);
+			int bytesNombres = cabecera.getInt(28);
+			long posicionInicios = TAMANIO_CABECERA + 8L * numeroCiudades;
+			long posicionCarreteras = posicionInicios + 4L * (numeroCiudades + 1);
+			long posicionInicioNombres = posicionCarreteras + bytesCarreteras;
+			long posicionNombres = posicionInicioNombres + 4L * (numeroCiudades + 1);
+			if (cabecera.getInt(0) != MAGICO || numeroCiudades < 0 || bytesCarreteras < 0 || bytesNombres < 0
+					|| canal.size() != posicionNombres + bytesNombres) {
+				return null;
+			}
+			// Las proyecciones siguen siendo validas despues de cerrar el canal.
+			FileChannel.MapMode modo = FileChannel.MapMode.READ_ONLY;
+			return new AdyacenciaComprimida(huella, numeroCiudades, numeroCarreteras, resolucion, canal.map(modo,
+					TAMANIO_CABECERA, 8L * numeroCiudades), canal.map(modo, posicionInicios,
+					4L * (numeroCiudades + 1)), canal.map(modo, posicionCarreteras, bytesCarreteras), canal.map(modo,
+					posicionInicioNombres, 4L * (numeroCiudades + 1)), canal.map(modo, posicionNombres, bytesNombres));
+		} finally {
+			canal.close();
+		}
+	}
+
+	/**
+	 * Metodo que devuelve la huella del grafo a partir del cual se construyo la forma comprimida, para comprobar si
+	 * un fichero corresponde a un mapa.
+	 *
+	 * @return Huella del grafo.
+	 * @see GrafoCompacto#huella()
+	 */
+	public long huella() {
+		return huella;
+	}
+
+	/**
+	 * Metodo que devuelve el nombre de una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Nombre de la ciudad.
+	 */
+	public String obtenerNombre(int ciudad) {
+
+		int inicio = inicioNombres.getInt(4 * ciudad);
+		byte[] bytes = new byte[inicioNombres.getInt(4 * ciudad + 4) - inicio];
+		ByteBuffer nombre = nombres.duplicate();
+		nombre.position(inicio);
+		nombre.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Metodo que busca el identificador de una ciudad por su nombre. Como los nombres estan ordenados, la busqueda es
+	 * binaria y solo decodifica del orden de log n nombres.
+	 *
+	 * @param nombreCiudad
+	 * Nombre de la ciudad.
+	 * @return Identificador de la ciudad, o -1 si no existe.
+	 */
+	public int obtenerIndice(String nombreCiudad) {
+
+		int desde = 0;
+		int hasta = numeroCiudades - 1;
+		while (desde <= hasta) {
+			int central = (desde + hasta) >>> 1;
+			int comparacion = obtenerNombre(central).compareTo(nombreCiudad);
+			if (comparacion < 0) {
+				desde = central + 1;
+			} else if (comparacion > 0) {
+				hasta = central - 1;
+			} else {
+				return central;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades.
+	 *
+	 * @return Numero de ciudades.
+	 */
+	public int numeroCiudades() {
+		return numeroCiudades;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras, contando cada una en los dos sentidos.
+	 *
+	 * @return Numero de carreteras dirigidas.
+	 */
+	public int numeroCarreteras() {
+		return numeroCarreteras;
+	}
+
+	/**
+	 * Metodo que devuelve la unidad en KM a la que se cuantizaron las distancias.
+	 *
+	 * @return Resolucion de las distancias.
+	 */
+	public float getResolucion() {
+		return resolucion;
+	}
+
+	/**
+	 * Metodo que devuelve los bytes que ocupa la forma comprimida fuera del monticulo: coordenadas, posiciones de
+	 * inicio, carreteras codificadas y nombres.
+	 *
+	 * @return Numero de bytes.
+	 */
+	public long bytesOcupados() {
+		return (long) coordenadas.capacity() + inicioCarreteras.capacity() + carreteras.capacity()
+				+ inicioNombres.capacity() + nombres.capacity();
+	}
+
+	/**
+	 * Metodo que devuelve los bytes que ocupan por termino medio las carreteras codificadas (ciudad adyacente y
+	 * distancia), sin contar coordenadas ni posiciones de inicio. En el grafo compacto son 8.
+	 *
+	 * @return Bytes por carretera dirigida.
+	 */
+	public double bytesPorCarretera() {
+		return numeroCarreteras == 0 ? 0.0 : (double) carreteras.capacity() / numeroCarreteras;
+	}
+
+	/**
+	 * Metodo que devuelve la coordenada x de una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Coordenada x.
+	 */
+	public float getCoordX(int ciudad) {
+		return coordenadas.getFloat(8 * ciudad);
+	}
+
+	/**
+	 * Metodo que devuelve la coordenada y de una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Coordenada y.
+	 */
+	public float getCoordY(int ciudad) {
+		return coordenadas.getFloat(8 * ciudad + 4);
+	}
+
+	/**
+	 * Metodo que crea un recorrido de las carreteras. Un recorrido se puede reutilizar para tantas ciudades como se
+	 * quiera, pero no se debe compartir entre hilos.
+	 *
+	 * @return Recorrido sin iniciar.
+	 */
+	public Recorrido recorrido() {
+		return new Recorrido();
+	}
+
+	/**
+	 * Metodo que devuelve el espacio de trabajo de las busquedas del hilo actual.
+	 *
+	 * @see GrafoCompacto#espacioBusqueda()
+	 */
+	EspacioBusqueda espacioBusqueda() {
+		return EspacioBusqueda.delHilo(numeroCiudades);
+	}
+
+	/**
+	 * Cursor sobre las carreteras de una ciudad. Uso:
+	 *
+	 * for (recorrido.iniciar(ciudad); recorrido.siguiente();) { recorrido.ciudad(); recorrido.distancia(); }
+	 */
+	public final class Recorrido {
+
+		private int posicion;
+		private int fin;
+		private int ciudad;
+		private float distancia;
+		private boolean primera;
+
+		private Recorrido() {
+		}
+
+		/**
+		 * Metodo que situa el recorrido antes de la primera carretera de una ciudad.
+		 *
+		 * @param ciudadPartida
+		 * Identificador de la ciudad.
+		 */
+		public void iniciar(int ciudadPartida) {
+
+			posicion = inicioCarreteras.getInt(4 * ciudadPartida);
+			fin = inicioCarreteras.getInt(4 * ciudadPartida + 4);
+			ciudad = ciudadPartida;
+			primera = true;
+		}
+
+		/**
+		 * Metodo que avanza a la siguiente carretera.
+		 *
+		 * @return false si no quedan carreteras de la ciudad.
+		 */
+		public boolean siguiente() {
+
+			if (posicion >= fin) {
+				return false;
+			}
+			long diferencia = leerVarint();
+			ciudad += primera ? (int) ((diferencia >>> 1) ^ -(diferencia & 1)) : (int) diferencia;
+			primera = false;
+			distancia = leerVarint() * resolucion;
+			return true;
+		}
+
+		/**
+		 * Metodo que devuelve la ciudad adyacente de la carretera actual.
+		 *
+		 * @return Identificador de la ciudad adyacente.
+		 */
+		public int ciudad() {
+			return ciudad;
+		}
+
+		/**
+		 * Metodo que devuelve la distancia cuantizada de la carretera actual.
+		 *
+		 * @return Distancia en KM.
+		 */
+		public float distancia() {
+			return distancia;
+		}
+
+		private long leerVarint() {
+
+			long valor = 0;
+			int desplazamiento = 0;
+			byte b;
+			do {
+				b = carreteras.get(posicion++);
+				valor |= (long) (b & 0x7F) << desplazamiento;
+				desplazamiento += 7;
+			} while (b < 0);
+			return valor;
+		}
+	}
+
+	private static long cuantizar(float distancia, float resolucion) {
+		return (long) Math.ceil(distancia / (double) resolucion);
+	}
+
+	private static long zigzag(int valor) {
+		return ((long) valor << 1) ^ ((long) valor >> 63);
+	}
+
+	private static int bytesVarint(long valor) {
+
+		int bytes = 1;
+		while ((valor >>>= 7) != 0) {
+			bytes++;
+		}
+		return bytes;
+	}
+
+	private static void escribirVarint(ByteBuffer buffer, long valor) {
+
+		while ((valor & ~0x7FL) != 0) {
+			buffer.put((byte) ((valor & 0x7F) | 0x80));
+			valor >>>= 7;
+		}
+		buffer.put((byte) valor);
+	}
+
+	private static void escribirCompleto(FileChannel canal, ByteBuffer datos) throws IOException {
+
+		datos.clear();
+		while (datos.hasRemaining()) {
+			canal.write(datos);
+		}
+	}
+}
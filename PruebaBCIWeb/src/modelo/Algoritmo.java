@@ -0,0 +1,93 @@
+package modelo;
+
+/**
+ * Enumerado con los algoritmos de busqueda de caminos disponibles en el mapa. Cada algoritmo tiene asociado el valor
+ * con el que se selecciona desde una peticion http.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#calcularRuta(String, String, Algoritmo)
+ */
+public enum Algoritmo {
+
+	/**
+	 * Algoritmo Dijkstra con parada temprana al asentar la ciudad destino.
+	 */
+	DIJKSTRA("dijkstra", "Dijkstra"),
+
+	/**
+	 * Algoritmo A* guiado por la distancia en linea recta hasta la ciudad destino.
+	 */
+	A_ESTRELLA("aestrella", "A*"),
+
+	/**
+	 * Algoritmo A* guiado ademas por las tablas de puntos de referencia (ALT) preparadas al cargar el mapa.
+	 */
+	ALT("alt", "A* con puntos de referencia (ALT)"),
+
+	/**
+	 * Algoritmo Dijkstra bidireccional: una busqueda desde el origen y otra desde el destino hasta que se encuentran.
+	 */
+	BIDIRECCIONAL("bidireccional", "Dijkstra bidireccional"),
+
+	/**
+	 * Consulta sobre la jerarquia de contracciones preparada al cargar el mapa.
+	 */
+	JERARQUIA("jerarquia", "Jerarquia de contracciones"),
+
+	/**
+	 * Consulta sobre el etiquetado de hubs preparado al cargar el mapa, reconstruyendo el camino a partir de las
+	 * etiquetas.
+	 */
+	HUBS("hubs", "Etiquetado de hubs"),
+
+	/**
+	 * Recorrido de las tablas de caminos minimos entre todos los pares de ciudades, si se calcularon al cargar el mapa.
+	 */
+	TABLA("tabla", "Tabla de caminos precalculada");
+
+	private final String parametro;
+	private final String descripcion;
+
+	private Algoritmo(String parametro, String descripcion) {
+		this.parametro = parametro;
+		this.descripcion = descripcion;
+	}
+
+	/**
+	 * Metodo que devuelve el valor con el que se selecciona el algoritmo en una peticion http.
+	 *
+	 * @return Valor del parametro de la peticion.
+	 */
+	public String getParametro() {
+		return parametro;
+	}
+
+	/**
+	 * Metodo que devuelve el nombre del algoritmo tal y como se muestra al usuario.
+	 *
+	 * @return Nombre del algoritmo.
+	 */
+	public String getDescripcion() {
+		return descripcion;
+	}
+
+	/**
+	 * Metodo que obtiene el algoritmo seleccionado a partir del valor de un parametro de una peticion http.
+	 *
+	 * @param parametro
+	 * Valor del parametro. Se ignoran mayusculas y minusculas.
+	 * @return Algoritmo seleccionado. DIJKSTRA si el parametro es null o no corresponde a ningun algoritmo.
+	 */
+	public static Algoritmo desdeParametro(String parametro) {
+
+		if (parametro != null) {
+			for (Algoritmo algoritmo : values()) {
+				if (algoritmo.parametro.equalsIgnoreCase(parametro.trim())) {
+					return algoritmo;
+				}
+			}
+		}
+		return DIJKSTRA;
+	}
+}
@@ -0,0 +1,156 @@
+package modelo;
+
+/**
+ * Clase que implementa el algoritmo A* entre una ciudad origen y una ciudad destino sobre la forma compacta del mapa.
+ * La cola de prioridad ordena las ciudades por g + h, donde g es la distancia recorrida desde el origen y h es la
+ * distancia en linea recta hasta el destino. Como la distancia de cada carretera se calcula con el teorema de
+ * Pitagoras a partir de las coordenadas de sus extremos, ningun camino puede ser mas corto que la linea recta y la
+ * heuristica es admisible: el camino encontrado es el mismo que el de Dijkstra asentando muchas menos ciudades.
+ *
+ * Si se dispone de las tablas de puntos de referencia (ALT) la heuristica es el maximo entre la linea recta y la cota
+ * de la desigualdad triangular sobre los puntos de referencia. El maximo de dos cotas inferiores sigue siendo una cota
+ * inferior, y la de los puntos de referencia tiene en cuenta los rodeos de las carreteras.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#algoritmoAEstrella(String, String)
+ * @see PuntosReferencia
+ */
+public final class AlgoritmoAEstrella {
+
+	// La heuristica se reduce ligeramente para absorber los errores de redondeo de float, de modo que nunca
+	// sobreestime la distancia real y el camino siga siendo minimo.
+	private static final float FACTOR_HEURISTICA = 0.99999f;
+
+	private AlgoritmoAEstrella() {
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades con el algoritmo A*.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino.
+	 */
+	public static Ruta ejecutar(GrafoCompacto grafo, int origen, int destino) {
+		return ejecutar(grafo, origen, destino, null);
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades con el algoritmo A* guiado por la linea recta y por los
+	 * puntos de referencia.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @param puntosReferencia
+	 * Tablas de puntos de referencia calculadas sobre el mismo grafo, o null para usar solo la linea recta.
+	 * @return Ruta entre la ciudad origen y la ciudad destino.
+	 */
+	public static Ruta ejecutar(GrafoCompacto grafo, int origen, int destino, PuntosReferencia puntosReferencia) {
+
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+		float[] coordX = grafo.coordX();
+		float[] coordY = grafo.coordY();
+		float coordXDestino = coordX[destino];
+		float coordYDestino = coordY[destino];
+
+		// g: distancia acumulada desde la ciudad origen. La lista abierta esta ordenada por f = g + h.
+		EspacioBusqueda.Frente frente = grafo.espacioBusqueda().iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			if (ciudad == destino) {
+				break;
+			}
+			float distanciaCiudad = frente.distancia(ciudad);
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				// Si se mejora la distancia de una ciudad que ya salio de la lista abierta se vuelve a abrir. Con la
+				// linea recta y los puntos de referencia, heuristicas consistentes, esto solo puede ocurrir por
+				// redondeo, pero asi el resultado es exacto.
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					float h = (float) Math.hypot(coordX[adyacente] - coordXDestino, coordY[adyacente] - coordYDestino);
+					if (puntosReferencia != null) {
+						h = Math.max(h, puntosReferencia.cotaInferior(adyacente, destino));
+					}
+					pendientes.insertarOReducir(adyacente, distancia + FACTOR_HEURISTICA * h);
+				}
+			}
+		}
+
+		return Ruta.desdeFrente(grafo, origen, destino, frente, ciudadesAsentadas, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades con el algoritmo A* guiado por la linea recta sobre la
+	 * forma comprimida del grafo. Las distancias cuantizadas se redondean hacia arriba, por lo que la linea recta
+	 * sigue siendo una cota inferior.
+	 *
+	 * @param adyacencia
+	 * Forma comprimida del grafo sobre la que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino, sin grafo compacto: los nombres de sus ciudades se
+	 * obtienen de la forma comprimida.
+	 */
+	public static Ruta ejecutar(AdyacenciaComprimida adyacencia, int origen, int destino) {
+
+		float coordXDestino = adyacencia.getCoordX(destino);
+		float coordYDestino = adyacencia.getCoordY(destino);
+
+		AdyacenciaComprimida.Recorrido recorrido = adyacencia.recorrido();
+		EspacioBusqueda.Frente frente = adyacencia.espacioBusqueda().iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			if (ciudad == destino) {
+				break;
+			}
+			float distanciaCiudad = frente.distancia(ciudad);
+			for (recorrido.iniciar(ciudad); recorrido.siguiente();) {
+				carreterasRelajadas++;
+				int adyacente = recorrido.ciudad();
+				float distancia = distanciaCiudad + recorrido.distancia();
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					float h = (float) Math.hypot(adyacencia.getCoordX(adyacente) - coordXDestino,
+							adyacencia.getCoordY(adyacente) - coordYDestino);
+					pendientes.insertarOReducir(adyacente, distancia + FACTOR_HEURISTICA * h);
+				}
+			}
+		}
+
+		return Ruta.desdeFrente(null, origen, destino, frente, ciudadesAsentadas, carreterasRelajadas);
+	}
+}
@@ -0,0 +1,125 @@
+package modelo;
+
+/**
+ * Clase que implementa el algoritmo Dijkstra bidireccional entre una ciudad origen y una ciudad destino. Se lanzan dos
+ * busquedas a la vez, una hacia delante desde el origen y otra hacia atras desde el destino, y en cada paso avanza la
+ * que tiene la ciudad pendiente mas cercana. Cada vez que una busqueda alcanza una ciudad ya alcanzada por la otra se
+ * anota el mejor camino conocido, y el algoritmo termina cuando la suma de las distancias minimas pendientes de las dos
+ * busquedas no puede mejorarlo. Cada busqueda cubre aproximadamente un circulo de radio la mitad de la distancia, por
+ * lo que el numero de ciudades asentadas se reduce a la mitad aproximadamente.
+ *
+ * Como cada carretera se registra en las dos ciudades que une (ver Mapa#aniadirCarretera), el grafo es simetrico y la
+ * busqueda hacia atras recorre las mismas listas de adyacencia que la busqueda hacia delante.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+public final class AlgoritmoBidireccional {
+
+	private AlgoritmoBidireccional() {
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades con el algoritmo Dijkstra bidireccional.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino.
+	 */
+	public static Ruta ejecutar(GrafoCompacto grafo, int origen, int destino) {
+
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		// Indice 0: busqueda hacia delante desde el origen. Indice 1: busqueda hacia atras desde el destino.
+		EspacioBusqueda espacio = grafo.espacioBusqueda();
+		EspacioBusqueda.Frente[] frentes = espacio.iniciarSentidos();
+		MonticuloIndexado pendientesDelante = frentes[0].pendientes();
+		MonticuloIndexado pendientesDetras = frentes[1].pendientes();
+
+		frentes[0].fijar(origen, 0.0f, -1);
+		frentes[1].fijar(destino, 0.0f, -1);
+		pendientesDelante.insertarOReducir(origen, 0.0f);
+		pendientesDetras.insertarOReducir(destino, 0.0f);
+
+		// Mejor camino conocido y ciudad en la que se encuentran las dos busquedas.
+		float mejorDistancia = origen == destino ? 0.0f : Float.POSITIVE_INFINITY;
+		int ciudadEncuentro = origen == destino ? origen : -1;
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		while (!pendientesDelante.estaVacio() && !pendientesDetras.estaVacio()) {
+
+			// Ningun camino que pase por ciudades pendientes puede ser mas corto que el mejor conocido.
+			if (pendientesDelante.claveMinima() + pendientesDetras.claveMinima() >= mejorDistancia) {
+				break;
+			}
+
+			// Avanzar la busqueda cuya frontera esta mas cerca de su ciudad de partida.
+			int sentido = pendientesDelante.claveMinima() <= pendientesDetras.claveMinima() ? 0 : 1;
+			EspacioBusqueda.Frente frenteSentido = frentes[sentido];
+			EspacioBusqueda.Frente frenteContrario = frentes[1 - sentido];
+
+			int ciudad = frenteSentido.pendientes().extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			float distanciaCiudad = frenteSentido.distancia(ciudad);
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				if (distancia < frenteSentido.distancia(adyacente)) {
+					frenteSentido.fijar(adyacente, distancia, ciudad);
+					frenteSentido.pendientes().insertarOReducir(adyacente, distancia);
+				}
+				// Si la otra busqueda ya alcanzo la ciudad adyacente, existe un camino completo que pasa por ella.
+				float distanciaTotal = frenteSentido.distancia(adyacente) + frenteContrario.distancia(adyacente);
+				if (distanciaTotal < mejorDistancia) {
+					mejorDistancia = distanciaTotal;
+					ciudadEncuentro = adyacente;
+				}
+			}
+		}
+
+		if (ciudadEncuentro < 0) {
+			return new Ruta(grafo, origen, destino, null, Float.POSITIVE_INFINITY, ciudadesAsentadas,
+					carreterasRelajadas);
+		}
+		// La mejor distancia suma el tramo de vuelta desde el destino; la de la ruta se suma en el orden del camino.
+		int[] camino = unirCaminos(frentes, ciudadEncuentro);
+		return new Ruta(grafo, origen, destino, camino, grafo.distanciaCamino(camino), ciudadesAsentadas,
+				carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que une el camino desde el origen hasta la ciudad de encuentro con el camino desde la ciudad de encuentro
+	 * hasta el destino.
+	 */
+	private static int[] unirCaminos(EspacioBusqueda.Frente[] frentes, int ciudadEncuentro) {
+
+		int longitudDelante = 0;
+		for (int ciudad = ciudadEncuentro; ciudad >= 0; ciudad = frentes[0].padre(ciudad)) {
+			longitudDelante++;
+		}
+		int longitudDetras = 0;
+		for (int ciudad = frentes[1].padre(ciudadEncuentro); ciudad >= 0; ciudad = frentes[1].padre(ciudad)) {
+			longitudDetras++;
+		}
+
+		int[] camino = new int[longitudDelante + longitudDetras];
+		int i = longitudDelante - 1;
+		for (int ciudad = ciudadEncuentro; ciudad >= 0; ciudad = frentes[0].padre(ciudad)) {
+			camino[i--] = ciudad;
+		}
+		i = longitudDelante;
+		for (int ciudad = frentes[1].padre(ciudadEncuentro); ciudad >= 0; ciudad = frentes[1].padre(ciudad)) {
+			camino[i++] = ciudad;
+		}
+		return camino;
+	}
+}
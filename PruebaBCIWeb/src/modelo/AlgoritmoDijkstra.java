@@ -0,0 +1,318 @@
+package modelo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clase que implementa el algoritmo Dijkstra sobre la forma compacta del mapa usando una cola de prioridad con
+ * reduccion de clave. Cada ciudad entra y sale de la cola como mucho una vez, por lo que el coste de una busqueda es
+ * O((V + E) log V) en lugar del O(V^2) que supone buscar la ciudad mas cercana recorriendo todo el mapa.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see ArbolCaminosMinimos
+ */
+public final class AlgoritmoDijkstra {
+
+	private AlgoritmoDijkstra() {
+	}
+
+	/**
+	 * Metodo que calcula el arbol de caminos minimos desde una ciudad origen. Si se indica una ciudad destino la
+	 * busqueda se detiene en cuanto la distancia hasta el destino es definitiva.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino, o -1 para calcular el arbol completo.
+	 * @return Arbol de caminos minimos con raiz en la ciudad origen.
+	 * @throws java.util.concurrent.CancellationException
+	 * Si el hilo se interrumpe durante la busqueda.
+	 */
+	public static ArbolCaminosMinimos ejecutar(GrafoCompacto grafo, int origen, int destino) {
+
+		return ejecutar(grafo, origen, destino, null);
+	}
+
+	/**
+	 * Metodo que calcula el arbol de caminos minimos desde una ciudad origen para varias peticiones a la vez. La
+	 * busqueda solo se interrumpe si no hay ninguna otra peticion esperando el arbol, ya que las que esperan no deben
+	 * perderlo porque la peticion que lo calcula haya superado su plazo.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino, o -1 para calcular el arbol completo.
+	 * @param esperando
+	 * Numero de otras peticiones que esperan el arbol. Null si el arbol es solo de esta peticion.
+	 * @return Arbol de caminos minimos con raiz en la ciudad origen.
+	 * @throws java.util.concurrent.CancellationException
+	 * Si el hilo se interrumpe durante la busqueda y ninguna otra peticion espera el arbol.
+	 * @see CacheArbolesCaminos
+	 */
+	static ArbolCaminosMinimos ejecutar(GrafoCompacto grafo, int origen, int destino, AtomicInteger esperando) {
+
+		int numeroCiudades = grafo.numeroCiudades();
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		int[] padres = new int[numeroCiudades];
+		float[] distancias = new float[numeroCiudades];
+		Arrays.fill(padres, -1);
+		Arrays.fill(distancias, Float.POSITIVE_INFINITY);
+
+		MonticuloIndexado pendientes = new MonticuloIndexado(numeroCiudades);
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		distancias[origen] = 0.0f;
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			// La ciudad pendiente mas cercana al origen queda asentada: su distancia ya no puede mejorar.
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			if (ciudad == destino) {
+				break;
+			}
+			if (esperando == null || esperando.get() == 0) {
+				EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			}
+			float distanciaCiudad = distancias[ciudad];
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				if (distancia < distancias[adyacente]) {
+					distancias[adyacente] = distancia;
+					padres[adyacente] = ciudad;
+					pendientes.insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		return new ArbolCaminosMinimos(grafo, origen, padres, distancias, ciudadesAsentadas, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades. A diferencia de ejecutar(grafo, origen, destino) no
+	 * devuelve el arbol, por lo que la busqueda se hace sobre el espacio de trabajo del hilo y solo reserva memoria
+	 * para la ruta.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino.
+	 */
+	public static Ruta calcularRuta(GrafoCompacto grafo, int origen, int destino) {
+
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		EspacioBusqueda.Frente frente = grafo.espacioBusqueda().iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			if (ciudad == destino) {
+				break;
+			}
+			float distanciaCiudad = frente.distancia(ciudad);
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					pendientes.insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		return Ruta.desdeFrente(grafo, origen, destino, frente, ciudadesAsentadas, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades sobre la forma comprimida del grafo. Las distancias son
+	 * las cuantizadas de la forma comprimida.
+	 *
+	 * @param adyacencia
+	 * Forma comprimida del grafo sobre la que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino, sin grafo compacto: los nombres de sus ciudades se
+	 * obtienen de la forma comprimida.
+	 */
+	public static Ruta calcularRuta(AdyacenciaComprimida adyacencia, int origen, int destino) {
+
+		AdyacenciaComprimida.Recorrido recorrido = adyacencia.recorrido();
+		EspacioBusqueda.Frente frente = adyacencia.espacioBusqueda().iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			if (ciudad == destino) {
+				break;
+			}
+			float distanciaCiudad = frente.distancia(ciudad);
+			for (recorrido.iniciar(ciudad); recorrido.siguiente();) {
+				carreterasRelajadas++;
+				int adyacente = recorrido.ciudad();
+				float distancia = distanciaCiudad + recorrido.distancia();
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					pendientes.insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		return Ruta.desdeFrente(null, origen, destino, frente, ciudadesAsentadas, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que calcula las ciudades a las que se llega desde una ciudad origen sin superar una distancia maxima. La
+	 * busqueda se detiene en cuanto la ciudad pendiente mas cercana supera la distancia y no encola ninguna ciudad mas
+	 * alejada, por lo que su coste depende del numero de ciudades alcanzadas y no del tamanio del mapa. Se hace sobre
+	 * el espacio de trabajo del hilo y solo reserva memoria para el resultado.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param distanciaMaxima
+	 * Distancia maxima en KM desde el origen, incluida.
+	 * @return Ciudades alcanzadas con su distancia, en orden de distancia.
+	 */
+	public static CiudadesAlcanzables calcularAlcance(GrafoCompacto grafo, int origen, float distanciaMaxima) {
+
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		EspacioBusqueda espacio = grafo.espacioBusqueda();
+		EspacioBusqueda.Frente frente = espacio.iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		// Ciudades asentadas, en orden de distancia.
+		ListaEnteros asentadas = espacio.camino();
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio()) {
+			int ciudad = pendientes.extraerMinimo();
+			asentadas.aniadir(ciudad);
+			EspacioBusqueda.comprobarInterrupcion(asentadas.tamanio());
+			float distanciaCiudad = frente.distancia(ciudad);
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				// Las ciudades fuera del radio no se encolan: la cola solo contiene ciudades que formaran parte del
+				// resultado.
+				if (distancia <= distanciaMaxima && distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					pendientes.insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		int[] ciudades = asentadas.aArray();
+		float[] distancias = new float[ciudades.length];
+		for (int i = 0; i < ciudades.length; i++) {
+			distancias[i] = frente.distancia(ciudades[i]);
+		}
+		return new CiudadesAlcanzables(grafo, origen, distanciaMaxima, ciudades, distancias, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que calcula las rutas desde una ciudad origen hasta varias ciudades destino. La busqueda se detiene en
+	 * cuanto las distancias hasta todos los destinos son definitivas, por lo que una sola busqueda responde a todos los
+	 * destinos de un mismo origen. Se hace sobre el espacio de trabajo del hilo, como las consultas de una sola ruta,
+	 * y solo reserva memoria proporcional al numero de destinos y a las rutas que devuelve.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se busca.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destinos
+	 * Identificadores de las ciudades destino. Puede contener repetidos.
+	 * @return Ruta hasta cada destino, en el mismo orden que destinos. Todas comparten el numero de ciudades asentadas
+	 * y de carreteras examinadas por la busqueda.
+	 */
+	public static Ruta[] calcularRutas(GrafoCompacto grafo, int origen, int[] destinos) {
+
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		// Destinos distintos, ordenados para saber por busqueda binaria si una ciudad asentada es uno de ellos.
+		int[] destinosOrdenados = destinos.clone();
+		Arrays.sort(destinosOrdenados);
+		int destinosPendientes = 0;
+		for (int i = 0; i < destinosOrdenados.length; i++) {
+			if (i == 0 || destinosOrdenados[i] != destinosOrdenados[i - 1]) {
+				destinosOrdenados[destinosPendientes++] = destinosOrdenados[i];
+			}
+		}
+		int numeroDestinos = destinosPendientes;
+
+		EspacioBusqueda.Frente frente = grafo.espacioBusqueda().iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+
+		frente.fijar(origen, 0.0f, -1);
+		pendientes.insertarOReducir(origen, 0.0f);
+
+		while (!pendientes.estaVacio() && destinosPendientes > 0) {
+			int ciudad = pendientes.extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+			if (Arrays.binarySearch(destinosOrdenados, 0, numeroDestinos, ciudad) >= 0) {
+				destinosPendientes--;
+			}
+			float distanciaCiudad = frente.distancia(ciudad);
+			carreterasRelajadas += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					pendientes.insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		Ruta[] rutas = new Ruta[destinos.length];
+		for (int i = 0; i < destinos.length; i++) {
+			rutas[i] = Ruta.desdeFrente(grafo, origen, destinos[i], frente, ciudadesAsentadas, carreterasRelajadas);
+		}
+		return rutas;
+	}
+}
@@ -0,0 +1,303 @@
+package modelo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clase que implementa el algoritmo de Yen para obtener las k rutas simples mas cortas entre dos ciudades: la ruta
+ * minima y sus mejores alternativas, sin ciudades repetidas. Cada ruta se obtiene a partir de la anterior: para cada
+ * ciudad de la ruta anterior (ciudad de desvio) se busca el camino mas corto hasta el destino que empieza por el mismo
+ * tramo hasta el desvio, no vuelve a pasar por ese tramo y no sale del desvio por ninguna carretera que ya usen las
+ * rutas obtenidas con ese mismo tramo. El mejor de esos candidatos es la siguiente ruta.
+ *
+ * En lugar de repetir un Dijkstra completo por cada desvio, todas las busquedas reutilizan el arbol de caminos minimos
+ * con raiz en la ciudad destino. Sus distancias son exactas en el mapa completo y una cota inferior en el mapa con
+ * ciudades y carreteras excluidas, por lo que cada desvio es una busqueda A* muy dirigida. Ademas, en cuanto la
+ * busqueda asienta una ciudad cuyo camino del arbol hasta el destino no pasa por ninguna ciudad excluida, ese camino
+ * completa el desvio sin seguir buscando; a menudo es la propia ciudad de desvio. Por ultimo, un desvio cuya cota
+ * inferior no mejora los candidatos que ya bastan para completar las k rutas no se busca, y la busqueda se abandona en
+ * cuanto su cota los supera.
+ *
+ * Las busquedas usan el espacio de trabajo del hilo: el sentido hacia delante para la busqueda del desvio y el sentido
+ * hacia atras para marcar las ciudades excluidas y el resultado de comprobar sus caminos del arbol.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#calcularRutasAlternativas(String, String, int)
+ */
+public final class AlgoritmoYen {
+
+	// Estado de una ciudad durante un desvio. Se guarda como padre de la ciudad en el sentido hacia atras del espacio
+	// de busqueda, que devuelve -1 para las ciudades aun sin estado.
+	// Ciudad del tramo comun o de desvio: la busqueda no puede pasar por ella.
+	private static final int EXCLUIDA = 0;
+	// Ciudad cuyo camino del arbol llega al destino sin pasar por ciudades excluidas.
+	private static final int LIBRE = 1;
+	// Ciudad cuyo camino del arbol pasa por una ciudad excluida.
+	private static final int CORTADA = 2;
+
+	private AlgoritmoYen() {
+	}
+
+	/**
+	 * Camino encontrado, aceptado como ruta o candidato a serlo.
+	 */
+	private static final class Camino {
+
+		private final int[] ciudades;
+		private final float distancia;
+
+		Camino(int[] ciudades, float distancia) {
+			this.ciudades = ciudades;
+			this.distancia = distancia;
+		}
+	}
+
+	/**
+	 * Metodo que calcula las rutas simples mas cortas entre dos ciudades, ordenadas de menor a mayor distancia.
+	 *
+	 * @param arbolDestino
+	 * Arbol de caminos minimos completo con raiz en la ciudad destino. Como las carreteras son de doble sentido, sus
+	 * distancias son las distancias minimas hasta el destino.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param numeroRutas
+	 * Numero maximo de rutas a calcular. Debe ser al menos 1.
+	 * @return Rutas desde la ciudad origen hasta la raiz del arbol. Hay menos de numeroRutas si no existen mas caminos
+	 * simples, y una sola ruta que no existe si las ciudades no estan comunicadas. Las ciudades asentadas y las
+	 * carreteras relajadas de cada ruta son las de todas las busquedas de desvios, sin las del arbol.
+	 */
+	public static List<Ruta> ejecutar(ArbolCaminosMinimos arbolDestino, int origen, int numeroRutas) {
+
+		GrafoCompacto grafo = arbolDestino.getGrafo();
+		int destino = arbolDestino.getOrigen();
+		List<Ruta> resultado = new ArrayList<Ruta>(numeroRutas);
+		if (!arbolDestino.esAlcanzable(origen)) {
+			resultado.add(new Ruta(grafo, origen, destino, null, Float.POSITIVE_INFINITY, 0, 0));
+			return resultado;
+		}
+
+		List<Camino> rutas = new ArrayList<Camino>(numeroRutas);
+		rutas.add(new Camino(caminoArbol(arbolDestino, origen, new int[0], 0), arbolDestino.distancia(origen)));
+		// Mejores candidatos ordenados por distancia. Solo se guardan los que aun pueden llegar a ser rutas.
+		List<Camino> candidatos = new ArrayList<Camino>();
+		EspacioBusqueda espacio = grafo.espacioBusqueda();
+		// Ciudades asentadas y carreteras relajadas por todas las busquedas de desvios.
+		int[] trabajo = new int[2];
+
+		while (rutas.size() < numeroRutas) {
+			int[] anterior = rutas.get(rutas.size() - 1).ciudades;
+			int necesarios = numeroRutas - rutas.size();
+			float distanciaTramo = 0.0f;
+			for (int i = 0; i < anterior.length - 1; i++) {
+				int desvio = anterior[i];
+				// Ningun desvio desde esta ciudad es mas corto que el tramo comun mas la distancia del arbol desde ella.
+				float cota = candidatos.size() >= necesarios ? candidatos.get(necesarios - 1).distancia
+						: Float.POSITIVE_INFINITY;
+				if (distanciaTramo + arbolDestino.distancia(desvio) < cota) {
+					Camino camino = buscarDesvio(arbolDestino, espacio, rutas, anterior, i, distanciaTramo, cota,
+							trabajo);
+					if (camino != null) {
+						aniadirCandidato(candidatos, camino, necesarios);
+					}
+				}
+				distanciaTramo += grafo.distanciaCarretera(desvio, anterior[i + 1]);
+			}
+			if (candidatos.isEmpty()) {
+				break;
+			}
+			rutas.add(candidatos.remove(0));
+		}
+
+		for (Camino ruta : rutas) {
+			resultado.add(new Ruta(grafo, origen, destino, ruta.ciudades, ruta.distancia, trabajo[0], trabajo[1]));
+		}
+		return resultado;
+	}
+
+	/**
+	 * Metodo que busca el camino mas corto hasta el destino que se desvia de una ruta en una de sus ciudades.
+	 *
+	 * @return Camino completo desde el origen, o null si no existe o no mejora la cota.
+	 */
+	private static Camino buscarDesvio(ArbolCaminosMinimos arbolDestino, EspacioBusqueda espacio, List<Camino> rutas,
+			int[] anterior, int posicionDesvio, float distanciaTramo, float cota, int[] trabajo) {
+
+		GrafoCompacto grafo = arbolDestino.getGrafo();
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+		int destino = arbolDestino.getOrigen();
+		int desvio = anterior[posicionDesvio];
+
+		// Las ciudades del tramo comun y la de desvio no se pueden volver a visitar.
+		EspacioBusqueda.Frente estados = espacio.iniciarDetras();
+		for (int i = 0; i <= posicionDesvio; i++) {
+			estados.fijar(anterior[i], 0.0f, EXCLUIDA);
+		}
+		// Carreteras que salen del desvio y ya usan las rutas con el mismo tramo comun.
+		ListaEnteros salidasExcluidas = espacio.tramo();
+		for (Camino ruta : rutas) {
+			if (ruta.ciudades.length > posicionDesvio + 1 && mismoTramo(ruta.ciudades, anterior, posicionDesvio)) {
+				salidasExcluidas.aniadir(ruta.ciudades[posicionDesvio + 1]);
+			}
+		}
+		ListaEnteros pila = espacio.pila();
+
+		EspacioBusqueda.Frente frente = espacio.iniciarDelante();
+		MonticuloIndexado pendientes = frente.pendientes();
+		frente.fijar(desvio, 0.0f, -1);
+		pendientes.insertarOReducir(desvio, arbolDestino.distancia(desvio));
+
+		while (!pendientes.estaVacio()) {
+			// Con las distancias del arbol como estimacion, la clave minima es una cota inferior del desvio.
+			if (distanciaTramo + pendientes.claveMinima() >= cota) {
+				return null;
+			}
+			int ciudad = pendientes.extraerMinimo();
+			trabajo[0]++;
+			EspacioBusqueda.comprobarInterrupcion(trabajo[0]);
+			// El camino del arbol desde la ciudad completa el desvio si no pasa por ninguna ciudad excluida. Desde la
+			// ciudad de desvio, ademas, no puede empezar por una salida excluida.
+			boolean completa;
+			if (ciudad == destino) {
+				completa = true;
+			} else if (ciudad == desvio) {
+				int siguiente = arbolDestino.padre(ciudad);
+				completa = !contiene(salidasExcluidas, siguiente) && esLibre(arbolDestino, estados, siguiente, pila);
+			} else {
+				completa = esLibre(arbolDestino, estados, ciudad, pila);
+			}
+			if (completa) {
+				int[] tramoDesvio = frente.camino(ciudad);
+				int[] ciudades = new int[posicionDesvio + tramoDesvio.length];
+				System.arraycopy(anterior, 0, ciudades, 0, posicionDesvio);
+				System.arraycopy(tramoDesvio, 0, ciudades, posicionDesvio, tramoDesvio.length);
+				return new Camino(caminoArbol(arbolDestino, ciudad, ciudades, ciudades.length - 1), distanciaTramo
+						+ frente.distancia(ciudad) + arbolDestino.distancia(ciudad));
+			}
+
+			float distanciaCiudad = frente.distancia(ciudad);
+			trabajo[1] += inicioAdyacentes[ciudad + 1] - inicioAdyacentes[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				if (estados.padre(adyacente) == EXCLUIDA
+						|| (ciudad == desvio && contiene(salidasExcluidas, adyacente))) {
+					continue;
+				}
+				float distancia = distanciaCiudad + distanciasAdyacentes[i];
+				if (distancia < frente.distancia(adyacente)) {
+					frente.fijar(adyacente, distancia, ciudad);
+					pendientes.insertarOReducir(adyacente, distancia + arbolDestino.distancia(adyacente));
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Metodo que comprueba si el camino del arbol desde una ciudad llega al destino sin pasar por ninguna ciudad
+	 * excluida. El resultado se guarda para todas las ciudades recorridas, de modo que cada ciudad se recorre como
+	 * mucho una vez por desvio.
+	 */
+	private static boolean esLibre(ArbolCaminosMinimos arbolDestino, EspacioBusqueda.Frente estados, int ciudad,
+			ListaEnteros pila) {
+
+		int destino = arbolDestino.getOrigen();
+		pila.vaciar();
+		int estado;
+		while (true) {
+			if (ciudad == destino) {
+				estado = LIBRE;
+				break;
+			}
+			estado = estados.padre(ciudad);
+			if (estado >= 0) {
+				break;
+			}
+			pila.aniadir(ciudad);
+			ciudad = arbolDestino.padre(ciudad);
+			if (ciudad < 0) {
+				// Ciudad no comunicada con el destino.
+				estado = CORTADA;
+				break;
+			}
+		}
+		if (estado == EXCLUIDA) {
+			estado = CORTADA;
+		}
+		while (!pila.estaVacia()) {
+			estados.fijar(pila.extraerUltimo(), 0.0f, estado);
+		}
+		return estado == LIBRE;
+	}
+
+	/**
+	 * Metodo que completa un camino con el camino del arbol desde una ciudad hasta el destino.
+	 *
+	 * @param inicio
+	 * Ciudades del camino hasta la ciudad incluida.
+	 * @param posicion
+	 * Posicion de la ciudad en inicio.
+	 */
+	private static int[] caminoArbol(ArbolCaminosMinimos arbolDestino, int ciudad, int[] inicio, int posicion) {
+
+		int longitud = 0;
+		for (int c = ciudad; arbolDestino.padre(c) >= 0; c = arbolDestino.padre(c)) {
+			longitud++;
+		}
+		int[] ciudades = Arrays.copyOf(inicio, posicion + 1 + longitud);
+		ciudades[posicion] = ciudad;
+		for (int c = ciudad, i = posicion + 1; arbolDestino.padre(c) >= 0; i++) {
+			c = arbolDestino.padre(c);
+			ciudades[i] = c;
+		}
+		return ciudades;
+	}
+
+	/**
+	 * Metodo que inserta un candidato en orden de distancia si no esta repetido y queda entre los maximo primeros.
+	 */
+	private static void aniadirCandidato(List<Camino> candidatos, Camino candidato, int maximo) {
+
+		for (Camino otro : candidatos) {
+			if (Arrays.equals(otro.ciudades, candidato.ciudades)) {
+				return;
+			}
+		}
+		int posicion = candidatos.size();
+		while (posicion > 0 && candidatos.get(posicion - 1).distancia > candidato.distancia) {
+			posicion--;
+		}
+		if (posicion < maximo) {
+			candidatos.add(posicion, candidato);
+			if (candidatos.size() > maximo) {
+				candidatos.remove(candidatos.size() - 1);
+			}
+		}
+	}
+
+	/**
+	 * Metodo que comprueba si dos caminos coinciden hasta una posicion incluida.
+	 */
+	private static boolean mismoTramo(int[] camino, int[] otro, int posicion) {
+
+		for (int i = posicion; i >= 0; i--) {
+			if (camino[i] != otro[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean contiene(ListaEnteros lista, int elemento) {
+
+		for (int i = 0; i < lista.tamanio(); i++) {
+			if (lista.obtener(i) == elemento) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,154 @@
+package modelo;
+
+/**
+ * Clase que representa el arbol de caminos minimos obtenido al buscar caminos desde una ciudad origen. Para cada
+ * ciudad se guarda su ciudad padre en el arbol y la distancia minima desde la ciudad origen, ambos indexados por el
+ * identificador de la ciudad en el grafo compacto.
+ *
+ * Si la busqueda se detuvo al alcanzar una ciudad destino, solo son definitivas las distancias de las ciudades
+ * asentadas antes de detenerla, entre ellas la del destino y las de todas las ciudades de su camino.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see AlgoritmoDijkstra
+ */
+public final class ArbolCaminosMinimos {
+
+	private final GrafoCompacto grafo;
+	private final int origen;
+	private final int[] padres;
+	private final float[] distancias;
+	private final int ciudadesAsentadas;
+	private final int carreterasRelajadas;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo sobre el que se ha realizado la busqueda.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param padres
+	 * Ciudad padre de cada ciudad en el arbol. -1 para la ciudad origen y para las ciudades no alcanzadas.
+	 * @param distancias
+	 * Distancia minima desde la ciudad origen. Infinito para las ciudades no alcanzadas.
+	 * @param ciudadesAsentadas
+	 * Numero de ciudades cuya distancia quedo fijada durante la busqueda.
+	 * @param carreterasRelajadas
+	 * Numero de carreteras examinadas desde las ciudades asentadas.
+	 */
+	ArbolCaminosMinimos(GrafoCompacto grafo, int origen, int[] padres, float[] distancias, int ciudadesAsentadas,
+			int carreterasRelajadas) {
+
+		this.grafo = grafo;
+		this.origen = origen;
+		this.padres = padres;
+		this.distancias = distancias;
+		this.ciudadesAsentadas = ciudadesAsentadas;
+		this.carreterasRelajadas = carreterasRelajadas;
+	}
+
+	/**
+	 * Metodo que devuelve el grafo sobre el que se ha calculado el arbol.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad raiz del arbol.
+	 *
+	 * @return Identificador de la ciudad origen.
+	 */
+	public int getOrigen() {
+		return origen;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades asentadas durante la busqueda que produjo el arbol.
+	 *
+	 * @return Numero de ciudades asentadas.
+	 */
+	public int getCiudadesAsentadas() {
+		return ciudadesAsentadas;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras examinadas durante la busqueda que produjo el arbol.
+	 *
+	 * @return Numero de carreteras relajadas.
+	 */
+	public int getCarreterasRelajadas() {
+		return carreterasRelajadas;
+	}
+
+	/**
+	 * Metodo que devuelve una estimacion de la memoria que ocupa el arbol: los arrays de padres y distancias mas la
+	 * cabecera del objeto.
+	 *
+	 * @return Memoria ocupada en bytes.
+	 */
+	public long memoriaOcupada() {
+		return 4L * padres.length + 4L * distancias.length + 64L;
+	}
+
+	/**
+	 * Metodo que indica si una ciudad es alcanzable desde la ciudad origen.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return true si existe un camino desde la ciudad origen hasta la ciudad.
+	 */
+	public boolean esAlcanzable(int ciudad) {
+		return distancias[ciudad] != Float.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad padre de una ciudad en el arbol.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Identificador de la ciudad padre. -1 si la ciudad es el origen o no es alcanzable.
+	 */
+	public int padre(int ciudad) {
+		return padres[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la distancia minima desde la ciudad origen hasta una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Distancia en KM. Infinito si la ciudad no es alcanzable.
+	 */
+	public float distancia(int ciudad) {
+		return distancias[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la secuencia de ciudades que hay que atravesar para ir desde la ciudad origen hasta una
+	 * ciudad destino.
+	 *
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Identificadores de las ciudades del camino, empezando por la ciudad origen y terminando por la ciudad
+	 * destino. null si la ciudad destino no es alcanzable.
+	 */
+	public int[] camino(int destino) {
+
+		if (!esAlcanzable(destino)) {
+			return null;
+		}
+		int longitud = 1;
+		for (int ciudad = destino; padres[ciudad] >= 0; ciudad = padres[ciudad]) {
+			longitud++;
+		}
+		int[] camino = new int[longitud];
+		for (int ciudad = destino, i = longitud - 1; i >= 0; ciudad = padres[ciudad], i--) {
+			camino[i] = ciudad;
+		}
+		return camino;
+	}
+}
@@ -1,9 +1,15 @@
 package modelo;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import javax.sql.DataSource;
 
 /**
@@ -17,7 +23,14 @@ import javax.sql.DataSource;
  */
 public class BaseDatos {
 
+	/**
+	 * Numero de filas por bloque que se usa por defecto al leer el mapa.
+	 */
+	public static final int TAMANIO_LECTURA_DEFECTO = 10000;
+
 	private Connection conexion;
+	// Filas leidas con esta conexion al cargar el mapa y sus cambios.
+	private long filasLeidas;
 
 	/**
 	 * Constructor de la clase.
@@ -50,56 +63,258 @@ public class BaseDatos {
 		}
 	}
 
+	/**
+	 * Este metodo construye un mapa a partir de la informacion almacenada en una base de datos relacional, leyendo
+	 * las filas con el tamanio de lectura por defecto.
+	 * 
+	 * @return Mapa que representa el grafo con el que trabaja la aplicacion.
+	 * @throws SQLException
+	 * Si no se pudieron leer las ciudades o las carreteras.
+	 * @see #obtenerMapaBD(int)
+	 */
+	public Mapa obtenerMapaBD() throws SQLException {
+
+		return obtenerMapaBD(TAMANIO_LECTURA_DEFECTO);
+	}
+
 	/**
 	 * Este metodo construye un mapa a partir de la informacion almacenada en una base de datos relacional. Los datos
 	 * necesarios para acceder a la base de datos estan disponibles en el objeto conexion, gracias a que ha sido creado
 	 * a partir de un pool de conexiones en el que ya se especifica la url de la base de datos, el nombre del usuario y
 	 * su clave.
 	 * 
-	 * @return Mapa que representa el grafo con el que trabaja la aplicacion.
+	 * Las ciudades y las carreteras se recorren con cursores de solo avance y solo lectura, que el driver puede servir
+	 * por bloques sin cargar todas las filas en memoria, y cada fila se vuelca directamente en la forma compacta del
+	 * mapa con ConstructorMapa. Con MySQL la lectura por bloques requiere useCursorFetch=true en la url de conexion.
+	 * La lectura se registra como evento pruebabci.CargaMapa de JDK Flight Recorder.
+	 * 
+	 * @param tamanioLectura
+	 * Numero de filas que el driver trae de la base de datos en cada bloque. Con 0 se usa el valor por defecto del
+	 * driver.
+	 * @return Mapa que representa el grafo con el que trabaja la aplicacion, ya congelado.
+	 * @throws SQLException
+	 * Si no se pudieron leer las ciudades o las carreteras.
 	 * @see Mapa
+	 * @see ConstructorMapa
 	 */
-	public Mapa obtenerMapaBD() {
+	public Mapa obtenerMapaBD(int tamanioLectura) throws SQLException {
 
-		Statement stmt = null;
-		ResultSet rs = null;
-		Mapa mapa = new Mapa();
+		EventoCargaMapa evento = new EventoCargaMapa();
+		evento.begin();
+		long filasAntes = filasLeidas;
+		ConstructorMapa constructor = new ConstructorMapa();
 
+		// Recuperar las ciudades de la base de datos.
+		Statement stmt = crearConsultaSecuencial(tamanioLectura);
 		try {
-			// Crear la estructura que permite acceder a la base de datos.
-			stmt = conexion.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
-			// Recuperar las ciudades de la base de datos.
-			rs = stmt.executeQuery("SELECT nombreCiudad, coordX, coordY FROM Ciudades");
-			// Recorrer todos los registros obtenidos de la base de datos extrayendo la informacion util.
+			ResultSet rs = stmt.executeQuery("SELECT nombreCiudad, coordX, coordY FROM Ciudades");
+			// Las columnas se leen por posicion para no buscar su nombre en cada fila.
 			while (rs.next()) {
-				mapa.aniadirCiudad(new Ciudad(rs.getString("nombreCiudad"), rs.getFloat("coordX"), rs.getFloat("coordY")));
+				constructor.aniadirCiudad(rs.getString(1), rs.getFloat(2), rs.getFloat(3));
+				filasLeidas++;
 			}
-			// Recuperar todas las carreteras de la base de datos.
-			rs = stmt.executeQuery("SELECT nombreCiudadA, nombreCiudadb FROM Carreteras");
-			// Recorrer todos los registros obtenidos de la base de datos extrayendo la informacion util.
+			rs.close();
+		} finally {
+			stmt.close();
+		}
+
+		long filasCiudades = filasLeidas - filasAntes;
+
+		// Recuperar todas las carreteras de la base de datos. Un cursor abierto por bloques ocupa la conexion hasta que
+		// se cierra, por lo que cada consulta usa su propio Statement.
+		stmt = crearConsultaSecuencial(tamanioLectura);
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT nombreCiudadA, nombreCiudadB FROM Carreteras");
 			while (rs.next()) {
-				mapa.aniadirCarretera(rs.getString("nombreCiudadA"), rs.getString("nombreCiudadB"));
+				constructor.aniadirCarretera(rs.getString(1), rs.getString(2));
+				filasLeidas++;
 			}
 			rs.close();
-		} catch (SQLException sqle) {
-			// sqle.printStackTrace();
 		} finally {
-			try {
-				if (stmt != null) {
-					stmt.close();
+			stmt.close();
+		}
+
+		Mapa mapa = constructor.construir();
+		if (evento.shouldCommit()) {
+			evento.tamanioLectura = tamanioLectura;
+			evento.filasCiudades = filasCiudades;
+			evento.filasCarreteras = filasLeidas - filasAntes - filasCiudades;
+			evento.ciudades = mapa.numeroCiudadesMapa();
+			evento.carreteras = mapa.congelar().numeroAdyacencias() / 2;
+			evento.commit();
+		}
+		return mapa;
+	}
+
+	/**
+	 * Metodo que devuelve el identificador del ultimo cambio registrado en la tabla CambiosMapa. Se consulta antes de
+	 * leer el mapa, de modo que los cambios que se produzcan durante la lectura se vuelvan a aplicar despues.
+	 * 
+	 * @return Identificador del ultimo cambio, 0 si la tabla esta vacia.
+	 * @throws SQLException
+	 * Si no se pudo consultar la tabla, por ejemplo porque no existe.
+	 * @see CambiosMapa
+	 */
+	public long obtenerUltimoCambio() throws SQLException {
+
+		Statement stmt = conexion.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(idCambio), 0) FROM CambiosMapa");
+			long ultimoCambio = rs.next() ? rs.getLong(1) : 0;
+			rs.close();
+			return ultimoCambio;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Metodo que devuelve los identificadores de los cambios de la tabla CambiosMapa que hay entre dos dados. Se
+	 * consulta antes de leer el mapa completo: esos cambios ya estan en las tablas Ciudades y Carreteras, y los de la
+	 * ventana que aun no se han confirmado se aplicaran en la recarga.
+	 * 
+	 * @param desdeCambio
+	 * Los identificadores devueltos son mayores que este.
+	 * @param hastaCambio
+	 * Los identificadores devueltos son menores o iguales que este.
+	 * @return Identificadores de los cambios, en orden.
+	 * @throws SQLException
+	 * Si no se pudo consultar la tabla.
+	 */
+	public Set<Long> obtenerIdentificadoresCambios(long desdeCambio, long hastaCambio) throws SQLException {
+
+		Set<Long> identificadores = new TreeSet<Long>();
+		PreparedStatement stmt = conexion.prepareStatement("SELECT idCambio FROM CambiosMapa "
+				+ "WHERE idCambio > ? AND idCambio <= ?");
+		try {
+			stmt.setLong(1, desdeCambio);
+			stmt.setLong(2, hastaCambio);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				identificadores.add(Long.valueOf(rs.getLong(1)));
+				filasLeidas++;
+			}
+			rs.close();
+		} finally {
+			stmt.close();
+		}
+		return identificadores;
+	}
+
+	/**
+	 * Metodo que lee los cambios del mapa registrados en la tabla CambiosMapa despues de uno dado. La tabla se rellena
+	 * con los disparadores de las tablas Ciudades y Carreteras.
+	 * 
+	 * Los identificadores AUTO_INCREMENT se asignan al insertar la fila, no al confirmar la transaccion, por lo que un
+	 * cambio puede aparecer despues de otro con un identificador mayor. Por eso se lee una ventana de cambios
+	 * anteriores al ultimo aplicado y se saltan los que ya se aplicaron.
+	 * 
+	 * @param desdeCambio
+	 * Identificador a partir del cual se leen los cambios, sin incluirlo.
+	 * @param cambiosAplicados
+	 * Identificadores de los cambios ya aplicados, que se saltan.
+	 * @param cambios
+	 * Conjunto en el que se registran los cambios leidos, en orden.
+	 * @param tamanioLectura
+	 * Numero de filas que el driver trae de la base de datos en cada bloque. Con 0 se usa el valor por defecto del
+	 * driver.
+	 * @return Mayor identificador leido, aplicado o no, o desdeCambio si no hay ningun cambio.
+	 * @throws SQLException
+	 * Si no se pudo consultar la tabla.
+	 * @see CambiosMapa
+	 */
+	public long obtenerCambios(long desdeCambio, Set<Long> cambiosAplicados, CambiosMapa cambios, int tamanioLectura)
+			throws SQLException {
+
+		long ultimoCambio = desdeCambio;
+		PreparedStatement stmt = conexion.prepareStatement("SELECT idCambio, tipo, nombreCiudadA, nombreCiudadB, "
+				+ "coordX, coordY FROM CambiosMapa WHERE idCambio > ? ORDER BY idCambio", ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		try {
+			stmt.setFetchSize(tamanioLectura);
+			stmt.setLong(1, desdeCambio);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				long idCambio = rs.getLong(1);
+				ultimoCambio = idCambio;
+				filasLeidas++;
+				if (cambiosAplicados.contains(Long.valueOf(idCambio))) {
+					continue;
 				}
-			} catch (SQLException sqle) {
-				// sqle.printStackTrace();
+				// Los cambios de tipo desconocido se ignoran.
+				cambios.registrar(idCambio, rs.getString(2), rs.getString(3), rs.getString(4), rs.getFloat(5),
+						rs.getFloat(6));
 			}
+			rs.close();
+		} finally {
+			stmt.close();
 		}
-		return mapa;
+		return ultimoCambio;
+	}
+
+	/**
+	 * Metodo que lee de la tabla Carreteras todas las carreteras de unas ciudades y las registra en un conjunto de
+	 * cambios. Se usa con las ciudades que los cambios aniaden al mapa, cuyas carreteras pueden estar en la tabla sin
+	 * figurar entre los cambios leidos, de modo que el mapa recargado sea el mismo que daria una carga completa.
+	 * 
+	 * @param nombresCiudades
+	 * Nombres de las ciudades.
+	 * @param cambios
+	 * Conjunto en el que se registran las carreteras leidas.
+	 * @throws SQLException
+	 * Si no se pudo consultar la tabla.
+	 * @see CambiosMapa#ciudadesAniadidas(Mapa)
+	 */
+	public void obtenerCarreteras(Collection<String> nombresCiudades, CambiosMapa cambios) throws SQLException {
+
+		if (nombresCiudades.isEmpty()) {
+			return;
+		}
+		PreparedStatement stmt = conexion.prepareStatement("SELECT nombreCiudadA, nombreCiudadB FROM Carreteras "
+				+ "WHERE nombreCiudadA = ? OR nombreCiudadB = ?", ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		try {
+			for (String nombreCiudad : nombresCiudades) {
+				stmt.setString(1, nombreCiudad);
+				stmt.setString(2, nombreCiudad);
+				ResultSet rs = stmt.executeQuery();
+				while (rs.next()) {
+					cambios.registrarCarreteraLeida(rs.getString(1), rs.getString(2));
+					filasLeidas++;
+				}
+				rs.close();
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Metodo que devuelve el numero de filas de ciudades, carreteras y cambios leidas con esta conexion.
+	 * 
+	 * @return Numero de filas leidas.
+	 */
+	public long getFilasLeidas() {
+		return filasLeidas;
+	}
+
+	/**
+	 * Metodo que crea una consulta de solo avance y solo lectura con el tamanio de lectura indicado.
+	 */
+	private Statement crearConsultaSecuencial(int tamanioLectura) throws SQLException {
+
+		Statement stmt = conexion.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		stmt.setFetchDirection(ResultSet.FETCH_FORWARD);
+		stmt.setFetchSize(tamanioLectura);
+		return stmt;
 	}
 
 	/**
 	 * Metodo que obtiene el nombre de todas las ciudades que existen en la base de datos. Este metodo ha sido
 	 * implementado para que el jsp VistaInicio durante su primera carga pueda consultar dinamicamente que ciudades
 	 * existen en la aplicacion, recuperar sus nombres, y generar etiquetas html para su visualizacion en el navegador.
-	 * Asi no hay que que escribir 'a pincho' sus nombres en el jsp.
+	 * Asi no hay que que escribir 'a pincho' sus nombres en el jsp. Actualmente VistaInicio no consulta la base de
+	 * datos: usa la lista de ciudades preparada a partir del mapa al desplegar la aplicacion.
 	 * 
 	 * @return El nombre de todas las ciudades que constituyen el mapa de trabajo de la aplicacion.
 	 */
@@ -107,20 +322,17 @@ public class BaseDatos {
 
 		Statement stmt = null;
 		ResultSet rs = null;
-		String nombreCiudades = "";
+		// Los nombres se guardan por separado: pueden contener espacios.
+		List<String> nombreCiudades = new ArrayList<String>();
 
 		try {
 			// Crear la estructura que permite acceder a la base de datos.
-			stmt = conexion.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			stmt = conexion.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			// Recuperar las ciudades de la base de datos.
 			rs = stmt.executeQuery("SELECT nombreCiudad FROM Ciudades");
 			// Recorrer todos los registros obtenidos de la base de datos extrayendo la informacion util.
-			// Para evitar que el primer registro sea un espacio en blanco.
-			rs.next();
-			nombreCiudades = rs.getString("nombreCiudad");
 			while (rs.next()) {
-
-				nombreCiudades += " " + rs.getString("nombreCiudad");
+				nombreCiudades.add(rs.getString(1));
 			}
 			rs.close();
 		} catch (SQLException sqle) {
@@ -134,7 +346,7 @@ public class BaseDatos {
 				// sqle.printStackTrace();
 			}
 		}
-		return nombreCiudades.split(" ");
+		return nombreCiudades.toArray(new String[nombreCiudades.size()]);
 
 	}
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package modelo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clase que representa una cache de arboles de caminos minimos completos, indexada por ciudad origen. Un arbol
+ * completo responde a cualquier ciudad destino, por lo que cuando las peticiones se concentran en unos pocos origenes
+ * la mayoria se resuelven sin ninguna busqueda.
+ *
+ * La cache esta limitada en memoria: cada arbol ocupa unos 8 bytes por ciudad y, cuando la suma supera el maximo, se
+ * expulsan los arboles usados hace mas tiempo (LRU). Si varias peticiones piden a la vez el arbol de un mismo origen
+ * que no esta en la cache, solo la primera ejecuta Dijkstra y las demas esperan su resultado.
+ *
+ * Una peticion interrumpida (por ejemplo, por superar su plazo en control.EjecutorRutas) deja de esperar el arbol. La
+ * que lo calcula abandona el calculo si se interrumpe cuando nadie mas lo espera; si alguna peticion lo espera, lo
+ * termina para ella.
+ *
+ * Los contadores de aciertos, fallos, peticiones compartidas y expulsiones permiten ajustar el tamanio de la cache.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#prepararCacheArboles(long)
+ */
+public final class CacheArbolesCaminos {
+
+	private final GrafoCompacto grafo;
+	private final long memoriaMaxima;
+
+	// Arboles calculados, en orden de acceso: el primero es el usado hace mas tiempo. Protegido por this.
+	private final LinkedHashMap<Integer, ArbolCaminosMinimos> arboles;
+	private long memoriaOcupada;
+	// Calculos en curso, para que las peticiones simultaneas de un mismo origen compartan una sola busqueda.
+	private final ConcurrentHashMap<Integer, CalculoArbol> enCalculo;
+
+	private final AtomicLong aciertos = new AtomicLong();
+	private final AtomicLong fallos = new AtomicLong();
+	private final AtomicLong compartidos = new AtomicLong();
+	private final AtomicLong expulsiones = new AtomicLong();
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo compacto sobre el que se calculan los arboles.
+	 * @param memoriaMaxima
+	 * Memoria maxima en bytes que pueden ocupar los arboles guardados.
+	 */
+	public CacheArbolesCaminos(GrafoCompacto grafo, long memoriaMaxima) {
+
+		this.grafo = grafo;
+		this.memoriaMaxima = memoriaMaxima;
+		this.arboles = new LinkedHashMap<Integer, ArbolCaminosMinimos>(16, 0.75f, true);
+		this.memoriaOcupada = 0;
+		this.enCalculo = new ConcurrentHashMap<Integer, CalculoArbol>();
+	}
+
+	/**
+	 * Metodo que devuelve el arbol de caminos minimos completo de una ciudad origen, calculandolo si no esta en la
+	 * cache.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @return Arbol de caminos minimos completo con raiz en la ciudad origen.
+	 * @throws CancellationException
+	 * Si el hilo se interrumpe mientras espera el arbol, o mientras lo calcula sin que nadie mas lo espere.
+	 */
+	public ArbolCaminosMinimos obtener(int origen) {
+
+		Integer clave = Integer.valueOf(origen);
+		while (true) {
+			ArbolCaminosMinimos arbol = buscar(origen);
+			if (arbol != null) {
+				aciertos.incrementAndGet();
+				return arbol;
+			}
+
+			CalculoArbol tarea = new CalculoArbol(grafo, origen);
+			CalculoArbol enCurso = enCalculo.putIfAbsent(clave, tarea);
+			if (enCurso != null) {
+				compartidos.incrementAndGet();
+				enCurso.esperando.incrementAndGet();
+				try {
+					arbol = esperar(enCurso);
+				} finally {
+					enCurso.esperando.decrementAndGet();
+				}
+				if (arbol != null) {
+					return arbol;
+				}
+				// El hilo que lo calculaba lo abandono justo antes de que esta peticion empezara a esperar.
+				enCalculo.remove(clave, enCurso);
+				continue;
+			}
+
+			try {
+				// Otro hilo pudo terminar el mismo calculo entre la busqueda en la cache y el registro de la tarea.
+				arbol = buscar(origen);
+				if (arbol != null) {
+					aciertos.incrementAndGet();
+					return arbol;
+				}
+				fallos.incrementAndGet();
+				tarea.run();
+				arbol = esperar(tarea);
+				if (arbol == null) {
+					throw new CancellationException("Calculo del arbol de caminos minimos interrumpido");
+				}
+				guardar(clave, arbol);
+				return arbol;
+			} finally {
+				enCalculo.remove(clave, tarea);
+			}
+		}
+	}
+
+	/**
+	 * Metodo que busca un arbol en la cache, marcandolo como el usado mas recientemente.
+	 */
+	private synchronized ArbolCaminosMinimos buscar(int origen) {
+		return arboles.get(Integer.valueOf(origen));
+	}
+
+	/**
+	 * Metodo que guarda un arbol en la cache y expulsa los usados hace mas tiempo hasta respetar la memoria maxima.
+	 * Un arbol que por si solo supera la memoria maxima no se guarda.
+	 */
+	private synchronized void guardar(Integer clave, ArbolCaminosMinimos arbol) {
+
+		long memoriaArbol = arbol.memoriaOcupada();
+		if (memoriaArbol > memoriaMaxima) {
+			return;
+		}
+		ArbolCaminosMinimos anterior = arboles.put(clave, arbol);
+		if (anterior != null) {
+			memoriaOcupada -= anterior.memoriaOcupada();
+		}
+		memoriaOcupada += memoriaArbol;
+
+		Iterator<Map.Entry<Integer, ArbolCaminosMinimos>> iterador = arboles.entrySet().iterator();
+		while (memoriaOcupada > memoriaMaxima && iterador.hasNext()) {
+			memoriaOcupada -= iterador.next().getValue().memoriaOcupada();
+			iterador.remove();
+			expulsiones.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Metodo que espera el resultado de un calculo. Devuelve null si el hilo que lo calculaba lo abandono.
+	 */
+	private static ArbolCaminosMinimos esperar(CalculoArbol tarea) {
+
+		try {
+			return tarea.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Espera del arbol de caminos minimos interrumpida");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				return null;
+			}
+			throw new IllegalStateException("Error calculando el arbol de caminos minimos", e.getCause());
+		}
+	}
+
+	/**
+	 * Metodo que devuelve el grafo sobre el que se calculan los arboles.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve la memoria maxima que pueden ocupar los arboles guardados.
+	 *
+	 * @return Memoria maxima en bytes.
+	 */
+	public long getMemoriaMaxima() {
+		return memoriaMaxima;
+	}
+
+	/**
+	 * Metodo que devuelve la memoria que ocupan los arboles guardados.
+	 *
+	 * @return Memoria ocupada en bytes.
+	 */
+	public synchronized long getMemoriaOcupada() {
+		return memoriaOcupada;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de arboles guardados.
+	 *
+	 * @return Numero de arboles en la cache.
+	 */
+	public synchronized int getNumeroArboles() {
+		return arboles.size();
+	}
+
+	/**
+	 * Metodo que devuelve el numero de peticiones resueltas con un arbol de la cache.
+	 *
+	 * @return Numero de aciertos.
+	 */
+	public long getAciertos() {
+		return aciertos.get();
+	}
+
+	/**
+	 * Metodo que devuelve el numero de peticiones que tuvieron que calcular el arbol.
+	 *
+	 * @return Numero de fallos.
+	 */
+	public long getFallos() {
+		return fallos.get();
+	}
+
+	/**
+	 * Metodo que devuelve el numero de peticiones que esperaron el arbol que estaba calculando otra peticion.
+	 *
+	 * @return Numero de peticiones compartidas.
+	 */
+	public long getCompartidos() {
+		return compartidos.get();
+	}
+
+	/**
+	 * Metodo que devuelve el numero de arboles expulsados para respetar la memoria maxima.
+	 *
+	 * @return Numero de expulsiones.
+	 */
+	public long getExpulsiones() {
+		return expulsiones.get();
+	}
+
+	/**
+	 * Calculo en curso del arbol de un origen, con el numero de peticiones que esperan su resultado ademas de la que
+	 * lo ejecuta.
+	 */
+	private static final class CalculoArbol extends FutureTask<ArbolCaminosMinimos> {
+
+		final AtomicInteger esperando;
+
+		CalculoArbol(GrafoCompacto grafo, int origen) {
+			this(grafo, origen, new AtomicInteger());
+		}
+
+		private CalculoArbol(final GrafoCompacto grafo, final int origen, final AtomicInteger esperando) {
+
+			super(new Callable<ArbolCaminosMinimos>() {
+				@Override
+				public ArbolCaminosMinimos call() {
+					return AlgoritmoDijkstra.ejecutar(grafo, origen, -1, esperando);
+				}
+			});
+			this.esperando = esperando;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "aciertos=" + getAciertos() + " fallos=" + getFallos() + " compartidos=" + getCompartidos()
+				+ " expulsiones=" + getExpulsiones() + " arboles=" + getNumeroArboles() + " memoria="
+				+ getMemoriaOcupada() + "/" + memoriaMaxima + " bytes";
+	}
+}
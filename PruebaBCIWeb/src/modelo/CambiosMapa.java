@@ -0,0 +1,259 @@
+package modelo;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clase que representa un conjunto de cambios del mapa (ciudades y carreteras aniadidas, modificadas o eliminadas),
+ * leidos de la tabla CambiosMapa de la base de datos, y que permite aplicarlos a una version del mapa para obtener la
+ * siguiente sin volver a leer las tablas Ciudades y Carreteras.
+ *
+ * Los cambios se registran en el orden en que se produjeron y el ultimo cambio de cada ciudad o carretera es el que
+ * cuenta. Eliminar una ciudad elimina tambien sus carreteras, aunque despues se vuelva a aniadir.
+ *
+ * Una carretera registrada cuando alguna de sus ciudades aun no esta en el mapa se descarta, como en la carga completa
+ * del mapa. Para no perderla cuando la ciudad llega en un conjunto de cambios posterior, o cuando una ciudad se elimina
+ * y se vuelve a aniadir con sus filas de Carreteras intactas, las carreteras de las ciudades aniadidas se vuelven a
+ * leer de la tabla Carreteras antes de aplicar los cambios (ver ciudadesAniadidas).
+ *
+ * Se guardan tambien los identificadores de los cambios leidos, para no volver a aplicarlos cuando se relee la
+ * ventana de cambios anteriores al ultimo aplicado (ver BaseDatos#obtenerCambios).
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see BaseDatos#obtenerCambios(long, Set, CambiosMapa, int)
+ */
+public final class CambiosMapa {
+
+	/**
+	 * Tipo de cambio: ciudad aniadida o con nuevas coordenadas.
+	 */
+	public static final String CIUDAD = "CIUDAD";
+	/**
+	 * Tipo de cambio: ciudad eliminada junto con sus carreteras.
+	 */
+	public static final String BORRAR_CIUDAD = "BORRAR_CIUDAD";
+	/**
+	 * Tipo de cambio: carretera aniadida.
+	 */
+	public static final String CARRETERA = "CARRETERA";
+	/**
+	 * Tipo de cambio: carretera eliminada.
+	 */
+	public static final String BORRAR_CARRETERA = "BORRAR_CARRETERA";
+
+	// Separador de los nombres en la clave de una carretera.
+	private static final char SEPARADOR = '\0';
+
+	// Coordenadas de las ciudades aniadidas o modificadas.
+	private final Map<String, float[]> ciudades = new LinkedHashMap<String, float[]>();
+	// Ciudades eliminadas: sus carreteras anteriores a los cambios desaparecen.
+	private final Set<String> ciudadesBorradas = new HashSet<String>();
+	// Carreteras aniadidas, indexadas por la clave del par de ciudades.
+	private final Map<String, String[]> carreteras = new LinkedHashMap<String, String[]>();
+	// Claves de las carreteras eliminadas.
+	private final Set<String> carreterasBorradas = new HashSet<String>();
+	// Identificadores de los cambios registrados, en el orden de lectura.
+	private final Set<Long> identificadores = new LinkedHashSet<Long>();
+	private int numeroCambios;
+
+	/**
+	 * Metodo que registra un cambio.
+	 *
+	 * @param idCambio
+	 * Identificador del cambio en la tabla CambiosMapa.
+	 * @param tipo
+	 * Tipo de cambio: CIUDAD, BORRAR_CIUDAD, CARRETERA o BORRAR_CARRETERA.
+	 * @param nombreCiudadA
+	 * Nombre de la ciudad, o de la ciudad de un extremo de la carretera.
+	 * @param nombreCiudadB
+	 * Nombre de la ciudad del otro extremo de la carretera. No se usa en los cambios de ciudades.
+	 * @param coordX
+	 * Coordenada x de la ciudad. Solo se usa en los cambios de tipo CIUDAD.
+	 * @param coordY
+	 * Coordenada y de la ciudad. Solo se usa en los cambios de tipo CIUDAD.
+	 * @return false si el tipo es desconocido o faltan nombres, en cuyo caso el cambio se ignora.
+	 */
+	public boolean registrar(long idCambio, String tipo, String nombreCiudadA, String nombreCiudadB, float coordX,
+			float coordY) {
+
+		// Tambien los cambios ignorados se dan por leidos.
+		identificadores.add(Long.valueOf(idCambio));
+		if (tipo == null || nombreCiudadA == null) {
+			return false;
+		}
+		if (CIUDAD.equals(tipo)) {
+			ciudades.put(nombreCiudadA, new float[] { coordX, coordY });
+		} else if (BORRAR_CIUDAD.equals(tipo)) {
+			ciudades.remove(nombreCiudadA);
+			ciudadesBorradas.add(nombreCiudadA);
+			// Las carreteras aniadidas antes en este mismo conjunto de cambios tambien desaparecen.
+			for (Iterator<String[]> it = carreteras.values().iterator(); it.hasNext();) {
+				String[] extremos = it.next();
+				if (extremos[0].equals(nombreCiudadA) || extremos[1].equals(nombreCiudadA)) {
+					it.remove();
+				}
+			}
+		} else if (CARRETERA.equals(tipo) && nombreCiudadB != null) {
+			String clave = clave(nombreCiudadA, nombreCiudadB);
+			carreteras.put(clave, new String[] { nombreCiudadA, nombreCiudadB });
+			carreterasBorradas.remove(clave);
+		} else if (BORRAR_CARRETERA.equals(tipo) && nombreCiudadB != null) {
+			String clave = clave(nombreCiudadA, nombreCiudadB);
+			carreteras.remove(clave);
+			carreterasBorradas.add(clave);
+		} else {
+			return false;
+		}
+		numeroCambios++;
+		return true;
+	}
+
+	/**
+	 * Metodo que registra una carretera leida de la tabla Carreteras para una de las ciudades aniadidas. Se aplica como
+	 * una carretera aniadida, pero no cuenta como cambio.
+	 *
+	 * @param nombreCiudadA
+	 * Nombre de la ciudad de un extremo de la carretera.
+	 * @param nombreCiudadB
+	 * Nombre de la ciudad del otro extremo de la carretera.
+	 * @see BaseDatos#obtenerCarreteras(java.util.Collection, CambiosMapa)
+	 */
+	void registrarCarreteraLeida(String nombreCiudadA, String nombreCiudadB) {
+
+		if (nombreCiudadA != null && nombreCiudadB != null) {
+			String clave = clave(nombreCiudadA, nombreCiudadB);
+			carreteras.put(clave, new String[] { nombreCiudadA, nombreCiudadB });
+			carreterasBorradas.remove(clave);
+		}
+	}
+
+	/**
+	 * Metodo que devuelve las ciudades que los cambios aniaden a un mapa: las que no estan en el y las que se eliminan
+	 * y se vuelven a aniadir. Sus carreteras hay que volver a leerlas de la tabla Carreteras, ya que pueden haberse
+	 * descartado en un conjunto de cambios anterior o haberse eliminado con la ciudad.
+	 *
+	 * @param mapa
+	 * Mapa al que se van a aplicar los cambios.
+	 * @return Nombres de las ciudades aniadidas. Vacio si no hay ninguna.
+	 */
+	public Set<String> ciudadesAniadidas(Mapa mapa) {
+
+		GrafoCompacto grafo = mapa.congelar();
+		Set<String> aniadidas = new LinkedHashSet<String>();
+		for (String nombreCiudad : ciudades.keySet()) {
+			// Una ciudad eliminada sigue en ciudades solo si se volvio a aniadir despues.
+			if (grafo.obtenerIndice(nombreCiudad) < 0 || ciudadesBorradas.contains(nombreCiudad)) {
+				aniadidas.add(nombreCiudad);
+			}
+		}
+		return aniadidas;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de cambios registrados.
+	 *
+	 * @return Numero de cambios.
+	 */
+	public int numeroCambios() {
+		return numeroCambios;
+	}
+
+	/**
+	 * Metodo que devuelve los identificadores de los cambios registrados, incluidos los ignorados.
+	 *
+	 * @return Identificadores de los cambios, en el orden en que se registraron.
+	 */
+	public Set<Long> getIdentificadores() {
+		return Collections.unmodifiableSet(identificadores);
+	}
+
+	/**
+	 * Metodo que indica si no se ha registrado ningun cambio.
+	 *
+	 * @return true si no hay cambios.
+	 */
+	public boolean estaVacio() {
+		return numeroCambios == 0;
+	}
+
+	/**
+	 * Metodo que aplica los cambios a un mapa. El mapa original no se modifica, de modo que puede seguir atendiendo
+	 * peticiones mientras se prepara el nuevo.
+	 *
+	 * @param mapa
+	 * Mapa al que se aplican los cambios.
+	 * @return Nuevo mapa, ya congelado y sin preprocesado.
+	 */
+	public Mapa aplicar(Mapa mapa) {
+
+		GrafoCompacto grafo = mapa.congelar();
+		int numeroCiudades = grafo.numeroCiudades();
+		ConstructorMapa constructor = new ConstructorMapa(numeroCiudades + ciudades.size());
+
+		// Ciudades cuyas carreteras pueden haber cambiado; para el resto no hace falta consultar los cambios.
+		boolean[] borrada = new boolean[numeroCiudades];
+		boolean[] conCarreterasBorradas = new boolean[numeroCiudades];
+		for (String nombreCiudad : ciudadesBorradas) {
+			int ciudad = grafo.obtenerIndice(nombreCiudad);
+			if (ciudad >= 0) {
+				borrada[ciudad] = true;
+			}
+		}
+		for (String clave : carreterasBorradas) {
+			int ciudad = grafo.obtenerIndice(clave.substring(0, clave.indexOf(SEPARADOR)));
+			if (ciudad >= 0) {
+				conCarreterasBorradas[ciudad] = true;
+			}
+		}
+
+		for (int i = 0; i < numeroCiudades; i++) {
+			if (!borrada[i]) {
+				constructor.aniadirCiudad(grafo.obtenerNombre(i), grafo.getCoordX(i), grafo.getCoordY(i));
+			}
+		}
+		// Las ciudades nuevas se aniaden y las existentes toman sus nuevas coordenadas.
+		for (Map.Entry<String, float[]> ciudad : ciudades.entrySet()) {
+			constructor.aniadirCiudad(ciudad.getKey(), ciudad.getValue()[0], ciudad.getValue()[1]);
+		}
+
+		// Cada carretera del grafo aparece en sus dos ciudades; se aniade desde la de menor identificador.
+		for (int i = 0; i < numeroCiudades; i++) {
+			if (borrada[i]) {
+				continue;
+			}
+			String nombreCiudad = grafo.obtenerNombre(i);
+			for (int pos = grafo.inicioAdyacentes(i); pos < grafo.finAdyacentes(i); pos++) {
+				int adyacente = grafo.ciudadAdyacente(pos);
+				if (adyacente < i || borrada[adyacente]) {
+					continue;
+				}
+				String nombreAdyacente = grafo.obtenerNombre(adyacente);
+				if (conCarreterasBorradas[i] || conCarreterasBorradas[adyacente]) {
+					if (carreterasBorradas.contains(clave(nombreCiudad, nombreAdyacente))) {
+						continue;
+					}
+				}
+				constructor.aniadirCarretera(nombreCiudad, nombreAdyacente);
+			}
+		}
+		for (String[] extremos : carreteras.values()) {
+			constructor.aniadirCarretera(extremos[0], extremos[1]);
+		}
+		return constructor.construir();
+	}
+
+	/**
+	 * Metodo que devuelve la clave de una carretera, la misma en los dos sentidos.
+	 */
+	private static String clave(String nombreCiudadA, String nombreCiudadB) {
+
+		return nombreCiudadA.compareTo(nombreCiudadB) <= 0 ? nombreCiudadA + SEPARADOR + nombreCiudadB : nombreCiudadB
+				+ SEPARADOR + nombreCiudadA;
+	}
+}
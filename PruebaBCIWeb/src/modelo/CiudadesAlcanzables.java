@@ -0,0 +1,115 @@
+package modelo;
+
+/**
+ * Clase que representa el resultado de una busqueda acotada desde una ciudad origen: las ciudades a las que se llega
+ * sin superar una distancia maxima, con su distancia minima desde el origen, ordenadas de menor a mayor distancia. Se
+ * guardan en dos arrays paralelos, sin objetos por ciudad.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see AlgoritmoDijkstra#calcularAlcance(GrafoCompacto, int, float)
+ */
+public final class CiudadesAlcanzables {
+
+	private final GrafoCompacto grafo;
+	private final int origen;
+	private final float distanciaMaxima;
+	private final int[] ciudades;
+	private final float[] distancias;
+	private final int carreterasRelajadas;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo sobre el que se ha realizado la busqueda.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param distanciaMaxima
+	 * Distancia maxima en KM de la busqueda.
+	 * @param ciudades
+	 * Identificadores de las ciudades alcanzadas, en orden de distancia. La primera es el origen.
+	 * @param distancias
+	 * Distancia minima en KM desde el origen de cada ciudad de ciudades.
+	 * @param carreterasRelajadas
+	 * Numero de carreteras examinadas durante la busqueda.
+	 */
+	CiudadesAlcanzables(GrafoCompacto grafo, int origen, float distanciaMaxima, int[] ciudades, float[] distancias,
+			int carreterasRelajadas) {
+
+		this.grafo = grafo;
+		this.origen = origen;
+		this.distanciaMaxima = distanciaMaxima;
+		this.ciudades = ciudades;
+		this.distancias = distancias;
+		this.carreterasRelajadas = carreterasRelajadas;
+	}
+
+	/**
+	 * Metodo que devuelve el grafo sobre el que se ha realizado la busqueda.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad origen de la busqueda.
+	 *
+	 * @return Identificador de la ciudad origen.
+	 */
+	public int getOrigen() {
+		return origen;
+	}
+
+	/**
+	 * Metodo que devuelve la distancia maxima de la busqueda.
+	 *
+	 * @return Distancia maxima en KM.
+	 */
+	public float getDistanciaMaxima() {
+		return distanciaMaxima;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades alcanzadas, incluido el origen. Es tambien el numero de ciudades que
+	 * asento la busqueda.
+	 *
+	 * @return Numero de ciudades alcanzadas.
+	 */
+	public int numeroCiudades() {
+		return ciudades.length;
+	}
+
+	/**
+	 * Metodo que devuelve una de las ciudades alcanzadas.
+	 *
+	 * @param posicion
+	 * Posicion de la ciudad, entre 0 y numeroCiudades() - 1, en orden de distancia.
+	 * @return Identificador de la ciudad.
+	 */
+	public int getCiudad(int posicion) {
+		return ciudades[posicion];
+	}
+
+	/**
+	 * Metodo que devuelve la distancia minima desde el origen de una de las ciudades alcanzadas.
+	 *
+	 * @param posicion
+	 * Posicion de la ciudad, entre 0 y numeroCiudades() - 1, en orden de distancia.
+	 * @return Distancia en KM.
+	 */
+	public float getDistancia(int posicion) {
+		return distancias[posicion];
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras examinadas durante la busqueda.
+	 *
+	 * @return Numero de carreteras relajadas.
+	 */
+	public int getCarreterasRelajadas() {
+		return carreterasRelajadas;
+	}
+}
@@ -0,0 +1,234 @@
+package modelo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Clase que construye un mapa directamente en su forma compacta a medida que se leen sus ciudades y carreteras, por
+ * ejemplo desde un cursor de la base de datos. A diferencia de Mapa.aniadirCarretera, cada carretera solo cuesta
+ * resolver sus dos extremos a identificadores enteros: no se crean objetos Ciudad ni HashMap de ciudades adyacentes, y
+ * las distancias se calculan todas juntas al final sobre los arrays de coordenadas.
+ *
+ * Las ciudades deben aniadirse antes que las carreteras que las usan. Igual que en Mapa, las carreteras con alguna
+ * ciudad desconocida se ignoran, una ciudad repetida se queda con las ultimas coordenadas y una carretera repetida
+ * cuenta una sola vez. El grafo resultante es identico, con la misma huella, al que se obtiene con aniadirCiudad,
+ * aniadirCarretera y congelar, por lo que los ficheros de jerarquia de contracciones guardados siguen siendo validos.
+ *
+ * La memoria usada durante la carga es de unos 16 bytes por carretera mas lo que ocupan los nombres de las ciudades.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see BaseDatos#obtenerMapaBD(int)
+ */
+public final class ConstructorMapa {
+
+	private String[] nombres;
+	private float[] coordX;
+	private float[] coordY;
+	private int numeroCiudades;
+	// Identificador provisional de cada ciudad, en orden de llegada. Al construir pasa a ser el definitivo.
+	private final Map<String, Integer> indices;
+	// Extremos de las carreteras, dos identificadores provisionales por carretera.
+	private final ListaEnteros extremos;
+	private int carreterasIgnoradas;
+
+	/**
+	 * Constructor de la clase.
+	 */
+	public ConstructorMapa() {
+
+		this(1024);
+	}
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param capacidadCiudades
+	 * Numero de ciudades previsto. Los arrays crecen si se aniaden mas.
+	 */
+	public ConstructorMapa(int capacidadCiudades) {
+
+		int capacidad = Math.max(capacidadCiudades, 16);
+		nombres = new String[capacidad];
+		coordX = new float[capacidad];
+		coordY = new float[capacidad];
+		indices = new HashMap<String, Integer>(capacidad * 4 / 3 + 1);
+		extremos = new ListaEnteros(capacidad * 4);
+	}
+
+	/**
+	 * Metodo que aniade una ciudad al mapa. Si ya existe una ciudad con el mismo nombre se sustituyen sus coordenadas.
+	 *
+	 * @param nombreCiudad
+	 * Nombre de la ciudad. Las ciudades sin nombre se ignoran.
+	 * @param x
+	 * Coordenada x de la ciudad.
+	 * @param y
+	 * Coordenada y de la ciudad.
+	 */
+	public void aniadirCiudad(String nombreCiudad, float x, float y) {
+
+		if (nombreCiudad == null) {
+			return;
+		}
+		Integer indice = indices.get(nombreCiudad);
+		if (indice == null) {
+			if (numeroCiudades == nombres.length) {
+				int capacidad = nombres.length * 2;
+				nombres = Arrays.copyOf(nombres, capacidad);
+				coordX = Arrays.copyOf(coordX, capacidad);
+				coordY = Arrays.copyOf(coordY, capacidad);
+			}
+			indice = numeroCiudades++;
+			indices.put(nombreCiudad, indice);
+			nombres[indice] = nombreCiudad;
+		}
+		coordX[indice] = x;
+		coordY[indice] = y;
+	}
+
+	/**
+	 * Metodo que aniade una carretera entre dos ciudades ya aniadidas.
+	 *
+	 * @param nombreCiudadA
+	 * Nombre de la ciudad que se haya en un extremo de la carretera.
+	 * @param nombreCiudadB
+	 * Nombre de la ciudad que se haya en el otro extremo de la carretera.
+	 */
+	public void aniadirCarretera(String nombreCiudadA, String nombreCiudadB) {
+
+		Integer ciudadA = nombreCiudadA != null ? indices.get(nombreCiudadA) : null;
+		Integer ciudadB = nombreCiudadB != null ? indices.get(nombreCiudadB) : null;
+		if (ciudadA == null || ciudadB == null) {
+			carreterasIgnoradas++;
+			return;
+		}
+		extremos.aniadir(ciudadA);
+		extremos.aniadir(ciudadB);
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades aniadidas.
+	 *
+	 * @return Numero de ciudades distintas.
+	 */
+	public int numeroCiudades() {
+		return numeroCiudades;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras aniadidas, contando las repetidas.
+	 *
+	 * @return Numero de carreteras con sus dos ciudades conocidas.
+	 */
+	public int numeroCarreteras() {
+		return extremos.tamanio() / 2;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras ignoradas por tener alguna ciudad desconocida.
+	 *
+	 * @return Numero de carreteras ignoradas.
+	 */
+	public int carreterasIgnoradas() {
+		return carreterasIgnoradas;
+	}
+
+	/**
+	 * Metodo que construye el mapa con las ciudades y carreteras aniadidas. El constructor no debe usarse despues.
+	 *
+	 * @return Mapa congelado, con su forma compacta ya construida.
+	 */
+	public Mapa construir() {
+
+		int n = numeroCiudades;
+
+		// Identificadores definitivos: orden alfabetico de los nombres, como en GrafoCompacto.construir.
+		String[] nombresOrdenados = Arrays.copyOf(nombres, n);
+		Arrays.sort(nombresOrdenados);
+		float[] x = new float[n];
+		float[] y = new float[n];
+		int[] definitivo = new int[n];
+		for (int i = 0; i < n; i++) {
+			int provisional = indices.get(nombresOrdenados[i]);
+			definitivo[provisional] = i;
+			x[i] = coordX[provisional];
+			y[i] = coordY[provisional];
+		}
+		// El HashMap de identificadores se reutiliza en el grafo cambiando solo sus valores.
+		for (Map.Entry<String, Integer> entrada : indices.entrySet()) {
+			entrada.setValue(definitivo[entrada.getValue()]);
+		}
+		nombres = null;
+		coordX = null;
+		coordY = null;
+
+		// Cada carretera da dos arcos, uno en cada sentido. Primero se agrupan los arcos por ciudad destino y despues,
+		// recorriendo los destinos en orden, por ciudad de partida. Asi las ciudades adyacentes de cada ciudad quedan
+		// ordenadas por identificador sin ordenar cada lista, y las repetidas quedan juntas.
+		int numeroArcos = extremos.tamanio();
+		int[] inicioDestinos = new int[n + 1];
+		for (int i = 0; i < numeroArcos; i++) {
+			inicioDestinos[definitivo[extremos.obtener(i)] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			inicioDestinos[i + 1] += inicioDestinos[i];
+		}
+		int[] partidasPorDestino = new int[numeroArcos];
+		int[] posicion = Arrays.copyOf(inicioDestinos, n);
+		for (int i = 0; i < numeroArcos; i += 2) {
+			int ciudadA = definitivo[extremos.obtener(i)];
+			int ciudadB = definitivo[extremos.obtener(i + 1)];
+			partidasPorDestino[posicion[ciudadB]++] = ciudadA;
+			partidasPorDestino[posicion[ciudadA]++] = ciudadB;
+		}
+
+		// El numero de arcos por ciudad de partida coincide con el numero por ciudad destino.
+		int[] inicioAdyacentes = Arrays.copyOf(inicioDestinos, n + 1);
+		int[] ciudadesAdyacentes = new int[numeroArcos];
+		System.arraycopy(inicioAdyacentes, 0, posicion, 0, n);
+		for (int destino = 0; destino < n; destino++) {
+			for (int i = inicioDestinos[destino]; i < inicioDestinos[destino + 1]; i++) {
+				int partida = partidasPorDestino[i];
+				// Carretera repetida: el mismo destino acaba de aniadirse a la lista de la ciudad de partida.
+				if (posicion[partida] > inicioAdyacentes[partida] && ciudadesAdyacentes[posicion[partida] - 1] == destino) {
+					continue;
+				}
+				ciudadesAdyacentes[posicion[partida]++] = destino;
+			}
+		}
+		partidasPorDestino = null;
+
+		// Compactar las listas si habia carreteras repetidas.
+		int total = 0;
+		for (int ciudad = 0; ciudad < n; ciudad++) {
+			int desde = inicioAdyacentes[ciudad];
+			int hasta = posicion[ciudad];
+			inicioAdyacentes[ciudad] = total;
+			if (desde != total) {
+				System.arraycopy(ciudadesAdyacentes, desde, ciudadesAdyacentes, total, hasta - desde);
+			}
+			total += hasta - desde;
+		}
+		inicioAdyacentes[n] = total;
+		if (total != numeroArcos) {
+			ciudadesAdyacentes = Arrays.copyOf(ciudadesAdyacentes, total);
+		}
+
+		// Distancias de todas las carreteras en un solo recorrido secuencial. Teorema de Pitagoras, con el mismo
+		// redondeo que Mapa.aniadirCarretera.
+		float[] distanciasAdyacentes = new float[total];
+		for (int ciudad = 0; ciudad < n; ciudad++) {
+			float xCiudad = x[ciudad];
+			float yCiudad = y[ciudad];
+			for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+				int adyacente = ciudadesAdyacentes[i];
+				distanciasAdyacentes[i] = Mapa.longitudCarretera(xCiudad - x[adyacente], yCiudad - y[adyacente]);
+			}
+		}
+
+		return new Mapa(new GrafoCompacto(nombresOrdenados, x, y, inicioAdyacentes, ciudadesAdyacentes,
+				distanciasAdyacentes, indices));
+	}
+}
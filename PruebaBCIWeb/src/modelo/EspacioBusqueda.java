@@ -0,0 +1,254 @@
+package modelo;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Clase que representa el espacio de trabajo de un hilo para las busquedas de caminos sobre un grafo: distancias,
+ * padres y cola de prioridad de cada sentido de busqueda, reservados una sola vez y reutilizados en todas las
+ * busquedas del hilo. Asi una consulta no reserva memoria proporcional al numero de ciudades; solo la ruta que
+ * devuelve.
+ *
+ * Las distancias y los padres no se borran entre busquedas: cada busqueda usa una generacion nueva y una ciudad cuya
+ * marca de generacion no coincide con la actual se considera no alcanzada. Solo cuando el contador de generaciones
+ * se agota se recorren las marcas para reiniciarlas.
+ *
+ * Cada sentido ocupa 24 bytes por ciudad y se reserva la primera vez que se pide, de modo que un hilo que solo hace
+ * consultas sobre tablas o etiquetas usa unicamente las listas auxiliares, y el sentido hacia atras solo existe en los
+ * hilos que hacen busquedas bidireccionales. Un espacio no debe usarse en dos busquedas a la vez.
+ *
+ * El espacio pertenece al hilo y no al grafo: cuando se recarga el mapa, el hilo sigue usando el mismo espacio con el
+ * grafo nuevo mientras quepan sus ciudades, en lugar de reservar otro por cada version del mapa y dejar los anteriores
+ * en el hilo hasta que se liberen.
+ *
+ * Las busquedas de una ruta comprueban periodicamente si su hilo ha sido interrumpido, por ejemplo porque la peticion
+ * ha superado su plazo, y en ese caso se abandonan con una CancellationException.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see GrafoCompacto#espacioBusqueda()
+ */
+final class EspacioBusqueda {
+
+	// Las busquedas comprueban la interrupcion del hilo cada 1024 ciudades asentadas.
+	private static final int MASCARA_COMPROBACION = 1023;
+
+	// Espacio de busqueda de cada hilo, compartido por todos los grafos en los que busca.
+	private static final ThreadLocal<EspacioBusqueda> ESPACIOS_HILOS = new ThreadLocal<EspacioBusqueda>();
+
+	// Numero de ciudades que caben en el espacio.
+	private final int capacidad;
+	private Frente delante;
+	private Frente detras;
+	// Los dos sentidos, indexados por 0 (hacia delante) y 1 (hacia atras), para las busquedas bidireccionales.
+	private Frente[] sentidos;
+	// Listas auxiliares para reconstruir caminos.
+	private final ListaEnteros camino = new ListaEnteros(64);
+	private final ListaEnteros pila = new ListaEnteros(64);
+	private final ListaEnteros tramo = new ListaEnteros(16);
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param capacidad
+	 * Numero de ciudades que caben en el espacio.
+	 */
+	private EspacioBusqueda(int capacidad) {
+
+		this.capacidad = capacidad;
+	}
+
+	/**
+	 * Metodo que devuelve el espacio de busqueda del hilo actual para un grafo. Se reutiliza el espacio que el hilo ya
+	 * tenga si caben las ciudades del grafo y no sobra mas de la mitad; si no, se sustituye por uno de su tamanio, para
+	 * que un hilo no conserve el espacio de un mapa mucho mayor que el actual.
+	 *
+	 * @param numeroCiudades
+	 * Numero de ciudades del grafo.
+	 * @return Espacio de busqueda del hilo actual.
+	 */
+	static EspacioBusqueda delHilo(int numeroCiudades) {
+
+		EspacioBusqueda espacio = ESPACIOS_HILOS.get();
+		if (espacio == null || espacio.capacidad < numeroCiudades || espacio.capacidad / 2 > numeroCiudades) {
+			espacio = new EspacioBusqueda(numeroCiudades);
+			ESPACIOS_HILOS.set(espacio);
+		}
+		return espacio;
+	}
+
+	/**
+	 * Metodo que prepara el sentido hacia delante para una busqueda nueva y lo devuelve.
+	 *
+	 * @return Frente de la busqueda desde la ciudad origen, sin ninguna ciudad alcanzada.
+	 */
+	Frente iniciarDelante() {
+
+		if (delante == null) {
+			delante = new Frente(capacidad);
+		}
+		delante.iniciar();
+		return delante;
+	}
+
+	/**
+	 * Metodo que prepara el sentido hacia atras para una busqueda nueva y lo devuelve.
+	 *
+	 * @return Frente de la busqueda desde la ciudad destino, sin ninguna ciudad alcanzada.
+	 */
+	Frente iniciarDetras() {
+
+		if (detras == null) {
+			detras = new Frente(capacidad);
+		}
+		detras.iniciar();
+		return detras;
+	}
+
+	/**
+	 * Metodo que prepara los dos sentidos para una busqueda bidireccional nueva.
+	 *
+	 * @return Array con el frente hacia delante en la posicion 0 y el frente hacia atras en la posicion 1.
+	 */
+	Frente[] iniciarSentidos() {
+
+		Frente delanteIniciado = iniciarDelante();
+		Frente detrasIniciado = iniciarDetras();
+		if (sentidos == null) {
+			sentidos = new Frente[] { delanteIniciado, detrasIniciado };
+		}
+		return sentidos;
+	}
+
+	/**
+	 * Metodo que abandona la busqueda si el hilo ha sido interrumpido. Solo se consulta el estado del hilo cada cierto
+	 * numero de ciudades asentadas, por lo que se puede llamar tras asentar cada ciudad.
+	 *
+	 * @param ciudadesAsentadas
+	 * Numero de ciudades asentadas hasta el momento por la busqueda.
+	 * @throws CancellationException
+	 * Si el hilo ha sido interrumpido. El estado de interrupcion del hilo se mantiene.
+	 */
+	static void comprobarInterrupcion(int ciudadesAsentadas) {
+
+		if ((ciudadesAsentadas & MASCARA_COMPROBACION) == 0 && Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Busqueda interrumpida tras asentar " + ciudadesAsentadas + " ciudades");
+		}
+	}
+
+	/**
+	 * Metodo que devuelve una lista auxiliar vacia para construir un camino.
+	 */
+	ListaEnteros camino() {
+
+		camino.vaciar();
+		return camino;
+	}
+
+	/**
+	 * Metodo que devuelve una lista auxiliar vacia que se usa como pila.
+	 */
+	ListaEnteros pila() {
+
+		pila.vaciar();
+		return pila;
+	}
+
+	/**
+	 * Metodo que devuelve una lista auxiliar vacia para guardar un tramo de camino.
+	 */
+	ListaEnteros tramo() {
+
+		tramo.vaciar();
+		return tramo;
+	}
+
+	/**
+	 * Estado de una busqueda en un sentido: distancia y padre de cada ciudad alcanzada y cola de ciudades pendientes.
+	 */
+	static final class Frente {
+
+		private final float[] distancias;
+		private final int[] padres;
+		private final int[] generaciones;
+		private final MonticuloIndexado pendientes;
+		private int generacion;
+
+		Frente(int numeroCiudades) {
+
+			distancias = new float[numeroCiudades];
+			padres = new int[numeroCiudades];
+			generaciones = new int[numeroCiudades];
+			pendientes = new MonticuloIndexado(numeroCiudades);
+			generacion = 0;
+		}
+
+		/**
+		 * Metodo que invalida todas las ciudades alcanzadas y vacia la cola.
+		 */
+		void iniciar() {
+
+			pendientes.vaciar();
+			if (generacion == Integer.MAX_VALUE) {
+				Arrays.fill(generaciones, 0);
+				generacion = 0;
+			}
+			generacion++;
+		}
+
+		/**
+		 * Metodo que devuelve la cola de ciudades pendientes de este sentido.
+		 */
+		MonticuloIndexado pendientes() {
+			return pendientes;
+		}
+
+		/**
+		 * Metodo que devuelve la distancia de una ciudad en la busqueda actual.
+		 *
+		 * @return Distancia en KM. Infinito si la ciudad no se ha alcanzado.
+		 */
+		float distancia(int ciudad) {
+			return generaciones[ciudad] == generacion ? distancias[ciudad] : Float.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Metodo que devuelve el padre de una ciudad en la busqueda actual: la ciudad anterior en el camino o, en las
+		 * busquedas que lo necesiten, la arista por la que se llego a ella.
+		 *
+		 * @return Padre de la ciudad, o -1 si la ciudad es la de partida o no se ha alcanzado.
+		 */
+		int padre(int ciudad) {
+			return generaciones[ciudad] == generacion ? padres[ciudad] : -1;
+		}
+
+		/**
+		 * Metodo que fija la distancia y el padre de una ciudad en la busqueda actual.
+		 */
+		void fijar(int ciudad, float distancia, int padre) {
+
+			distancias[ciudad] = distancia;
+			padres[ciudad] = padre;
+			generaciones[ciudad] = generacion;
+		}
+
+		/**
+		 * Metodo que devuelve el camino desde la ciudad de partida hasta una ciudad alcanzada, siguiendo los padres
+		 * cuando estos son ciudades.
+		 *
+		 * @return Identificadores de las ciudades del camino, empezando por la ciudad de partida.
+		 */
+		int[] camino(int ciudadFinal) {
+
+			int longitud = 1;
+			for (int ciudad = ciudadFinal; padre(ciudad) >= 0; ciudad = padre(ciudad)) {
+				longitud++;
+			}
+			int[] camino = new int[longitud];
+			for (int ciudad = ciudadFinal, i = longitud - 1; i >= 0; ciudad = padre(ciudad), i--) {
+				camino[i] = ciudad;
+			}
+			return camino;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package modelo;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Clase que representa un etiquetado de hubs (hub labeling) del mapa: cada ciudad tiene una etiqueta con pares
+ * (hub, distancia) ordenados por hub, de modo que para cualquier par de ciudades existe un hub comun a las dos
+ * etiquetas que esta en un camino minimo entre ellas. La distancia entre dos ciudades se obtiene mezclando sus dos
+ * etiquetas, sin ninguna busqueda sobre el grafo, lo que la hace adecuada para consultas de solo distancia.
+ *
+ * Las etiquetas se construyen con el algoritmo pruned landmark labeling: las ciudades se recorren de mas a menos
+ * importante y desde cada una se lanza una busqueda Dijkstra que se poda en las ciudades cuya distancia ya cubren las
+ * etiquetas construidas hasta el momento. Como los hubs se aniaden en ese mismo orden, cada etiqueta queda ordenada
+ * por hub sin necesidad de ordenarla despues. Con el orden de una jerarquia de contracciones las etiquetas son mucho
+ * mas cortas que con el orden por grado.
+ *
+ * Todas las etiquetas se guardan en arrays planos en formato CSR. Cada entrada guarda ademas la ciudad siguiente en
+ * el camino hacia su hub, lo que permite reconstruir el camino completo (modo camino) siguiendo las etiquetas.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#calcularDistancia(String, String)
+ */
+public final class EtiquetadoHubs {
+
+	private final GrafoCompacto grafo;
+	// Ciudad que corresponde a cada hub. Los hubs se numeran por orden de importancia.
+	private final int[] ciudadesHubs;
+	// Etiquetas en formato CSR: las entradas de la ciudad c ocupan las posiciones [inicioEtiquetas[c],
+	// inicioEtiquetas[c + 1]) y estan ordenadas por hub.
+	private final int[] inicioEtiquetas;
+	private final int[] hubsEtiquetas;
+	private final float[] distanciasEtiquetas;
+	// Ciudad siguiente en el camino minimo hacia el hub de la entrada, o -1 si la ciudad es el propio hub.
+	private final int[] siguientesEtiquetas;
+
+	private EtiquetadoHubs(GrafoCompacto grafo, int[] ciudadesHubs, int[] inicioEtiquetas, int[] hubsEtiquetas,
+			float[] distanciasEtiquetas, int[] siguientesEtiquetas) {
+
+		this.grafo = grafo;
+		this.ciudadesHubs = ciudadesHubs;
+		this.inicioEtiquetas = inicioEtiquetas;
+		this.hubsEtiquetas = hubsEtiquetas;
+		this.distanciasEtiquetas = distanciasEtiquetas;
+		this.siguientesEtiquetas = siguientesEtiquetas;
+	}
+
+	// ----- ----- ----- ----- ----- CONSTRUCCION ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que construye el etiquetado de hubs de un grafo.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa.
+	 * @param orden
+	 * Ciudades del mapa ordenadas de mas a menos importante. Ver ordenPorRango y ordenPorGrado.
+	 * @return Etiquetado de hubs del grafo.
+	 */
+	public static EtiquetadoHubs construir(GrafoCompacto grafo, int[] orden) {
+
+		int numeroCiudades = grafo.numeroCiudades();
+		int[] inicioAdyacentes = grafo.inicioAdyacentes();
+		int[] ciudadesAdyacentes = grafo.ciudadesAdyacentes();
+		float[] distanciasAdyacentes = grafo.distanciasAdyacentes();
+
+		// Etiquetas provisionales de cada ciudad, que crecen segun se aniaden hubs.
+		int[][] hubs = new int[numeroCiudades][];
+		float[][] distanciasHubs = new float[numeroCiudades][];
+		int[][] siguientes = new int[numeroCiudades][];
+		int[] tamanios = new int[numeroCiudades];
+		int totalEntradas = 0;
+
+		// Distancia desde el hub actual a cada uno de los hubs de su etiqueta, indexada por hub.
+		float[] etiquetaHub = new float[numeroCiudades];
+		Arrays.fill(etiquetaHub, Float.POSITIVE_INFINITY);
+		int[] padres = new int[numeroCiudades];
+		float[] distancias = new float[numeroCiudades];
+		Arrays.fill(padres, -1);
+		Arrays.fill(distancias, Float.POSITIVE_INFINITY);
+		ListaEnteros alcanzadas = new ListaEnteros(64);
+		MonticuloIndexado pendientes = new MonticuloIndexado(numeroCiudades);
+
+		for (int hub = 0; hub < numeroCiudades; hub++) {
+			int ciudadHub = orden[hub];
+			for (int i = 0; i < tamanios[ciudadHub]; i++) {
+				etiquetaHub[hubs[ciudadHub][i]] = distanciasHubs[ciudadHub][i];
+			}
+
+			distancias[ciudadHub] = 0.0f;
+			alcanzadas.aniadir(ciudadHub);
+			pendientes.insertarOReducir(ciudadHub, 0.0f);
+			while (!pendientes.estaVacio()) {
+				int ciudad = pendientes.extraerMinimo();
+				float distanciaCiudad = distancias[ciudad];
+
+				// Poda: si las etiquetas ya construidas cubren la distancia, tampoco hace falta seguir por la ciudad.
+				if (distanciaCubierta(etiquetaHub, hubs[ciudad], distanciasHubs[ciudad], tamanios[ciudad],
+						distanciaCiudad)) {
+					continue;
+				}
+
+				int tamanio = tamanios[ciudad];
+				if (hubs[ciudad] == null || tamanio == hubs[ciudad].length) {
+					int capacidad = hubs[ciudad] == null ? 4 : tamanio * 2;
+					hubs[ciudad] = hubs[ciudad] == null ? new int[capacidad] : Arrays.copyOf(hubs[ciudad], capacidad);
+					distanciasHubs[ciudad] = distanciasHubs[ciudad] == null ? new float[capacidad] : Arrays.copyOf(
+							distanciasHubs[ciudad], capacidad);
+					siguientes[ciudad] = siguientes[ciudad] == null ? new int[capacidad] : Arrays.copyOf(
+							siguientes[ciudad], capacidad);
+				}
+				hubs[ciudad][tamanio] = hub;
+				distanciasHubs[ciudad][tamanio] = distanciaCiudad;
+				siguientes[ciudad][tamanio] = padres[ciudad];
+				tamanios[ciudad]++;
+				totalEntradas++;
+
+				for (int i = inicioAdyacentes[ciudad]; i < inicioAdyacentes[ciudad + 1]; i++) {
+					int adyacente = ciudadesAdyacentes[i];
+					float distancia = distanciaCiudad + distanciasAdyacentes[i];
+					if (distancia < distancias[adyacente]) {
+						if (distancias[adyacente] == Float.POSITIVE_INFINITY) {
+							alcanzadas.aniadir(adyacente);
+						}
+						distancias[adyacente] = distancia;
+						padres[adyacente] = ciudad;
+						pendientes.insertarOReducir(adyacente, distancia);
+					}
+				}
+			}
+
+			// Dejar las estructuras auxiliares listas para el siguiente hub.
+			for (int i = 0; i < tamanios[ciudadHub]; i++) {
+				etiquetaHub[hubs[ciudadHub][i]] = Float.POSITIVE_INFINITY;
+			}
+			while (!alcanzadas.estaVacia()) {
+				int ciudad = alcanzadas.extraerUltimo();
+				distancias[ciudad] = Float.POSITIVE_INFINITY;
+				padres[ciudad] = -1;
+			}
+		}
+
+		// Volcar las etiquetas a los arrays planos definitivos.
+		int[] inicioEtiquetas = new int[numeroCiudades + 1];
+		int[] hubsEtiquetas = new int[totalEntradas];
+		float[] distanciasEtiquetas = new float[totalEntradas];
+		int[] siguientesEtiquetas = new int[totalEntradas];
+		int posicion = 0;
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			inicioEtiquetas[ciudad] = posicion;
+			int tamanio = tamanios[ciudad];
+			if (tamanio > 0) {
+				System.arraycopy(hubs[ciudad], 0, hubsEtiquetas, posicion, tamanio);
+				System.arraycopy(distanciasHubs[ciudad], 0, distanciasEtiquetas, posicion, tamanio);
+				System.arraycopy(siguientes[ciudad], 0, siguientesEtiquetas, posicion, tamanio);
+				// Liberar la etiqueta provisional en cuanto se ha copiado.
+				hubs[ciudad] = null;
+				distanciasHubs[ciudad] = null;
+				siguientes[ciudad] = null;
+			}
+			posicion += tamanio;
+		}
+		inicioEtiquetas[numeroCiudades] = posicion;
+
+		return new EtiquetadoHubs(grafo, Arrays.copyOf(orden, numeroCiudades), inicioEtiquetas, hubsEtiquetas,
+				distanciasEtiquetas, siguientesEtiquetas);
+	}
+
+	/**
+	 * Metodo que indica si las etiquetas construidas hasta el momento ya dan una distancia menor o igual que la
+	 * indicada entre el hub actual y una ciudad.
+	 */
+	private static boolean distanciaCubierta(float[] etiquetaHub, int[] hubs, float[] distanciasHubs, int tamanio,
+			float distancia) {
+
+		for (int i = 0; i < tamanio; i++) {
+			if (etiquetaHub[hubs[i]] + distanciasHubs[i] <= distancia) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Metodo que ordena las ciudades de mas a menos importante segun una jerarquia de contracciones: las ultimas
+	 * ciudades en contraerse son las mas importantes.
+	 *
+	 * @param jerarquia
+	 * Jerarquia de contracciones del grafo.
+	 * @return Ciudades ordenadas de mayor a menor rango.
+	 */
+	public static int[] ordenPorRango(JerarquiaContracciones jerarquia) {
+
+		int numeroCiudades = jerarquia.getGrafo().numeroCiudades();
+		int[] orden = new int[numeroCiudades];
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			orden[numeroCiudades - 1 - jerarquia.rango(ciudad)] = ciudad;
+		}
+		return orden;
+	}
+
+	/**
+	 * Metodo que ordena las ciudades de mas a menos importante segun su numero de carreteras. Es el orden que se usa
+	 * cuando no se dispone de una jerarquia de contracciones.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa.
+	 * @return Ciudades ordenadas de mayor a menor grado. A igualdad de grado, por identificador.
+	 */
+	public static int[] ordenPorGrado(GrafoCompacto grafo) {
+
+		int numeroCiudades = grafo.numeroCiudades();
+		int gradoMaximo = 0;
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			gradoMaximo = Math.max(gradoMaximo, grafo.finAdyacentes(ciudad) - grafo.inicioAdyacentes(ciudad));
+		}
+
+		// Ordenacion por cuentas, de mayor a menor grado.
+		int[] inicioGrados = new int[gradoMaximo + 2];
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			inicioGrados[gradoMaximo - (grafo.finAdyacentes(ciudad) - grafo.inicioAdyacentes(ciudad)) + 1]++;
+		}
+		for (int i = 1; i < inicioGrados.length; i++) {
+			inicioGrados[i] += inicioGrados[i - 1];
+		}
+		int[] orden = new int[numeroCiudades];
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			orden[inicioGrados[gradoMaximo - (grafo.finAdyacentes(ciudad) - grafo.inicioAdyacentes(ciudad))]++] = ciudad;
+		}
+		return orden;
+	}
+
+	// ----- ----- ----- ----- ----- CONSULTAS ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que devuelve el grafo a partir del cual se construyo el etiquetado.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve el numero total de entradas de todas las etiquetas. Cada entrada ocupa 12 bytes.
+	 *
+	 * @return Numero de entradas del etiquetado.
+	 */
+	public int numeroEntradas() {
+		return hubsEtiquetas.length;
+	}
+
+	/**
+	 * Metodo que calcula la distancia minima entre dos ciudades mezclando sus etiquetas. Como las longitudes de las
+	 * carreteras son multiplos exactos de 1/1024 KM (ver Mapa.longitudCarretera), la suma de las dos entradas del hub
+	 * comun coincide con la distancia que da Dijkstra para el mismo par aunque acumule los tramos en otro orden.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Distancia en KM del camino minimo. Float.POSITIVE_INFINITY si las ciudades no estan comunicadas.
+	 */
+	public float distancia(int origen, int destino) {
+
+		int posicionOrigen = posicionHubComun(origen, destino);
+		if (posicionOrigen < 0) {
+			return Float.POSITIVE_INFINITY;
+		}
+		int posicionDestino = buscarHub(destino, hubsEtiquetas[posicionOrigen]);
+		return distanciasEtiquetas[posicionOrigen] + distanciasEtiquetas[posicionDestino];
+	}
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades siguiendo las etiquetas (modo camino): desde cada extremo
+	 * se avanza entrada a entrada hacia el hub comun. La distancia de la ruta se suma recorriendo el camino desde el
+	 * origen, como la de las rutas de los demas algoritmos.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino. No se asienta ninguna ciudad.
+	 */
+	public Ruta calcularRuta(int origen, int destino) {
+
+		int posicionOrigen = posicionHubComun(origen, destino);
+		if (posicionOrigen < 0) {
+			return new Ruta(grafo, origen, destino, null, Float.POSITIVE_INFINITY, 0);
+		}
+		int hub = hubsEtiquetas[posicionOrigen];
+
+		// Tramo desde el origen hasta el hub, en orden, y tramo desde el destino hasta el hub, en orden inverso.
+		EspacioBusqueda espacio = grafo.espacioBusqueda();
+		ListaEnteros haciaHub = espacio.camino();
+		for (int ciudad = origen; ciudad >= 0; ciudad = siguientesEtiquetas[buscarHub(ciudad, hub)]) {
+			haciaHub.aniadir(ciudad);
+		}
+		ListaEnteros desdeHub = espacio.pila();
+		for (int ciudad = destino; ciudad != ciudadesHubs[hub]; ciudad = siguientesEtiquetas[buscarHub(ciudad, hub)]) {
+			desdeHub.aniadir(ciudad);
+		}
+		while (!desdeHub.estaVacia()) {
+			haciaHub.aniadir(desdeHub.extraerUltimo());
+		}
+		return new Ruta(grafo, origen, destino, haciaHub.aArray(), grafo.distanciaCamino(haciaHub), 0);
+	}
+
+	/**
+	 * Metodo que mezcla las etiquetas de dos ciudades y devuelve la posicion, en la etiqueta de la primera, del hub
+	 * comun que da la menor distancia, o -1 si no tienen ningun hub comun.
+	 */
+	private int posicionHubComun(int origen, int destino) {
+
+		int i = inicioEtiquetas[origen];
+		int finOrigen = inicioEtiquetas[origen + 1];
+		int j = inicioEtiquetas[destino];
+		int finDestino = inicioEtiquetas[destino + 1];
+		float mejorDistancia = Float.POSITIVE_INFINITY;
+		int mejorPosicion = -1;
+		while (i < finOrigen && j < finDestino) {
+			int hubOrigen = hubsEtiquetas[i];
+			int hubDestino = hubsEtiquetas[j];
+			if (hubOrigen < hubDestino) {
+				i++;
+			} else if (hubOrigen > hubDestino) {
+				j++;
+			} else {
+				float distancia = distanciasEtiquetas[i] + distanciasEtiquetas[j];
+				if (distancia < mejorDistancia) {
+					mejorDistancia = distancia;
+					mejorPosicion = i;
+				}
+				i++;
+				j++;
+			}
+		}
+		return mejorPosicion;
+	}
+
+	/**
+	 * Metodo que busca un hub en la etiqueta de una ciudad. Por construccion, si una ciudad tiene un hub en su etiqueta
+	 * tambien lo tiene la ciudad siguiente en el camino hacia el.
+	 */
+	private int buscarHub(int ciudad, int hub) {
+		return Arrays.binarySearch(hubsEtiquetas, inicioEtiquetas[ciudad], inicioEtiquetas[ciudad + 1], hub);
+	}
+
+	// ----- ----- ----- ----- ----- PERSISTENCIA ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que escribe el etiquetado en una instantanea del mapa.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	void escribir(InstantaneaMapa.Escritor escritor) throws IOException {
+
+		escritor.escribir(ciudadesHubs);
+		escritor.escribir(inicioEtiquetas);
+		escritor.escribir(hubsEtiquetas);
+		escritor.escribir(distanciasEtiquetas);
+		escritor.escribir(siguientesEtiquetas);
+	}
+
+	/**
+	 * Metodo que lee un etiquetado escrito con el metodo escribir.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	static EtiquetadoHubs leer(GrafoCompacto grafo, InstantaneaMapa.Lector lector) throws IOException {
+
+		return new EtiquetadoHubs(grafo, lector.leerEnteros(), lector.leerEnteros(), lector.leerEnteros(),
+				lector.leerReales(), lector.leerEnteros());
+	}
+}
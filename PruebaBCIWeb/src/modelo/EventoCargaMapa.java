@@ -0,0 +1,39 @@
+package modelo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de JDK Flight Recorder que registra la lectura del mapa de la base de datos: filas leidas de cada tabla,
+ * tamanio del mapa construido y duracion.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see BaseDatos#obtenerMapaBD(int)
+ */
+@Name("pruebabci.CargaMapa")
+@Label("Carga del mapa")
+@Category("PruebaBCI")
+@Description("Lectura del mapa de la base de datos")
+final class EventoCargaMapa extends Event {
+
+	@Label("Tamanio de lectura")
+	@Description("Filas por bloque pedidas al driver")
+	int tamanioLectura;
+
+	@Label("Filas de ciudades")
+	long filasCiudades;
+
+	@Label("Filas de carreteras")
+	long filasCarreteras;
+
+	@Label("Ciudades")
+	int ciudades;
+
+	@Label("Carreteras")
+	@Description("Carreteras distintas del mapa construido")
+	int carreteras;
+}
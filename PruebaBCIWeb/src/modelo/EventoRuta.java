@@ -0,0 +1,82 @@
+package modelo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento de JDK Flight Recorder que registra el calculo de una ruta: ciudades, algoritmo, trabajo de la busqueda y
+ * duracion. Permite encontrar en produccion los pares de ciudades con busquedas anormalmente costosas sin conectar un
+ * perfilador, por ejemplo con:
+ *
+ * jcmd &lt;pid&gt; JFR.start name=rutas settings=profile duration=60s filename=rutas.jfr
+ *
+ * jfr print --events pruebabci.Ruta rutas.jfr
+ *
+ * Mientras no haya una grabacion activa el evento solo cuesta la comprobacion de que esta desactivado, y el
+ * compilador elimina el objeto del evento. La API jdk.jfr esta disponible desde OpenJDK 8u262 y en Java 11.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#calcularRuta(String, String, Algoritmo)
+ */
+@Name("pruebabci.Ruta")
+@Label("Ruta")
+@Category("PruebaBCI")
+@Description("Calculo de una ruta entre dos ciudades")
+final class EventoRuta extends Event {
+
+	@Label("Ciudad origen")
+	String origen;
+
+	@Label("Ciudad destino")
+	String destino;
+
+	@Label("Algoritmo")
+	String algoritmo;
+
+	@Label("Existe")
+	@Description("Si las dos ciudades existen y estan comunicadas")
+	boolean existe;
+
+	@Label("Distancia")
+	@Description("Distancia en KM del camino")
+	float distancia;
+
+	@Label("Ciudades asentadas")
+	int ciudadesAsentadas;
+
+	@Label("Carreteras relajadas")
+	int carreterasRelajadas;
+
+	/**
+	 * Metodo que termina el evento y lo registra si hay una grabacion que lo pida. Los campos solo se rellenan en ese
+	 * caso.
+	 *
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad destino.
+	 * @param algoritmoRuta
+	 * Algoritmo pedido.
+	 * @param ruta
+	 * Ruta calculada, o null si alguna ciudad no existe.
+	 */
+	void registrar(String nombreCiudadOrigen, String nombreCiudadDestino, Algoritmo algoritmoRuta, Ruta ruta) {
+
+		if (shouldCommit()) {
+			origen = nombreCiudadOrigen;
+			destino = nombreCiudadDestino;
+			algoritmo = algoritmoRuta.getParametro();
+			if (ruta != null) {
+				existe = ruta.existe();
+				distancia = ruta.getDistancia();
+				ciudadesAsentadas = ruta.getCiudadesAsentadas();
+				carreterasRelajadas = ruta.getCarreterasRelajadas();
+			}
+			commit();
+		}
+	}
+}
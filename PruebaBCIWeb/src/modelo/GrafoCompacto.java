@@ -0,0 +1,436 @@
+package modelo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Clase que representa la forma congelada (de solo lectura) del grafo mapa. Las ciudades se identifican mediante
+ * indices enteros consecutivos (0..n-1) y las carreteras se guardan en formato CSR (compressed sparse row): las
+ * ciudades adyacentes a la ciudad i ocupan las posiciones [inicioAdyacentes[i], inicioAdyacentes[i + 1]) de los
+ * arrays ciudadesAdyacentes y distanciasAdyacentes. Asi cada carretera cuesta un int y un float en lugar de una
+ * entrada de un HashMap con clave String y valor Float.
+ *
+ * Los objetos de esta clase son inmutables y pueden ser compartidos por varios hilos sin sincronizacion.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#congelar()
+ * @see AdyacenciaComprimida
+ */
+public final class GrafoCompacto {
+
+	private final String[] nombresCiudades;
+	private final float[] coordX;
+	private final float[] coordY;
+	private final int[] inicioAdyacentes;
+	private final int[] ciudadesAdyacentes;
+	private final float[] distanciasAdyacentes;
+	private final Map<String, Integer> indiceCiudades;
+	// Huella del grafo, calculada la primera vez que se pide.
+	private volatile Long huellaCalculada;
+
+	/**
+	 * Constructor de la clase. Los arrays pasados como argumento pasan a ser propiedad del grafo y no deben
+	 * modificarse despues.
+	 *
+	 * @param nombresCiudades
+	 * Nombre de cada ciudad, indexado por el identificador de la ciudad.
+	 * @param coordX
+	 * Coordenada x de cada ciudad.
+	 * @param coordY
+	 * Coordenada y de cada ciudad.
+	 * @param inicioAdyacentes
+	 * Array de tamanio n + 1 con la posicion en la que empiezan las ciudades adyacentes de cada ciudad.
+	 * @param ciudadesAdyacentes
+	 * Identificadores de las ciudades adyacentes, agrupados por ciudad de partida.
+	 * @param distanciasAdyacentes
+	 * Distancia en KM de cada carretera, en la misma posicion que su ciudad adyacente.
+	 */
+	GrafoCompacto(String[] nombresCiudades, float[] coordX, float[] coordY, int[] inicioAdyacentes,
+			int[] ciudadesAdyacentes, float[] distanciasAdyacentes) {
+
+		this(nombresCiudades, coordX, coordY, inicioAdyacentes, ciudadesAdyacentes, distanciasAdyacentes,
+				indexarNombres(nombresCiudades));
+	}
+
+	/**
+	 * Constructor de la clase que recibe ya construido el indice de nombres, para no tener que volver a crearlo.
+	 *
+	 * @param indiceCiudades
+	 * Identificador de cada ciudad indexado por su nombre. Debe ser coherente con nombresCiudades. Si es null los
+	 * nombres, que deben estar en orden alfabetico, se buscan por busqueda binaria.
+	 * @see #GrafoCompacto(String[], float[], float[], int[], int[], float[])
+	 */
+	GrafoCompacto(String[] nombresCiudades, float[] coordX, float[] coordY, int[] inicioAdyacentes,
+			int[] ciudadesAdyacentes, float[] distanciasAdyacentes, Map<String, Integer> indiceCiudades) {
+
+		this.nombresCiudades = nombresCiudades;
+		this.coordX = coordX;
+		this.coordY = coordY;
+		this.inicioAdyacentes = inicioAdyacentes;
+		this.ciudadesAdyacentes = ciudadesAdyacentes;
+		this.distanciasAdyacentes = distanciasAdyacentes;
+		this.indiceCiudades = indiceCiudades;
+	}
+
+	/**
+	 * Metodo que crea el indice de identificadores de ciudad por nombre.
+	 */
+	private static Map<String, Integer> indexarNombres(String[] nombresCiudades) {
+
+		// Capacidad suficiente para que el HashMap no tenga que redimensionarse.
+		Map<String, Integer> indice = new HashMap<String, Integer>(nombresCiudades.length * 4 / 3 + 1);
+		for (int i = 0; i < nombresCiudades.length; i++) {
+			indice.put(nombresCiudades[i], i);
+		}
+		return indice;
+	}
+
+	/**
+	 * Metodo que construye la forma compacta de un conjunto de ciudades enlazadas por carreteras. Los identificadores
+	 * se asignan siguiendo el orden alfabetico de los nombres, de modo que el mismo conjunto de ciudades produce
+	 * siempre los mismos identificadores. Las ciudades adyacentes que no forman parte del conjunto se ignoran.
+	 *
+	 * @param ciudades
+	 * Registro con las ciudades del mapa indexadas por su nombre.
+	 * @return Grafo compacto equivalente al registro de ciudades.
+	 */
+	static GrafoCompacto construir(Map<String, Ciudad> ciudades) {
+
+		int numeroCiudades = ciudades.size();
+		String[] nombres = ciudades.keySet().toArray(new String[numeroCiudades]);
+		Arrays.sort(nombres);
+
+		Map<String, Integer> indices = new HashMap<String, Integer>(numeroCiudades * 4 / 3 + 1);
+		for (int i = 0; i < numeroCiudades; i++) {
+			indices.put(nombres[i], i);
+		}
+
+		float[] coordX = new float[numeroCiudades];
+		float[] coordY = new float[numeroCiudades];
+		int[] inicioAdyacentes = new int[numeroCiudades + 1];
+
+		// Primera pasada: contar las carreteras validas de cada ciudad para dimensionar los arrays.
+		for (int i = 0; i < numeroCiudades; i++) {
+			Ciudad ciudad = ciudades.get(nombres[i]);
+			coordX[i] = ciudad.getCoordX();
+			coordY[i] = ciudad.getCoordY();
+			int validas = 0;
+			for (String nombreAdyacente : ciudad.obtenerCiudadesAdyacentes().keySet()) {
+				if (indices.containsKey(nombreAdyacente)) {
+					validas++;
+				}
+			}
+			inicioAdyacentes[i + 1] = inicioAdyacentes[i] + validas;
+		}
+
+		int[] ciudadesAdyacentes = new int[inicioAdyacentes[numeroCiudades]];
+		float[] distanciasAdyacentes = new float[inicioAdyacentes[numeroCiudades]];
+
+		// Segunda pasada: volcar las carreteras. Las ciudades adyacentes de cada ciudad se ordenan por identificador
+		// para que los recorridos accedan a la memoria de forma lo mas secuencial posible.
+		for (int i = 0; i < numeroCiudades; i++) {
+			int posicion = inicioAdyacentes[i];
+			for (Map.Entry<String, Float> adyacente : ciudades.get(nombres[i]).obtenerCiudadesAdyacentes().entrySet()) {
+				Integer indiceAdyacente = indices.get(adyacente.getKey());
+				if (indiceAdyacente != null) {
+					ciudadesAdyacentes[posicion] = indiceAdyacente;
+					distanciasAdyacentes[posicion] = adyacente.getValue();
+					posicion++;
+				}
+			}
+			ordenarAdyacentes(ciudadesAdyacentes, distanciasAdyacentes, inicioAdyacentes[i], posicion);
+		}
+
+		return new GrafoCompacto(nombres, coordX, coordY, inicioAdyacentes, ciudadesAdyacentes, distanciasAdyacentes);
+	}
+
+	/**
+	 * Ordenacion por insercion del tramo [desde, hasta) de las ciudades adyacentes, moviendo las distancias a la par.
+	 * El numero de ciudades adyacentes de una ciudad es pequenio, por lo que no merece la pena un algoritmo mas
+	 * sofisticado.
+	 */
+	private static void ordenarAdyacentes(int[] ciudadesAdyacentes, float[] distanciasAdyacentes, int desde, int hasta) {
+
+		for (int i = desde + 1; i < hasta; i++) {
+			int ciudad = ciudadesAdyacentes[i];
+			float distancia = distanciasAdyacentes[i];
+			int j = i - 1;
+			while (j >= desde && ciudadesAdyacentes[j] > ciudad) {
+				ciudadesAdyacentes[j + 1] = ciudadesAdyacentes[j];
+				distanciasAdyacentes[j + 1] = distanciasAdyacentes[j];
+				j--;
+			}
+			ciudadesAdyacentes[j + 1] = ciudad;
+			distanciasAdyacentes[j + 1] = distancia;
+		}
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades del grafo.
+	 *
+	 * @return Numero de ciudades del grafo.
+	 */
+	public int numeroCiudades() {
+		return nombresCiudades.length;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de entradas de adyacencia del grafo. Como el grafo es bidireccional cada carretera
+	 * aparece dos veces, una en cada extremo.
+	 *
+	 * @return Numero de entradas de adyacencia del grafo.
+	 */
+	public int numeroAdyacencias() {
+		return ciudadesAdyacentes.length;
+	}
+
+	/**
+	 * Metodo que devuelve el identificador de una ciudad a partir de su nombre.
+	 *
+	 * @param nombreCiudad
+	 * Nombre de la ciudad.
+	 * @return Identificador de la ciudad. -1 si la ciudad no existe en el grafo.
+	 */
+	public int obtenerIndice(String nombreCiudad) {
+
+		if (nombreCiudad == null) {
+			return -1;
+		}
+		if (indiceCiudades == null) {
+			int indice = Arrays.binarySearch(nombresCiudades, nombreCiudad);
+			return indice >= 0 ? indice : -1;
+		}
+		Integer indice = indiceCiudades.get(nombreCiudad);
+		return indice == null ? -1 : indice.intValue();
+	}
+
+	/**
+	 * Metodo que devuelve el nombre de una ciudad a partir de su identificador.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Nombre de la ciudad.
+	 */
+	public String obtenerNombre(int ciudad) {
+		return nombresCiudades[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la coordenada x de una ciudad en el sistema de referencia del mapa.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Coordenada x de la ciudad.
+	 */
+	public float getCoordX(int ciudad) {
+		return coordX[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la coordenada y de una ciudad en el sistema de referencia del mapa.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Coordenada y de la ciudad.
+	 */
+	public float getCoordY(int ciudad) {
+		return coordY[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la primera posicion de las ciudades adyacentes a una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Posicion de la primera ciudad adyacente.
+	 */
+	public int inicioAdyacentes(int ciudad) {
+		return inicioAdyacentes[ciudad];
+	}
+
+	/**
+	 * Metodo que devuelve la posicion siguiente a la ultima ciudad adyacente a una ciudad.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Posicion siguiente a la ultima ciudad adyacente.
+	 */
+	public int finAdyacentes(int ciudad) {
+		return inicioAdyacentes[ciudad + 1];
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad adyacente almacenada en una posicion.
+	 *
+	 * @param posicion
+	 * Posicion comprendida entre inicioAdyacentes(i) y finAdyacentes(i) para alguna ciudad i.
+	 * @return Identificador de la ciudad adyacente.
+	 */
+	public int ciudadAdyacente(int posicion) {
+		return ciudadesAdyacentes[posicion];
+	}
+
+	/**
+	 * Metodo que devuelve la distancia de la carretera almacenada en una posicion.
+	 *
+	 * @param posicion
+	 * Posicion comprendida entre inicioAdyacentes(i) y finAdyacentes(i) para alguna ciudad i.
+	 * @return Distancia en KM de la carretera.
+	 */
+	public float distanciaAdyacente(int posicion) {
+		return distanciasAdyacentes[posicion];
+	}
+
+	/**
+	 * Metodo que devuelve la longitud de la carretera mas corta entre dos ciudades adyacentes.
+	 */
+	float distanciaCarretera(int ciudadA, int ciudadB) {
+
+		float distancia = Float.POSITIVE_INFINITY;
+		for (int i = inicioAdyacentes[ciudadA]; i < inicioAdyacentes[ciudadA + 1]; i++) {
+			if (ciudadesAdyacentes[i] == ciudadB && distanciasAdyacentes[i] < distancia) {
+				distancia = distanciasAdyacentes[i];
+			}
+		}
+		return distancia;
+	}
+
+	/**
+	 * Metodo que suma las longitudes de las carreteras de un camino en el orden en que se recorren desde su primera
+	 * ciudad, que es el orden en el que las suma Dijkstra. Por debajo de 16384 KM el orden no cambia el resultado (ver
+	 * Mapa.longitudCarretera); los algoritmos que acumulan los tramos en otro orden (etiquetas de hubs, tablas,
+	 * busqueda bidireccional) calculan asi la distancia de sus rutas para que tambien coincida por encima.
+	 */
+	float distanciaCamino(ListaEnteros camino) {
+
+		float distancia = 0.0f;
+		for (int i = 1; i < camino.tamanio(); i++) {
+			distancia += distanciaCarretera(camino.obtener(i - 1), camino.obtener(i));
+		}
+		return distancia;
+	}
+
+	/**
+	 * Metodo que suma las longitudes de las carreteras de un camino igual que distanciaCamino(ListaEnteros).
+	 */
+	float distanciaCamino(int[] camino) {
+
+		float distancia = 0.0f;
+		for (int i = 1; i < camino.length; i++) {
+			distancia += distanciaCarretera(camino[i - 1], camino[i]);
+		}
+		return distancia;
+	}
+
+	/**
+	 * Metodo que calcula una huella de 64 bits del contenido del grafo: nombres, coordenadas y carreteras. Dos grafos
+	 * construidos a partir de los mismos datos tienen la misma huella, lo que permite comprobar si un indice guardado
+	 * en disco corresponde al mapa cargado.
+	 *
+	 * @return Huella del grafo.
+	 */
+	public long huella() {
+
+		// El grafo es inmutable, por lo que la huella se calcula una sola vez.
+		Long huella = huellaCalculada;
+		if (huella == null) {
+			huella = Long.valueOf(calcularHuella());
+			huellaCalculada = huella;
+		}
+		return huella.longValue();
+	}
+
+	private long calcularHuella() {
+
+		long huella = 0xcbf29ce484222325L;
+		huella = mezclar(huella, nombresCiudades.length);
+		huella = mezclar(huella, ciudadesAdyacentes.length);
+		for (int i = 0; i < nombresCiudades.length; i++) {
+			huella = mezclar(huella, nombresCiudades[i].hashCode());
+			huella = mezclar(huella, Float.floatToIntBits(coordX[i]));
+			huella = mezclar(huella, Float.floatToIntBits(coordY[i]));
+			huella = mezclar(huella, inicioAdyacentes[i + 1]);
+		}
+		for (int i = 0; i < ciudadesAdyacentes.length; i++) {
+			huella = mezclar(huella, ciudadesAdyacentes[i]);
+			huella = mezclar(huella, Float.floatToIntBits(distanciasAdyacentes[i]));
+		}
+		return huella;
+	}
+
+	/**
+	 * Metodo que escribe el grafo en una instantanea del mapa.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	void escribir(InstantaneaMapa.Escritor escritor) throws IOException {
+
+		escritor.escribir(nombresCiudades);
+		escritor.escribir(coordX);
+		escritor.escribir(coordY);
+		escritor.escribir(inicioAdyacentes);
+		escritor.escribir(ciudadesAdyacentes);
+		escritor.escribir(distanciasAdyacentes);
+	}
+
+	/**
+	 * Metodo que lee un grafo escrito con el metodo escribir. No se crea el indice de nombres: los nombres estan en
+	 * orden alfabetico y se buscan por busqueda binaria.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	static GrafoCompacto leer(InstantaneaMapa.Lector lector) throws IOException {
+
+		return new GrafoCompacto(lector.leerTextos(), lector.leerReales(), lector.leerReales(), lector.leerEnteros(),
+				lector.leerEnteros(), lector.leerReales(), null);
+	}
+
+	// Paso de la funcion de dispersion FNV-1a aplicado a un entero completo.
+	private static long mezclar(long huella, int valor) {
+		return (huella ^ valor) * 0x100000001b3L;
+	}
+
+	/**
+	 * Metodo que devuelve el espacio de trabajo de las busquedas del hilo actual sobre este grafo. Cada hilo tiene el
+	 * suyo, por lo que las busquedas de hilos distintos no se interfieren y ninguna reserva memoria proporcional al
+	 * numero de ciudades. El espacio es del hilo y se reutiliza con los grafos de las recargas del mapa. Un algoritmo
+	 * no debe llamar a otro mientras usa el espacio.
+	 *
+	 * @see EspacioBusqueda#delHilo(int)
+	 *
+	 * @return Espacio de busqueda del hilo actual.
+	 */
+	EspacioBusqueda espacioBusqueda() {
+		return EspacioBusqueda.delHilo(nombresCiudades.length);
+	}
+
+	// Accesos directos a los arrays para los algoritmos del paquete. No se exponen fuera para preservar la
+	// inmutabilidad del grafo.
+
+	String[] nombresCiudades() {
+		return nombresCiudades;
+	}
+
+	float[] coordX() {
+		return coordX;
+	}
+
+	float[] coordY() {
+		return coordY;
+	}
+
+	int[] inicioAdyacentes() {
+		return inicioAdyacentes;
+	}
+
+	int[] ciudadesAdyacentes() {
+		return ciudadesAdyacentes;
+	}
+
+	float[] distanciasAdyacentes() {
+		return distanciasAdyacentes;
+	}
+}
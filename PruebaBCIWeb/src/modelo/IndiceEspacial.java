@@ -0,0 +1,314 @@
+package modelo;
+
+import java.util.Arrays;
+
+/**
+ * Clase que representa un indice espacial de las coordenadas de las ciudades para buscar las ciudades mas cercanas a
+ * un punto o las que estan a menos de una distancia en linea recta de el, por ejemplo para ajustar a una ciudad un
+ * punto dado por coordenadas.
+ *
+ * El indice es un arbol k-d implicito: las ciudades se guardan en un array de modo que la ciudad central de cada
+ * tramo divide las demas segun la coordenada x (en los niveles pares) o y (en los impares), sin nodos ni referencias.
+ * Se construye en O(n log n) con seleccion de la mediana de cada tramo, y una busqueda de las k ciudades mas cercanas
+ * recorre del orden de log n + k tramos, descartando los que quedan mas lejos que la peor ciudad encontrada.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#obtenerIndiceEspacial()
+ */
+public final class IndiceEspacial {
+
+	private final GrafoCompacto grafo;
+	// Ciudades y sus coordenadas en el orden del arbol.
+	private final int[] ciudades;
+	private final float[] coordX;
+	private final float[] coordY;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo compacto cuyas coordenadas se indexan.
+	 */
+	public IndiceEspacial(GrafoCompacto grafo) {
+
+		this.grafo = grafo;
+		int numeroCiudades = grafo.numeroCiudades();
+		ciudades = new int[numeroCiudades];
+		coordX = new float[numeroCiudades];
+		coordY = new float[numeroCiudades];
+		for (int i = 0; i < numeroCiudades; i++) {
+			ciudades[i] = i;
+			coordX[i] = grafo.getCoordX(i);
+			coordY[i] = grafo.getCoordY(i);
+		}
+		construir(0, numeroCiudades, 0);
+	}
+
+	/**
+	 * Ciudades mas cercanas encontradas durante una busqueda, en un monticulo de maximos por distancia al cuadrado:
+	 * la raiz es la peor de ellas, la que se sustituye cuando aparece una mas cercana.
+	 */
+	private static final class Vecinos {
+
+		private final int[] ciudades;
+		private final float[] distancias;
+		private int tamanio;
+
+		Vecinos(int maximo) {
+			ciudades = new int[maximo];
+			distancias = new float[maximo];
+		}
+
+		/**
+		 * Metodo que devuelve la distancia al cuadrado a partir de la cual una ciudad ya no entra entre las vecinas.
+		 */
+		float peor() {
+			return tamanio < ciudades.length ? Float.POSITIVE_INFINITY : distancias[0];
+		}
+
+		void ofrecer(int ciudad, float distancia) {
+
+			if (tamanio < ciudades.length) {
+				// Flotar la ciudad nueva desde el final.
+				int posicion = tamanio++;
+				while (posicion > 0 && distancias[(posicion - 1) / 2] < distancia) {
+					ciudades[posicion] = ciudades[(posicion - 1) / 2];
+					distancias[posicion] = distancias[(posicion - 1) / 2];
+					posicion = (posicion - 1) / 2;
+				}
+				ciudades[posicion] = ciudad;
+				distancias[posicion] = distancia;
+			} else if (distancia < distancias[0]) {
+				hundir(ciudad, distancia, tamanio);
+			}
+		}
+
+		/**
+		 * Metodo que coloca una ciudad en la raiz y la hunde hasta su sitio entre las primeras tamanio posiciones.
+		 */
+		private void hundir(int ciudad, float distancia, int tamanio) {
+
+			int posicion = 0;
+			while (2 * posicion + 1 < tamanio) {
+				int hijo = 2 * posicion + 1;
+				if (hijo + 1 < tamanio && distancias[hijo + 1] > distancias[hijo]) {
+					hijo++;
+				}
+				if (distancias[hijo] <= distancia) {
+					break;
+				}
+				ciudades[posicion] = ciudades[hijo];
+				distancias[posicion] = distancias[hijo];
+				posicion = hijo;
+			}
+			ciudades[posicion] = ciudad;
+			distancias[posicion] = distancia;
+		}
+
+		/**
+		 * Metodo que devuelve las ciudades encontradas de la mas cercana a la mas lejana, vaciando el monticulo.
+		 */
+		int[] ordenar() {
+
+			int[] ordenadas = new int[tamanio];
+			for (int i = tamanio - 1; i >= 0; i--) {
+				ordenadas[i] = ciudades[0];
+				hundir(ciudades[i], distancias[i], i);
+			}
+			tamanio = 0;
+			return ordenadas;
+		}
+	}
+
+	/**
+	 * Metodo que organiza como arbol k-d las ciudades del tramo [desde, hasta): la central divide el tramo segun la
+	 * coordenada del eje y cada mitad se organiza con el otro eje.
+	 */
+	private void construir(int desde, int hasta, int eje) {
+
+		while (hasta - desde > 1) {
+			int central = (desde + hasta) >>> 1;
+			seleccionar(desde, hasta, central, eje == 0 ? coordX : coordY);
+			construir(desde, central, 1 - eje);
+			desde = central + 1;
+			eje = 1 - eje;
+		}
+	}
+
+	/**
+	 * Metodo que coloca en la posicion indicada la ciudad que le corresponde al ordenar el tramo [desde, hasta) por una
+	 * coordenada, con las menores o iguales antes y las mayores o iguales despues (seleccion de Hoare).
+	 */
+	private void seleccionar(int desde, int hasta, int posicion, float[] coordenada) {
+
+		int izquierda = desde;
+		int derecha = hasta - 1;
+		while (izquierda < derecha) {
+			float pivote = coordenada[posicion];
+			int i = izquierda;
+			int j = derecha;
+			do {
+				while (coordenada[i] < pivote) {
+					i++;
+				}
+				while (pivote < coordenada[j]) {
+					j--;
+				}
+				if (i <= j) {
+					intercambiar(i, j);
+					i++;
+					j--;
+				}
+			} while (i <= j);
+			if (j < posicion) {
+				izquierda = i;
+			}
+			if (posicion < i) {
+				derecha = j;
+			}
+		}
+	}
+
+	private void intercambiar(int i, int j) {
+
+		int ciudad = ciudades[i];
+		ciudades[i] = ciudades[j];
+		ciudades[j] = ciudad;
+		float x = coordX[i];
+		coordX[i] = coordX[j];
+		coordX[j] = x;
+		float y = coordY[i];
+		coordY[i] = coordY[j];
+		coordY[j] = y;
+	}
+
+	/**
+	 * Metodo que devuelve el grafo cuyas coordenadas se han indexado.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que busca la ciudad mas cercana a un punto.
+	 *
+	 * @param x
+	 * Coordenada x del punto.
+	 * @param y
+	 * Coordenada y del punto.
+	 * @return Identificador de la ciudad mas cercana, o -1 si el mapa no tiene ciudades.
+	 */
+	public int buscarCercana(float x, float y) {
+
+		int[] cercanas = buscarCercanas(x, y, 1);
+		return cercanas.length > 0 ? cercanas[0] : -1;
+	}
+
+	/**
+	 * Metodo que busca las ciudades mas cercanas a un punto en linea recta.
+	 *
+	 * @param x
+	 * Coordenada x del punto.
+	 * @param y
+	 * Coordenada y del punto.
+	 * @param maximo
+	 * Numero maximo de ciudades a devolver. Debe ser al menos 1.
+	 * @return Identificadores de las ciudades, de la mas cercana a la mas lejana. Tiene menos de maximo ciudades si el
+	 * mapa no tiene tantas.
+	 */
+	public int[] buscarCercanas(float x, float y, int maximo) {
+
+		if (maximo < 1) {
+			throw new IllegalArgumentException("Numero de ciudades no valido: " + maximo);
+		}
+		Vecinos vecinos = new Vecinos(Math.min(maximo, ciudades.length));
+		if (ciudades.length > 0) {
+			buscarCercanas(0, ciudades.length, 0, x, y, vecinos);
+		}
+		return vecinos.ordenar();
+	}
+
+	private void buscarCercanas(int desde, int hasta, int eje, float x, float y, Vecinos vecinos) {
+
+		while (desde < hasta) {
+			int central = (desde + hasta) >>> 1;
+			float deltaX = x - coordX[central];
+			float deltaY = y - coordY[central];
+			vecinos.ofrecer(ciudades[central], deltaX * deltaX + deltaY * deltaY);
+			// Primero la mitad del lado del punto; la otra solo si puede contener una ciudad mas cercana que la peor.
+			float diferencia = eje == 0 ? deltaX : deltaY;
+			if (diferencia < 0) {
+				buscarCercanas(desde, central, 1 - eje, x, y, vecinos);
+				desde = central + 1;
+			} else {
+				buscarCercanas(central + 1, hasta, 1 - eje, x, y, vecinos);
+				hasta = central;
+			}
+			if (diferencia * diferencia >= vecinos.peor()) {
+				return;
+			}
+			eje = 1 - eje;
+		}
+	}
+
+	/**
+	 * Metodo que busca las ciudades que estan a una distancia en linea recta de un punto menor o igual que un radio.
+	 *
+	 * @param x
+	 * Coordenada x del punto.
+	 * @param y
+	 * Coordenada y del punto.
+	 * @param radio
+	 * Distancia maxima al punto, en las mismas unidades que las coordenadas.
+	 * @return Identificadores de las ciudades encontradas, de la mas cercana a la mas lejana.
+	 */
+	public int[] buscarEnRadio(float x, float y, float radio) {
+
+		ListaEnteros encontradas = new ListaEnteros(16);
+		buscarEnRadio(0, ciudades.length, 0, x, y, radio * radio, encontradas);
+
+		// Se ordenan por distancia como enteros largos: los bits de un float no negativo se ordenan como el float.
+		long[] claves = new long[encontradas.tamanio()];
+		for (int i = 0; i < claves.length; i++) {
+			int ciudad = encontradas.obtener(i);
+			float deltaX = x - grafo.getCoordX(ciudad);
+			float deltaY = y - grafo.getCoordY(ciudad);
+			claves[i] = (long) Float.floatToIntBits(deltaX * deltaX + deltaY * deltaY) << 32 | ciudad;
+		}
+		Arrays.sort(claves);
+		int[] ordenadas = new int[claves.length];
+		for (int i = 0; i < claves.length; i++) {
+			ordenadas[i] = (int) claves[i];
+		}
+		return ordenadas;
+	}
+
+	private void buscarEnRadio(int desde, int hasta, int eje, float x, float y, float radioCuadrado,
+			ListaEnteros encontradas) {
+
+		while (desde < hasta) {
+			int central = (desde + hasta) >>> 1;
+			float deltaX = x - coordX[central];
+			float deltaY = y - coordY[central];
+			if (deltaX * deltaX + deltaY * deltaY <= radioCuadrado) {
+				encontradas.aniadir(ciudades[central]);
+			}
+			// Cada mitad solo se recorre si la franja del eje que la separa del punto esta dentro del radio.
+			float diferencia = eje == 0 ? deltaX : deltaY;
+			boolean izquierda = diferencia <= 0 || diferencia * diferencia <= radioCuadrado;
+			boolean derecha = diferencia >= 0 || diferencia * diferencia <= radioCuadrado;
+			if (izquierda && derecha) {
+				buscarEnRadio(desde, central, 1 - eje, x, y, radioCuadrado, encontradas);
+				desde = central + 1;
+			} else if (izquierda) {
+				hasta = central;
+			} else {
+				desde = central + 1;
+			}
+			eje = 1 - eje;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package modelo;
+
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Clase que representa un indice de los nombres de las ciudades para buscarlas por prefijo, sin distinguir mayusculas
+ * de minusculas ni letras con o sin tilde: 'cad' encuentra 'Cadiz' escrito con o sin acento, y 'a coru' encuentra
+ * 'A Coruna' escrito con enie.
+ *
+ * Los nombres se normalizan una sola vez y se guardan ordenados en un array, de modo que una busqueda es una busqueda
+ * binaria del prefijo seguida de un recorrido secuencial de las coincidencias. Las coincidencias se devuelven en
+ * orden alfabetico del nombre normalizado, por lo que un nombre que coincide exactamente con el prefijo aparece el
+ * primero.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#obtenerIndiceNombres()
+ */
+public final class IndiceNombres {
+
+	// Marcas diacriticas que quedan separadas de su letra al descomponer el texto.
+	private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+
+	private final GrafoCompacto grafo;
+	// Nombres normalizados en orden alfabetico.
+	private final String[] claves;
+	// Ciudad de cada nombre normalizado, en la misma posicion.
+	private final int[] ciudades;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo compacto cuyos nombres se indexan.
+	 */
+	public IndiceNombres(GrafoCompacto grafo) {
+
+		this.grafo = grafo;
+		int numeroCiudades = grafo.numeroCiudades();
+		Entrada[] entradas = new Entrada[numeroCiudades];
+		for (int i = 0; i < numeroCiudades; i++) {
+			entradas[i] = new Entrada(normalizar(grafo.obtenerNombre(i)), i);
+		}
+		Arrays.sort(entradas);
+		claves = new String[numeroCiudades];
+		ciudades = new int[numeroCiudades];
+		for (int i = 0; i < numeroCiudades; i++) {
+			claves[i] = entradas[i].clave;
+			ciudades[i] = entradas[i].ciudad;
+		}
+	}
+
+	private IndiceNombres(GrafoCompacto grafo, String[] claves, int[] ciudades) {
+
+		this.grafo = grafo;
+		this.claves = claves;
+		this.ciudades = ciudades;
+	}
+
+	/**
+	 * Nombre normalizado de una ciudad, ordenado por la clave y despues por el identificador de la ciudad.
+	 */
+	private static final class Entrada implements Comparable<Entrada> {
+
+		final String clave;
+		final int ciudad;
+
+		Entrada(String clave, int ciudad) {
+			this.clave = clave;
+			this.ciudad = ciudad;
+		}
+
+		@Override
+		public int compareTo(Entrada otra) {
+			int comparacion = clave.compareTo(otra.clave);
+			return comparacion != 0 ? comparacion : Integer.compare(ciudad, otra.ciudad);
+		}
+	}
+
+	/**
+	 * Metodo que normaliza un texto para compararlo: elimina los acentos y demas marcas diacriticas, pasa a minusculas
+	 * y quita los espacios de los extremos.
+	 *
+	 * @param texto
+	 * Texto a normalizar.
+	 * @return Texto normalizado.
+	 */
+	public static String normalizar(String texto) {
+
+		String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+		return DIACRITICOS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT).trim();
+	}
+
+	/**
+	 * Metodo que devuelve el grafo cuyos nombres se indexaron.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que busca las ciudades cuyo nombre empieza por un prefijo.
+	 *
+	 * @param prefijo
+	 * Comienzo del nombre, con o sin acentos y en mayusculas o minusculas.
+	 * @param maximo
+	 * Numero maximo de ciudades que se devuelven.
+	 * @return Identificadores de las primeras ciudades que coinciden, en orden alfabetico.
+	 */
+	public int[] buscar(String prefijo, int maximo) {
+
+		String clave = normalizar(prefijo);
+		// Primera posicion cuya clave no es menor que el prefijo; las coincidencias empiezan ahi y son consecutivas.
+		int desde = 0;
+		int hasta = claves.length;
+		while (desde < hasta) {
+			int mitad = (desde + hasta) >>> 1;
+			if (claves[mitad].compareTo(clave) < 0) {
+				desde = mitad + 1;
+			} else {
+				hasta = mitad;
+			}
+		}
+		int fin = desde;
+		while (fin < claves.length && fin - desde < maximo && claves[fin].startsWith(clave)) {
+			fin++;
+		}
+		return Arrays.copyOfRange(ciudades, desde, fin);
+	}
+
+	/**
+	 * Metodo que escribe el indice en una instantanea del mapa.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	void escribir(InstantaneaMapa.Escritor escritor) throws IOException {
+
+		escritor.escribir(claves);
+		escritor.escribir(ciudades);
+	}
+
+	/**
+	 * Metodo que lee un indice escrito con el metodo escribir.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	static IndiceNombres leer(GrafoCompacto grafo, InstantaneaMapa.Lector lector) throws IOException {
+		return new IndiceNombres(grafo, lector.leerTextos(), lector.leerEnteros());
+	}
+}
@@ -0,0 +1,398 @@
+package modelo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Clase que representa una instantanea binaria del mapa guardada en disco: el grafo compacto (coordenadas,
+ * carreteras en formato CSR y nombres de las ciudades) y el preprocesado que estuviera preparado (jerarquia de
+ * contracciones, puntos de referencia, etiquetado de hubs e indice de nombres). Abrir la instantanea evita leer las
+ * tablas Ciudades y Carreteras y repetir el preprocesado, por lo que la aplicacion puede atender peticiones poco
+ * despues de arrancar.
+ *
+ * El fichero empieza por una cabecera de TAMANIO_CABECERA bytes con la version del formato, el ultimo cambio de la
+ * tabla CambiosMapa incluido, la huella del grafo y la suma CRC32 del resto del fichero. Despues van los arrays, cada
+ * uno precedido de su numero de elementos, en orden little-endian. Al abrirlo, cada array se proyecta en memoria con
+ * FileChannel.map y se copia de una vez en el array que usan los algoritmos, sin interpretar elemento a elemento.
+ *
+ * La base de datos sigue siendo la fuente de verdad: la instantanea solo registra hasta que cambio esta al dia, y si
+ * la version, la suma de comprobacion o la huella no coinciden se descarta y el mapa se vuelve a leer de la base de
+ * datos.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see BaseDatos#obtenerUltimoCambio()
+ */
+public final class InstantaneaMapa {
+
+	/**
+	 * Tamanio en bytes de la cabecera del fichero.
+	 */
+	public static final int TAMANIO_CABECERA = 64;
+
+	// Cabecera y version del formato del fichero ("MAP" + 2). La version 2 redondea las longitudes de las carreteras
+	// (ver Mapa.longitudCarretera): las instantaneas anteriores se descartan y el mapa se vuelve a leer.
+	private static final int MAGICO = 0x4D415002;
+	// Secciones opcionales presentes en el fichero.
+	private static final int CON_JERARQUIA = 1;
+	private static final int CON_PUNTOS_REFERENCIA = 2;
+	private static final int CON_ETIQUETADO_HUBS = 4;
+	private static final int CON_INDICE_NOMBRES = 8;
+	// Tamanio del bloque con el que se escribe el fichero y de las regiones con las que se comprueba.
+	private static final int TAMANIO_BLOQUE = 1 << 20;
+	private static final int TAMANIO_REGION = 1 << 28;
+
+	private final Mapa mapa;
+	private final long ultimoCambio;
+
+	private InstantaneaMapa(Mapa mapa, long ultimoCambio) {
+
+		this.mapa = mapa;
+		this.ultimoCambio = ultimoCambio;
+	}
+
+	/**
+	 * Metodo que devuelve el mapa leido de la instantanea, con el preprocesado que se guardo junto a el.
+	 *
+	 * @return Mapa congelado.
+	 */
+	public Mapa getMapa() {
+		return mapa;
+	}
+
+	/**
+	 * Metodo que devuelve el identificador del ultimo cambio de la tabla CambiosMapa incluido en la instantanea.
+	 *
+	 * @return Identificador del ultimo cambio.
+	 */
+	public long getUltimoCambio() {
+		return ultimoCambio;
+	}
+
+	/**
+	 * Metodo que guarda una instantanea de un mapa. Se escribe primero en un fichero temporal que luego se renombra,
+	 * de modo que un fallo a mitad de escritura nunca deja un fichero incompleto.
+	 *
+	 * @param mapa
+	 * Mapa a guardar. Se guarda el preprocesado que este preparado para su grafo actual.
+	 * @param ultimoCambio
+	 * Identificador del ultimo cambio de la tabla CambiosMapa incluido en el mapa.
+	 * @param fichero
+	 * Fichero en el que se guarda la instantanea.
+	 * @throws IOException
+	 * Si no se puede escribir el fichero.
+	 */
+	public static void guardar(Mapa mapa, long ultimoCambio, File fichero) throws IOException {
+
+		GrafoCompacto grafo = mapa.congelar();
+		JerarquiaContracciones jerarquia = mapa.jerarquiaPreparada();
+		PuntosReferencia puntosReferencia = mapa.puntosReferenciaPreparados();
+		EtiquetadoHubs etiquetadoHubs = mapa.etiquetadoHubsPreparado();
+		IndiceNombres indiceNombres = mapa.indiceNombresPreparado();
+		int secciones = (jerarquia != null ? CON_JERARQUIA : 0) | (puntosReferencia != null ? CON_PUNTOS_REFERENCIA : 0)
+				| (etiquetadoHubs != null ? CON_ETIQUETADO_HUBS : 0) | (indiceNombres != null ? CON_INDICE_NOMBRES : 0);
+
+		File temporal = new File(fichero.getPath() + ".tmp");
+		FileChannel canal = FileChannel.open(temporal.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			Escritor escritor = new Escritor(canal, TAMANIO_CABECERA);
+			grafo.escribir(escritor);
+			if (jerarquia != null) {
+				jerarquia.escribir(escritor);
+			}
+			if (puntosReferencia != null) {
+				puntosReferencia.escribir(escritor);
+			}
+			if (etiquetadoHubs != null) {
+				etiquetadoHubs.escribir(escritor);
+			}
+			if (indiceNombres != null) {
+				indiceNombres.escribir(escritor);
+			}
+			escritor.terminar();
+
+			// La cabecera se escribe al final, cuando ya se conocen la longitud y la suma de comprobacion.
+			ByteBuffer cabecera = ByteBuffer.allocate(TAMANIO_CABECERA).order(ByteOrder.LITTLE_ENDIAN);
+			cabecera.putInt(MAGICO).putInt(secciones).putLong(ultimoCambio).putLong(grafo.huella());
+			cabecera.putLong(escritor.longitud()).putLong(escritor.sumaComprobacion());
+			cabecera.clear();
+			escribirCompleto(canal, cabecera, 0);
+		} finally {
+			canal.close();
+		}
+		Files.move(temporal.toPath(), fichero.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Metodo que abre una instantanea guardada previamente con el metodo guardar.
+	 *
+	 * @param fichero
+	 * Fichero de la instantanea.
+	 * @return Instantanea leida del fichero. Null si el fichero es de otra version del formato, esta incompleto o su
+	 * contenido no coincide con la suma de comprobacion o con la huella del grafo.
+	 * @throws IOException
+	 * Si no se puede leer el fichero.
+	 */
+	public static InstantaneaMapa abrir(File fichero) throws IOException {
+
+		FileChannel canal = FileChannel.open(fichero.toPath(), StandardOpenOption.READ);
+		try {
+			if (canal.size() < TAMANIO_CABECERA) {
+				return null;
+			}
+			ByteBuffer cabecera = ByteBuffer.allocate(TAMANIO_CABECERA).order(ByteOrder.LITTLE_ENDIAN);
+			leerCompleto(canal, cabecera, 0);
+			cabecera.flip();
+			int magico = cabecera.getInt();
+			int secciones = cabecera.getInt();
+			long ultimoCambio = cabecera.getLong();
+			long huella = cabecera.getLong();
+			long longitud = cabecera.getLong();
+			long sumaComprobacion = cabecera.getLong();
+			if (magico != MAGICO || longitud != canal.size() - TAMANIO_CABECERA
+					|| sumaComprobacion != calcularSumaComprobacion(canal, TAMANIO_CABECERA, longitud)) {
+				return null;
+			}
+
+			// El contenido ya esta comprobado, por lo que los arrays se leen sin mas validaciones.
+			Lector lector = new Lector(canal, TAMANIO_CABECERA);
+			GrafoCompacto grafo = GrafoCompacto.leer(lector);
+			if (grafo.huella() != huella) {
+				return null;
+			}
+			JerarquiaContracciones jerarquia = (secciones & CON_JERARQUIA) != 0 ? JerarquiaContracciones.leer(grafo,
+					lector) : null;
+			PuntosReferencia puntosReferencia = (secciones & CON_PUNTOS_REFERENCIA) != 0 ? PuntosReferencia.leer(
+					grafo, lector) : null;
+			EtiquetadoHubs etiquetadoHubs = (secciones & CON_ETIQUETADO_HUBS) != 0 ? EtiquetadoHubs.leer(grafo,
+					lector) : null;
+			IndiceNombres indiceNombres = (secciones & CON_INDICE_NOMBRES) != 0 ? IndiceNombres.leer(grafo, lector)
+					: null;
+			return new InstantaneaMapa(new Mapa(grafo, jerarquia, puntosReferencia, etiquetadoHubs, indiceNombres),
+					ultimoCambio);
+		} finally {
+			canal.close();
+		}
+	}
+
+	/**
+	 * Metodo que calcula la suma CRC32 de una zona del fichero proyectandola en memoria por regiones.
+	 */
+	private static long calcularSumaComprobacion(FileChannel canal, long desde, long longitud) throws IOException {
+
+		CRC32 suma = new CRC32();
+		for (long posicion = desde; posicion < desde + longitud; posicion += TAMANIO_REGION) {
+			suma.update(canal.map(FileChannel.MapMode.READ_ONLY, posicion,
+					Math.min(TAMANIO_REGION, desde + longitud - posicion)));
+		}
+		return suma.getValue();
+	}
+
+	private static void escribirCompleto(FileChannel canal, ByteBuffer datos, long posicion) throws IOException {
+
+		while (datos.hasRemaining()) {
+			posicion += canal.write(datos, posicion);
+		}
+	}
+
+	private static void leerCompleto(FileChannel canal, ByteBuffer datos, long posicion) throws IOException {
+
+		while (datos.hasRemaining()) {
+			int leidos = canal.read(datos, posicion);
+			if (leidos < 0) {
+				throw new IOException("Fin de fichero inesperado en la posicion " + posicion);
+			}
+			posicion += leidos;
+		}
+	}
+
+	/**
+	 * Escritura secuencial de arrays en el fichero de una instantanea. Cada array se escribe precedido de su numero de
+	 * elementos y se acumula la suma CRC32 de todo lo escrito.
+	 */
+	static final class Escritor {
+
+		private final FileChannel canal;
+		private final ByteBuffer bloque = ByteBuffer.allocateDirect(TAMANIO_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+		private final CRC32 suma = new CRC32();
+		private long posicion;
+		private long longitud;
+
+		Escritor(FileChannel canal, long posicion) {
+
+			this.canal = canal;
+			this.posicion = posicion;
+		}
+
+		void escribir(int[] datos) throws IOException {
+
+			escribirNumeroElementos(datos.length);
+			for (int i = 0; i < datos.length;) {
+				int cuantos = Math.min(bloque.remaining() / 4, datos.length - i);
+				if (cuantos == 0) {
+					volcar();
+					continue;
+				}
+				bloque.asIntBuffer().put(datos, i, cuantos);
+				bloque.position(bloque.position() + cuantos * 4);
+				i += cuantos;
+			}
+		}
+
+		void escribir(float[] datos) throws IOException {
+
+			escribirNumeroElementos(datos.length);
+			for (int i = 0; i < datos.length;) {
+				int cuantos = Math.min(bloque.remaining() / 4, datos.length - i);
+				if (cuantos == 0) {
+					volcar();
+					continue;
+				}
+				bloque.asFloatBuffer().put(datos, i, cuantos);
+				bloque.position(bloque.position() + cuantos * 4);
+				i += cuantos;
+			}
+		}
+
+		/**
+		 * Metodo que escribe un array de textos en UTF-8, uno tras otro, precedidos de la posicion en la que empieza
+		 * cada uno.
+		 */
+		void escribir(String[] textos) throws IOException {
+
+			int[] inicios = new int[textos.length + 1];
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(textos.length * 16);
+			for (int i = 0; i < textos.length; i++) {
+				byte[] texto = textos[i].getBytes(StandardCharsets.UTF_8);
+				bytes.write(texto, 0, texto.length);
+				inicios[i + 1] = inicios[i] + texto.length;
+			}
+			escribir(inicios);
+			escribir(bytes.toByteArray());
+		}
+
+		void escribir(byte[] datos) throws IOException {
+
+			escribirNumeroElementos(datos.length);
+			for (int i = 0; i < datos.length;) {
+				int cuantos = Math.min(bloque.remaining(), datos.length - i);
+				if (cuantos == 0) {
+					volcar();
+					continue;
+				}
+				bloque.put(datos, i, cuantos);
+				i += cuantos;
+			}
+		}
+
+		private void escribirNumeroElementos(int numeroElementos) throws IOException {
+
+			if (bloque.remaining() < 4) {
+				volcar();
+			}
+			bloque.putInt(numeroElementos);
+		}
+
+		/**
+		 * Metodo que escribe en el fichero lo que quede en el bloque.
+		 */
+		void terminar() throws IOException {
+			volcar();
+		}
+
+		private void volcar() throws IOException {
+
+			bloque.flip();
+			suma.update(bloque.duplicate());
+			int bytes = bloque.remaining();
+			escribirCompleto(canal, bloque, posicion);
+			posicion += bytes;
+			longitud += bytes;
+			bloque.clear();
+		}
+
+		long longitud() {
+			return longitud;
+		}
+
+		long sumaComprobacion() {
+			return suma.getValue();
+		}
+	}
+
+	/**
+	 * Lectura secuencial de los arrays del fichero de una instantanea. Cada array se proyecta en memoria y se copia de
+	 * una vez.
+	 */
+	static final class Lector {
+
+		private final FileChannel canal;
+		private final ByteBuffer numeroElementos = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		private long posicion;
+
+		Lector(FileChannel canal, long posicion) {
+
+			this.canal = canal;
+			this.posicion = posicion;
+		}
+
+		int[] leerEnteros() throws IOException {
+
+			int[] datos = new int[leerNumeroElementos()];
+			proyectar(4L * datos.length).asIntBuffer().get(datos);
+			return datos;
+		}
+
+		float[] leerReales() throws IOException {
+
+			float[] datos = new float[leerNumeroElementos()];
+			proyectar(4L * datos.length).asFloatBuffer().get(datos);
+			return datos;
+		}
+
+		byte[] leerBytes() throws IOException {
+
+			byte[] datos = new byte[leerNumeroElementos()];
+			proyectar(datos.length).get(datos);
+			return datos;
+		}
+
+		String[] leerTextos() throws IOException {
+
+			int[] inicios = leerEnteros();
+			byte[] bytes = leerBytes();
+			String[] textos = new String[inicios.length - 1];
+			for (int i = 0; i < textos.length; i++) {
+				textos[i] = new String(bytes, inicios[i], inicios[i + 1] - inicios[i], StandardCharsets.UTF_8);
+			}
+			return textos;
+		}
+
+		private int leerNumeroElementos() throws IOException {
+
+			numeroElementos.clear();
+			leerCompleto(canal, numeroElementos, posicion);
+			posicion += 4;
+			return numeroElementos.getInt(0);
+		}
+
+		private ByteBuffer proyectar(long bytes) throws IOException {
+
+			MappedByteBuffer region = canal.map(FileChannel.MapMode.READ_ONLY, posicion, bytes);
+			posicion += bytes;
+			region.order(ByteOrder.LITTLE_ENDIAN);
+			return region;
+		}
+	}
+}
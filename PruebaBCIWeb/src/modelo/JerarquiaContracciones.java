@@ -0,0 +1,850 @@
+package modelo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Clase que implementa las jerarquias de contraccion (contraction hierarchies) sobre la forma compacta del mapa.
+ *
+ * En el preprocesado las ciudades se contraen una a una, de la menos importante a la mas importante. Contraer una
+ * ciudad significa eliminarla del grafo y, para cada par de ciudades adyacentes a ella cuyo camino minimo pasaba por
+ * ella, aniadir una carretera virtual (atajo) con la suma de las dos distancias. Antes de aniadir un atajo se busca
+ * un camino alternativo (testigo) que no pase por la ciudad contraida; si existe, el atajo no hace falta. La
+ * importancia de una ciudad es su diferencia de aristas: atajos que habria que aniadir menos carreteras que se
+ * eliminan, mas el numero de ciudades adyacentes ya contraidas para repartir las contracciones por todo el mapa.
+ *
+ * El preprocesado se hace por rondas para aprovechar todos los procesadores: en cada ronda se contraen a la vez las
+ * ciudades cuya importancia es menor que la de todas sus ciudades adyacentes. Estas ciudades no son adyacentes entre
+ * si y las busquedas de testigos no pasan por ninguna de ellas, por lo que los atajos se calculan en paralelo y solo
+ * su insercion en el grafo se hace de forma secuencial.
+ *
+ * Las consultas son una busqueda bidireccional que solo sube de rango: desde el origen y desde el destino se siguen
+ * unicamente carreteras hacia ciudades contraidas despues. Cada busqueda asienta unas pocas centenas de ciudades
+ * incluso en mapas muy grandes. Los atajos guardan la ciudad contraida que sustituyen, lo que permite desplegarlos
+ * para devolver el camino completo ciudad a ciudad.
+ *
+ * La jerarquia se puede guardar en un fichero junto con la huella del grafo para no repetir el preprocesado al
+ * reiniciar la aplicacion.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#prepararJerarquiaContracciones(File)
+ */
+public final class JerarquiaContracciones {
+
+	// Cabecera y version del formato del fichero ("JCH" + 1).
+	private static final int MAGICO = 0x4A434801;
+	// Numero maximo de ciudades que asienta una busqueda de testigos. Si se alcanza se aniade el atajo, lo que nunca
+	// da resultados incorrectos y acota el coste del preprocesado.
+	private static final int LIMITE_ASENTADAS_TESTIGO = 200;
+	private static final int LIMITE_ASENTADAS_ESTIMACION = 30;
+	// Numero minimo de ciudades que procesa cada tarea paralela.
+	private static final int TAMANIO_MINIMO_TAREA = 256;
+
+	private final GrafoCompacto grafo;
+	private final int[] rangos;
+	// Grafo de subida en formato CSR: para cada ciudad, las carreteras y atajos hacia ciudades de mayor rango.
+	private final int[] inicioSubida;
+	private final int[] destinosSubida;
+	private final float[] pesosSubida;
+	// Ciudad contraida que sustituye cada atajo, o -1 si se trata de una carretera original.
+	private final int[] intermediosSubida;
+
+	private JerarquiaContracciones(GrafoCompacto grafo, int[] rangos, int[] inicioSubida, int[] destinosSubida,
+			float[] pesosSubida, int[] intermediosSubida) {
+
+		this.grafo = grafo;
+		this.rangos = rangos;
+		this.inicioSubida = inicioSubida;
+		this.destinosSubida = destinosSubida;
+		this.pesosSubida = pesosSubida;
+		this.intermediosSubida = intermediosSubida;
+	}
+
+	/**
+	 * Metodo que devuelve el grafo a partir del cual se construyo la jerarquia.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de atajos aniadidos durante el preprocesado.
+	 *
+	 * @return Numero de atajos de la jerarquia.
+	 */
+	public int numeroAtajos() {
+
+		int atajos = 0;
+		for (int i = 0; i < intermediosSubida.length; i++) {
+			if (intermediosSubida[i] >= 0) {
+				atajos++;
+			}
+		}
+		return atajos;
+	}
+
+	/**
+	 * Metodo que devuelve el rango de una ciudad, es decir, el orden en el que fue contraida.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return Rango de la ciudad, entre 0 y numeroCiudades - 1.
+	 */
+	public int rango(int ciudad) {
+		return rangos[ciudad];
+	}
+
+	// ----- ----- ----- ----- ----- CONSULTAS ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que calcula el camino minimo entre dos ciudades usando la jerarquia.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino, con el camino completo ciudad a ciudad.
+	 */
+	public Ruta calcularRuta(int origen, int destino) {
+
+		// Indice 0: busqueda desde el origen. Indice 1: busqueda desde el destino. Como padre de cada ciudad alcanzada
+		// se guarda la posicion en el grafo de subida de la arista por la que se llego a ella.
+		EspacioBusqueda espacio = grafo.espacioBusqueda();
+		EspacioBusqueda.Frente[] frentes = espacio.iniciarSentidos();
+		MonticuloIndexado pendientesDelante = frentes[0].pendientes();
+		MonticuloIndexado pendientesDetras = frentes[1].pendientes();
+		frentes[0].fijar(origen, 0.0f, -1);
+		frentes[1].fijar(destino, 0.0f, -1);
+		pendientesDelante.insertarOReducir(origen, 0.0f);
+		pendientesDetras.insertarOReducir(destino, 0.0f);
+
+		float mejorDistancia = Float.POSITIVE_INFINITY;
+		int ciudadEncuentro = -1;
+		int ciudadesAsentadas = 0;
+		int carreterasRelajadas = 0;
+		int sentido = 1;
+
+		while (true) {
+			// Una busqueda termina cuando su cola se vacia o su distancia minima pendiente no puede mejorar el mejor
+			// camino conocido. Las dos busquedas avanzan alternativamente mientras alguna siga activa.
+			boolean activa0 = !pendientesDelante.estaVacio() && pendientesDelante.claveMinima() < mejorDistancia;
+			boolean activa1 = !pendientesDetras.estaVacio() && pendientesDetras.claveMinima() < mejorDistancia;
+			if (!activa0 && !activa1) {
+				break;
+			}
+			sentido = activa0 && activa1 ? 1 - sentido : (activa0 ? 0 : 1);
+
+			EspacioBusqueda.Frente frenteSentido = frentes[sentido];
+			int ciudad = frenteSentido.pendientes().extraerMinimo();
+			ciudadesAsentadas++;
+			EspacioBusqueda.comprobarInterrupcion(ciudadesAsentadas);
+
+			float distanciaCiudad = frenteSentido.distancia(ciudad);
+			float distanciaTotal = distanciaCiudad + frentes[1 - sentido].distancia(ciudad);
+			if (distanciaTotal < mejorDistancia) {
+				mejorDistancia = distanciaTotal;
+				ciudadEncuentro = ciudad;
+			}
+
+			// Detencion bajo demanda (stall-on-demand): si a la ciudad se llega antes bajando desde una ciudad de mayor
+			// rango ya alcanzada, ningun camino minimo sube por ella y no merece la pena expandirla.
+			if (estaDetenida(ciudad, distanciaCiudad, frenteSentido)) {
+				continue;
+			}
+
+			carreterasRelajadas += inicioSubida[ciudad + 1] - inicioSubida[ciudad];
+			for (int i = inicioSubida[ciudad]; i < inicioSubida[ciudad + 1]; i++) {
+				int adyacente = destinosSubida[i];
+				float distancia = distanciaCiudad + pesosSubida[i];
+				if (distancia < frenteSentido.distancia(adyacente)) {
+					frenteSentido.fijar(adyacente, distancia, i);
+					frenteSentido.pendientes().insertarOReducir(adyacente, distancia);
+				}
+			}
+		}
+
+		if (ciudadEncuentro < 0) {
+			return new Ruta(grafo, origen, destino, null, Float.POSITIVE_INFINITY, ciudadesAsentadas,
+					carreterasRelajadas);
+		}
+
+		// Desplegar los atajos de los dos tramos: origen -> encuentro y encuentro -> destino.
+		ListaEnteros camino = espacio.camino();
+		ListaEnteros pila = espacio.pila();
+		float distanciaCamino = 0.0f;
+		camino.aniadir(origen);
+
+		ListaEnteros tramoSubida = espacio.tramo();
+		for (int ciudad = ciudadEncuentro; frentes[0].padre(ciudad) >= 0;) {
+			int arista = frentes[0].padre(ciudad);
+			tramoSubida.aniadir(arista);
+			ciudad = propietarioArista(arista);
+		}
+		while (!tramoSubida.estaVacia()) {
+			int arista = tramoSubida.extraerUltimo();
+			distanciaCamino = desplegar(propietarioArista(arista), destinosSubida[arista], arista, camino, pila,
+					distanciaCamino);
+		}
+		for (int ciudad = ciudadEncuentro; frentes[1].padre(ciudad) >= 0;) {
+			int arista = frentes[1].padre(ciudad);
+			int anterior = propietarioArista(arista);
+			distanciaCamino = desplegar(ciudad, anterior, arista, camino, pila, distanciaCamino);
+			ciudad = anterior;
+		}
+
+		return new Ruta(grafo, origen, destino, camino.aArray(), distanciaCamino, ciudadesAsentadas,
+				carreterasRelajadas);
+	}
+
+	// Comprueba si alguna ciudad de mayor rango alcanzada por la busqueda ofrece un camino mas corto hasta la ciudad.
+	private boolean estaDetenida(int ciudad, float distanciaCiudad, EspacioBusqueda.Frente frente) {
+
+		for (int i = inicioSubida[ciudad]; i < inicioSubida[ciudad + 1]; i++) {
+			if (frente.distancia(destinosSubida[i]) + pesosSubida[i] < distanciaCiudad) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Metodo que recorre una arista del grafo de subida desde la ciudad 'desde' hasta la ciudad 'hasta', sustituyendo
+	 * los atajos por las carreteras originales. Las ciudades recorridas se aniaden al camino (excepto 'desde', que ya
+	 * esta en el) y las distancias de las carreteras originales se acumulan en el mismo orden que las sumaria Dijkstra.
+	 * Devuelve la distancia acumulada.
+	 */
+	private float desplegar(int desde, int hasta, int arista, ListaEnteros camino, ListaEnteros pila,
+			float distanciaCamino) {
+
+		pila.vaciar();
+		pila.aniadir(desde);
+		pila.aniadir(hasta);
+		pila.aniadir(arista);
+		while (!pila.estaVacia()) {
+			int aristaActual = pila.extraerUltimo();
+			int hastaActual = pila.extraerUltimo();
+			int desdeActual = pila.extraerUltimo();
+			int intermedio = intermediosSubida[aristaActual];
+			if (intermedio < 0) {
+				camino.aniadir(hastaActual);
+				distanciaCamino += pesosSubida[aristaActual];
+			} else {
+				// El atajo sustituye a las aristas intermedio-desde e intermedio-hasta. La ciudad intermedia se
+				// contrajo antes que las otras dos, por lo que ambas aristas estan en su lista de subida. Se apila
+				// primero el segundo tramo para recorrer antes el primero.
+				pila.aniadir(intermedio);
+				pila.aniadir(hastaActual);
+				pila.aniadir(buscarAristaSubida(intermedio, hastaActual));
+				pila.aniadir(desdeActual);
+				pila.aniadir(intermedio);
+				pila.aniadir(buscarAristaSubida(intermedio, desdeActual));
+			}
+		}
+		return distanciaCamino;
+	}
+
+	private int buscarAristaSubida(int ciudad, int destino) {
+
+		for (int i = inicioSubida[ciudad]; i < inicioSubida[ciudad + 1]; i++) {
+			if (destinosSubida[i] == destino) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("Jerarquia corrupta: falta la arista " + ciudad + " - " + destino);
+	}
+
+	// Ciudad en cuya lista de subida se encuentra una arista: busqueda binaria sobre inicioSubida.
+	private int propietarioArista(int arista) {
+
+		int bajo = 0;
+		int alto = inicioSubida.length - 2;
+		while (bajo < alto) {
+			int medio = (bajo + alto + 1) >>> 1;
+			if (inicioSubida[medio] <= arista) {
+				bajo = medio;
+			} else {
+				alto = medio - 1;
+			}
+		}
+		return bajo;
+	}
+
+	// ----- ----- ----- ----- ----- PERSISTENCIA ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que guarda la jerarquia en un fichero. Se escribe primero en un fichero temporal que luego se renombra,
+	 * de modo que un fallo a mitad de escritura nunca deja un fichero incompleto.
+	 *
+	 * @param fichero
+	 * Fichero en el que se guarda la jerarquia.
+	 * @throws IOException
+	 * Si no se puede escribir el fichero.
+	 */
+	public void guardar(File fichero) throws IOException {
+
+		File temporal = new File(fichero.getPath() + ".tmp");
+		DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporal), 1 << 16));
+		try {
+			salida.writeInt(MAGICO);
+			salida.writeLong(grafo.huella());
+			salida.writeInt(rangos.length);
+			salida.writeInt(destinosSubida.length);
+			for (int i = 0; i < rangos.length; i++) {
+				salida.writeInt(rangos[i]);
+			}
+			for (int i = 0; i < inicioSubida.length; i++) {
+				salida.writeInt(inicioSubida[i]);
+			}
+			for (int i = 0; i < destinosSubida.length; i++) {
+				salida.writeInt(destinosSubida[i]);
+				salida.writeFloat(pesosSubida[i]);
+				salida.writeInt(intermediosSubida[i]);
+			}
+		} finally {
+			salida.close();
+		}
+		Files.move(temporal.toPath(), fichero.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Metodo que carga una jerarquia guardada previamente con el metodo guardar.
+	 *
+	 * @param grafo
+	 * Grafo del mapa cargado.
+	 * @param fichero
+	 * Fichero en el que se guardo la jerarquia.
+	 * @return Jerarquia leida del fichero. Null si el fichero no tiene el formato esperado o fue generado a partir de
+	 * un mapa distinto.
+	 * @throws IOException
+	 * Si no se puede leer el fichero.
+	 */
+	public static JerarquiaContracciones cargar(GrafoCompacto grafo, File fichero) throws IOException {
+
+		DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(fichero), 1 << 16));
+		try {
+			if (entrada.readInt() != MAGICO || entrada.readLong() != grafo.huella()) {
+				return null;
+			}
+			int numeroCiudades = entrada.readInt();
+			int numeroAristas = entrada.readInt();
+			if (numeroCiudades != grafo.numeroCiudades() || numeroAristas < 0) {
+				return null;
+			}
+			int[] rangos = new int[numeroCiudades];
+			int[] inicioSubida = new int[numeroCiudades + 1];
+			int[] destinosSubida = new int[numeroAristas];
+			float[] pesosSubida = new float[numeroAristas];
+			int[] intermediosSubida = new int[numeroAristas];
+			for (int i = 0; i < numeroCiudades; i++) {
+				rangos[i] = entrada.readInt();
+			}
+			for (int i = 0; i <= numeroCiudades; i++) {
+				inicioSubida[i] = entrada.readInt();
+			}
+			for (int i = 0; i < numeroAristas; i++) {
+				destinosSubida[i] = entrada.readInt();
+				pesosSubida[i] = entrada.readFloat();
+				intermediosSubida[i] = entrada.readInt();
+			}
+			return new JerarquiaContracciones(grafo, rangos, inicioSubida, destinosSubida, pesosSubida, intermediosSubida);
+		} finally {
+			entrada.close();
+		}
+	}
+
+	/**
+	 * Metodo que escribe la jerarquia en una instantanea del mapa.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	void escribir(InstantaneaMapa.Escritor escritor) throws IOException {
+
+		escritor.escribir(rangos);
+		escritor.escribir(inicioSubida);
+		escritor.escribir(destinosSubida);
+		escritor.escribir(pesosSubida);
+		escritor.escribir(intermediosSubida);
+	}
+
+	/**
+	 * Metodo que lee una jerarquia escrita con el metodo escribir.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	static JerarquiaContracciones leer(GrafoCompacto grafo, InstantaneaMapa.Lector lector) throws IOException {
+
+		return new JerarquiaContracciones(grafo, lector.leerEnteros(), lector.leerEnteros(), lector.leerEnteros(),
+				lector.leerReales(), lector.leerEnteros());
+	}
+
+	// ----- ----- ----- ----- ----- PREPROCESADO ----- ----- ----- ----- -----
+
+	/**
+	 * Metodo que construye la jerarquia de contracciones de un grafo.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa.
+	 * @param numeroHilos
+	 * Numero de hilos que se usan durante el preprocesado.
+	 * @return Jerarquia de contracciones del grafo.
+	 */
+	public static JerarquiaContracciones construir(GrafoCompacto grafo, int numeroHilos) {
+
+		ExecutorService hilos = Executors.newFixedThreadPool(Math.max(1, numeroHilos));
+		try {
+			return new Contraccion(grafo, hilos, Math.max(1, numeroHilos)).ejecutar();
+		} finally {
+			hilos.shutdown();
+		}
+	}
+
+	/**
+	 * Estado del grafo durante el preprocesado. Cada ciudad guarda la lista de ciudades adyacentes aun no contraidas,
+	 * con la distancia y la ciudad intermedia de cada arista. Cuando una ciudad se contrae su lista deja de
+	 * modificarse y pasa a ser su lista de subida en la jerarquia.
+	 */
+	private static final class Contraccion {
+
+		private final GrafoCompacto grafo;
+		private final ExecutorService hilos;
+		private final int numeroHilos;
+		private final int numeroCiudades;
+
+		private final int[][] adyacentes;
+		private final float[][] pesos;
+		private final int[][] intermedios;
+		private final int[] grados;
+
+		private final boolean[] contraidas;
+		private final boolean[] enRonda;
+		private final int[] adyacentesContraidas;
+		private final int[] prioridades;
+
+		private final ThreadLocal<BuscadorTestigos> buscadores;
+
+		Contraccion(GrafoCompacto grafo, ExecutorService hilos, int numeroHilos) {
+
+			this.grafo = grafo;
+			this.hilos = hilos;
+			this.numeroHilos = numeroHilos;
+			numeroCiudades = grafo.numeroCiudades();
+
+			adyacentes = new int[numeroCiudades][];
+			pesos = new float[numeroCiudades][];
+			intermedios = new int[numeroCiudades][];
+			grados = new int[numeroCiudades];
+			contraidas = new boolean[numeroCiudades];
+			enRonda = new boolean[numeroCiudades];
+			adyacentesContraidas = new int[numeroCiudades];
+			prioridades = new int[numeroCiudades];
+
+			for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+				int capacidad = Math.max(4, grafo.finAdyacentes(ciudad) - grafo.inicioAdyacentes(ciudad));
+				adyacentes[ciudad] = new int[capacidad];
+				pesos[ciudad] = new float[capacidad];
+				intermedios[ciudad] = new int[capacidad];
+			}
+			for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+				for (int i = grafo.inicioAdyacentes(ciudad); i < grafo.finAdyacentes(ciudad); i++) {
+					int adyacente = grafo.ciudadAdyacente(i);
+					if (adyacente != ciudad) {
+						aniadirOReducirArista(ciudad, adyacente, grafo.distanciaAdyacente(i), -1);
+					}
+				}
+			}
+
+			final int n = numeroCiudades;
+			buscadores = new ThreadLocal<BuscadorTestigos>() {
+				@Override
+				protected BuscadorTestigos initialValue() {
+					return new BuscadorTestigos(n);
+				}
+			};
+		}
+
+		JerarquiaContracciones ejecutar() {
+
+			int[] rangos = new int[numeroCiudades];
+			int[] restantes = new int[numeroCiudades];
+			for (int i = 0; i < numeroCiudades; i++) {
+				restantes[i] = i;
+			}
+			int numeroRestantes = numeroCiudades;
+			actualizarPrioridades(restantes, numeroRestantes);
+
+			int rango = 0;
+			int[] seleccionadas = new int[numeroCiudades];
+			boolean[] afectada = new boolean[numeroCiudades];
+			int[] afectadas = new int[numeroCiudades];
+
+			while (numeroRestantes > 0) {
+
+				// Seleccionar las ciudades menos importantes que todas sus adyacentes (conjunto independiente).
+				int numeroSeleccionadas = 0;
+				for (int i = 0; i < numeroRestantes; i++) {
+					int ciudad = restantes[i];
+					if (esMinimoLocal(ciudad)) {
+						seleccionadas[numeroSeleccionadas++] = ciudad;
+						enRonda[ciudad] = true;
+					}
+				}
+
+				// Calcular en paralelo los atajos de cada ciudad seleccionada.
+				ListaAtajos[] atajos = calcularAtajos(seleccionadas, numeroSeleccionadas);
+
+				// Aplicar las contracciones de forma secuencial.
+				int numeroAfectadas = 0;
+				for (int i = 0; i < numeroSeleccionadas; i++) {
+					int ciudad = seleccionadas[i];
+					rangos[ciudad] = rango++;
+					contraidas[ciudad] = true;
+					enRonda[ciudad] = false;
+					for (int j = 0; j < grados[ciudad]; j++) {
+						int adyacente = adyacentes[ciudad][j];
+						eliminarArista(adyacente, ciudad);
+						adyacentesContraidas[adyacente]++;
+						if (!afectada[adyacente]) {
+							afectada[adyacente] = true;
+							afectadas[numeroAfectadas++] = adyacente;
+						}
+					}
+					ListaAtajos atajosCiudad = atajos[i];
+					for (int j = 0; j < atajosCiudad.tamanio; j++) {
+						int a = atajosCiudad.ciudades[2 * j];
+						int b = atajosCiudad.ciudades[2 * j + 1];
+						aniadirOReducirArista(a, b, atajosCiudad.distancias[j], ciudad);
+						aniadirOReducirArista(b, a, atajosCiudad.distancias[j], ciudad);
+					}
+				}
+
+				// Recalcular en paralelo la importancia de las ciudades adyacentes a las contraidas.
+				for (int i = 0; i < numeroAfectadas; i++) {
+					afectada[afectadas[i]] = false;
+				}
+				actualizarPrioridades(afectadas, numeroAfectadas);
+
+				int siguientes = 0;
+				for (int i = 0; i < numeroRestantes; i++) {
+					if (!contraidas[restantes[i]]) {
+						restantes[siguientes++] = restantes[i];
+					}
+				}
+				numeroRestantes = siguientes;
+			}
+
+			return construirJerarquia(rangos);
+		}
+
+		// Una ciudad se contrae en esta ronda si su prioridad es menor que la de todas sus adyacentes (a igualdad de
+		// prioridad decide el identificador). Asi dos ciudades adyacentes nunca se contraen en la misma ronda.
+		private boolean esMinimoLocal(int ciudad) {
+
+			int prioridad = prioridades[ciudad];
+			for (int j = 0; j < grados[ciudad]; j++) {
+				int adyacente = adyacentes[ciudad][j];
+				int prioridadAdyacente = prioridades[adyacente];
+				if (prioridadAdyacente < prioridad || (prioridadAdyacente == prioridad && adyacente < ciudad)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void actualizarPrioridades(final int[] ciudades, int numero) {
+
+			ejecutarEnParalelo(numero, new Tramo() {
+				@Override
+				public void procesar(int desde, int hasta) {
+					BuscadorTestigos buscador = buscadores.get();
+					for (int i = desde; i < hasta; i++) {
+						int ciudad = ciudades[i];
+						int numeroAtajos = buscador.buscarAtajos(Contraccion.this, ciudad, null);
+						// Diferencia de aristas mas ciudades adyacentes ya contraidas.
+						prioridades[ciudad] = 4 * (numeroAtajos - grados[ciudad]) + adyacentesContraidas[ciudad];
+					}
+				}
+			});
+		}
+
+		private ListaAtajos[] calcularAtajos(final int[] ciudades, int numero) {
+
+			final ListaAtajos[] atajos = new ListaAtajos[numero];
+			ejecutarEnParalelo(numero, new Tramo() {
+				@Override
+				public void procesar(int desde, int hasta) {
+					BuscadorTestigos buscador = buscadores.get();
+					ListaAtajos lista = new ListaAtajos(64);
+					for (int i = desde; i < hasta; i++) {
+						lista.vaciar();
+						buscador.buscarAtajos(Contraccion.this, ciudades[i], lista);
+						atajos[i] = lista.copiar();
+					}
+				}
+			});
+			return atajos;
+		}
+
+		private void ejecutarEnParalelo(int numero, final Tramo tramo) {
+
+			if (numero == 0) {
+				return;
+			}
+			// Todas las tareas se ejecutan en el pool, tambien cuando solo hay una, para que los espacios de trabajo
+			// de las busquedas de testigos pertenezcan a sus hilos y se liberen al terminar el preprocesado.
+			int tamanioTarea = Math.max(TAMANIO_MINIMO_TAREA, (numero + numeroHilos * 4 - 1) / (numeroHilos * 4));
+			List<Callable<Void>> tareas = new ArrayList<Callable<Void>>();
+			for (int desde = 0; desde < numero; desde += tamanioTarea) {
+				final int inicio = desde;
+				final int fin = Math.min(numero, desde + tamanioTarea);
+				tareas.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						tramo.procesar(inicio, fin);
+						return null;
+					}
+				});
+			}
+			try {
+				for (Future<Void> resultado : hilos.invokeAll(tareas)) {
+					resultado.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Preprocesado interrumpido", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Error durante el preprocesado", e.getCause());
+			}
+		}
+
+		private void aniadirOReducirArista(int ciudad, int adyacente, float peso, int intermedio) {
+
+			int[] lista = adyacentes[ciudad];
+			for (int j = 0; j < grados[ciudad]; j++) {
+				if (lista[j] == adyacente) {
+					if (peso < pesos[ciudad][j]) {
+						pesos[ciudad][j] = peso;
+						intermedios[ciudad][j] = intermedio;
+					}
+					return;
+				}
+			}
+			if (grados[ciudad] == lista.length) {
+				int capacidad = lista.length * 2;
+				adyacentes[ciudad] = Arrays.copyOf(lista, capacidad);
+				pesos[ciudad] = Arrays.copyOf(pesos[ciudad], capacidad);
+				intermedios[ciudad] = Arrays.copyOf(intermedios[ciudad], capacidad);
+			}
+			int j = grados[ciudad]++;
+			adyacentes[ciudad][j] = adyacente;
+			pesos[ciudad][j] = peso;
+			intermedios[ciudad][j] = intermedio;
+		}
+
+		private void eliminarArista(int ciudad, int adyacente) {
+
+			int[] lista = adyacentes[ciudad];
+			for (int j = 0; j < grados[ciudad]; j++) {
+				if (lista[j] == adyacente) {
+					int ultima = --grados[ciudad];
+					lista[j] = lista[ultima];
+					pesos[ciudad][j] = pesos[ciudad][ultima];
+					intermedios[ciudad][j] = intermedios[ciudad][ultima];
+					return;
+				}
+			}
+		}
+
+		private JerarquiaContracciones construirJerarquia(int[] rangos) {
+
+			int[] inicioSubida = new int[numeroCiudades + 1];
+			for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+				inicioSubida[ciudad + 1] = inicioSubida[ciudad] + grados[ciudad];
+			}
+			int numeroAristas = inicioSubida[numeroCiudades];
+			int[] destinosSubida = new int[numeroAristas];
+			float[] pesosSubida = new float[numeroAristas];
+			int[] intermediosSubida = new int[numeroAristas];
+			for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+				System.arraycopy(adyacentes[ciudad], 0, destinosSubida, inicioSubida[ciudad], grados[ciudad]);
+				System.arraycopy(pesos[ciudad], 0, pesosSubida, inicioSubida[ciudad], grados[ciudad]);
+				System.arraycopy(intermedios[ciudad], 0, intermediosSubida, inicioSubida[ciudad], grados[ciudad]);
+			}
+			return new JerarquiaContracciones(grafo, rangos, inicioSubida, destinosSubida, pesosSubida, intermediosSubida);
+		}
+	}
+
+	/**
+	 * Trabajo sobre un tramo [desde, hasta) de un array de ciudades.
+	 */
+	private interface Tramo {
+		void procesar(int desde, int hasta);
+	}
+
+	/**
+	 * Lista de atajos pendientes de aniadir: pares de ciudades y la distancia del atajo que las une.
+	 */
+	private static final class ListaAtajos {
+
+		private int[] ciudades;
+		private float[] distancias;
+		private int tamanio;
+
+		ListaAtajos(int capacidad) {
+
+			ciudades = new int[2 * capacidad];
+			distancias = new float[capacidad];
+			tamanio = 0;
+		}
+
+		void aniadir(int a, int b, float distancia) {
+
+			if (tamanio == distancias.length) {
+				ciudades = Arrays.copyOf(ciudades, 4 * tamanio);
+				distancias = Arrays.copyOf(distancias, 2 * tamanio);
+			}
+			ciudades[2 * tamanio] = a;
+			ciudades[2 * tamanio + 1] = b;
+			distancias[tamanio++] = distancia;
+		}
+
+		void vaciar() {
+			tamanio = 0;
+		}
+
+		ListaAtajos copiar() {
+
+			ListaAtajos copia = new ListaAtajos(0);
+			copia.ciudades = Arrays.copyOf(ciudades, 2 * tamanio);
+			copia.distancias = Arrays.copyOf(distancias, tamanio);
+			copia.tamanio = tamanio;
+			return copia;
+		}
+	}
+
+	/**
+	 * Espacio de trabajo de un hilo para las busquedas de testigos. Las distancias se invalidan entre busquedas
+	 * cambiando de generacion en lugar de recorrer todo el array.
+	 */
+	private static final class BuscadorTestigos {
+
+		private final float[] distancias;
+		private final int[] generaciones;
+		// Ciudades adyacentes a la ciudad contraida que busca la busqueda de testigos de la generacion actual.
+		private final int[] objetivos;
+		private final MonticuloIndexado pendientes;
+		private int generacion;
+
+		BuscadorTestigos(int numeroCiudades) {
+
+			distancias = new float[numeroCiudades];
+			generaciones = new int[numeroCiudades];
+			objetivos = new int[numeroCiudades];
+			pendientes = new MonticuloIndexado(numeroCiudades);
+			generacion = 0;
+		}
+
+		/**
+		 * Metodo que calcula los atajos necesarios para contraer una ciudad. Para cada ciudad adyacente se lanza una
+		 * busqueda local que evita la ciudad contraida y las ciudades de la ronda actual, y se aniade un atajo hacia
+		 * cada ciudad adyacente posterior que no se alcance por un camino alternativo igual o mas corto.
+		 *
+		 * @return Numero de atajos necesarios.
+		 */
+		int buscarAtajos(Contraccion contraccion, int ciudad, ListaAtajos atajos) {
+
+			// Las estimaciones de importancia usan busquedas mas cortas que las contracciones reales: solo sirven para
+			// ordenar las ciudades y se repiten muchas veces.
+			int limiteAsentadas = atajos == null ? LIMITE_ASENTADAS_ESTIMACION : LIMITE_ASENTADAS_TESTIGO;
+			int grado = contraccion.grados[ciudad];
+			int[] adyacentes = contraccion.adyacentes[ciudad];
+			float[] pesos = contraccion.pesos[ciudad];
+			int numeroAtajos = 0;
+
+			// Cada busqueda de testigos usa una generacion nueva. Antes de desbordar el contador se reinician las marcas.
+			if (generacion > Integer.MAX_VALUE - grado) {
+				Arrays.fill(generaciones, 0);
+				Arrays.fill(objetivos, 0);
+				generacion = 0;
+			}
+
+			for (int i = 0; i < grado - 1; i++) {
+				int u = adyacentes[i];
+				float maximo = 0.0f;
+				for (int j = i + 1; j < grado; j++) {
+					maximo = Math.max(maximo, pesos[i] + pesos[j]);
+				}
+				for (int j = i + 1; j < grado; j++) {
+					objetivos[adyacentes[j]] = generacion + 1;
+				}
+				buscarTestigos(contraccion, u, ciudad, maximo, grado - 1 - i, limiteAsentadas);
+				for (int j = i + 1; j < grado; j++) {
+					int w = adyacentes[j];
+					float distanciaAtajo = pesos[i] + pesos[j];
+					if (generaciones[w] != generacion || distancias[w] > distanciaAtajo) {
+						numeroAtajos++;
+						if (atajos != null) {
+							atajos.aniadir(u, w, distanciaAtajo);
+						}
+					}
+				}
+			}
+			return numeroAtajos;
+		}
+
+		private void buscarTestigos(Contraccion contraccion, int origen, int evitada, float limite, int numeroObjetivos,
+				int limiteAsentadas) {
+
+			generacion++;
+			distancias[origen] = 0.0f;
+			generaciones[origen] = generacion;
+			pendientes.insertarOReducir(origen, 0.0f);
+
+			int asentadas = 0;
+			while (!pendientes.estaVacio()) {
+				int ciudad = pendientes.extraerMinimo();
+				float distanciaCiudad = distancias[ciudad];
+				if (distanciaCiudad > limite || ++asentadas > limiteAsentadas) {
+					break;
+				}
+				// Cuando todas las ciudades adyacentes buscadas tienen su distancia definitiva no hace falta seguir.
+				if (objetivos[ciudad] == generacion && --numeroObjetivos == 0) {
+					break;
+				}
+				int[] adyacentes = contraccion.adyacentes[ciudad];
+				float[] pesos = contraccion.pesos[ciudad];
+				for (int j = 0; j < contraccion.grados[ciudad]; j++) {
+					int adyacente = adyacentes[j];
+					if (adyacente == evitada || contraccion.enRonda[adyacente]) {
+						continue;
+					}
+					float distancia = distanciaCiudad + pesos[j];
+					if (generaciones[adyacente] != generacion || distancia < distancias[adyacente]) {
+						distancias[adyacente] = distancia;
+						generaciones[adyacente] = generacion;
+						pendientes.insertarOReducir(adyacente, distancia);
+					}
+				}
+			}
+			pendientes.vaciar();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package modelo;
+
+import java.util.Arrays;
+
+/**
+ * Clase que representa una lista de enteros que crece segun se necesita. Evita el coste de envolver cada identificador
+ * de ciudad en un Integer cuando se usan las colecciones de java.util.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+final class ListaEnteros {
+
+	private int[] elementos;
+	private int tamanio;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param capacidadInicial
+	 * Numero de elementos que caben en la lista antes de que tenga que crecer.
+	 */
+	ListaEnteros(int capacidadInicial) {
+
+		elementos = new int[Math.max(capacidadInicial, 4)];
+		tamanio = 0;
+	}
+
+	/**
+	 * Metodo que aniade un elemento al final de la lista.
+	 *
+	 * @param elemento
+	 * Elemento a aniadir.
+	 */
+	void aniadir(int elemento) {
+
+		if (tamanio == elementos.length) {
+			elementos = Arrays.copyOf(elementos, elementos.length * 2);
+		}
+		elementos[tamanio++] = elemento;
+	}
+
+	/**
+	 * Metodo que devuelve el elemento situado en una posicion de la lista.
+	 *
+	 * @param posicion
+	 * Posicion del elemento, entre 0 y tamanio() - 1.
+	 * @return Elemento de la posicion indicada.
+	 */
+	int obtener(int posicion) {
+		return elementos[posicion];
+	}
+
+	/**
+	 * Metodo que extrae el ultimo elemento de la lista. La lista no debe estar vacia.
+	 *
+	 * @return Ultimo elemento de la lista.
+	 */
+	int extraerUltimo() {
+		return elementos[--tamanio];
+	}
+
+	/**
+	 * Metodo que devuelve el numero de elementos de la lista.
+	 *
+	 * @return Numero de elementos.
+	 */
+	int tamanio() {
+		return tamanio;
+	}
+
+	/**
+	 * Metodo que indica si la lista no contiene elementos.
+	 *
+	 * @return true si la lista esta vacia.
+	 */
+	boolean estaVacia() {
+		return tamanio == 0;
+	}
+
+	/**
+	 * Metodo que elimina todos los elementos de la lista conservando la memoria reservada.
+	 */
+	void vaciar() {
+		tamanio = 0;
+	}
+
+	/**
+	 * Metodo que devuelve una copia de los elementos de la lista.
+	 *
+	 * @return Array con los elementos de la lista.
+	 */
+	int[] aArray() {
+		return Arrays.copyOf(elementos, tamanio);
+	}
+}
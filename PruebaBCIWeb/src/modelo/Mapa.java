@@ -1,8 +1,15 @@
 package modelo;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 /**
@@ -14,7 +21,28 @@ import java.util.Map.Entry;
 
 public class Mapa {
 
+	// Registro de ciudades por nombre. En los mapas creados con ConstructorMapa no se crea hasta que se necesita.
 	private Map<String, Ciudad> ciudades = null;
+	// Forma compacta y de solo lectura del mapa sobre la que se ejecutan los algoritmos de busqueda de caminos. Se
+	// construye en el metodo congelar() y se descarta cada vez que el mapa se modifica.
+	private volatile GrafoCompacto grafo = null;
+	// Jerarquia de contracciones del grafo. Solo se usa si fue construida a partir del grafo actual.
+	private volatile JerarquiaContracciones jerarquia = null;
+	// Tablas de puntos de referencia del algoritmo ALT. Solo se usan si fueron calculadas a partir del grafo actual.
+	private volatile PuntosReferencia puntosReferencia = null;
+	// Etiquetado de hubs para las consultas de solo distancia. Solo se usa si fue construido a partir del grafo actual.
+	private volatile EtiquetadoHubs etiquetadoHubs = null;
+	// Cache de arboles de caminos minimos por ciudad origen. Solo se usa si fue creada para el grafo actual.
+	private volatile CacheArbolesCaminos cacheArboles = null;
+	// Tablas de caminos minimos entre todos los pares de ciudades. Solo se usan si fueron calculadas para el grafo
+	// actual.
+	private volatile TablaCaminosMinimos tablaCaminos = null;
+	// Indice de nombres para buscar ciudades por prefijo. Solo se usa si fue construido a partir del grafo actual.
+	private volatile IndiceNombres indiceNombres = null;
+	// Indice espacial para buscar ciudades por coordenadas. Solo se usa si fue construido a partir del grafo actual.
+	private volatile IndiceEspacial indiceEspacial = null;
+	// Numero maximo de hilos del preprocesado. 0: todos los procesadores disponibles.
+	private volatile int hilosPreprocesado = 0;
 
 	/**
 	 * Constructor de la clase.
@@ -24,6 +52,67 @@ public class Mapa {
 		ciudades = new HashMap<String, Ciudad>();
 	}
 
+	/**
+	 * Constructor de la clase a partir de su forma compacta, usado por ConstructorMapa. El registro de objetos Ciudad
+	 * se crea a partir del grafo la primera vez que se modifica o se consulta el mapa con los metodos que lo usan.
+	 * 
+	 * @param grafo
+	 * Forma compacta del mapa.
+	 */
+	Mapa(GrafoCompacto grafo) {
+
+		this.grafo = grafo;
+	}
+
+	/**
+	 * Constructor de la clase a partir de su forma compacta y del preprocesado ya calculado para ella, usado por
+	 * InstantaneaMapa.
+	 * 
+	 * @param grafo
+	 * Forma compacta del mapa.
+	 * @param jerarquia
+	 * Jerarquia de contracciones del grafo, o null.
+	 * @param puntosReferencia
+	 * Puntos de referencia del grafo, o null.
+	 * @param etiquetadoHubs
+	 * Etiquetado de hubs del grafo, o null.
+	 * @param indiceNombres
+	 * Indice de nombres del grafo, o null.
+	 */
+	Mapa(GrafoCompacto grafo, JerarquiaContracciones jerarquia, PuntosReferencia puntosReferencia,
+			EtiquetadoHubs etiquetadoHubs, IndiceNombres indiceNombres) {
+
+		this.grafo = grafo;
+		this.jerarquia = jerarquia;
+		this.puntosReferencia = puntosReferencia;
+		this.etiquetadoHubs = etiquetadoHubs;
+		this.indiceNombres = indiceNombres;
+	}
+
+	/**
+	 * Metodo que devuelve el registro de ciudades, creandolo a partir de la forma compacta si el mapa se construyo
+	 * con ConstructorMapa.
+	 */
+	private synchronized Map<String, Ciudad> registroCiudades() {
+
+		if (ciudades == null) {
+			GrafoCompacto grafoActual = grafo;
+			int numeroCiudades = grafoActual.numeroCiudades();
+			Map<String, Ciudad> registro = new HashMap<String, Ciudad>(numeroCiudades * 4 / 3 + 1);
+			for (int i = 0; i < numeroCiudades; i++) {
+				Ciudad ciudad = new Ciudad(grafoActual.obtenerNombre(i), grafoActual.getCoordX(i),
+						grafoActual.getCoordY(i));
+				for (int pos = grafoActual.inicioAdyacentes(i); pos < grafoActual.finAdyacentes(i); pos++) {
+					ciudad.aniadirCiudadAdyacente(grafoActual.obtenerNombre(grafoActual.ciudadAdyacente(pos)),
+							grafoActual.distanciaAdyacente(pos));
+				}
+				registro.put(ciudad.getNombreCiudad(), ciudad);
+			}
+			ciudades = registro;
+		}
+		return ciudades;
+	}
+
 	/**
 	 * Metodo que aniade un ciudad (nodo) al mapa (grafo).
 	 * 
@@ -35,7 +124,8 @@ public class Mapa {
 		// Si la clave 'ciudad.getNombreCiudad()' existe en el 'Map ciudades'
 		// antes de la llamada a este metodo su valor asociado es machacado al
 		// ejecutar el metodo put.
-		ciudades.put(ciudad.getNombreCiudad(), ciudad);
+		registroCiudades().put(ciudad.getNombreCiudad(), ciudad);
+		grafo = null;
 
 	}
 
@@ -54,15 +144,16 @@ public class Mapa {
 		if (nombreCiudadA == null || nombreCiudadB == null) {
 			return;
 		}
-		Ciudad ciudadA = ciudades.get(nombreCiudadA);
-		Ciudad ciudadB = ciudades.get(nombreCiudadB);
+		Map<String, Ciudad> registro = registroCiudades();
+		Ciudad ciudadA = registro.get(nombreCiudadA);
+		Ciudad ciudadB = registro.get(nombreCiudadB);
 		if (ciudadA == null || ciudadB == null) {
 			return;
 		}
 		// Distancia entre dos ciudades. Teorema de Pitagoras.
 		float deltaX = ciudadA.getCoordX() - ciudadB.getCoordX();
 		float deltaY = ciudadA.getCoordY() - ciudadB.getCoordY();
-		float distanciaKM = (float) Math.hypot(deltaX, deltaY);
+		float distanciaKM = longitudCarretera(deltaX, deltaY);
 
 		// El grafo es bidireccional.
 		// La ciudad A esta unida con la ciudad B (B es adyacente a A).
@@ -71,11 +162,23 @@ public class Mapa {
 		ciudadB.aniadirCiudadAdyacente(nombreCiudadA, distanciaKM);
 
 		// Aniadir al mapa las ciudades con los valores modificados.
-		ciudades.put(nombreCiudadA, ciudadA);
-		ciudades.put(nombreCiudadB, ciudadB);
+		registro.put(nombreCiudadA, ciudadA);
+		registro.put(nombreCiudadB, ciudadB);
+		grafo = null;
 
 	}
 
+	/**
+	 * Metodo que calcula la longitud de una carretera a partir de la diferencia de coordenadas de sus extremos: la
+	 * distancia en linea recta redondeada hacia arriba a un multiplo de 1/1024 KM (menos de un metro). Asi cualquier
+	 * suma de longitudes por debajo de 16384 KM es exacta en float y la distancia de un camino no depende del orden en
+	 * que la sume cada algoritmo: Dijkstra tramo a tramo, las etiquetas de hubs por mitades o las tablas desde el
+	 * destino. Al redondear hacia arriba la linea recta sigue siendo una cota inferior valida para A*.
+	 */
+	static float longitudCarretera(float deltaX, float deltaY) {
+		return (float) (Math.ceil(Math.hypot(deltaX, deltaY) * 1024.0) / 1024.0);
+	}
+
 	/**
 	 * Metodo que eliminar una ciudad del mapa.
 	 * 
@@ -85,8 +188,241 @@ public class Mapa {
 
 	public void eliminarCiudad(String nombreCiudad) {
 
-		ciudades.remove(nombreCiudad);
+		registroCiudades().remove(nombreCiudad);
+		grafo = null;
+
+	}
+
+	/**
+	 * Metodo que construye la forma compacta y de solo lectura del mapa sobre la que trabajan los algoritmos de
+	 * busqueda de caminos. Se debe llamar una vez terminada la carga de ciudades y carreteras. Si el mapa se modifica
+	 * despues, la forma compacta se descarta y se vuelve a construir en la siguiente llamada a este metodo o en la
+	 * siguiente busqueda de caminos.
+	 * 
+	 * @return Grafo compacto equivalente al mapa.
+	 * @see GrafoCompacto
+	 */
+	public synchronized GrafoCompacto congelar() {
+
+		if (grafo == null) {
+			grafo = GrafoCompacto.construir(ciudades);
+		}
+		return grafo;
+	}
+
+	/**
+	 * Metodo que prepara la jerarquia de contracciones del mapa para responder las consultas del algoritmo JERARQUIA.
+	 * Si ya esta preparada para el grafo actual, por ejemplo porque el mapa se abrio de una instantanea, no se hace
+	 * nada. Si el fichero indicado contiene una jerarquia generada a partir de este mismo mapa se carga de el; en caso
+	 * contrario se construye con los hilos del preprocesado (ver setHilosPreprocesado) y se guarda en el fichero para
+	 * el siguiente arranque.
+	 * 
+	 * @param fichero
+	 * Fichero en el que se guarda la jerarquia. Puede ser null si no se desea guardarla.
+	 * @return true si la jerarquia ya estaba preparada o se cargo del fichero, false si hubo que construirla.
+	 * @throws IOException
+	 * Si la jerarquia se construyo pero no se pudo guardar en el fichero. La jerarquia queda preparada igualmente.
+	 * @see JerarquiaContracciones
+	 */
+	public boolean prepararJerarquiaContracciones(File fichero) throws IOException {
+
+		GrafoCompacto grafoActual = congelar();
+		if (jerarquiaPreparada() != null) {
+			return true;
+		}
+		if (fichero != null && fichero.isFile()) {
+			try {
+				JerarquiaContracciones guardada = JerarquiaContracciones.cargar(grafoActual, fichero);
+				if (guardada != null) {
+					jerarquia = guardada;
+					return true;
+				}
+			} catch (IOException ioe) {
+				// Fichero ilegible o incompleto: se reconstruye la jerarquia.
+			}
+		}
+		jerarquia = JerarquiaContracciones.construir(grafoActual, numeroHilosPreprocesado());
+		if (fichero != null) {
+			jerarquia.guardar(fichero);
+		}
+		return false;
+	}
+
+	/**
+	 * Metodo que prepara las tablas de puntos de referencia del mapa para responder las consultas del algoritmo ALT.
+	 * Las tablas se calculan en paralelo con los hilos del preprocesado y ocupan 4 * numeroPuntos bytes
+	 * por ciudad, por lo que el numero de puntos permite elegir entre memoria y velocidad de las consultas. Si ya hay
+	 * tablas con el mismo numero de puntos para el grafo actual se conservan.
+	 * 
+	 * @param numeroPuntos
+	 * Numero de puntos de referencia. Con 0 se descartan las tablas y ALT se comporta como A*.
+	 * @see PuntosReferencia
+	 */
+	public void prepararPuntosReferencia(int numeroPuntos) {
+
+		if (numeroPuntos <= 0) {
+			puntosReferencia = null;
+			return;
+		}
+		PuntosReferencia preparados = puntosReferenciaPreparados();
+		if (preparados != null && preparados.numeroPuntos() == Math.min(numeroPuntos, grafo.numeroCiudades())) {
+			return;
+		}
+		puntosReferencia = PuntosReferencia.construir(congelar(), numeroPuntos, numeroHilosPreprocesado());
+	}
+
+	/**
+	 * Metodo que prepara el etiquetado de hubs del mapa para responder las consultas de solo distancia y las del
+	 * algoritmo HUBS. Si la jerarquia de contracciones ya esta preparada se usa su orden, que da etiquetas mucho mas
+	 * cortas; en caso contrario las ciudades se ordenan por numero de carreteras. Si ya esta preparado para el grafo
+	 * actual no se hace nada.
+	 * 
+	 * @see EtiquetadoHubs
+	 */
+	public void prepararEtiquetadoHubs() {
+
+		GrafoCompacto grafoActual = congelar();
+		if (etiquetadoHubsPreparado() != null) {
+			return;
+		}
+		JerarquiaContracciones jerarquiaActual = jerarquia;
+		int[] orden = jerarquiaActual != null && jerarquiaActual.getGrafo() == grafoActual ? EtiquetadoHubs
+				.ordenPorRango(jerarquiaActual) : EtiquetadoHubs.ordenPorGrado(grafoActual);
+		etiquetadoHubs = EtiquetadoHubs.construir(grafoActual, orden);
+	}
+
+	/**
+	 * Metodo que prepara la cache de arboles de caminos minimos por ciudad origen que usan el algoritmo DIJKSTRA y el
+	 * metodo dijkstra. Con la cache, cada ciudad origen se calcula una sola vez mientras su arbol permanezca en ella.
+	 * 
+	 * @param memoriaMaxima
+	 * Memoria maxima en bytes que pueden ocupar los arboles. Cada arbol ocupa unos 8 bytes por ciudad. Con 0 se
+	 * descarta la cache.
+	 * @see CacheArbolesCaminos
+	 */
+	public void prepararCacheArboles(long memoriaMaxima) {
+
+		cacheArboles = memoriaMaxima > 0 ? new CacheArbolesCaminos(congelar(), memoriaMaxima) : null;
+	}
+
+	/**
+	 * Metodo que prepara las tablas de caminos minimos entre todos los pares de ciudades para responder las consultas
+	 * del algoritmo TABLA y las de solo distancia sin ninguna busqueda. Las tablas ocupan 8 bytes por par de ciudades,
+	 * por lo que se rechazan si superan la memoria maxima indicada o la memoria libre de la maquina virtual.
+	 * 
+	 * @param memoriaMaxima
+	 * Memoria maxima en bytes que pueden ocupar las tablas.
+	 * @return true si las tablas se calcularon, false si se rechazaron por falta de memoria.
+	 * @see TablaCaminosMinimos
+	 */
+	public boolean prepararTablaCaminos(long memoriaMaxima) {
+
+		GrafoCompacto grafoActual = congelar();
+		long memoriaNecesaria = TablaCaminosMinimos.estimarMemoria(grafoActual.numeroCiudades());
+		Runtime maquina = Runtime.getRuntime();
+		long memoriaLibre = maquina.maxMemory() - (maquina.totalMemory() - maquina.freeMemory());
+		if (memoriaNecesaria > memoriaMaxima || memoriaNecesaria > memoriaLibre
+				|| grafoActual.numeroCiudades() > TablaCaminosMinimos.MAXIMO_CIUDADES) {
+			tablaCaminos = null;
+			return false;
+		}
+		tablaCaminos = TablaCaminosMinimos.construir(grafoActual, numeroHilosPreprocesado());
+		return true;
+	}
+
+	/**
+	 * Metodo que limita el numero de hilos que usa el preprocesado del mapa: jerarquia de contracciones, puntos de
+	 * referencia y tablas de caminos minimos. Por defecto se usan todos los procesadores, lo adecuado al arrancar; al
+	 * preparar una nueva version del mapa mientras se atienden peticiones conviene dejar procesadores a las busquedas.
+	 * 
+	 * @param hilos
+	 * Numero maximo de hilos. Con 0 se usan todos los procesadores disponibles.
+	 */
+	public void setHilosPreprocesado(int hilos) {
+		hilosPreprocesado = Math.max(0, hilos);
+	}
+
+	/**
+	 * Metodo que devuelve el numero de hilos con el que se construye el preprocesado.
+	 */
+	private int numeroHilosPreprocesado() {
+
+		int procesadores = Runtime.getRuntime().availableProcessors();
+		int hilos = hilosPreprocesado;
+		return hilos > 0 ? Math.min(hilos, procesadores) : procesadores;
+	}
+
+	// Preprocesado preparado para el grafo actual, o null. InstantaneaMapa los usa para guardarlos junto al grafo.
+
+	JerarquiaContracciones jerarquiaPreparada() {
+
+		JerarquiaContracciones jerarquiaActual = jerarquia;
+		return jerarquiaActual != null && jerarquiaActual.getGrafo() == grafo ? jerarquiaActual : null;
+	}
+
+	PuntosReferencia puntosReferenciaPreparados() {
+
+		PuntosReferencia puntosActuales = puntosReferencia;
+		return puntosActuales != null && puntosActuales.getGrafo() == grafo ? puntosActuales : null;
+	}
+
+	EtiquetadoHubs etiquetadoHubsPreparado() {
+
+		EtiquetadoHubs etiquetadoActual = etiquetadoHubs;
+		return etiquetadoActual != null && etiquetadoActual.getGrafo() == grafo ? etiquetadoActual : null;
+	}
+
+	IndiceNombres indiceNombresPreparado() {
+
+		IndiceNombres indiceActual = indiceNombres;
+		return indiceActual != null && indiceActual.getGrafo() == grafo ? indiceActual : null;
+	}
+
+	/**
+	 * Metodo que devuelve la cache de arboles de caminos minimos, por ejemplo para consultar sus contadores.
+	 * 
+	 * @return Cache de arboles de caminos minimos. Null si no se ha preparado.
+	 */
+	public CacheArbolesCaminos getCacheArboles() {
+
+		return cacheArboles;
+	}
+
+	/**
+	 * Metodo que devuelve el arbol de caminos minimos completo de una ciudad origen, de la cache si esta preparada
+	 * para el grafo actual.
+	 */
+	private ArbolCaminosMinimos obtenerArbolCompleto(GrafoCompacto grafo, int origen) {
+
+		CacheArbolesCaminos cacheActual = cacheArboles;
+		if (cacheActual != null && cacheActual.getGrafo() == grafo) {
+			return cacheActual.obtener(origen);
+		}
+		return AlgoritmoDijkstra.ejecutar(grafo, origen, -1);
+	}
+
+	/**
+	 * Metodo que devuelve la forma compacta del mapa, construyendola en caso necesario.
+	 * 
+	 * @return Grafo compacto equivalente al mapa.
+	 */
+	private GrafoCompacto obtenerGrafo() {
+
+		GrafoCompacto grafoActual = grafo;
+		return grafoActual != null ? grafoActual : congelar();
+	}
+
+	/**
+	 * Metodo que devuelve la version del mapa: un numero que identifica su contenido (ciudades, coordenadas y
+	 * carreteras) y que cambia cuando el mapa cambia. Sirve, por ejemplo, para construir etiquetas ETag de las
+	 * respuestas http que dependen del mapa.
+	 * 
+	 * @return Version del mapa.
+	 * @see GrafoCompacto#huella()
+	 */
+	public long getVersion() {
 
+		return obtenerGrafo().huella();
 	}
 
 	/**
@@ -96,7 +432,9 @@ public class Mapa {
 	 */
 	public int numeroCiudadesMapa() {
 
-		return ciudades.size();
+		// La forma compacta, si existe, contiene exactamente las ciudades del registro.
+		GrafoCompacto grafoActual = grafo;
+		return grafoActual != null ? grafoActual.numeroCiudades() : registroCiudades().size();
 	}
 
 	/**
@@ -108,7 +446,62 @@ public class Mapa {
 	 */
 	public Map<String, Ciudad> obtenerCiudades() {
 
-		return ciudades;
+		return registroCiudades();
+	}
+
+	/**
+	 * Metodo que devuelve el indice de los nombres de las ciudades del mapa para buscarlas por prefijo, construyendolo
+	 * la primera vez que se pide o si el mapa ha cambiado.
+	 * 
+	 * @return Indice de nombres de la version actual del mapa.
+	 * @see IndiceNombres
+	 */
+	public IndiceNombres obtenerIndiceNombres() {
+
+		GrafoCompacto grafoActual = obtenerGrafo();
+		IndiceNombres indiceActual = indiceNombres;
+		if (indiceActual == null || indiceActual.getGrafo() != grafoActual) {
+			// Si dos hilos lo piden a la vez ambos construyen un indice equivalente; se queda el ultimo.
+			indiceActual = new IndiceNombres(grafoActual);
+			indiceNombres = indiceActual;
+		}
+		return indiceActual;
+	}
+
+	/**
+	 * Metodo que devuelve el indice espacial de las coordenadas de las ciudades del mapa para buscar las mas cercanas a
+	 * un punto, construyendolo la primera vez que se pide o si el mapa ha cambiado.
+	 * 
+	 * @return Indice espacial de la version actual del mapa.
+	 * @see IndiceEspacial
+	 */
+	public IndiceEspacial obtenerIndiceEspacial() {
+
+		GrafoCompacto grafoActual = obtenerGrafo();
+		IndiceEspacial indiceActual = indiceEspacial;
+		if (indiceActual == null || indiceActual.getGrafo() != grafoActual) {
+			// Si dos hilos lo piden a la vez ambos construyen un indice equivalente; se queda el ultimo.
+			indiceActual = new IndiceEspacial(grafoActual);
+			indiceEspacial = indiceActual;
+		}
+		return indiceActual;
+	}
+
+	/**
+	 * Metodo que obtiene el nombre de la ciudad del mapa mas cercana en linea recta a un punto, para calcular rutas
+	 * desde o hasta puntos dados por coordenadas.
+	 * 
+	 * @param coordX
+	 * Coordenada x del punto.
+	 * @param coordY
+	 * Coordenada y del punto.
+	 * @return Nombre de la ciudad mas cercana al punto, o null si el mapa no tiene ciudades.
+	 */
+	public String obtenerNombreCiudadCercana(float coordX, float coordY) {
+
+		IndiceEspacial indice = obtenerIndiceEspacial();
+		int ciudad = indice.buscarCercana(coordX, coordY);
+		return ciudad >= 0 ? indice.getGrafo().obtenerNombre(ciudad) : null;
 	}
 
 	/**
@@ -121,7 +514,7 @@ public class Mapa {
 	 */
 	public Ciudad obtenerCiudad(String nombreCiudad) {
 
-		return ciudades.get(nombreCiudad);
+		return registroCiudades().get(nombreCiudad);
 	}
 
 	/**
@@ -163,6 +556,68 @@ public class Mapa {
 		return camino + " ( " + distanciaDesdeCiudadOrigen + " km ) ";
 	}
 
+	/**
+	 * Metodo que retorna una cadena de texto que contiene las ciudades por las que se debe pasar para ir desde la
+	 * ciudad origen de un arbol de caminos minimos hasta una ciudad destino.
+	 * 
+	 * @param arbol
+	 * Arbol de caminos minimos con raiz en la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad a la que se quiere llegar.
+	 * @return Cadena de texto que contiene la secuencia de ciudades que hay que atravesar para ir desde la ciudad
+	 * origen hasta la ciudad destinto usando un criterio de distancia minima recorrida.
+	 */
+	public String obtenerCamino(ArbolCaminosMinimos arbol, String nombreCiudadDestino) {
+
+		int destino = arbol == null ? -1 : arbol.getGrafo().obtenerIndice(nombreCiudadDestino);
+		// La ciudad origen y la ciudad destino deben existir y estar comunicadas.
+		if (destino < 0 || !arbol.esAlcanzable(destino)) {
+
+			return "No existe un camino hasta la ciudad " + nombreCiudadDestino
+					+ ". Asegurese de que la ciudad origen y la ciudad destinto existen en el mapa";
+
+		}
+		return formatearCamino(arbol.getGrafo(), arbol.camino(destino), arbol.distancia(destino));
+	}
+
+	/**
+	 * Metodo que retorna una cadena de texto que contiene las ciudades por las que se debe pasar para recorrer una
+	 * ruta.
+	 * 
+	 * @param ruta
+	 * Ruta calculada entre la ciudad origen y la ciudad destino.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad a la que se quiere llegar.
+	 * @return Cadena de texto que contiene la secuencia de ciudades que hay que atravesar para ir desde la ciudad
+	 * origen hasta la ciudad destinto usando un criterio de distancia minima recorrida.
+	 */
+	public String obtenerCamino(Ruta ruta, String nombreCiudadDestino) {
+
+		if (ruta == null || !ruta.existe()) {
+
+			return "No existe un camino hasta la ciudad " + nombreCiudadDestino
+					+ ". Asegurese de que la ciudad origen y la ciudad destinto existen en el mapa";
+
+		}
+		return formatearCamino(ruta.getGrafo(), ruta.getCiudades(), ruta.getDistancia());
+	}
+
+	/**
+	 * Metodo que da formato de texto a un camino: nombres de las ciudades separados por '>' seguidos de la distancia
+	 * total recorrida.
+	 */
+	static String formatearCamino(GrafoCompacto grafo, int[] camino, float distanciaKM) {
+
+		StringBuilder texto = new StringBuilder(camino.length * 16);
+		for (int i = 0; i < camino.length; i++) {
+			if (i > 0) {
+				texto.append(" > ");
+			}
+			texto.append(grafo.obtenerNombre(camino[i]));
+		}
+		return texto.append(" ( ").append(distanciaKM).append(" km ) ").toString();
+	}
+
 	/**
 	 * Metodo que aplica el algoritmo Dijkstra en el grafo de ciudades para encontrar el camino de tamanio minimo entre
 	 * una ciudad origen y cada ciudad restante del mapa.
@@ -177,377 +632,321 @@ public class Mapa {
 	 */
 	public Map<String, String> dijkstra(String nombreCiudadOrigen) {
 
+		GrafoCompacto grafo = obtenerGrafo();
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+
 		// Gestion de errores.
 		// Para trazar un camino entre dos ciudades es necesario que la ciudad origen exista en el mapa.
-		if (nombreCiudadOrigen == null || !ciudades.containsKey(nombreCiudadOrigen)) {
+		if (origen < 0) {
 
 			return null;
 		}
 
-		int numeroCiudadesVisitadas = 0;
-		String nombreCiudadPadreDistanciaDesdeCiudadOrigen[] = null;
-		String nombreCiudadSeleccionada = "";
-		float distanciaDesdeCiudadOrigen = 0.0f;
-		float distanciaDesdeCiudadOrigenAnterior = 0.0f;
-		float distanciaDesdeCiudadOrigenMinima = 0.0f;
-
-		// boolean flagDepuracion = false;
-
-		Map<String, String> ciudadesDijkstra = new HashMap<String, String>();
-		Map<String, String> ciudadesVisitadas = new HashMap<String, String>();
-		// Codigo nemotecnico SS -> String String
-		Iterator<Entry<String, String>> itSS = null;
-		Entry<String, String> entrySS = null;
-
-		// Codigo nemotecnico SC -> String Ciudad
-		Iterator<Entry<String, Ciudad>> itSC = ciudades.entrySet().iterator();
-		Entry<String, Ciudad> entrySC = null;
-
-		Map<String, Float> ciudadesAdyacentes = null;
-		// Codigo nemotecnico SFCA -> String Float Ciudades Adyacentes.
-		Iterator<Entry<String, Float>> itSFCA = null;
-		Entry<String, Float> entrySFCA = null;
-
-		// Marcar todos las ciudades del mapa como no procesadas al principio del
-		// algoritmo.
-		// Ciudad no procesada implica: nombreCiudadPadre: '?'. distanciaMinimaDesdeOrigen = -1.
-		while (itSC.hasNext()) {
-
-			entrySC = itSC.next();
-			ciudadesDijkstra.put(entrySC.getKey(), "? -1");
-		}
-
-		// ----- ----- ----- ----- ----- CODIGO DEPURACION ----- ----- ----- ----- -----
-		// System.out.println("\n");
-		// itSS = ciudadesDijkstra.entrySet().iterator();
-		// while (itSS.hasNext()) {
-		// entrySS = itSS.next();
-		// nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-		// flagDepuracion = ciudadesVisitadas.containsKey(entrySS.getKey());
-		// if (flagDepuracion) {
-		// System.out.println("* " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// } else {
-		// System.out.println("  " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// }
-		// }
-		// ----- ----- ----- ----- ----- ----- ----- ----- ----- -----
-
-		// La ciudad origen no tiene ciudad padre ('?') y dista 0 km de ella misma.
-		ciudadesDijkstra.put(nombreCiudadOrigen, "? " + new Float(0).toString());
-		// Registrar la ciudad origen como visitada.
-		ciudadesVisitadas.put(nombreCiudadOrigen, "");
-		numeroCiudadesVisitadas = 1;
-
-		// ----- ----- ----- ----- ----- CODIGO DEPURACION ----- ----- ----- ----- -----
-		// System.out.println("\n");
-		// itSS = ciudadesDijkstra.entrySet().iterator();
-		// while (itSS.hasNext()) {
-		// entrySS = itSS.next();
-		// nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-		// flagDepuracion = ciudadesVisitadas.containsKey(entrySS.getKey());
-		// if (flagDepuracion) {
-		// System.out.println("* " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// } else {
-		// System.out.println("  " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// }
-		// }
-		// ----- ----- ----- ----- ----- ----- ----- ----- ----- -----
-
-		// Obtener las ciudades adyacentes a la ciudad origen. Cada ciudad es asociada con la ciudad padre, en este caso
-		// la ciudad origen, y con la distancia minima desde la ciudad origen hasta ella.
-		ciudadesAdyacentes = ciudades.get(nombreCiudadOrigen).obtenerCiudadesAdyacentes();
-		itSFCA = ciudadesAdyacentes.entrySet().iterator();
-		while (itSFCA.hasNext()) {
-			entrySFCA = itSFCA.next();
-			ciudadesDijkstra.put(entrySFCA.getKey(), nombreCiudadOrigen + " " + entrySFCA.getValue().toString());
-		}
-
-		// ----- ----- ----- ----- ----- CODIGO DEPURACION ----- ----- ----- ----- -----
-		// System.out.println("\n");
-		// itSS = ciudadesDijkstra.entrySet().iterator();
-		// while (itSS.hasNext()) {
-		// entrySS = itSS.next();
-		// nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-		// flagDepuracion = ciudadesVisitadas.containsKey(entrySS.getKey());
-		// if (flagDepuracion) {
-		// System.out.println("* " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// } else {
-		// System.out.println("  " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-		// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-		// }
-		// }
-		// ----- ----- ----- ----- ----- ----- ----- ----- ----- -----
-
-		// Bucle principal para procesar todos las ciudades del mapa.
-		while (numeroCiudadesVisitadas < ciudades.size() - 1) {
-			// Seleccionar en 'ciudadesDijkstra' la ciudad descubierta no visitada mas cercana a la ciuadad origen.
-			distanciaDesdeCiudadOrigenMinima = Float.POSITIVE_INFINITY;
-			itSS = ciudadesDijkstra.entrySet().iterator();
-			while (itSS.hasNext()) {
-				entrySS = itSS.next();
-				nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-				distanciaDesdeCiudadOrigen = Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]);
-
-				// distanciaDesdeCiudadOrigen != -1 significa ciudad descubierta.
-				// distanciaDesdeCiudadOrigen = -1 significa ciudad NO descubierta aun.
-				if (distanciaDesdeCiudadOrigen != -1 && !ciudadesVisitadas.containsKey(entrySS.getKey())
-						&& distanciaDesdeCiudadOrigen < distanciaDesdeCiudadOrigenMinima) {
-
-					// Anotar cual de las ciudades descubiertas esta a la menor distancia de ciudad origen.
-					distanciaDesdeCiudadOrigenMinima = distanciaDesdeCiudadOrigen;
-					nombreCiudadSeleccionada = entrySS.getKey();
-				}
-
-			}
-
-			// System.out.println("\n----- ----- ----- ----- ----- ");
-			// System.out.println("\n" + nombreCiudadSeleccionada + " " + distanciaDesdeCiudadOrigenMinima);
-
-			// Marcar la ciudad descubierta como visitada.
-			ciudadesVisitadas.put(nombreCiudadSeleccionada, "");
-			numeroCiudadesVisitadas += 1;
-
-			// ----- ----- ----- ----- ----- CODIGO DEPURACION ----- ----- ----- ----- -----
-			// System.out.println("\n");
-			// itSS = ciudadesDijkstra.entrySet().iterator();
-			// while (itSS.hasNext()) {
-			// entrySS = itSS.next();
-			// nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-			// flagDepuracion = ciudadesVisitadas.containsKey(entrySS.getKey());
-			// if (flagDepuracion) {
-			// System.out.println("* " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-			// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-			// } else {
-			// System.out.println("  " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-			// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-			// }
-			// }
-			// ----- ----- ----- ----- ----- ----- ----- ----- ----- -----
-
-			// Para cada ciudad adyacente no visitada de la ciudad seleccionada decidir si resulta mejor el camino
-			// calculado antes o si es mejor usar el camino que lleva a la ciudad actual seleccionada y a continuacion
-			// usar la carretera que las une.
-
-			// System.out.println("\nObtener las ciudades adyacentes a " + nombreCiudadSeleccionada);
-
-			ciudadesAdyacentes = ciudades.get(nombreCiudadSeleccionada).obtenerCiudadesAdyacentes();
-			itSFCA = ciudadesAdyacentes.entrySet().iterator();
-			while (itSFCA.hasNext()) {
-				entrySFCA = itSFCA.next();
-				// Reseteo del valor de la variable 'distanciaDesdeCiudadOrigen' que debe almacenar la distancia desde
-				// la ciudad origen hasta la ciudad seleccionada, antes de averiguar cuanto camino existe entre esta
-				// ultima y
-				// sus ciudades adyacentes. El valor que debe guardarse en la variable 'distanciaDesdeCiudadOrigen' se
-				// hallo en el bucle anterior y reside en la variable 'distanciaDesdeCiudadOrigenMinima'.
-				distanciaDesdeCiudadOrigen = distanciaDesdeCiudadOrigenMinima;
-
-				// System.out.print(entrySFCA.getKey() + ": ");
-
-				// Ciudad adyacente no visitada
-				if (!ciudadesVisitadas.containsKey(entrySFCA.getKey())) {
-
-					// System.out.print("No visitada antes, ");
-
-					distanciaDesdeCiudadOrigen += entrySFCA.getValue().floatValue();
-					distanciaDesdeCiudadOrigenAnterior = Float.parseFloat(ciudadesDijkstra.get(entrySFCA.getKey()).split(" ")[1]);
-
-					// System.out.println(distanciaDesdeCiudadOrigenAnterior + " " + distanciaDesdeCiudadOrigen);
-
-					// Si distanciaDesdeCiudadOrigenAnterior != -1 entonces la ciudad adyacente que se esta procesando
-					// ya fue considerada como ciudad adyacente en un paso anterior del algoritmo y tendra una distancia
-					// asignada.
-					if (distanciaDesdeCiudadOrigenAnterior != -1) {
-						// Reemplazar en caso necesario.
-						if (distanciaDesdeCiudadOrigen < distanciaDesdeCiudadOrigenAnterior) {
-							ciudadesDijkstra.put(entrySFCA.getKey(), nombreCiudadSeleccionada + " " + new Float(distanciaDesdeCiudadOrigen).toString());
-						}
-					}
-					// Asignar primer valor en caso necesario.
-					else {
-						ciudadesDijkstra.put(entrySFCA.getKey(), nombreCiudadSeleccionada + " " + new Float(distanciaDesdeCiudadOrigen).toString());
-					}
-				}
-				// else {
-				// System.out.println("Si visitada antes.");
-				// }
-			}
-
-			// ----- ----- ----- ----- ----- CODIGO DEPURACION ----- ----- ----- ----- -----
-			// System.out.println("\n");
-			// itSS = ciudadesDijkstra.entrySet().iterator();
-			// while (itSS.hasNext()) {
-			// entrySS = itSS.next();
-			// nombreCiudadPadreDistanciaDesdeCiudadOrigen = entrySS.getValue().split(" ");
-			// flagDepuracion = ciudadesVisitadas.containsKey(entrySS.getKey());
-			// if (flagDepuracion) {
-			// System.out.println("* " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-			// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-			// } else {
-			// System.out.println("  " + entrySS.getKey() + " " + nombreCiudadPadreDistanciaDesdeCiudadOrigen[0] + " "
-			// + Float.parseFloat(nombreCiudadPadreDistanciaDesdeCiudadOrigen[1]));
-			// }
-			// }
-			// ----- ----- ----- ----- ----- ----- ----- ----- ----- -----
+		ArbolCaminosMinimos arbol = obtenerArbolCompleto(grafo, origen);
 
+		// Traducir el arbol al formato de registro "nombreCiudadPadre distanciaDesdeCiudadOrigen". Aquella ciudad
+		// cuya ciudad padre se llame '?' constituye el origen del camino o no es alcanzable (distancia -1).
+		int numeroCiudades = grafo.numeroCiudades();
+		Map<String, String> ciudadesDijkstra = new HashMap<String, String>(numeroCiudades * 4 / 3 + 1);
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			String nombreCiudadPadre = arbol.padre(ciudad) < 0 ? "?" : grafo.obtenerNombre(arbol.padre(ciudad));
+			float distancia = arbol.esAlcanzable(ciudad) ? arbol.distancia(ciudad) : -1;
+			ciudadesDijkstra.put(grafo.obtenerNombre(ciudad), nombreCiudadPadre + " " + distancia);
 		}
 
 		return ciudadesDijkstra;
 	}
 
-	// NO FUNCIONO EN VARIAS OCASIONES QUE LO PROBE Y LO DEJE SIN TERMINAR.
-	public String algoritmoAEstrella(String nombreCiudadOrigen, String nombreCiudadDestinto) {
-
-		if (nombreCiudadOrigen == null || nombreCiudadDestinto == null || !ciudades.containsKey(nombreCiudadOrigen)
-				|| !ciudades.containsKey(nombreCiudadDestinto)) {
-
-			return "El origen y/o el destino no se encuentran en el mapa";
-		}
-
-		if (nombreCiudadOrigen.compareTo(nombreCiudadDestinto) == 0) {
-
-			return "Se encuentra en su destinto.";
+	/**
+	 * Metodo que aplica el algoritmo Dijkstra en el grafo de ciudades para encontrar el camino de tamanio minimo entre
+	 * una ciudad origen y una ciudad destino. La busqueda se detiene en cuanto el camino hasta la ciudad destino es
+	 * definitivo, sin recorrer el resto del mapa.
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad destino. Si es null o no existe en el mapa se calcula el arbol completo.
+	 * @return Arbol de caminos minimos con raiz en la ciudad origen. Null si la ciudad origen no existe en el mapa.
+	 * @see ArbolCaminosMinimos
+	 */
+	public ArbolCaminosMinimos obtenerArbolCaminosMinimos(String nombreCiudadOrigen, String nombreCiudadDestino) {
 
+		GrafoCompacto grafo = obtenerGrafo();
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+		if (origen < 0) {
+			return null;
 		}
+		return AlgoritmoDijkstra.ejecutar(grafo, origen, grafo.obtenerIndice(nombreCiudadDestino));
+	}
 
-		// Lista abierta.
-		Map<String, Float> ciudadesPendientes = new HashMap<String, Float>();
-
-		// Lista cerrada.
-		Map<String, Float> ciudadesVisitadas = new HashMap<String, Float>();
-
-		Map<String, Float> ciudadesVecinas = new HashMap<String, Float>();
-
-		Iterator<Entry<String, Float>> it = null;
-		Entry<String, Float> ciudadApuntada = null;
-
-		// g
-		float g_distanciaAcumuladaTotal = 0.0f;
-		// h
-		float distanciaAcumulada = 0.0f;
-
-		float costeCiudad = 0.0f;
-
-		float costeMinimo = 0.0f;
-
-		float deltaX = 0.0f;
-
-		float deltaY = 0.0f;
-
-		float coordXCiudadDestino = ciudades.get(nombreCiudadDestinto).getCoordX();
-
-		float coordYCiudadDestino = ciudades.get(nombreCiudadDestinto).getCoordY();
-
-		String nombreCiudadEscogida = "";
-
-		// Aniadir la ciudad origen a la lista abierta.
-		ciudadesPendientes.put(nombreCiudadOrigen, g_distanciaAcumuladaTotal);
-
-		// Recorrer la lista abierta mientras posea ciudades en busca de aquella
-		// que posea el menor coste.
-		while (!ciudadesPendientes.isEmpty()) {
-
-			it = ciudadesPendientes.entrySet().iterator();
-
-			costeMinimo = Float.MAX_VALUE;
-
-			// Buscar en la lista abierta la ciudad de menor corte.
-			while (it.hasNext()) {
-
-				ciudadApuntada = it.next();
-
-				deltaX = ciudades.get(ciudadApuntada.getKey()).getCoordX() - coordXCiudadDestino;
-
-				deltaY = ciudades.get(ciudadApuntada.getKey()).getCoordY() - coordYCiudadDestino;
-
-				costeCiudad = ciudadApuntada.getValue() + (float) Math.hypot(deltaX, deltaY);
+	/**
+	 * Metodo que aplica el algoritmo A* en el grafo de ciudades para encontrar el camino de tamanio minimo entre una
+	 * ciudad origen y una ciudad destino. El resultado coincide con el de Dijkstra pero la busqueda se dirige hacia la
+	 * ciudad destino usando la distancia en linea recta, por lo que asienta muchas menos ciudades.
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestinto
+	 * Nombre de la ciudad destino.
+	 * @return Cadena de texto con el mismo formato que el metodo obtenerCamino.
+	 * @see AlgoritmoAEstrella
+	 */
+	public String algoritmoAEstrella(String nombreCiudadOrigen, String nombreCiudadDestinto) {
 
-				if (costeCiudad < costeMinimo) {
+		return obtenerCamino(calcularRuta(nombreCiudadOrigen, nombreCiudadDestinto, Algoritmo.A_ESTRELLA),
+				nombreCiudadDestinto);
+	}
 
-					costeMinimo = costeCiudad;
+	/**
+	 * Metodo que calcula el camino de tamanio minimo entre una ciudad origen y una ciudad destino con el algoritmo
+	 * indicado. Cada calculo se registra como evento pruebabci.Ruta de JDK Flight Recorder, con las ciudades, el
+	 * algoritmo, las ciudades asentadas, las carreteras relajadas y la duracion.
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad destino.
+	 * @param algoritmo
+	 * Algoritmo de busqueda a utilizar.
+	 * @return Ruta entre la ciudad origen y la ciudad destino. Null si alguna de las dos ciudades no existe en el
+	 * mapa.
+	 * @throws java.util.concurrent.CancellationException
+	 * Si el hilo se interrumpe durante la busqueda. El calculo de un arbol de la cache de arboles solo se abandona si
+	 * ninguna otra peticion lo espera.
+	 * @see Ruta
+	 * @see EventoRuta
+	 */
+	public Ruta calcularRuta(String nombreCiudadOrigen, String nombreCiudadDestino, Algoritmo algoritmo) {
+
+		EventoRuta evento = new EventoRuta();
+		evento.begin();
+		GrafoCompacto grafo = obtenerGrafo();
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+		int destino = grafo.obtenerIndice(nombreCiudadDestino);
+		Ruta ruta = origen < 0 || destino < 0 ? null : calcularRuta(grafo, origen, destino, algoritmo);
+		evento.registrar(nombreCiudadOrigen, nombreCiudadDestino, algoritmo, ruta);
+		return ruta;
+	}
 
-					nombreCiudadEscogida = ciudadApuntada.getKey();
-				}
+	/**
+	 * Metodo que calcula la ruta entre dos ciudades existentes con el algoritmo indicado.
+	 */
+	private Ruta calcularRuta(GrafoCompacto grafo, int origen, int destino, Algoritmo algoritmo) {
+
+		switch (algoritmo) {
+		case A_ESTRELLA:
+			return AlgoritmoAEstrella.ejecutar(grafo, origen, destino);
+		case ALT:
+			// Sin tablas preparadas para el mapa actual la busqueda se guia solo por la linea recta.
+			PuntosReferencia puntosActuales = puntosReferencia;
+			if (puntosActuales != null && puntosActuales.getGrafo() != grafo) {
+				puntosActuales = null;
 			}
+			return AlgoritmoAEstrella.ejecutar(grafo, origen, destino, puntosActuales);
+		case TABLA:
+			TablaCaminosMinimos tablaActual = tablaCaminos;
+			if (tablaActual != null && tablaActual.getGrafo() == grafo) {
+				return tablaActual.calcularRuta(origen, destino);
+			}
+			return AlgoritmoBidireccional.ejecutar(grafo, origen, destino);
+		case HUBS:
+			EtiquetadoHubs etiquetadoActual = etiquetadoHubs;
+			if (etiquetadoActual != null && etiquetadoActual.getGrafo() == grafo) {
+				return etiquetadoActual.calcularRuta(origen, destino);
+			}
+			return AlgoritmoBidireccional.ejecutar(grafo, origen, destino);
+		case BIDIRECCIONAL:
+			return AlgoritmoBidireccional.ejecutar(grafo, origen, destino);
+		case JERARQUIA:
+			JerarquiaContracciones jerarquiaActual = jerarquia;
+			if (jerarquiaActual != null && jerarquiaActual.getGrafo() == grafo) {
+				return jerarquiaActual.calcularRuta(origen, destino);
+			}
+			// Sin jerarquia preparada para el mapa actual se recurre a la busqueda bidireccional, que no necesita
+			// preprocesado y devuelve el mismo camino.
+			return AlgoritmoBidireccional.ejecutar(grafo, origen, destino);
+		case DIJKSTRA:
+		default:
+			// Con la cache preparada se usa el arbol completo del origen, que sirve para cualquier destino.
+			CacheArbolesCaminos cacheActual = cacheArboles;
+			if (cacheActual != null && cacheActual.getGrafo() == grafo) {
+				return Ruta.desdeArbol(cacheActual.obtener(origen), destino);
+			}
+			return AlgoritmoDijkstra.calcularRuta(grafo, origen, destino);
+		}
+	}
 
-			if (nombreCiudadEscogida.compareTo(nombreCiudadDestinto) == 0) {
-
-				// AQUI ACABA LA FUNCION.
-				return "";
-			} else {
-
-				g_distanciaAcumuladaTotal = ciudadApuntada.getValue();
-
-				// Eliminar la ciudad apuntada de la lista abierta.
-				ciudadesPendientes.remove(nombreCiudadEscogida);
-
-				// Aniadir la ciudad apuntada de la lista cerrada, junto con la
-				// distancia
-				// que existe entre la ciudad de origen y ella,
-				ciudadesVisitadas.put(nombreCiudadEscogida, g_distanciaAcumuladaTotal);
-
-				// Las ciudades vecinas de la ciudad escogida se deben aniadir a
-				// la lista abierta excepto aquellas que se hayan en la lista
-				// cerrada.
-				ciudadesVecinas = ciudades.get(nombreCiudadEscogida).obtenerCiudadesAdyacentes();
-
-				it = ciudadesVecinas.entrySet().iterator();
-
-				while (it.hasNext()) {
-
-					ciudadApuntada = it.next();
-
-					// Comprobar si la ciudad vecina apuntada se haya en la
-					// lista cerrada.
-					// En caso afirmativo no hacer nada.
-					// En caso negativo continuar con las comprobaciones.
-					if (!ciudadesVisitadas.containsKey(ciudadApuntada.getKey())) {
-
-						// Distancia desde la ciudad origen hasta la ciudad
-						// vecina apuntada.
-						distanciaAcumulada = g_distanciaAcumuladaTotal + ciudadApuntada.getValue();
-
-						// Comprobar si la lista abierta cotiene la ciudad
-						// vecina apuntada.
-						// En caso afirmativo continuar con las comprobaciones.
-						// En caso negativo, aniadir la ciudad vecina apuntada a
-						// la lista abierta.
-						if (ciudadesPendientes.containsKey(ciudadApuntada.getKey())) {
-
-							// La ciudad vecina apuntada se haya en la lista
-							// abierta.
-							// Comprobar si la distancia desde la ciudad origen
-							// hasta la ciudad vecina apuntada ahora es menor
-							// que la distancia que se tiene apuntada en lista
-							// abierta.
-							// En caso afirmativo registrar la nueva distancia.
-							// En caso negativo ignorar el resultado.
-							if (distanciaAcumulada < ciudadesPendientes.get(ciudadApuntada.getKey())) {
-
-								ciudadesPendientes.put(ciudadApuntada.getKey(), distanciaAcumulada);
+	/**
+	 * Metodo que calcula la ruta minima entre dos ciudades y sus mejores alternativas: las rutas simples (sin ciudades
+	 * repetidas) mas cortas, con el algoritmo de Yen. Todas las busquedas reutilizan el arbol de caminos minimos de la
+	 * ciudad destino, de la cache si esta preparada, por lo que las consultas repetidas hacia un mismo destino no lo
+	 * vuelven a calcular.
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad destino.
+	 * @param numeroRutas
+	 * Numero maximo de rutas a calcular. Debe ser al menos 1.
+	 * @return Rutas ordenadas de menor a mayor distancia. Null si alguna de las dos ciudades no existe en el mapa.
+	 * @throws java.util.concurrent.CancellationException
+	 * Si el hilo se interrumpe durante las busquedas, como en calcularRuta.
+	 * @see AlgoritmoYen
+	 */
+	public List<Ruta> calcularRutasAlternativas(String nombreCiudadOrigen, String nombreCiudadDestino, int numeroRutas) {
 
-							}
+		if (numeroRutas < 1) {
+			throw new IllegalArgumentException("Numero de rutas no valido: " + numeroRutas);
+		}
+		GrafoCompacto grafo = obtenerGrafo();
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+		int destino = grafo.obtenerIndice(nombreCiudadDestino);
+		if (origen < 0 || destino < 0) {
+			return null;
+		}
+		// Con una sola ruta no se necesita el arbol completo del destino.
+		if (numeroRutas == 1) {
+			List<Ruta> rutas = new ArrayList<Ruta>(1);
+			rutas.add(calcularRuta(grafo, origen, destino, Algoritmo.DIJKSTRA));
+			return rutas;
+		}
+		return AlgoritmoYen.ejecutar(obtenerArbolCompleto(grafo, destino), origen, numeroRutas);
+	}
 
-						} else {
+	/**
+	 * Metodo que calcula las ciudades a las que se llega desde una ciudad origen sin superar una distancia maxima, por
+	 * ejemplo para delimitar el area de servicio de una ciudad. A diferencia del metodo dijkstra, la busqueda no
+	 * recorre el mapa completo sino que se detiene al superar la distancia maxima.
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param distanciaMaxima
+	 * Distancia maxima en KM desde el origen, incluida.
+	 * @return Ciudades alcanzadas con su distancia, en orden de distancia y empezando por el origen. Null si la ciudad
+	 * origen no existe en el mapa.
+	 * @see AlgoritmoDijkstra#calcularAlcance(GrafoCompacto, int, float)
+	 */
+	public CiudadesAlcanzables calcularCiudadesAlcanzables(String nombreCiudadOrigen, float distanciaMaxima) {
 
-							ciudadesPendientes.put(ciudadApuntada.getKey(), distanciaAcumulada);
+		GrafoCompacto grafo = obtenerGrafo();
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+		if (origen < 0) {
+			return null;
+		}
+		return AlgoritmoDijkstra.calcularAlcance(grafo, origen, distanciaMaxima);
+	}
 
-						}
+	/**
+	 * Metodo que calcula las rutas de un lote de pares de ciudades. Los pares se agrupan por ciudad origen y cada grupo
+	 * se resuelve con una sola busqueda Dijkstra que se detiene al asentar todos sus destinos, sobre el espacio de
+	 * trabajo del hilo que lo resuelve. Los grupos se reparten entre los hilos indicados. La memoria reservada depende
+	 * del numero de pares y de las rutas devueltas, no del numero de ciudades del mapa.
+	 * 
+	 * @param nombresCiudadesOrigen
+	 * Nombre de la ciudad origen de cada par.
+	 * @param nombresCiudadesDestino
+	 * Nombre de la ciudad destino de cada par. Debe tener la misma longitud que nombresCiudadesOrigen.
+	 * @param hilos
+	 * Hilos que resuelven los grupos.
+	 * @return Ruta de cada par, en el mismo orden. Null para los pares en los que alguna ciudad no existe en el mapa.
+	 */
+	public Ruta[] calcularRutas(String[] nombresCiudadesOrigen, String[] nombresCiudadesDestino, ExecutorService hilos) {
+
+		final GrafoCompacto grafo = obtenerGrafo();
+		int numeroPares = nombresCiudadesOrigen.length;
+		final Ruta[] rutas = new Ruta[numeroPares];
+		final int[] origenes = new int[numeroPares];
+		final int[] destinos = new int[numeroPares];
+
+		// Agrupar los pares validos por ciudad origen ordenando claves con el origen en los 32 bits altos y el par en
+		// los bajos. Asi el agrupamiento depende del numero de pares y no del numero de ciudades del mapa.
+		long[] claves = new long[numeroPares];
+		int numeroValidos = 0;
+		for (int par = 0; par < numeroPares; par++) {
+			origenes[par] = grafo.obtenerIndice(nombresCiudadesOrigen[par]);
+			destinos[par] = grafo.obtenerIndice(nombresCiudadesDestino[par]);
+			if (origenes[par] >= 0 && destinos[par] >= 0) {
+				claves[numeroValidos++] = (long) origenes[par] << 32 | par;
+			}
+		}
+		Arrays.sort(claves, 0, numeroValidos);
+		final int[] paresOrdenados = new int[numeroValidos];
+		for (int i = 0; i < numeroValidos; i++) {
+			paresOrdenados[i] = (int) claves[i];
+		}
 
+		// Cada grupo ocupa las posiciones [desde, hasta) de paresOrdenados.
+		List<Callable<Void>> tareas = new ArrayList<Callable<Void>>();
+		for (int inicioGrupo = 0; inicioGrupo < numeroValidos;) {
+			final int origen = origenes[paresOrdenados[inicioGrupo]];
+			final int desde = inicioGrupo;
+			while (inicioGrupo < numeroValidos && origenes[paresOrdenados[inicioGrupo]] == origen) {
+				inicioGrupo++;
+			}
+			final int hasta = inicioGrupo;
+			tareas.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int[] destinosGrupo = new int[hasta - desde];
+					for (int i = desde; i < hasta; i++) {
+						destinosGrupo[i - desde] = destinos[paresOrdenados[i]];
 					}
-
+					Ruta[] rutasGrupo = AlgoritmoDijkstra.calcularRutas(grafo, origen, destinosGrupo);
+					for (int i = desde; i < hasta; i++) {
+						rutas[paresOrdenados[i]] = rutasGrupo[i - desde];
+					}
+					return null;
 				}
+			});
+		}
 
+		try {
+			for (Future<Void> resultado : hilos.invokeAll(tareas)) {
+				resultado.get();
 			}
-
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Calculo del lote de rutas interrumpido", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error calculando el lote de rutas", e.getCause());
 		}
+		return rutas;
+	}
 
-		return "No existe ruta hasta el destino";
-
+	/**
+	 * Metodo que calcula la distancia minima entre dos ciudades sin reconstruir el camino. Si las tablas de caminos
+	 * minimos estan preparadas la distancia se lee de ellas; si lo esta el etiquetado de hubs la consulta se limita a
+	 * mezclar dos etiquetas; en caso contrario se recurre al algoritmo JERARQUIA. En los tres casos coincide con la
+	 * distancia de la ruta que devuelve calcularRuta con cualquier algoritmo, y por tanto con la que muestra
+	 * obtenerCamino (ver longitudCarretera).
+	 * 
+	 * @param nombreCiudadOrigen
+	 * Nombre de la ciudad origen.
+	 * @param nombreCiudadDestino
+	 * Nombre de la ciudad destino.
+	 * @return Distancia en KM del camino minimo. Float.POSITIVE_INFINITY si las ciudades no estan comunicadas y
+	 * Float.NaN si alguna de las dos ciudades no existe en el mapa.
+	 */
+	public float calcularDistancia(String nombreCiudadOrigen, String nombreCiudadDestino) {
+
+		GrafoCompacto grafo = obtenerGrafo();
+		TablaCaminosMinimos tablaActual = tablaCaminos;
+		if (tablaActual != null && tablaActual.getGrafo() == grafo) {
+			int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+			int destino = grafo.obtenerIndice(nombreCiudadDestino);
+			return origen < 0 || destino < 0 ? Float.NaN : tablaActual.distancia(origen, destino);
+		}
+		EtiquetadoHubs etiquetadoActual = etiquetadoHubs;
+		if (etiquetadoActual == null || etiquetadoActual.getGrafo() != grafo) {
+			Ruta ruta = calcularRuta(nombreCiudadOrigen, nombreCiudadDestino, Algoritmo.JERARQUIA);
+			return ruta == null ? Float.NaN : ruta.getDistancia();
+		}
+		int origen = grafo.obtenerIndice(nombreCiudadOrigen);
+		int destino = grafo.obtenerIndice(nombreCiudadDestino);
+		if (origen < 0 || destino < 0) {
+			return Float.NaN;
+		}
+		return etiquetadoActual.distancia(origen, destino);
 	}
 
 }
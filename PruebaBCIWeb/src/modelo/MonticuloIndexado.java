@@ -0,0 +1,171 @@
+package modelo;
+
+import java.util.Arrays;
+
+/**
+ * Clase que representa una cola de prioridad de ciudades implementada como un monticulo binario indexado. Ademas del
+ * monticulo se guarda la posicion que ocupa cada ciudad dentro de el, lo que permite reducir la clave de una ciudad
+ * que ya esta en la cola (decrease-key) en tiempo logaritmico en lugar de insertar duplicados.
+ *
+ * Las ciudades se identifican por su indice en el grafo compacto, por lo que el monticulo no crea objetos durante su
+ * uso. Un mismo monticulo puede reutilizarse en varias busquedas llamando a vaciar() entre ellas.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ */
+final class MonticuloIndexado {
+
+	private final int[] monticulo;
+	private final float[] claves;
+	// Posicion de cada ciudad en el monticulo. -1 si la ciudad no esta en el monticulo.
+	private final int[] posiciones;
+	private int tamanio;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param numeroCiudades
+	 * Numero de ciudades del grafo. Los identificadores de ciudad validos estan en el rango [0, numeroCiudades).
+	 */
+	MonticuloIndexado(int numeroCiudades) {
+
+		monticulo = new int[numeroCiudades];
+		claves = new float[numeroCiudades];
+		posiciones = new int[numeroCiudades];
+		Arrays.fill(posiciones, -1);
+		tamanio = 0;
+	}
+
+	/**
+	 * Metodo que indica si la cola no contiene ciudades.
+	 *
+	 * @return true si la cola esta vacia.
+	 */
+	boolean estaVacio() {
+		return tamanio == 0;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades que hay en la cola.
+	 *
+	 * @return Numero de ciudades en la cola.
+	 */
+	int tamanio() {
+		return tamanio;
+	}
+
+	/**
+	 * Metodo que indica si una ciudad esta en la cola.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @return true si la ciudad esta en la cola.
+	 */
+	boolean contiene(int ciudad) {
+		return posiciones[ciudad] >= 0;
+	}
+
+	/**
+	 * Metodo que devuelve la clave minima de la cola sin extraer la ciudad. La cola no debe estar vacia.
+	 *
+	 * @return Clave de la ciudad situada en la cima del monticulo.
+	 */
+	float claveMinima() {
+		return claves[monticulo[0]];
+	}
+
+	/**
+	 * Metodo que inserta una ciudad en la cola o, si ya esta en ella, reduce su clave. Si la ciudad ya esta en la cola
+	 * con una clave menor o igual no se hace nada.
+	 *
+	 * @param ciudad
+	 * Identificador de la ciudad.
+	 * @param clave
+	 * Prioridad de la ciudad. Cuanto menor es la clave antes sale la ciudad de la cola.
+	 */
+	void insertarOReducir(int ciudad, float clave) {
+
+		int posicion = posiciones[ciudad];
+		if (posicion < 0) {
+			posicion = tamanio++;
+			monticulo[posicion] = ciudad;
+			posiciones[ciudad] = posicion;
+		} else if (clave >= claves[ciudad]) {
+			return;
+		}
+		claves[ciudad] = clave;
+		subir(posicion);
+	}
+
+	/**
+	 * Metodo que extrae de la cola la ciudad con menor clave. La cola no debe estar vacia.
+	 *
+	 * @return Identificador de la ciudad extraida.
+	 */
+	int extraerMinimo() {
+
+		int ciudadMinima = monticulo[0];
+		posiciones[ciudadMinima] = -1;
+		tamanio--;
+		if (tamanio > 0) {
+			int ultima = monticulo[tamanio];
+			monticulo[0] = ultima;
+			posiciones[ultima] = 0;
+			bajar(0);
+		}
+		return ciudadMinima;
+	}
+
+	/**
+	 * Metodo que vacia la cola. Solo recorre las ciudades que quedan en ella, no todo el grafo.
+	 */
+	void vaciar() {
+
+		for (int i = 0; i < tamanio; i++) {
+			posiciones[monticulo[i]] = -1;
+		}
+		tamanio = 0;
+	}
+
+	private void subir(int posicion) {
+
+		int ciudad = monticulo[posicion];
+		float clave = claves[ciudad];
+		while (posicion > 0) {
+			int posicionPadre = (posicion - 1) >>> 1;
+			int ciudadPadre = monticulo[posicionPadre];
+			if (claves[ciudadPadre] <= clave) {
+				break;
+			}
+			monticulo[posicion] = ciudadPadre;
+			posiciones[ciudadPadre] = posicion;
+			posicion = posicionPadre;
+		}
+		monticulo[posicion] = ciudad;
+		posiciones[ciudad] = posicion;
+	}
+
+	private void bajar(int posicion) {
+
+		int ciudad = monticulo[posicion];
+		float clave = claves[ciudad];
+		int mitad = tamanio >>> 1;
+		while (posicion < mitad) {
+			int posicionHijo = 2 * posicion + 1;
+			int ciudadHijo = monticulo[posicionHijo];
+			int posicionDerecho = posicionHijo + 1;
+			if (posicionDerecho < tamanio && claves[monticulo[posicionDerecho]] < claves[ciudadHijo]) {
+				posicionHijo = posicionDerecho;
+				ciudadHijo = monticulo[posicionDerecho];
+			}
+			if (clave <= claves[ciudadHijo]) {
+				break;
+			}
+			monticulo[posicion] = ciudadHijo;
+			posiciones[ciudadHijo] = posicion;
+			posicion = posicionHijo;
+		}
+		monticulo[posicion] = ciudad;
+		posiciones[ciudad] = posicion;
+	}
+}
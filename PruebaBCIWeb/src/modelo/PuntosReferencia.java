@@ -0,0 +1,218 @@
+package modelo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Clase que representa las tablas de distancias del algoritmo ALT (A*, landmarks, triangle inequality). Se escogen K
+ * ciudades como puntos de referencia y se guarda la distancia por carretera desde cada una de ellas hasta todas las
+ * ciudades del mapa. Por la desigualdad triangular, para cualquier punto de referencia L se cumple
+ * d(v, t) &gt;= |d(L, t) - d(L, v)|, y el maximo de esas cotas es una heuristica admisible para A* que, a diferencia
+ * de la linea recta, tiene en cuenta los rodeos que obligan a dar montanias y costas.
+ *
+ * Los puntos de referencia se escogen con la estrategia del mas alejado: el primero es la ciudad mas alejada del
+ * centro del mapa y cada uno de los siguientes es la ciudad mas alejada de todos los ya escogidos, de modo que quedan
+ * repartidos por la periferia. La seleccion usa las coordenadas de las ciudades, lo que permite calcular despues las
+ * K tablas en paralelo, una busqueda Dijkstra completa por punto de referencia.
+ *
+ * Las distancias se guardan en un unico array ordenado por ciudad (las K distancias de una ciudad son contiguas), ya
+ * que la heuristica siempre consulta las K distancias de la misma ciudad. El coste en memoria es 4 * K bytes por
+ * ciudad.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see AlgoritmoAEstrella
+ */
+public final class PuntosReferencia {
+
+	private final GrafoCompacto grafo;
+	private final int[] puntos;
+	// distancias[ciudad * K + i]: distancia por carretera entre el punto de referencia i y la ciudad.
+	private final float[] distancias;
+
+	private PuntosReferencia(GrafoCompacto grafo, int[] puntos, float[] distancias) {
+
+		this.grafo = grafo;
+		this.puntos = puntos;
+		this.distancias = distancias;
+	}
+
+	/**
+	 * Metodo que escoge los puntos de referencia de un grafo y calcula sus tablas de distancias.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa.
+	 * @param numeroPuntos
+	 * Numero de puntos de referencia (K). Se limita al numero de ciudades del mapa.
+	 * @param numeroHilos
+	 * Numero de hilos que calculan las tablas.
+	 * @return Puntos de referencia del grafo con sus tablas de distancias.
+	 */
+	public static PuntosReferencia construir(final GrafoCompacto grafo, int numeroPuntos, int numeroHilos) {
+
+		final int numeroCiudades = grafo.numeroCiudades();
+		final int[] puntos = escogerPuntos(grafo, Math.min(numeroPuntos, numeroCiudades));
+		final int k = puntos.length;
+		final float[] distancias = new float[numeroCiudades * k];
+
+		List<Callable<Void>> tareas = new ArrayList<Callable<Void>>(k);
+		for (int i = 0; i < k; i++) {
+			final int punto = i;
+			tareas.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					ArbolCaminosMinimos arbol = AlgoritmoDijkstra.ejecutar(grafo, puntos[punto], -1);
+					for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+						distancias[ciudad * k + punto] = arbol.distancia(ciudad);
+					}
+					return null;
+				}
+			});
+		}
+
+		ExecutorService hilos = Executors.newFixedThreadPool(Math.max(1, Math.min(numeroHilos, k)));
+		try {
+			for (Future<Void> resultado : hilos.invokeAll(tareas)) {
+				resultado.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Calculo de puntos de referencia interrumpido", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error calculando los puntos de referencia", e.getCause());
+		} finally {
+			hilos.shutdown();
+		}
+		return new PuntosReferencia(grafo, puntos, distancias);
+	}
+
+	/**
+	 * Metodo que escoge los puntos de referencia con la estrategia del mas alejado sobre las coordenadas.
+	 */
+	private static int[] escogerPuntos(GrafoCompacto grafo, int numeroPuntos) {
+
+		int numeroCiudades = grafo.numeroCiudades();
+		int[] puntos = new int[numeroPuntos];
+		if (numeroPuntos == 0) {
+			return puntos;
+		}
+
+		double centroX = 0.0;
+		double centroY = 0.0;
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			centroX += grafo.getCoordX(ciudad);
+			centroY += grafo.getCoordY(ciudad);
+		}
+		centroX /= numeroCiudades;
+		centroY /= numeroCiudades;
+
+		// Distancia de cada ciudad al punto de referencia mas cercano de los ya escogidos. Al principio, al centro.
+		double[] distanciaMinima = new double[numeroCiudades];
+		for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+			distanciaMinima[ciudad] = Math.hypot(grafo.getCoordX(ciudad) - centroX, grafo.getCoordY(ciudad) - centroY);
+		}
+
+		for (int i = 0; i < numeroPuntos; i++) {
+			int masAlejada = 0;
+			for (int ciudad = 1; ciudad < numeroCiudades; ciudad++) {
+				if (distanciaMinima[ciudad] > distanciaMinima[masAlejada]) {
+					masAlejada = ciudad;
+				}
+			}
+			puntos[i] = masAlejada;
+			float x = grafo.getCoordX(masAlejada);
+			float y = grafo.getCoordY(masAlejada);
+			for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+				double distancia = Math.hypot(grafo.getCoordX(ciudad) - x, grafo.getCoordY(ciudad) - y);
+				if (i == 0 || distancia < distanciaMinima[ciudad]) {
+					distanciaMinima[ciudad] = distancia;
+				}
+			}
+			// Un punto de referencia nunca vuelve a ser escogido.
+			distanciaMinima[masAlejada] = -1.0;
+		}
+		return puntos;
+	}
+
+	/**
+	 * Metodo que devuelve el grafo a partir del cual se calcularon las tablas.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de puntos de referencia.
+	 *
+	 * @return Numero de puntos de referencia (K).
+	 */
+	public int numeroPuntos() {
+		return puntos.length;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad que hace de punto de referencia.
+	 *
+	 * @param i
+	 * Indice del punto de referencia, entre 0 y K - 1.
+	 * @return Identificador de la ciudad.
+	 */
+	public int getPunto(int i) {
+		return puntos[i];
+	}
+
+	/**
+	 * Metodo que devuelve una cota inferior de la distancia por carretera entre dos ciudades: el maximo, sobre todos
+	 * los puntos de referencia, de la diferencia de sus distancias a las dos ciudades. Los puntos de referencia que no
+	 * alcanzan alguna de las dos ciudades no aportan informacion.
+	 *
+	 * @param ciudad
+	 * Identificador de una ciudad.
+	 * @param destino
+	 * Identificador de la otra ciudad.
+	 * @return Cota inferior de la distancia en KM entre las dos ciudades.
+	 */
+	public float cotaInferior(int ciudad, int destino) {
+
+		int k = puntos.length;
+		int filaCiudad = ciudad * k;
+		int filaDestino = destino * k;
+		float cota = 0.0f;
+		for (int i = 0; i < k; i++) {
+			float diferencia = Math.abs(distancias[filaDestino + i] - distancias[filaCiudad + i]);
+			// Si el punto de referencia no alcanza alguna ciudad la diferencia es infinita o NaN y se descarta.
+			if (diferencia > cota && diferencia != Float.POSITIVE_INFINITY) {
+				cota = diferencia;
+			}
+		}
+		return cota;
+	}
+
+	/**
+	 * Metodo que escribe los puntos de referencia y sus tablas en una instantanea del mapa.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	void escribir(InstantaneaMapa.Escritor escritor) throws IOException {
+
+		escritor.escribir(puntos);
+		escritor.escribir(distancias);
+	}
+
+	/**
+	 * Metodo que lee los puntos de referencia escritos con el metodo escribir.
+	 *
+	 * @see InstantaneaMapa
+	 */
+	static PuntosReferencia leer(GrafoCompacto grafo, InstantaneaMapa.Lector lector) throws IOException {
+		return new PuntosReferencia(grafo, lector.leerEnteros(), lector.leerReales());
+	}
+}
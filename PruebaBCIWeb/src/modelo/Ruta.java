@@ -0,0 +1,191 @@
+package modelo;
+
+/**
+ * Clase que representa el resultado de una busqueda de camino entre una ciudad origen y una ciudad destino: la
+ * secuencia de ciudades a atravesar, la distancia total y el numero de ciudades que la busqueda tuvo que asentar y de
+ * carreteras que tuvo que examinar para encontrarlo. Estos dos ultimos datos permiten comparar el trabajo realizado por
+ * los distintos algoritmos.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Algoritmo
+ */
+public final class Ruta {
+
+	private final GrafoCompacto grafo;
+	private final int origen;
+	private final int destino;
+	private final int[] ciudades;
+	private final float distancia;
+	private final int ciudadesAsentadas;
+	private final int carreterasRelajadas;
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo sobre el que se ha realizado la busqueda.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @param ciudades
+	 * Identificadores de las ciudades del camino desde el origen hasta el destino, ambos incluidos. null si no existe
+	 * camino.
+	 * @param distancia
+	 * Distancia en KM del camino. Infinito si no existe camino.
+	 * @param ciudadesAsentadas
+	 * Numero de ciudades asentadas durante la busqueda.
+	 */
+	Ruta(GrafoCompacto grafo, int origen, int destino, int[] ciudades, float distancia, int ciudadesAsentadas) {
+
+		this(grafo, origen, destino, ciudades, distancia, ciudadesAsentadas, 0);
+	}
+
+	/**
+	 * Constructor de la clase.
+	 *
+	 * @param grafo
+	 * Grafo sobre el que se ha realizado la busqueda.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @param ciudades
+	 * Identificadores de las ciudades del camino desde el origen hasta el destino, ambos incluidos. null si no existe
+	 * camino.
+	 * @param distancia
+	 * Distancia en KM del camino. Infinito si no existe camino.
+	 * @param ciudadesAsentadas
+	 * Numero de ciudades asentadas durante la busqueda.
+	 * @param carreterasRelajadas
+	 * Numero de carreteras (o atajos) examinadas desde las ciudades asentadas.
+	 */
+	Ruta(GrafoCompacto grafo, int origen, int destino, int[] ciudades, float distancia, int ciudadesAsentadas,
+			int carreterasRelajadas) {
+
+		this.grafo = grafo;
+		this.origen = origen;
+		this.destino = destino;
+		this.ciudades = ciudades;
+		this.distancia = distancia;
+		this.ciudadesAsentadas = ciudadesAsentadas;
+		this.carreterasRelajadas = carreterasRelajadas;
+	}
+
+	/**
+	 * Metodo que construye una ruta a partir de un arbol de caminos minimos.
+	 *
+	 * @param arbol
+	 * Arbol de caminos minimos con raiz en la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta desde la raiz del arbol hasta la ciudad destino.
+	 */
+	static Ruta desdeArbol(ArbolCaminosMinimos arbol, int destino) {
+
+		return new Ruta(arbol.getGrafo(), arbol.getOrigen(), destino, arbol.camino(destino), arbol.distancia(destino),
+				arbol.getCiudadesAsentadas(), arbol.getCarreterasRelajadas());
+	}
+
+	/**
+	 * Metodo que construye una ruta a partir del frente hacia delante de una busqueda que ha asentado la ciudad
+	 * destino o ha agotado las ciudades alcanzables desde el origen.
+	 *
+	 * @param grafo
+	 * Grafo sobre el que se ha realizado la busqueda, o null si se ha realizado sobre una AdyacenciaComprimida.
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @param frente
+	 * Frente de la busqueda, con las ciudades como padres.
+	 * @param ciudadesAsentadas
+	 * Numero de ciudades asentadas durante la busqueda.
+	 * @param carreterasRelajadas
+	 * Numero de carreteras examinadas durante la busqueda.
+	 * @return Ruta desde la ciudad origen hasta la ciudad destino.
+	 */
+	static Ruta desdeFrente(GrafoCompacto grafo, int origen, int destino, EspacioBusqueda.Frente frente,
+			int ciudadesAsentadas, int carreterasRelajadas) {
+
+		float distancia = frente.distancia(destino);
+		int[] ciudades = distancia < Float.POSITIVE_INFINITY ? frente.camino(destino) : null;
+		return new Ruta(grafo, origen, destino, ciudades, distancia, ciudadesAsentadas, carreterasRelajadas);
+	}
+
+	/**
+	 * Metodo que devuelve el grafo sobre el que se ha calculado la ruta.
+	 *
+	 * @return Grafo compacto del mapa. Null si la ruta se calculo sobre una AdyacenciaComprimida, que es la que da
+	 * los nombres de sus ciudades.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad origen de la ruta.
+	 *
+	 * @return Identificador de la ciudad origen.
+	 */
+	public int getOrigen() {
+		return origen;
+	}
+
+	/**
+	 * Metodo que devuelve la ciudad destino de la ruta.
+	 *
+	 * @return Identificador de la ciudad destino.
+	 */
+	public int getDestino() {
+		return destino;
+	}
+
+	/**
+	 * Metodo que indica si existe un camino entre la ciudad origen y la ciudad destino.
+	 *
+	 * @return true si existe camino.
+	 */
+	public boolean existe() {
+		return ciudades != null;
+	}
+
+	/**
+	 * Metodo que devuelve la secuencia de ciudades del camino.
+	 *
+	 * @return Identificadores de las ciudades del camino desde el origen hasta el destino, ambos incluidos. null si no
+	 * existe camino.
+	 */
+	public int[] getCiudades() {
+		return ciudades;
+	}
+
+	/**
+	 * Metodo que devuelve la distancia total del camino.
+	 *
+	 * @return Distancia en KM. Infinito si no existe camino.
+	 */
+	public float getDistancia() {
+		return distancia;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de ciudades asentadas durante la busqueda.
+	 *
+	 * @return Numero de ciudades asentadas.
+	 */
+	public int getCiudadesAsentadas() {
+		return ciudadesAsentadas;
+	}
+
+	/**
+	 * Metodo que devuelve el numero de carreteras examinadas durante la busqueda. En las jerarquias de contracciones
+	 * se cuentan los atajos del grafo de subida.
+	 *
+	 * @return Numero de carreteras relajadas. 0 si la ruta no se obtuvo con una busqueda sobre el grafo.
+	 */
+	public int getCarreterasRelajadas() {
+		return carreterasRelajadas;
+	}
+}
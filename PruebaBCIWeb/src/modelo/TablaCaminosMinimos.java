@@ -0,0 +1,178 @@
+package modelo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Clase que representa las tablas de caminos minimos entre todos los pares de ciudades del mapa: una matriz de
+ * distancias y una matriz de siguiente salto. Con ellas una ruta se obtiene avanzando de ciudad en ciudad hasta el
+ * destino, sin ninguna busqueda.
+ *
+ * Las tablas se calculan con una busqueda Dijkstra completa desde cada ciudad, repartidas entre los hilos de un
+ * ForkJoinPool. Como cada carretera se registra en las dos ciudades que une, el arbol con raiz en una ciudad destino
+ * contiene, para cada ciudad, su padre en el arbol, que es justamente la siguiente ciudad del camino minimo hacia ese
+ * destino. Por eso cada busqueda rellena la fila de su ciudad raiz y las filas se indexan por ciudad destino.
+ *
+ * Las dos matrices son densas y ocupan 8 bytes por par de ciudades, por lo que solo son adecuadas para mapas de unos
+ * pocos miles de ciudades. El metodo estimarMemoria permite rechazarlas antes de reservar la memoria.
+ *
+ * @author jfrascon
+ * @version "%I%, %G%
+ * @see Mapa#prepararTablaCaminos(long)
+ */
+public final class TablaCaminosMinimos {
+
+	/**
+	 * Numero maximo de ciudades para el que cada matriz cabe en un array.
+	 */
+	public static final int MAXIMO_CIUDADES = 46340;
+
+	// Numero de ciudades origen que procesa una tarea sin volver a dividirse.
+	private static final int TAMANIO_MINIMO_TAREA = 8;
+
+	private final GrafoCompacto grafo;
+	private final int numeroCiudades;
+	// siguientes[destino * n + ciudad]: siguiente ciudad del camino minimo desde ciudad hasta destino, o -1 si ciudad
+	// es el destino o no esta comunicada con el.
+	private final int[] siguientes;
+	// distancias[destino * n + ciudad]: distancia minima entre las dos ciudades.
+	private final float[] distancias;
+
+	private TablaCaminosMinimos(GrafoCompacto grafo, int[] siguientes, float[] distancias) {
+
+		this.grafo = grafo;
+		this.numeroCiudades = grafo.numeroCiudades();
+		this.siguientes = siguientes;
+		this.distancias = distancias;
+	}
+
+	/**
+	 * Metodo que estima la memoria que ocupan las tablas de un mapa.
+	 *
+	 * @param numeroCiudades
+	 * Numero de ciudades del mapa.
+	 * @return Memoria en bytes de las dos matrices.
+	 */
+	public static long estimarMemoria(int numeroCiudades) {
+		return 8L * numeroCiudades * numeroCiudades;
+	}
+
+	/**
+	 * Metodo que calcula las tablas de caminos minimos de un grafo.
+	 *
+	 * @param grafo
+	 * Grafo compacto del mapa. Debe tener como mucho MAXIMO_CIUDADES ciudades.
+	 * @param numeroHilos
+	 * Numero de hilos del ForkJoinPool que calcula las tablas.
+	 * @return Tablas de caminos minimos del grafo.
+	 */
+	public static TablaCaminosMinimos construir(GrafoCompacto grafo, int numeroHilos) {
+
+		int numeroCiudades = grafo.numeroCiudades();
+		if (numeroCiudades > MAXIMO_CIUDADES) {
+			throw new IllegalArgumentException("Demasiadas ciudades para las tablas de caminos minimos: "
+					+ numeroCiudades);
+		}
+		int[] siguientes = new int[numeroCiudades * numeroCiudades];
+		float[] distancias = new float[numeroCiudades * numeroCiudades];
+
+		ForkJoinPool hilos = new ForkJoinPool(Math.max(1, numeroHilos));
+		try {
+			hilos.invoke(new CalculoFilas(grafo, siguientes, distancias, 0, numeroCiudades));
+		} finally {
+			hilos.shutdown();
+		}
+		return new TablaCaminosMinimos(grafo, siguientes, distancias);
+	}
+
+	/**
+	 * Tarea que calcula las filas de un rango de ciudades raiz, dividiendose en dos mientras el rango sea grande.
+	 */
+	private static final class CalculoFilas extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GrafoCompacto grafo;
+		private final int[] siguientes;
+		private final float[] distancias;
+		private final int desde;
+		private final int hasta;
+
+		CalculoFilas(GrafoCompacto grafo, int[] siguientes, float[] distancias, int desde, int hasta) {
+
+			this.grafo = grafo;
+			this.siguientes = siguientes;
+			this.distancias = distancias;
+			this.desde = desde;
+			this.hasta = hasta;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (hasta - desde > TAMANIO_MINIMO_TAREA) {
+				int mitad = (desde + hasta) >>> 1;
+				invokeAll(new CalculoFilas(grafo, siguientes, distancias, desde, mitad), new CalculoFilas(grafo,
+						siguientes, distancias, mitad, hasta));
+				return;
+			}
+			int numeroCiudades = grafo.numeroCiudades();
+			for (int raiz = desde; raiz < hasta; raiz++) {
+				ArbolCaminosMinimos arbol = AlgoritmoDijkstra.ejecutar(grafo, raiz, -1);
+				int fila = raiz * numeroCiudades;
+				for (int ciudad = 0; ciudad < numeroCiudades; ciudad++) {
+					siguientes[fila + ciudad] = arbol.padre(ciudad);
+					distancias[fila + ciudad] = arbol.distancia(ciudad);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Metodo que devuelve el grafo a partir del cual se calcularon las tablas.
+	 *
+	 * @return Grafo compacto del mapa.
+	 */
+	public GrafoCompacto getGrafo() {
+		return grafo;
+	}
+
+	/**
+	 * Metodo que devuelve la distancia minima entre dos ciudades. Cada fila se calcula desde su ciudad destino, por lo
+	 * que la distancia guardada suma los tramos desde el destino; como las longitudes de las carreteras son multiplos
+	 * exactos de 1/1024 KM (ver Mapa.longitudCarretera), coincide con la que da Dijkstra desde el origen.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Distancia en KM. Float.POSITIVE_INFINITY si las ciudades no estan comunicadas.
+	 */
+	public float distancia(int origen, int destino) {
+		return distancias[destino * numeroCiudades + origen];
+	}
+
+	/**
+	 * Metodo que obtiene la ruta entre dos ciudades avanzando por la matriz de siguiente salto. La distancia de la ruta
+	 * se suma recorriendo el camino desde el origen, como la de las rutas de los demas algoritmos.
+	 *
+	 * @param origen
+	 * Identificador de la ciudad origen.
+	 * @param destino
+	 * Identificador de la ciudad destino.
+	 * @return Ruta entre la ciudad origen y la ciudad destino. No se asienta ninguna ciudad.
+	 */
+	public Ruta calcularRuta(int origen, int destino) {
+
+		int fila = destino * numeroCiudades;
+		float distancia = distancias[fila + origen];
+		if (distancia == Float.POSITIVE_INFINITY) {
+			return new Ruta(grafo, origen, destino, null, distancia, 0);
+		}
+		ListaEnteros camino = grafo.espacioBusqueda().camino();
+		for (int ciudad = origen; ciudad >= 0; ciudad = siguientes[fila + ciudad]) {
+			camino.aniadir(ciudad);
+		}
+		return new Ruta(grafo, origen, destino, camino.aArray(), grafo.distanciaCamino(camino), 0);
+	}
+}